@@ -0,0 +1,349 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shendu.launcher;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * In-memory prefix index over app labels for instant search.
+ *
+ * Each label is split into words: runs of letters or digits, broken at case and digit changes,
+ * and single Han characters. The label is indexed from its first word and from every later
+ * word start. Labels with Han characters are also indexed under their pinyin spelling and
+ * their pinyin initials, again from every syllable, so a two-character label read "wei xin"
+ * is found by either character, "weixin", "xin", "wx" and "x". All keys live in one sorted
+ * map and a query is a range scan over the keys that start with it.
+ *
+ * Items are indexed and dropped one at a time, so the model can feed its added, removed and
+ * modified deltas straight in. All methods are synchronized: the model writes from its worker
+ * thread while the UI queries.
+ */
+public class AppSearchIndex<T> {
+    // Match kinds, best first. A posting scores the kind of the token it was indexed under.
+    private static final int MATCH_EXACT = 0;
+    private static final int MATCH_LABEL = 1;
+    private static final int MATCH_PINYIN = 2;
+    private static final int MATCH_INITIALS = 3;
+    private static final int MATCH_WORD = 4;
+    private static final int MATCH_PINYIN_WORD = 5;
+    private static final int MATCH_INITIALS_WORD = 6;
+
+    // Every known polyphone doubles the spellings of a label; stop after this many
+    private static final int MAX_SPELLINGS = 4;
+
+    // Keys are the token, this separator and a serial, so equal tokens never collide. Any key
+    // that starts with the query sorts between the query and the query followed by KEY_MAX.
+    private static final char KEY_SEPARATOR = '\u0001';
+    private static final char KEY_MAX = '\uffff';
+
+    private class Entry {
+        final T mItem;
+        final String mLabel;
+        String[] mKeys;
+        int mQueryStamp;
+        int mScore;
+
+        Entry(T item, String label) {
+            mItem = item;
+            mLabel = label;
+        }
+    }
+
+    private class Posting {
+        final Entry mEntry;
+        final int mKind;
+        final int mTokenLength;
+
+        Posting(Entry entry, int kind, int tokenLength) {
+            mEntry = entry;
+            mKind = kind;
+            mTokenLength = tokenLength;
+        }
+    }
+
+    private final Comparator<Entry> mMatchComparator = new Comparator<Entry>() {
+        public int compare(Entry a, Entry b) {
+            if (a.mScore != b.mScore) {
+                return a.mScore - b.mScore;
+            }
+            if (mTieBreaker != null) {
+                final int result = mTieBreaker.compare(a.mItem, b.mItem);
+                if (result != 0) {
+                    return result;
+                }
+            }
+            final int lengthA = a.mLabel.length();
+            final int lengthB = b.mLabel.length();
+            if (lengthA != lengthB) {
+                return lengthA - lengthB;
+            }
+            return a.mLabel.compareTo(b.mLabel);
+        }
+    };
+
+    private final PinyinConverter mConverter;
+    private final TreeMap<String, Posting> mPostings = new TreeMap<String, Posting>();
+    private final HashMap<T, Entry> mEntries = new HashMap<T, Entry>();
+    private int mNextSerial;
+    private int mQueryStamp;
+    private Comparator<? super T> mTieBreaker;
+
+    // Scratch state, only touched while holding the lock
+    private final ArrayList<String> mWords = new ArrayList<String>();
+    private final ArrayList<String> mReadings = new ArrayList<String>();
+    private final StringBuilder mBuilder = new StringBuilder();
+    private final HashMap<String, Integer> mTokenKinds = new HashMap<String, Integer>();
+    private final ArrayList<Entry> mMatches = new ArrayList<Entry>();
+
+    public AppSearchIndex(PinyinConverter converter) {
+        mConverter = converter;
+    }
+
+    /**
+     * Indexes the item under the label. An item that is already indexed is re-indexed, which
+     * is how modified items are handled.
+     */
+    public synchronized void add(T item, CharSequence label) {
+        remove(item);
+        if (label == null) {
+            return;
+        }
+        final ArrayList<String> words = mWords;
+        splitWords(label, words);
+        if (words.isEmpty()) {
+            return;
+        }
+        final HashMap<String, Integer> kinds = mTokenKinds;
+        kinds.clear();
+        final String joined = collectTokens(words, false, MATCH_LABEL, MATCH_WORD);
+
+        int polyphones = 0;
+        boolean hasPinyin = false;
+        for (String word : words) {
+            if (isPinyinWord(word)) {
+                hasPinyin = true;
+                if (mConverter.getAlternatePinyin(word.charAt(0)) != null) {
+                    polyphones++;
+                }
+            }
+        }
+        if (hasPinyin) {
+            final int spellings = Math.min(MAX_SPELLINGS, 1 << Math.min(polyphones, 30));
+            for (int variant = 0; variant < spellings; variant++) {
+                spell(words, variant, mReadings);
+                collectTokens(mReadings, false, MATCH_PINYIN, MATCH_PINYIN_WORD);
+                collectTokens(mReadings, true, MATCH_INITIALS, MATCH_INITIALS_WORD);
+            }
+        } else if (words.size() > 1) {
+            collectTokens(words, true, MATCH_INITIALS, MATCH_INITIALS_WORD);
+        }
+
+        final Entry entry = new Entry(item, joined);
+        final String[] keys = new String[kinds.size()];
+        int i = 0;
+        for (Map.Entry<String, Integer> token : kinds.entrySet()) {
+            final String key = token.getKey() + KEY_SEPARATOR + (mNextSerial++);
+            mPostings.put(key, new Posting(entry, token.getValue(), token.getKey().length()));
+            keys[i++] = key;
+        }
+        entry.mKeys = keys;
+        mEntries.put(item, entry);
+        kinds.clear();
+    }
+
+    public synchronized void remove(T item) {
+        final Entry entry = mEntries.remove(item);
+        if (entry == null) {
+            return;
+        }
+        for (String key : entry.mKeys) {
+            mPostings.remove(key);
+        }
+    }
+
+    public synchronized void clear() {
+        mEntries.clear();
+        mPostings.clear();
+    }
+
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * Returns up to limit items matching the query, best match first: an exact label, then
+     * label, pinyin and initials prefixes from the first word, then the same from later words.
+     * Ties go to the shorter label. Case, spaces and punctuation in the query are ignored.
+     */
+    public ArrayList<T> query(CharSequence query, int limit) {
+        return query(query, limit, null);
+    }
+
+    /**
+     * Like {@link #query(CharSequence, int)}, but orders items that match equally well by the
+     * tie breaker before falling back to the shorter label.
+     */
+    public synchronized ArrayList<T> query(CharSequence query, int limit,
+            Comparator<? super T> tieBreaker) {
+        final ArrayList<T> results = new ArrayList<T>();
+        if (query == null || limit <= 0) {
+            return results;
+        }
+        splitWords(query, mWords);
+        final StringBuilder builder = mBuilder;
+        builder.setLength(0);
+        for (String word : mWords) {
+            builder.append(word);
+        }
+        if (builder.length() == 0) {
+            return results;
+        }
+        final String prefix = builder.toString();
+        final int stamp = ++mQueryStamp;
+        final ArrayList<Entry> matches = mMatches;
+        for (Posting posting : mPostings.subMap(prefix, prefix + KEY_MAX).values()) {
+            final Entry entry = posting.mEntry;
+            int score = posting.mKind;
+            if (score == MATCH_LABEL && posting.mTokenLength == prefix.length()) {
+                score = MATCH_EXACT;
+            }
+            if (entry.mQueryStamp != stamp) {
+                entry.mQueryStamp = stamp;
+                entry.mScore = score;
+                matches.add(entry);
+            } else if (score < entry.mScore) {
+                entry.mScore = score;
+            }
+        }
+        mTieBreaker = tieBreaker;
+        Collections.sort(matches, mMatchComparator);
+        mTieBreaker = null;
+        final int count = Math.min(limit, matches.size());
+        results.ensureCapacity(count);
+        for (int i = 0; i < count; i++) {
+            results.add(matches.get(i).mItem);
+        }
+        matches.clear();
+        return results;
+    }
+
+    /**
+     * Splits text into lower-case words. Characters that are neither letters nor digits only
+     * separate words.
+     */
+    private void splitWords(CharSequence text, ArrayList<String> out) {
+        out.clear();
+        final StringBuilder word = mBuilder;
+        word.setLength(0);
+        char previous = 0;
+        final int length = text.length();
+        for (int i = 0; i < length; i++) {
+            final char c = text.charAt(i);
+            if (mConverter.hasPinyin(c)) {
+                flushWord(word, out);
+                out.add(String.valueOf(c));
+            } else if (Character.isLetterOrDigit(c)) {
+                if (word.length() > 0 && isWordBreak(previous, c)) {
+                    flushWord(word, out);
+                }
+                word.append(Character.toLowerCase(c));
+                previous = c;
+            } else {
+                flushWord(word, out);
+            }
+        }
+        flushWord(word, out);
+    }
+
+    private static boolean isWordBreak(char previous, char c) {
+        return (Character.isLowerCase(previous) && Character.isUpperCase(c))
+                || Character.isDigit(previous) != Character.isDigit(c);
+    }
+
+    private static void flushWord(StringBuilder word, ArrayList<String> out) {
+        if (word.length() > 0) {
+            out.add(word.toString());
+            word.setLength(0);
+        }
+    }
+
+    private boolean isPinyinWord(String word) {
+        return word.length() == 1 && mConverter.hasPinyin(word.charAt(0));
+    }
+
+    /**
+     * Replaces every Han word by its reading. Bit n of variant picks the alternate reading of
+     * the nth polyphone.
+     */
+    private void spell(ArrayList<String> words, int variant, ArrayList<String> out) {
+        out.clear();
+        int polyphone = 0;
+        for (String word : words) {
+            if (!isPinyinWord(word)) {
+                out.add(word);
+                continue;
+            }
+            final char c = word.charAt(0);
+            String reading = mConverter.getPinyin(c);
+            final String alternate = mConverter.getAlternatePinyin(c);
+            if (alternate != null) {
+                if (polyphone < 30 && (variant & (1 << polyphone)) != 0) {
+                    reading = alternate;
+                }
+                polyphone++;
+            }
+            out.add(reading);
+        }
+    }
+
+    /**
+     * Records the joined parts, or their initials, as tokens starting at every part. Returns
+     * the joined text.
+     */
+    private String collectTokens(ArrayList<String> parts, boolean initials, int firstKind,
+            int laterKind) {
+        final StringBuilder builder = mBuilder;
+        builder.setLength(0);
+        for (String part : parts) {
+            if (initials) {
+                builder.append(part.charAt(0));
+            } else {
+                builder.append(part);
+            }
+        }
+        final String joined = builder.toString();
+        int offset = 0;
+        final int count = parts.size();
+        for (int i = 0; i < count; i++) {
+            putToken(joined.substring(offset), i == 0 ? firstKind : laterKind);
+            offset += initials ? 1 : parts.get(i).length();
+        }
+        return joined;
+    }
+
+    private void putToken(String token, int kind) {
+        final Integer current = mTokenKinds.get(token);
+        if (current == null || kind < current) {
+            mTokenKinds.put(token, kind);
+        }
+    }
+}
@@ -56,9 +56,7 @@ import android.graphics.Shader;
 import android.graphics.TableMaskFilter;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
-import android.os.AsyncTask;
 import android.os.Environment;
-import android.os.Process;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.Display;
@@ -87,13 +85,14 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.io.File;
+import java.io.PrintWriter;
 import java.lang.ref.WeakReference;
 
 /**
  * A simple callback interface which also provides the results of the task.
  */
 interface AsyncTaskCallback {
-    void run(AppsCustomizeAsyncTask task, AsyncTaskPageData data);
+    void run(AppsCustomizePageTask task, AsyncTaskPageData data);
 }
 
 /**
@@ -154,41 +153,30 @@ class AsyncTaskPageData {
 }
 
 /**
- * A generic template for an async task used in AppsCustomize.
+ * Loads one page of AppsCustomize content on a {@link PageLoadExecutor}.
  */
-class AppsCustomizeAsyncTask extends AsyncTask<AsyncTaskPageData, Void, AsyncTaskPageData> {
-    AppsCustomizeAsyncTask(int p, AppsCustomizePagedView.ContentType t, AsyncTaskPageData.Type ty) {
-        page = p;
+class AppsCustomizePageTask extends PageLoadExecutor.Request {
+    AppsCustomizePageTask(int p, AppsCustomizePagedView.ContentType t, AsyncTaskPageData.Type ty,
+            AsyncTaskPageData d) {
+        super(p);
         pageContentType = t;
-        threadPriority = Process.THREAD_PRIORITY_DEFAULT;
         dataType = ty;
+        data = d;
     }
     @Override
-    protected AsyncTaskPageData doInBackground(AsyncTaskPageData... params) {
-        if (params.length != 1) return null;
+    void runInBackground() {
         // Load each of the widget previews in the background
-        params[0].doInBackgroundCallback.run(this, params[0]);
-        return params[0];
+        data.doInBackgroundCallback.run(this, data);
     }
     @Override
-    protected void onPostExecute(AsyncTaskPageData result) {
+    void onPostExecute() {
         // All the widget previews are loaded, so we can just callback to inflate the page
-        result.postExecuteCallback.run(this, result);
+        data.postExecuteCallback.run(this, data);
     }
 
-    void setThreadPriority(int p) {
-        threadPriority = p;
-    }
-    void syncThreadPriority() {
-        Process.setThreadPriority(threadPriority);
-    }
-
-    // The page that this async task is associated with
     AsyncTaskPageData.Type dataType;
-    int page;
     AppsCustomizePagedView.ContentType pageContentType;
-    int threadPriority;
-
+    AsyncTaskPageData data;
 }
 
 abstract class WeakReferenceThreadLocal<T> {
@@ -304,6 +292,8 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
     private Canvas mCanvas;
     private Drawable mDefaultWidgetBackground;
     private IconCache mIconCache;
+    private WidgetPreviewCache mWidgetPreviewCache;
+    private WallpaperThumbnailCache mWallpaperThumbnailCache;
 
     // Dimens
     private int mContentWidth;
@@ -329,8 +319,9 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
     private SharedPreferences mSharedPreferences;
 
     // Previews & outlines
-    ArrayList<AppsCustomizeAsyncTask> mRunningTasks;
-    private static final int sPageSleepDelay = 200;
+    ArrayList<AppsCustomizePageTask> mRunningTasks;
+    private static final PageLoadExecutor sWidgetPageLoader =
+            new PageLoadExecutor("launcher-widget-pages");
 
     private Runnable mInflateWidgetRunnable = null;
     private Runnable mBindWidgetRunnable = null;
@@ -377,8 +368,12 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
         mThemesList  = new ArrayList<ShenduPrograme>();
         mWidgets = new ArrayList<Object>();
         mIconCache = ((LauncherApplication) context.getApplicationContext()).getIconCache();
+        mWidgetPreviewCache =
+                ((LauncherApplication) context.getApplicationContext()).getWidgetPreviewCache();
+        mWallpaperThumbnailCache = ((LauncherApplication) context.getApplicationContext())
+                .getWallpaperThumbnailCache();
         mCanvas = new Canvas();
-        mRunningTasks = new ArrayList<AppsCustomizeAsyncTask>();
+        mRunningTasks = new ArrayList<AppsCustomizePageTask>();
 
 
         // Save the default widget preview background
@@ -630,7 +625,9 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
         }
         mWidgets.addAll(shortcuts);
         Collections.sort(mWidgets,
-                new LauncherModel.WidgetAndShortcutNameComparator(mPackageManager));
+                new LauncherModel.WidgetAndShortcutNameComparator(mPackageManager,
+                        ((LauncherApplication) getContext().getApplicationContext())
+                                .getSortKeyGenerator()));
         //updatePageCounts();
         invalidateOnDataChange();
     }
@@ -681,28 +678,27 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
     private void shenduFindWallpapers() {
     	boolean wasEmpty = mWallpapersList.isEmpty();
     	mWallpapersList.clear();
-    	Resources resources = getResources();
-    	String packageName = resources.getResourcePackageName(R.array.wallpapers);
-    	String[] extras = resources.getStringArray(R.array.wallpapers);
-    	for (String extra:extras) {
-            int resId = resources.getIdentifier(extra, "drawable", packageName);
+    	for (WallpaperThumbnailCache.BuiltInWallpaper wallpaper :
+    	        mWallpaperThumbnailCache.getBuiltInWallpapers()) {
             ShenduPrograme widgetPrograme = new ShenduPrograme();
-            if (resId != 0) {
-                int smallResId = resources.getIdentifier(extra+"_small","drawable",packageName);
-                widgetPrograme.setResId(resId);
-                widgetPrograme.setChoice(ShenduPrograme.CHOICE_WALLPAPER_LAUNCHER);
-                if (smallResId != 0) {
-                    widgetPrograme.setResSmallId(smallResId);
-                }
-                mWallpapersList.add(widgetPrograme);
+            widgetPrograme.setResId(wallpaper.resId);
+            widgetPrograme.setChoice(ShenduPrograme.CHOICE_WALLPAPER_LAUNCHER);
+            if (wallpaper.thumbResId != 0) {
+                widgetPrograme.setResSmallId(wallpaper.thumbResId);
+            } else {
+                mWallpaperThumbnailCache.loadBuiltInThumbnail(wallpaper,
+                        new WallpaperThumbnailSetter(widgetPrograme));
             }
+            mWallpapersList.add(widgetPrograme);
         }
     	ShenduPrograme widgetPrograme = new ShenduPrograme();
     	WallpaperManager wallpaperManager = WallpaperManager.getInstance(mLauncher);
     	WallpaperInfo wallpaperInfo = wallpaperManager.getWallpaperInfo();
     	if(wallpaperInfo==null){
     		widgetPrograme.setLiveWallpaper(false);
-    		widgetPrograme.setResDrawable(wallpaperManager.getDrawable());
+    		// Decoded to tile size in the background rather than through getDrawable()
+    		mWallpaperThumbnailCache.loadCurrentThumbnail(
+    		        new WallpaperThumbnailSetter(widgetPrograme));
     	}else{
     		widgetPrograme.setLiveWallpaper(true);
     		widgetPrograme.setResDrawable(wallpaperInfo.loadThumbnail(mPackageManager));
@@ -732,6 +728,42 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
         }
     }
     
+    /**
+     * Hands a generated wallpaper thumbnail to its list entry and rebinds the tile showing it.
+     */
+    private class WallpaperThumbnailSetter implements WallpaperThumbnailCache.Callback {
+        private final ShenduPrograme mPrograme;
+
+        WallpaperThumbnailSetter(ShenduPrograme programe) {
+            mPrograme = programe;
+        }
+
+        public void onThumbnailLoaded(Bitmap thumbnail) {
+            if (thumbnail == null) {
+                return;
+            }
+            mPrograme.setResDrawable(new BitmapDrawable(getResources(), thumbnail));
+            if (mContentType != ContentType.Wallpapers) {
+                return;
+            }
+            final int count = getChildCount();
+            for (int i = 0; i < count; i++) {
+                View page = getPageAt(i);
+                if (!(page instanceof PagedViewCellLayout)) {
+                    continue;
+                }
+                PagedViewCellLayout layout = (PagedViewCellLayout) page;
+                for (int j = 0; j < layout.getPageChildCount(); j++) {
+                    View child = layout.getChildOnPageAt(j);
+                    if (child instanceof PagedViewWallpaper && child.getTag() == mPrograme) {
+                        ((PagedViewWallpaper) child).applyFromShenduPrograme(mPrograme);
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
 //    /**
 //     * 2012-8-26 hhl
 //     * TODO: userd to find the wallpapers data in current launcher and init mWallpapersList data
@@ -1211,23 +1243,52 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
 
     private void cancelAllTasks() {
         // Clean up all the async tasks
-        Iterator<AppsCustomizeAsyncTask> iter = mRunningTasks.iterator();
+        Iterator<AppsCustomizePageTask> iter = mRunningTasks.iterator();
         while (iter.hasNext()) {
-            AppsCustomizeAsyncTask task = (AppsCustomizeAsyncTask) iter.next();
-            task.cancel(false);
+            AppsCustomizePageTask task = (AppsCustomizePageTask) iter.next();
             iter.remove();
-            mDirtyPageContent.set(task.page, true);
-
-            // We've already preallocated the views for the data to load into, so clear them as well
-            View v = getPageAt(task.page);
-            if (v instanceof PagedViewGridLayout) {
-                ((PagedViewGridLayout) v).removeAllViewsOnPage();
-            }
+            cancelTask(task);
         }
         mDeferredSyncWidgetPageItems.clear();
         mDeferredPrepareLoadWidgetPreviewsTasks.clear();
     }
 
+    void dumpPageLoadStats(String prefix, PrintWriter writer) {
+        sWidgetPageLoader.dump(prefix, writer);
+    }
+
+    private void cancelTask(AppsCustomizePageTask task) {
+        task.cancel();
+        mDirtyPageContent.set(task.page, true);
+
+        // We've already preallocated the views for the data to load into, so clear them as well
+        View v = getPageAt(task.page);
+        if (v instanceof PagedViewGridLayout) {
+            ((PagedViewGridLayout) v).removeAllViewsOnPage();
+        }
+    }
+
+    /**
+     * Points the page loader at the page we are showing or snapping to, and drops the loads of
+     * pages that fell out of the range kept around it. Those pages are marked dirty, so they are
+     * synced again if the user comes back.
+     */
+    private void updatePageLoadTarget() {
+        final int toPage = (mNextPage != INVALID_PAGE) ? mNextPage : mCurrentPage;
+        sWidgetPageLoader.setTargetPage(toPage, toPage - mCurrentPage);
+
+        final int lower = getAssociatedLowerPageBound(toPage);
+        final int upper = getAssociatedUpperPageBound(toPage);
+        Iterator<AppsCustomizePageTask> iter = mRunningTasks.iterator();
+        while (iter.hasNext()) {
+            AppsCustomizePageTask task = (AppsCustomizePageTask) iter.next();
+            if (task.page < lower || task.page > upper) {
+                iter.remove();
+                cancelTask(task);
+            }
+        }
+    }
+
     public void setContentType(ContentType type) {
             mContentType = type;
             invalidatePageData(0,true);
@@ -1263,18 +1324,8 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
         super.snapToPage(whichPage, delta, duration);
         shenduUpdateTheArrowImageView(whichPage);
         shenduUpdateTheArrowImageView(whichPage);
-            // Update the thread priorities given the direction lookahead
-            Iterator<AppsCustomizeAsyncTask> iter = mRunningTasks.iterator();
-            while (iter.hasNext()) {
-                AppsCustomizeAsyncTask task = (AppsCustomizeAsyncTask) iter.next();
-                int pageIndex = task.page;
-                if ((mNextPage > mCurrentPage && pageIndex >= mCurrentPage) ||
-                        (mNextPage < mCurrentPage && pageIndex <= mCurrentPage)) {
-                    task.setThreadPriority(getThreadPriorityForPage(pageIndex));
-                } else {
-                    task.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
-                }
-            }
+        // Reorder the queued page loads given the direction lookahead
+        updatePageLoadTarget();
     }
 
     public boolean isContentType(ContentType type) {
@@ -1313,77 +1364,20 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
     }
 
     /**
-     * A helper to return the priority for loading of the specified widget page.
-     */
-    private int getWidgetPageLoadPriority(int page) {
-        // If we are snapping to another page, use that index as the target page index
-        int toPage = mCurrentPage;
-        if (mNextPage > -1) {
-            toPage = mNextPage;
-        }
-
-        // We use the distance from the target page as an initial guess of priority, but if there
-        // are no pages of higher priority than the page specified, then bump up the priority of
-        // the specified page.
-        Iterator<AppsCustomizeAsyncTask> iter = mRunningTasks.iterator();
-        int minPageDiff = Integer.MAX_VALUE;
-        while (iter.hasNext()) {
-            AppsCustomizeAsyncTask task = (AppsCustomizeAsyncTask) iter.next();
-            minPageDiff = Math.abs(task.page - toPage);
-        }
-
-        int rawPageDiff = Math.abs(page - toPage);
-        return rawPageDiff - Math.min(rawPageDiff, minPageDiff);
-    }
-    /**
-     * Return the appropriate thread priority for loading for a given page (we give the current
-     * page much higher priority)
-     */
-    private int getThreadPriorityForPage(int page) {
-        // TODO-APPS_CUSTOMIZE: detect number of cores and set thread priorities accordingly below
-        int pageDiff = getWidgetPageLoadPriority(page);
-        if (pageDiff <= 0) {
-            return Process.THREAD_PRIORITY_LESS_FAVORABLE;
-        } else if (pageDiff <= 1) {
-            return Process.THREAD_PRIORITY_LOWEST;
-        } else {
-            return Process.THREAD_PRIORITY_LOWEST;
-        }
-    }
-    private int getSleepForPage(int page) {
-        int pageDiff = getWidgetPageLoadPriority(page);
-        return Math.max(0, pageDiff * sPageSleepDelay);
-    }
-    /**
-     * Creates and executes a new AsyncTask to load a page of widget previews.
+     * Queues a new task on the page loader to load a page of widget previews.
      */
     private void prepareLoadWidgetPreviewsTask(int page, ArrayList<Object> widgets,
             int cellWidth, int cellHeight, int cellCountX) {
 
         // Prune all tasks that are no longer needed
-        Iterator<AppsCustomizeAsyncTask> iter = mRunningTasks.iterator();
-        while (iter.hasNext()) {
-            AppsCustomizeAsyncTask task = (AppsCustomizeAsyncTask) iter.next();
-            int taskPage = task.page;
-            if (taskPage < getAssociatedLowerPageBound(mCurrentPage) ||
-                    taskPage > getAssociatedUpperPageBound(mCurrentPage)) {
-                task.cancel(false);
-                iter.remove();
-            } else {
-                task.setThreadPriority(getThreadPriorityForPage(taskPage));
-            }
-        }
+        updatePageLoadTarget();
 
-        // We introduce a slight delay to order the loading of side pages so that we don't thrash
-        final int sleepMs = getSleepForPage(page);
+        // The loader orders the pages by distance from the target, so side pages simply wait
         AsyncTaskPageData pageData = new AsyncTaskPageData(page, widgets, cellWidth, cellHeight,
             new AsyncTaskCallback() {
                 @Override
-                public void run(AppsCustomizeAsyncTask task, AsyncTaskPageData data) {
+                public void run(AppsCustomizePageTask task, AsyncTaskPageData data) {
                     try {
-                        try {
-                            Thread.sleep(sleepMs);
-                        } catch (Exception e) {}
                         loadWidgetPreviewsInBackground(task, data);
                     } finally {
                         if (task.isCancelled()) {
@@ -1394,7 +1388,7 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
             },
             new AsyncTaskCallback() {
                 @Override
-                public void run(AppsCustomizeAsyncTask task, AsyncTaskPageData data) {
+                public void run(AppsCustomizePageTask task, AsyncTaskPageData data) {
                     mRunningTasks.remove(task);
                     if (task.isCancelled()) return;
                     // do cleanup inside onSyncWidgetPageItems
@@ -1402,11 +1396,9 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
                 }
             });
 
-        // Ensure that the task is appropriately prioritized and runs in parallel
-        AppsCustomizeAsyncTask t = new AppsCustomizeAsyncTask(page, mContentType,
-                AsyncTaskPageData.Type.LoadWidgetPreviewData);
-        t.setThreadPriority(getThreadPriorityForPage(page));
-        t.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, pageData);
+        AppsCustomizePageTask t = new AppsCustomizePageTask(page, mContentType,
+                AsyncTaskPageData.Type.LoadWidgetPreviewData, pageData);
+        sWidgetPageLoader.execute(t);
         mRunningTasks.add(t);
     }
 
@@ -1848,7 +1840,7 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
             }
         });
     }
-    private void loadWidgetPreviewsInBackground(AppsCustomizeAsyncTask task,
+    private void loadWidgetPreviewsInBackground(AppsCustomizePageTask task,
             AsyncTaskPageData data) {
         // loadWidgetPreviewsInBackground can be called without a task to load a set of widget
         // previews synchronously
@@ -1879,13 +1871,29 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
                         mWidgetSpacingLayout.estimateCellWidth(cellSpans[0]));
                 int maxHeight = Math.min(data.maxImageHeight,
                         mWidgetSpacingLayout.estimateCellHeight(cellSpans[1]));
-                Bitmap b = getWidgetPreview(info.provider, info.previewImage, info.icon,
-                        cellSpans[0], cellSpans[1], maxWidth, maxHeight);
+                String name = WidgetPreviewCache.WIDGET_PREFIX + info.provider.flattenToString();
+                String packageName = info.provider.getPackageName();
+                Bitmap b = mWidgetPreviewCache.load(name, packageName, maxWidth, maxHeight);
+                if (b == null) {
+                    b = getWidgetPreview(info.provider, info.previewImage, info.icon,
+                            cellSpans[0], cellSpans[1], maxWidth, maxHeight);
+                    mWidgetPreviewCache.store(name, packageName, maxWidth, maxHeight, b);
+                }
                 images.add(b);
             } else if (rawInfo instanceof ResolveInfo) {
                 // Fill in the shortcuts information
                 ResolveInfo info = (ResolveInfo) rawInfo;
-                images.add(getShortcutPreview(info, data.maxImageWidth, data.maxImageHeight));
+                String packageName = info.activityInfo.packageName;
+                String name = WidgetPreviewCache.SHORTCUT_PREFIX
+                        + new ComponentName(packageName, info.activityInfo.name).flattenToString();
+                Bitmap b = mWidgetPreviewCache.load(name, packageName,
+                        data.maxImageWidth, data.maxImageHeight);
+                if (b == null) {
+                    b = getShortcutPreview(info, data.maxImageWidth, data.maxImageHeight);
+                    mWidgetPreviewCache.store(name, packageName,
+                            data.maxImageWidth, data.maxImageHeight, b);
+                }
+                images.add(b);
             }
         }
     }
@@ -1911,14 +1919,6 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
 
             layout.createHardwareLayer();
             invalidate();
-
-            // Update all thread priorities
-            Iterator<AppsCustomizeAsyncTask> iter = mRunningTasks.iterator();
-            while (iter.hasNext()) {
-                AppsCustomizeAsyncTask task = (AppsCustomizeAsyncTask) iter.next();
-                int pageIndex = task.page;
-                task.setThreadPriority(getThreadPriorityForPage(pageIndex));
-            }
         } finally {
             data.cleanup(false);
         }
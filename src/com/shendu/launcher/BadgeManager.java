@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shendu.launcher;
+
+import android.content.ComponentName;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.View;
+import android.widget.TextView;
+
+import com.shendu.launcher.R;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Keeps the unread counts of every registered {@link BadgeProvider}.
+ *
+ * Providers are queried on a dedicated background thread, each no more often than its
+ * minimum refresh interval. Count changes are collected and handed to the UI at most once
+ * per frame, however many providers changed in between.
+ */
+public class BadgeManager {
+    static final String TAG = "Launcher.BadgeManager";
+    static final boolean DEBUG_BADGES = false;
+
+    public interface Callbacks {
+        /**
+         * Called on the UI thread with every component whose count changed since the last
+         * frame. The map is owned by the caller only for the duration of the call.
+         */
+        public void bindUnreadCountsChanged(HashMap<ComponentName, Integer> changed);
+    }
+
+    private static final HandlerThread sWorkerThread = new HandlerThread("launcher-badges",
+            Process.THREAD_PRIORITY_BACKGROUND);
+    static {
+        sWorkerThread.start();
+    }
+    private static final Handler sWorker = new Handler(sWorkerThread.getLooper());
+
+    private final Context mContext;
+    private final Choreographer mChoreographer;
+    private final ArrayList<BadgeProvider> mProviders = new ArrayList<BadgeProvider>();
+    private final ArrayList<ContentObserver> mObservers = new ArrayList<ContentObserver>();
+    private Callbacks mCallbacks;
+
+    // Written by the worker, drained by the frame callback; guarded by itself
+    private HashMap<ComponentName, Integer> mPendingCounts = new HashMap<ComponentName, Integer>();
+    private HashMap<ComponentName, Integer> mDispatchCounts = new HashMap<ComponentName, Integer>();
+    private boolean mFrameScheduled;
+
+    // < only access in the UI thread >
+    private final HashMap<ComponentName, Integer> mCounts = new HashMap<ComponentName, Integer>();
+    private int mFramesDispatched;
+    // </ only access in the UI thread >
+    private int mUpdatesPosted;
+
+    private final Choreographer.FrameCallback mFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            dispatchPendingCounts();
+        }
+    };
+
+    /**
+     * Must be created on the UI thread.
+     */
+    public BadgeManager(Context context) {
+        mContext = context.getApplicationContext();
+        mChoreographer = Choreographer.getInstance();
+    }
+
+    public void setCallbacks(Callbacks callbacks) {
+        mCallbacks = callbacks;
+    }
+
+    /**
+     * Registers a provider, starts observing its uris and schedules its first query.
+     */
+    public void registerProvider(final BadgeProvider provider) {
+        provider.mManager = this;
+        mProviders.add(provider);
+
+        Uri[] uris = provider.getObservedUris();
+        if (uris != null) {
+            ContentObserver observer = new ContentObserver(sWorker) {
+                @Override
+                public void onChange(boolean selfChange) {
+                    requestRefresh(provider);
+                }
+            };
+            ContentResolver resolver = mContext.getContentResolver();
+            for (Uri uri : uris) {
+                resolver.registerContentObserver(uri, true, observer);
+            }
+            mObservers.add(observer);
+        }
+        requestRefresh(provider);
+    }
+
+    public void unregisterAll() {
+        ContentResolver resolver = mContext.getContentResolver();
+        for (ContentObserver observer : mObservers) {
+            resolver.unregisterContentObserver(observer);
+        }
+        mObservers.clear();
+        for (BadgeProvider provider : mProviders) {
+            provider.mManager = null;
+        }
+        mProviders.clear();
+    }
+
+    /**
+     * Returns the last count dispatched to the UI for the component, or 0 if unknown.
+     * Only call this from the UI thread.
+     */
+    public int getCount(ComponentName component) {
+        if (component == null) {
+            return 0;
+        }
+        Integer count = mCounts.get(component);
+        return count != null ? count : 0;
+    }
+
+    void requestRefresh(final BadgeProvider provider) {
+        if (Thread.currentThread() != sWorkerThread) {
+            sWorker.post(new Runnable() {
+                public void run() {
+                    requestRefresh(provider);
+                }
+            });
+            return;
+        }
+        if (provider.mRefreshPending) {
+            return;
+        }
+        provider.mRefreshPending = true;
+        long delay = 0;
+        if (provider.mLastRefreshTime >= 0) {
+            long next = provider.mLastRefreshTime + provider.getMinRefreshInterval();
+            delay = Math.max(0, next - SystemClock.uptimeMillis());
+        }
+        sWorker.postDelayed(new Runnable() {
+            public void run() {
+                refresh(provider);
+            }
+        }, delay);
+    }
+
+    private void refresh(BadgeProvider provider) {
+        provider.mRefreshPending = false;
+        provider.mLastRefreshTime = SystemClock.uptimeMillis();
+        int count;
+        try {
+            count = provider.queryCount(mContext);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Failed to query unread count for " + provider.getComponent(), e);
+            return;
+        }
+        if (count == provider.mLastCount) {
+            return;
+        }
+        provider.mLastCount = count;
+        postCount(provider.getComponent(), count);
+    }
+
+    private void postCount(ComponentName component, int count) {
+        boolean schedule;
+        synchronized (this) {
+            mPendingCounts.put(component, count);
+            mUpdatesPosted++;
+            schedule = !mFrameScheduled;
+            mFrameScheduled = true;
+        }
+        if (schedule) {
+            mChoreographer.postFrameCallback(mFrameCallback);
+        }
+    }
+
+    private void dispatchPendingCounts() {
+        HashMap<ComponentName, Integer> changed;
+        synchronized (this) {
+            // Swap the buffers so the worker can keep posting while we bind
+            changed = mPendingCounts;
+            mPendingCounts = mDispatchCounts;
+            mDispatchCounts = changed;
+            mFrameScheduled = false;
+        }
+        mCounts.putAll(changed);
+        mFramesDispatched++;
+        if (DEBUG_BADGES) {
+            Log.d(TAG, "dispatching " + changed.size() + " badge changes, " + mUpdatesPosted
+                    + " updates over " + mFramesDispatched + " frames");
+        }
+        Callbacks callbacks = mCallbacks;
+        if (callbacks != null) {
+            callbacks.bindUnreadCountsChanged(changed);
+        }
+        changed.clear();
+    }
+
+    /**
+     * Shows or hides the unread mark of a view inflated from R.layout.app_shortcutinfo.
+     */
+    static void applyUnreadCount(View shortcutView, int count) {
+        TextView mark = (TextView) shortcutView.findViewById(R.id.app_shortcutinfo_mark_id);
+        if (mark == null) {
+            return;
+        }
+        if (count > 0) {
+            mark.setText(String.valueOf(count));
+            mark.setVisibility(View.VISIBLE);
+        } else {
+            mark.setVisibility(View.INVISIBLE);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shendu.launcher;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.net.Uri;
+
+/**
+ * Supplies the unread count shown as a badge on one launcher component.
+ *
+ * Providers are registered with the {@link BadgeManager} and are only ever queried on the
+ * badge worker thread, so {@link #queryCount(Context)} is free to hit content providers.
+ */
+public abstract class BadgeProvider {
+    private final ComponentName mComponent;
+    private final long mMinRefreshInterval;
+
+    // < only access in the badge worker thread >
+    long mLastRefreshTime = -1;
+    boolean mRefreshPending;
+    int mLastCount = -1;
+    // </ only access in the badge worker thread >
+
+    BadgeManager mManager;
+
+    /**
+     * @param component the launcher component whose badge this provider drives
+     * @param minRefreshInterval minimum time in ms between two {@link #queryCount} calls
+     */
+    public BadgeProvider(ComponentName component, long minRefreshInterval) {
+        mComponent = component;
+        mMinRefreshInterval = minRefreshInterval;
+    }
+
+    public ComponentName getComponent() {
+        return mComponent;
+    }
+
+    public long getMinRefreshInterval() {
+        return mMinRefreshInterval;
+    }
+
+    /**
+     * Returns the content uris whose changes should trigger a refresh, or null if the
+     * provider only refreshes through {@link #notifyChanged()}.
+     */
+    public Uri[] getObservedUris() {
+        return null;
+    }
+
+    /**
+     * Asks the manager to refresh this badge. Safe to call from any thread; calls arriving
+     * faster than the minimum refresh interval are folded into one query.
+     */
+    public void notifyChanged() {
+        BadgeManager manager = mManager;
+        if (manager != null) {
+            manager.requestRefresh(this);
+        }
+    }
+
+    /**
+     * Returns the current unread count. Called on the badge worker thread.
+     */
+    public abstract int queryCount(Context context);
+}
@@ -143,21 +143,37 @@ public class BubbleLinearLayout extends LinearLayout {
 	}
     
     /**
-     * Returns a new bitmap to be used as the object outline, e.g. to visualize the drop location.
-     * Responsibility for the bitmap is transferred to the caller.
+     * Returns the bitmap to be used as the object outline, e.g. to visualize the drop location.
+     * The bitmap may be shared through the outline cache and must not be recycled.
      */
     private Bitmap createDragOutline(View v, Canvas canvas) {
         final int padding = HolographicOutlineHelper.MAX_OUTER_BLUR_RADIUS;
-        final Bitmap b = Bitmap.createBitmap(
-                v.getWidth() + padding, v.getHeight() + padding, Bitmap.Config.ARGB_8888);
+        final int width = v.getWidth() + padding;
+        final int height = v.getHeight() + padding;
+        final HolographicOutlineHelper.OutlineKey key = HolographicOutlineHelper.getOutlineKey(
+                v, width, height, padding, mPressedGlowColor, mPressedOutlineColor,
+                HolographicOutlineHelper.THICK);
+        Bitmap b = HolographicOutlineHelper.getCachedOutline(key);
+        if (b != null) {
+            return b;
+        }
+        b = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
         canvas.setBitmap(b);
         drawDragView(v, canvas, padding, true);
         mOutlineHelper.applyThickExpensiveOutlineWithBlur(b,canvas,mPressedGlowColor,mPressedOutlineColor);
         //mOutlineHelper.applyExtraThickExpensiveOutlineWithBlur(b,canvas,mPressedGlowColor,mPressedOutlineColor);
         //mOutlineHelper.applyMediumExpensiveOutlineWithBlur(b, canvas, outlineColor, outlineColor);
         canvas.setBitmap(null);
+        HolographicOutlineHelper.cacheOutline(key, b);
         return b;
     }
+
+    /**
+     * Computes the pressed outline ahead of time so that the first touch finds it cached.
+     */
+    void preparePressedOutline() {
+        createDragOutline(this, mTempCanvas);
+    }
     
     private void drawDragView(View v, Canvas destCanvas, int padding, boolean pruneToDrawable) {
         final Rect clipRect = mTempRect;
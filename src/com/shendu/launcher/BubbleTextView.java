@@ -180,22 +180,40 @@ public class BubbleTextView extends TextView {
     }
 
     /**
-     * Returns a new bitmap to be used as the object outline, e.g. to visualize the drop location.
-     * Responsibility for the bitmap is transferred to the caller.
+     * Returns the bitmap to be used as the object outline, e.g. to visualize the drop location.
+     * The bitmap may be shared through the outline cache and must not be recycled.
      */
     private Bitmap createGlowingOutline(Canvas canvas, int outlineColor, int glowColor) {
         final int padding = HolographicOutlineHelper.MAX_OUTER_BLUR_RADIUS;
-        final Bitmap b = Bitmap.createBitmap(
-                getWidth() + padding, getHeight() + padding, Bitmap.Config.ARGB_8888);
+        final int width = getWidth() + padding;
+        final int height = getHeight() + padding;
+        // drawWithPadding() draws the view scaled, which the key does not cover
+        final HolographicOutlineHelper.OutlineKey key = getScaleX() == 1f && getScaleY() == 1f
+                ? HolographicOutlineHelper.getOutlineKey(this, width, height, padding, glowColor,
+                        outlineColor, HolographicOutlineHelper.EXTRA_THICK)
+                : null;
+        Bitmap b = HolographicOutlineHelper.getCachedOutline(key);
+        if (b != null) {
+            return b;
+        }
+        b = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
 
         canvas.setBitmap(b);
         drawWithPadding(canvas, padding);
         mOutlineHelper.applyExtraThickExpensiveOutlineWithBlur(b, canvas, glowColor, outlineColor);
         canvas.setBitmap(null);
+        HolographicOutlineHelper.cacheOutline(key, b);
 
         return b;
     }
 
+    /**
+     * Computes the pressed outline ahead of time so that the first touch finds it cached.
+     */
+    void preparePressedOutline() {
+        createGlowingOutline(mTempCanvas, mPressedGlowColor, mPressedOutlineColor);
+    }
+
     @Override
     public boolean onTouchEvent(MotionEvent event) {
         // Call the superclass onTouchEvent first, because sometimes it changes the state to
@@ -37,6 +37,9 @@ import android.graphics.Rect;
 import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.NinePatchDrawable;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.MotionEvent;
@@ -53,7 +56,6 @@ import com.shendu.launcher.FolderIcon.FolderRingAnimator;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Stack;
 
 public class CellLayout extends ViewGroup {
     static final String TAG = "CellLayout";
@@ -83,6 +85,9 @@ public class CellLayout extends ViewGroup {
 
     boolean[][] mOccupied;
     boolean[][] mTmpOccupied;
+    // Vacancy index over mOccupied, plus one that is pointed at any other grid on demand
+    private final OccupancyIndex mOccupiedIndex = new OccupancyIndex();
+    private final OccupancyIndex mScratchIndex = new OccupancyIndex();
     private boolean mLastDownOnOccupiedCell = false;
 
     private OnTouchListener mInterceptTouchListener;
@@ -154,16 +159,42 @@ public class CellLayout extends ViewGroup {
     private float mReorderHintAnimationMagnitude;
 
     private ArrayList<View> mIntersectingViews = new ArrayList<View>();
-    private Rect mOccupiedRect = new Rect();
     private int[] mDirectionVector = new int[2];
     int[] mPreviousReorderDirection = new int[2];
+
+    // The reorder search runs on a copy of the grid; see syncReorderSolver(). Together with
+    // the scratch state below the drag-over path does not allocate once warmed up.
+    private final ReorderSolver mReorderSolver = new ReorderSolver();
+    private final Rect mTmpRegionRect = new Rect();
+    private final Rect mTmpChildRect = new Rect();
+    private final int[] mTmpResultSpan = new int[2];
     private static final int INVALID_DIRECTION = -100;
+
+    // Drag-over reorders are solved on sReorderWorker against a snapshot of the grid taken when
+    // the request is issued. Anything that invalidates the preview bumps mReorderGeneration, and
+    // results carrying an older generation are dropped when they come back.
+    private static final HandlerThread sReorderThread = new HandlerThread("launcher-reorder",
+            Process.THREAD_PRIORITY_DISPLAY);
+    static {
+        sReorderThread.start();
+    }
+    private static final Handler sReorderWorker = new Handler(sReorderThread.getLooper());
+    private final Handler mHandler = new Handler();
+    // < only access in the UI thread >
+    private final ArrayList<ReorderRequest> mIdleReorderRequests = new ArrayList<ReorderRequest>();
+    private int mReorderGeneration;
+    private OnReorderSolvedListener mPendingReorderListener;
+    // </ only access in the UI thread >
     private DropTarget.DragEnforcer mDragEnforcer;
 
     private final static PorterDuffXfermode sAddBlendMode =
             new PorterDuffXfermode(PorterDuff.Mode.ADD);
 			
     public boolean mIsCurrentPage = false; //for drag crosshairs
+    // Id of the workspaceScreens row of this page, -1 until the workspace assigns one
+    private long mScreenId = -1;
+    // Last transition effect transform the workspace applied to this page
+    private final PageTransform mAppliedTransform = new PageTransform();
     private Drawable mCrosshairsDrawable = null;
 	
     private Drawable mHeaderFooterDrawable; //editstate header or footer background drawable
@@ -196,6 +227,7 @@ public class CellLayout extends ViewGroup {
         mCountY = LauncherModel.getCellCountY();
         mOccupied = new boolean[mCountX][mCountY];
         mTmpOccupied = new boolean[mCountX][mCountY];
+        mOccupiedIndex.setGrid(mOccupied, mCountX, mCountY);
         mPreviousReorderDirection[0] = INVALID_DIRECTION;
         mPreviousReorderDirection[1] = INVALID_DIRECTION;
 
@@ -314,12 +346,33 @@ public class CellLayout extends ViewGroup {
         mShortcutsAndWidgets.enableHardwareLayers();
     }
 
+    public void disableHardwareLayers() {
+        mShortcutsAndWidgets.disableHardwareLayers();
+    }
+
+    /**
+     * Renders the hardware layer now, so the first frame that shows this page does not have to.
+     */
+    void buildHardwareLayer() {
+        if (mShortcutsAndWidgets.getLayerType() == LAYER_TYPE_HARDWARE
+                && mShortcutsAndWidgets.getWindowToken() != null) {
+            mShortcutsAndWidgets.buildLayer();
+        }
+    }
+
+    /**
+     * Returns the memory a hardware layer of this page takes, in bytes.
+     */
+    int getHardwareLayerSize() {
+        return mShortcutsAndWidgets.getWidth() * mShortcutsAndWidgets.getHeight() * 4;
+    }
+
     public void setGridSize(int x, int y) {
         mCountX = x;
         mCountY = y;
         mOccupied = new boolean[mCountX][mCountY];
         mTmpOccupied = new boolean[mCountX][mCountY];
-        mTempRectStack.clear();
+        mOccupiedIndex.setGrid(mOccupied, mCountX, mCountY);
         requestLayout();
     }
 
@@ -612,6 +665,18 @@ public class CellLayout extends ViewGroup {
         return mCountY;
     }
 
+    long getScreenId() {
+        return mScreenId;
+    }
+
+    void setScreenId(long screenId) {
+        mScreenId = screenId;
+    }
+
+    PageTransform getAppliedTransform() {
+        return mAppliedTransform;
+    }
+
     public void setIsHotseat(boolean isHotseat) {
         mIsHotseat = isHotseat;
     }
@@ -1133,11 +1198,9 @@ public class CellLayout extends ViewGroup {
             final int oldX = lp.x;
             final int oldY = lp.y;
             if (adjustOccupied) {
-            	if(lp.cellX<mCountX){
-            		occupied[lp.cellX][lp.cellY] = false;
-                }
-                //occupied[lp.cellX][lp.cellY] = false;
-                occupied[cellX][cellY] = true;
+                // markCellsForView skips cells off the grid
+                markCellsForView(lp.cellX, lp.cellY, 1, 1, occupied, false);
+                markCellsForView(cellX, cellY, 1, 1, occupied, true);
             }
             lp.isLockedToGrid = true;
             if (permanent) {
@@ -1362,21 +1425,6 @@ public class CellLayout extends ViewGroup {
                 spanX, spanY, ignoreView, ignoreOccupied, result, null, mOccupied);
     }
 
-    private final Stack<Rect> mTempRectStack = new Stack<Rect>();
-    private void lazyInitTempRectStack() {
-        if (mTempRectStack.isEmpty()) {
-            for (int i = 0; i < mCountX * mCountY; i++) {
-                mTempRectStack.push(new Rect());
-            }
-        }
-    }
-
-    private void recycleTempRects(Stack<Rect> used) {
-        while (!used.isEmpty()) {
-            mTempRectStack.push(used.pop());
-        }
-    }
-
     /**
      * Find a vacant area that will fit the given bounds nearest the requested
      * cell location. Uses Euclidean distance to score multiple vacant areas.
@@ -1396,624 +1444,47 @@ public class CellLayout extends ViewGroup {
     int[] findNearestArea(int pixelX, int pixelY, int minSpanX, int minSpanY, int spanX, int spanY,
             View ignoreView, boolean ignoreOccupied, int[] result, int[] resultSpan,
             boolean[][] occupied) {
-        lazyInitTempRectStack();
-        // mark space take by ignoreView as available (method checks if ignoreView is null)
-        markCellsAsUnoccupiedForView(ignoreView, occupied);
-
-        // For items with a spanX / spanY > 1, the passed in point (pixelX, pixelY) corresponds
-        // to the center of the item, but we are searching based on the top-left cell, so
-        // we translate the point over to correspond to the top-left.
-        pixelX -= (mCellWidth + mWidthGap) * (spanX - 1) / 2f;
-        pixelY -= (mCellHeight + mHeightGap) * (spanY - 1) / 2f;
-
-        // Keep track of best-scoring drop area
-        final int[] bestXY = result != null ? result : new int[2];
-        double bestDistance = Double.MAX_VALUE;
-        final Rect bestRect = new Rect(-1, -1, -1, -1);
-        final Stack<Rect> validRegions = new Stack<Rect>();
-
-        final int countX = mCountX;
-        final int countY = mCountY;
-
-        if (minSpanX <= 0 || minSpanY <= 0 || spanX <= 0 || spanY <= 0 ||
-                spanX < minSpanX || spanY < minSpanY) {
-            return bestXY;
-        }
-
-        for (int y = 0; y < countY - (minSpanY - 1); y++) {
-            inner:
-            for (int x = 0; x < countX - (minSpanX - 1); x++) {
-                int ySize = -1;
-                int xSize = -1;
-                if (ignoreOccupied) {
-                    // First, let's see if this thing fits anywhere
-                    for (int i = 0; i < minSpanX; i++) {
-                        for (int j = 0; j < minSpanY; j++) {
-                            if (occupied[x + i][y + j]) {
-                                continue inner;
-                            }
-                        }
-                    }
-                    xSize = minSpanX;
-                    ySize = minSpanY;
-
-                    // We know that the item will fit at _some_ acceptable size, now let's see
-                    // how big we can make it. We'll alternate between incrementing x and y spans
-                    // until we hit a limit.
-                    boolean incX = true;
-                    boolean hitMaxX = xSize >= spanX;
-                    boolean hitMaxY = ySize >= spanY;
-                    while (!(hitMaxX && hitMaxY)) {
-                        if (incX && !hitMaxX) {
-                            for (int j = 0; j < ySize; j++) {
-                                if (x + xSize > countX -1 || occupied[x + xSize][y + j]) {
-                                    // We can't move out horizontally
-                                    hitMaxX = true;
-                                }
-                            }
-                            if (!hitMaxX) {
-                                xSize++;
-                            }
-                        } else if (!hitMaxY) {
-                            for (int i = 0; i < xSize; i++) {
-                                if (y + ySize > countY - 1 || occupied[x + i][y + ySize]) {
-                                    // We can't move out vertically
-                                    hitMaxY = true;
-                                }
-                            }
-                            if (!hitMaxY) {
-                                ySize++;
-                            }
-                        }
-                        hitMaxX |= xSize >= spanX;
-                        hitMaxY |= ySize >= spanY;
-                        incX = !incX;
-                    }
-                    incX = true;
-                    hitMaxX = xSize >= spanX;
-                    hitMaxY = ySize >= spanY;
-                }
-                final int[] cellXY = mTmpXY;
-                cellToCenterPoint(x, y, cellXY);
-
-                // We verify that the current rect is not a sub-rect of any of our previous
-                // candidates. In this case, the current rect is disqualified in favour of the
-                // containing rect.
-                Rect currentRect = mTempRectStack.pop();
-                currentRect.set(x, y, x + xSize, y + ySize);
-                boolean contained = false;
-                for (Rect r : validRegions) {
-                    if (r.contains(currentRect)) {
-                        contained = true;
-                        break;
-                    }
-                }
-                validRegions.push(currentRect);
-                double distance = Math.sqrt(Math.pow(cellXY[0] - pixelX, 2)
-                        + Math.pow(cellXY[1] - pixelY, 2));
-
-                if ((distance <= bestDistance && !contained) ||
-                        currentRect.contains(bestRect)) {
-                    bestDistance = distance;
-                    bestXY[0] = x;
-                    bestXY[1] = y;
-                    if (resultSpan != null) {
-                        resultSpan[0] = xSize;
-                        resultSpan[1] = ySize;
-                    }
-                    bestRect.set(currentRect);
-                }
-            }
-        }
-        // re-mark space taken by ignoreView as occupied
-        markCellsAsOccupiedForView(ignoreView, occupied);
-
-        // Return -1, -1 if no suitable location found
-        if (bestDistance == Double.MAX_VALUE) {
-            bestXY[0] = -1;
-            bestXY[1] = -1;
-        }
-        recycleTempRects(validRegions);
-        return bestXY;
-    }
-
-     /**
-     * Find a vacant area that will fit the given bounds nearest the requested
-     * cell location, and will also weigh in a suggested direction vector of the
-     * desired location. This method computers distance based on unit grid distances,
-     * not pixel distances.
-     *
-     * @param cellX The X cell nearest to which you want to search for a vacant area.
-     * @param cellY The Y cell nearest which you want to search for a vacant area.
-     * @param spanX Horizontal span of the object.
-     * @param spanY Vertical span of the object.
-     * @param direction The favored direction in which the views should move from x, y
-     * @param exactDirectionOnly If this parameter is true, then only solutions where the direction
-     *        matches exactly. Otherwise we find the best matching direction.
-     * @param occoupied The array which represents which cells in the CellLayout are occupied
-     * @param blockOccupied The array which represents which cells in the specified block (cellX,
-     *        cellY, spanX, spanY) are occupied. This is used when try to move a group of views. 
-     * @param result Array in which to place the result, or null (in which case a new array will
-     *        be allocated)
-     * @return The X, Y cell of a vacant area that can contain this object,
-     *         nearest the requested location.
-     */
-    private int[] findNearestArea(int cellX, int cellY, int spanX, int spanY, int[] direction,
-            boolean[][] occupied, boolean blockOccupied[][], int[] result) {
-        // Keep track of best-scoring drop area
-        final int[] bestXY = result != null ? result : new int[2];
-        float bestDistance = Float.MAX_VALUE;
-        int bestDirectionScore = Integer.MIN_VALUE;
-
-        final int countX = mCountX;
-        final int countY = mCountY;
-
-        for (int y = 0; y < countY - (spanY - 1); y++) {
-            inner:
-            for (int x = 0; x < countX - (spanX - 1); x++) {
-                // First, let's see if this thing fits anywhere
-                for (int i = 0; i < spanX; i++) {
-                    for (int j = 0; j < spanY; j++) {
-                        if (occupied[x + i][y + j] && (blockOccupied == null || blockOccupied[i][j])) {
-                            continue inner;
-                        }
-                    }
-                }
-
-                float distance = (float)
-                        Math.sqrt((x - cellX) * (x - cellX) + (y - cellY) * (y - cellY));
-                int[] curDirection = mTmpPoint;
-                computeDirectionVector(x - cellX, y - cellY, curDirection);
-                // The direction score is just the dot product of the two candidate direction
-                // and that passed in.
-                int curDirectionScore = direction[0] * curDirection[0] +
-                        direction[1] * curDirection[1];
-                boolean exactDirectionOnly = false;
-                boolean directionMatches = direction[0] == curDirection[0] &&
-                        direction[0] == curDirection[0];
-                if ((directionMatches || !exactDirectionOnly) &&
-                        Float.compare(distance,  bestDistance) < 0 || (Float.compare(distance,
-                        bestDistance) == 0 && curDirectionScore > bestDirectionScore)) {
-                    bestDistance = distance;
-                    bestDirectionScore = curDirectionScore;
-                    bestXY[0] = x;
-                    bestXY[1] = y;
-                }
-            }
-        }
-
-        // Return -1, -1 if no suitable location found
-        if (bestDistance == Float.MAX_VALUE) {
-            bestXY[0] = -1;
-            bestXY[1] = -1;
-        }
-        return bestXY;
-    }
-
-    private int[] findNearestAreaInDirection(int cellX, int cellY, int spanX, int spanY, 
-            int[] direction,boolean[][] occupied,
-            boolean blockOccupied[][], int[] result) {
-        // Keep track of best-scoring drop area
-        final int[] bestXY = result != null ? result : new int[2];
-        bestXY[0] = -1;
-        bestXY[1] = -1;
-        float bestDistance = Float.MAX_VALUE;
-
-        // We use this to march in a single direction
-        if ((direction[0] != 0 && direction[1] != 0) ||
-                (direction[0] == 0 && direction[1] == 0)) {
-            return bestXY;
-        }
-
-        // This will only incrememnet one of x or y based on the assertion above
-        int x = cellX + direction[0];
-        int y = cellY + direction[1];
-        while (x >= 0 && x + spanX <= mCountX && y >= 0 && y + spanY <= mCountY) {
-
-            boolean fail = false;
-            for (int i = 0; i < spanX; i++) {
-                for (int j = 0; j < spanY; j++) {
-                    if (occupied[x + i][y + j] && (blockOccupied == null || blockOccupied[i][j])) {
-                        fail = true;                    
-                    }
-                }
-            }
-            if (!fail) {
-                float distance = (float)
-                        Math.sqrt((x - cellX) * (x - cellX) + (y - cellY) * (y - cellY));
-                if (Float.compare(distance,  bestDistance) < 0) {
-                    bestDistance = distance;
-                    bestXY[0] = x;
-                    bestXY[1] = y;
-                }
-            }
-            x += direction[0];
-            y += direction[1];
-        }
-        return bestXY;
-    }
-
-    private boolean addViewToTempLocation(View v, Rect rectOccupiedByPotentialDrop,
-            int[] direction, ItemConfiguration currentState) {
-        CellAndSpan c = currentState.map.get(v);
-        boolean success = false;
-        markCellsForView(c.x, c.y, c.spanX, c.spanY, mTmpOccupied, false);
-        markCellsForRect(rectOccupiedByPotentialDrop, mTmpOccupied, true);
-
-        findNearestArea(c.x, c.y, c.spanX, c.spanY, direction, mTmpOccupied, null, mTempLocation);
-
-        if (mTempLocation[0] >= 0 && mTempLocation[1] >= 0) {
-            c.x = mTempLocation[0];
-            c.y = mTempLocation[1];
-            success = true;
-
-        }
-        markCellsForView(c.x, c.y, c.spanX, c.spanY, mTmpOccupied, true);
-        return success;
-    }
-
-    // This method looks in the specified direction to see if there is an additional view
-    // immediately adjecent in that direction
-    private boolean addViewInDirection(ArrayList<View> views, Rect boundingRect, int[] direction,
-            boolean[][] occupied, View dragView, ItemConfiguration currentState) {
-        boolean found = false;
-
-        int childCount = mShortcutsAndWidgets.getChildCount();
-        Rect r0 = new Rect(boundingRect);
-        Rect r1 = new Rect();
-
-        int deltaX = 0;
-        int deltaY = 0;
-        if (direction[1] < 0) {
-            r0.set(r0.left, r0.top - 1, r0.right, r0.bottom);
-            deltaY = -1;
-        } else if (direction[1] > 0) {
-            r0.set(r0.left, r0.top, r0.right, r0.bottom + 1);
-            deltaY = 1;
-        } else if (direction[0] < 0) {
-            r0.set(r0.left - 1, r0.top, r0.right, r0.bottom);
-            deltaX = -1;
-        } else if (direction[0] > 0) {
-            r0.set(r0.left, r0.top, r0.right + 1, r0.bottom);
-            deltaX = 1;
-        }
-
-        for (int i = 0; i < childCount; i++) {
-            View child = mShortcutsAndWidgets.getChildAt(i);
-            if (views.contains(child) || child == dragView) continue;
-            CellAndSpan c = currentState.map.get(child);
-
-            LayoutParams lp = (LayoutParams) child.getLayoutParams();
-            r1.set(c.x, c.y, c.x + c.spanX, c.y + c.spanY);
-            if (Rect.intersects(r0, r1)) {
-                if (!lp.canReorder) {
-                    return false;
-                }
-                boolean pushed = false;
-                for (int x = c.x; x < c.x + c.spanX; x++) {
-                    for (int y = c.y; y < c.y + c.spanY; y++) {
-                        boolean inBounds = x - deltaX >= 0 && x -deltaX < mCountX
-                                && y - deltaY >= 0 && y - deltaY < mCountY;
-                        if (inBounds && occupied[x - deltaX][y - deltaY]) {
-                            pushed = true;
-                        }
-                    }
-                }
-                if (pushed) {
-                    views.add(child);
-                    boundingRect.union(c.x, c.y, c.x + c.spanX, c.y + c.spanY);
-                    found = true;
-                }
-            }
-        }
-        return found;
-    }
-
-    private boolean addViewsToTempLocation(ArrayList<View> views, Rect rectOccupiedByPotentialDrop,
-            int[] direction, boolean push, View dragView, ItemConfiguration currentState) {
-        if (views.size() == 0) return true;
-
-        boolean success = false;
-        Rect boundingRect = null;
-        // We construct a rect which represents the entire group of views passed in
-        for (View v: views) {
-            CellAndSpan c = currentState.map.get(v);
-            if (boundingRect == null) {
-                boundingRect = new Rect(c.x, c.y, c.x + c.spanX, c.y + c.spanY);
-            } else {
-                boundingRect.union(c.x, c.y, c.x + c.spanX, c.y + c.spanY);
-            }
-        }
-
-        @SuppressWarnings("unchecked")
-        ArrayList<View> dup = (ArrayList<View>) views.clone();
-        // We try and expand the group of views in the direction vector passed, based on
-        // whether they are physically adjacent, ie. based on "push mechanics".
-        while (push && addViewInDirection(dup, boundingRect, direction, mTmpOccupied, dragView,
-                currentState)) {
-        }
-
-        // Mark the occupied state as false for the group of views we want to move.
-        for (View v: dup) {
-            CellAndSpan c = currentState.map.get(v);
-            markCellsForView(c.x, c.y, c.spanX, c.spanY, mTmpOccupied, false);
-        }
-
-        boolean[][] blockOccupied = new boolean[boundingRect.width()][boundingRect.height()];
-        int top = boundingRect.top;
-        int left = boundingRect.left;
-        // We mark more precisely which parts of the bounding rect are truly occupied, allowing
-        // for tetris-style interlocking.
-        for (View v: dup) {
-            CellAndSpan c = currentState.map.get(v);
-            markCellsForView(c.x - left, c.y - top, c.spanX, c.spanY, blockOccupied, true);
-        }
-
-        markCellsForRect(rectOccupiedByPotentialDrop, mTmpOccupied, true);
-
-        if (push) {
-            findNearestAreaInDirection(boundingRect.left, boundingRect.top, boundingRect.width(),
-                    boundingRect.height(), direction, mTmpOccupied, blockOccupied, mTempLocation);
-        } else {
-            findNearestArea(boundingRect.left, boundingRect.top, boundingRect.width(),
-                    boundingRect.height(), direction, mTmpOccupied, blockOccupied, mTempLocation);
-        }
-
-        // If we successfuly found a location by pushing the block of views, we commit it
-        if (mTempLocation[0] >= 0 && mTempLocation[1] >= 0) {
-            int deltaX = mTempLocation[0] - boundingRect.left;
-            int deltaY = mTempLocation[1] - boundingRect.top;
-            for (View v: dup) {
-                CellAndSpan c = currentState.map.get(v);
-                c.x += deltaX;
-                c.y += deltaY;
-            }
-            success = true;
-        }
-
-        // In either case, we set the occupied array as marked for the location of the views
-        for (View v: dup) {
-            CellAndSpan c = currentState.map.get(v);
-            markCellsForView(c.x, c.y, c.spanX, c.spanY, mTmpOccupied, true);
-        }
-        return success;
-    }
-
-    private void markCellsForRect(Rect r, boolean[][] occupied, boolean value) {
-        markCellsForView(r.left, r.top, r.width(), r.height(), occupied, value);
-    }
-
-    // This method tries to find a reordering solution which satisfies the push mechanic by trying
-    // to push items in each of the cardinal directions, in an order based on the direction vector
-    // passed.
-    private boolean attemptPushInDirection(ArrayList<View> intersectingViews, Rect occupied,
-            int[] direction, View ignoreView, ItemConfiguration solution) {
-        if ((Math.abs(direction[0]) + Math.abs(direction[1])) > 1) {
-            // If the direction vector has two non-zero components, we try pushing 
-            // separately in each of the components.
-            int temp = direction[1];
-            direction[1] = 0;
-            if (addViewsToTempLocation(intersectingViews, occupied, direction, true,
-                    ignoreView, solution)) {
-                return true;
-            }
-            direction[1] = temp;
-            temp = direction[0];
-            direction[0] = 0;
-            if (addViewsToTempLocation(intersectingViews, occupied, direction, true,
-                    ignoreView, solution)) {
-                return true;
-            }
-            // Revert the direction
-            direction[0] = temp;
-
-            // Now we try pushing in each component of the opposite direction
-            direction[0] *= -1;
-            direction[1] *= -1;
-            temp = direction[1];
-            direction[1] = 0;
-            if (addViewsToTempLocation(intersectingViews, occupied, direction, true,
-                    ignoreView, solution)) {
-                return true;
-            }
-
-            direction[1] = temp;
-            temp = direction[0];
-            direction[0] = 0;
-            if (addViewsToTempLocation(intersectingViews, occupied, direction, true,
-                    ignoreView, solution)) {
-                return true;
-            }
-            // revert the direction
-            direction[0] = temp;
-            direction[0] *= -1;
-            direction[1] *= -1;
-            
-        } else {
-            // If the direction vector has a single non-zero component, we push first in the
-            // direction of the vector
-            if (addViewsToTempLocation(intersectingViews, occupied, direction, true,
-                    ignoreView, solution)) {
-                return true;
-            }
-
-            // Then we try the opposite direction
-            direction[0] *= -1;
-            direction[1] *= -1;
-            if (addViewsToTempLocation(intersectingViews, occupied, direction, true,
-                    ignoreView, solution)) {
-                return true;
-            }
-            // Switch the direction back
-            direction[0] *= -1;
-            direction[1] *= -1;
-            
-            // If we have failed to find a push solution with the above, then we try 
-            // to find a solution by pushing along the perpendicular axis.
-
-            // Swap the components
-            int temp = direction[1];
-            direction[1] = direction[0];
-            direction[0] = temp;
-            if (addViewsToTempLocation(intersectingViews, occupied, direction, true,
-                    ignoreView, solution)) {
-                return true;
-            }
-
-            // Then we try the opposite direction
-            direction[0] *= -1;
-            direction[1] *= -1;
-            if (addViewsToTempLocation(intersectingViews, occupied, direction, true,
-                    ignoreView, solution)) {
-                return true;
-            }
-            // Switch the direction back
-            direction[0] *= -1;
-            direction[1] *= -1;
-
-            // Swap the components back
-            temp = direction[1];
-            direction[1] = direction[0];
-            direction[0] = temp;
-        }
-        return false;
+        final OccupancyIndex index = getOccupancyIndex(occupied, ignoreView);
+        updateReorderSolverMetrics(mReorderSolver);
+        result = mReorderSolver.findNearestArea(pixelX, pixelY, minSpanX, minSpanY, spanX, spanY,
+                ignoreOccupied, result, resultSpan, index);
+        index.clearIgnoredRect();
+        return result;
     }
 
-    private boolean rearrangementExists(int cellX, int cellY, int spanX, int spanY, int[] direction,
-            View ignoreView, ItemConfiguration solution) {
-        // Return early if get invalid cell positions
-        if (cellX < 0 || cellY < 0) return false;
-
-        mIntersectingViews.clear();
-        mOccupiedRect.set(cellX, cellY, cellX + spanX, cellY + spanY);
-
-        // Mark the desired location of the view currently being dragged.
-        if (ignoreView != null) {
-            CellAndSpan c = solution.map.get(ignoreView);
-            if (c != null) {
-                c.x = cellX;
-                c.y = cellY;
-            }
-        }
-        Rect r0 = new Rect(cellX, cellY, cellX + spanX, cellY + spanY);
-        Rect r1 = new Rect();
-        for (View child: solution.map.keySet()) {
-            if (child == ignoreView) continue;
-            CellAndSpan c = solution.map.get(child);
-            LayoutParams lp = (LayoutParams) child.getLayoutParams();
-            r1.set(c.x, c.y, c.x + c.spanX, c.y + c.spanY);
-            if (Rect.intersects(r0, r1)) {
-                if (!lp.canReorder) {
-                    return false;
-                }
-                mIntersectingViews.add(child);
-            }
-        }
-
-        // First we try to find a solution which respects the push mechanic. That is, 
-        // we try to find a solution such that no displaced item travels through another item
-        // without also displacing that item.
-        if (attemptPushInDirection(mIntersectingViews, mOccupiedRect, direction, ignoreView,
-                solution)) {
-            return true;
-        }
-
-        // Next we try moving the views as a block, but without requiring the push mechanic.
-        if (addViewsToTempLocation(mIntersectingViews, mOccupiedRect, direction, false, ignoreView,
-                solution)) {
-            return true;
-        }
-
-        // Ok, they couldn't move as a block, let's move them individually
-        for (View v : mIntersectingViews) {
-            if (!addViewToTempLocation(v, mOccupiedRect, direction, solution)) {
-                return false;
-            }
-        }
-        return true;
+    private void updateReorderSolverMetrics(ReorderSolver solver) {
+        solver.setCellMetrics(getPaddingLeft(), getPaddingTop(), mCellWidth, mCellHeight,
+                mWidthGap, mHeightGap);
     }
 
-    /*
-     * Returns a pair (x, y), where x,y are in {-1, 0, 1} corresponding to vector between
-     * the provided point and the provided cell
+    /**
+     * Copies the committed cell of every child into the reorder solver. Children keep their
+     * index as item id, so solutions map straight back onto mShortcutsAndWidgets.
+     *
+     * @return the item index of dragView, or -1 if it is not one of our children
      */
-    private void computeDirectionVector(float deltaX, float deltaY, int[] result) {
-        double angle = Math.atan(((float) deltaY) / deltaX);
-
-        result[0] = 0;
-        result[1] = 0;
-        if (Math.abs(Math.cos(angle)) > 0.5f) {
-            result[0] = (int) Math.signum(deltaX);
-        }
-        if (Math.abs(Math.sin(angle)) > 0.5f) {
-            result[1] = (int) Math.signum(deltaY);
-        }
-    }
-
-    private void copyOccupiedArray(boolean[][] occupied) {
-        for (int i = 0; i < mCountX; i++) {
-            for (int j = 0; j < mCountY; j++) {
-                occupied[i][j] = mOccupied[i][j];
-            }
-        }
-    }
-
-    ItemConfiguration simpleSwap(int pixelX, int pixelY, int minSpanX, int minSpanY, int spanX,
-            int spanY, int[] direction, View dragView, boolean decX, ItemConfiguration solution) {
-        // Copy the current state into the solution. This solution will be manipulated as necessary.
-        copyCurrentStateToSolution(solution, false);
-        // Copy the current occupied array into the temporary occupied array. This array will be
-        // manipulated as necessary to find a solution.
-        copyOccupiedArray(mTmpOccupied);
-
-        // We find the nearest cell into which we would place the dragged item, assuming there's
-        // nothing in its way.
-        int result[] = new int[2];
-        result = findNearestArea(pixelX, pixelY, spanX, spanY, result);
-
-        boolean success = false;
-        // First we try the exact nearest position of the item being dragged,
-        // we will then want to try to move this around to other neighbouring positions
-        success = rearrangementExists(result[0], result[1], spanX, spanY, direction, dragView,
-                solution);
-
-        if (!success) {
-            // We try shrinking the widget down to size in an alternating pattern, shrink 1 in
-            // x, then 1 in y etc.
-            if (spanX > minSpanX && (minSpanY == spanY || decX)) {
-                return simpleSwap(pixelX, pixelY, minSpanX, minSpanY, spanX - 1, spanY, direction,
-                        dragView, false, solution);
-            } else if (spanY > minSpanY) {
-                return simpleSwap(pixelX, pixelY, minSpanX, minSpanY, spanX, spanY - 1, direction,
-                        dragView, true, solution);
-            }
-            solution.isSolution = false;
-        } else {
-            solution.isSolution = true;
-            solution.dragViewX = result[0];
-            solution.dragViewY = result[1];
-            solution.dragViewSpanX = spanX;
-            solution.dragViewSpanY = spanY;
-        }
-        return solution;
+    private int syncReorderSolver(View dragView) {
+        return syncReorderSolver(mReorderSolver, dragView);
     }
 
-    private void copyCurrentStateToSolution(ItemConfiguration solution, boolean temp) {
-        int childCount = mShortcutsAndWidgets.getChildCount();
+    private int syncReorderSolver(ReorderSolver solver, View dragView) {
+        final int childCount = mShortcutsAndWidgets.getChildCount();
+        solver.setGrid(mCountX, mCountY, mOccupied, childCount);
+        updateReorderSolverMetrics(solver);
+        int dragItem = -1;
         for (int i = 0; i < childCount; i++) {
             View child = mShortcutsAndWidgets.getChildAt(i);
             LayoutParams lp = (LayoutParams) child.getLayoutParams();
-            CellAndSpan c;
-            if (temp) {
-                c = new CellAndSpan(lp.tmpCellX, lp.tmpCellY, lp.cellHSpan, lp.cellVSpan);
-            } else {
-                c = new CellAndSpan(lp.cellX, lp.cellY, lp.cellHSpan, lp.cellVSpan);
+            solver.setItem(i, lp.cellX, lp.cellY, lp.cellHSpan, lp.cellVSpan, lp.canReorder);
+            if (child == dragView) {
+                dragItem = i;
             }
-            solution.map.put(child, c);
         }
+        return dragItem;
     }
 
-    private void copySolutionToTempState(ItemConfiguration solution, View dragView) {
+    private void copySolutionToTempState(ReorderSolver.ItemConfiguration solution,
+            View dragView) {
         for (int i = 0; i < mCountX; i++) {
             for (int j = 0; j < mCountY; j++) {
                 mTmpOccupied[i][j] = false;
@@ -2023,23 +1494,21 @@ public class CellLayout extends ViewGroup {
         int childCount = mShortcutsAndWidgets.getChildCount();
         for (int i = 0; i < childCount; i++) {
             View child = mShortcutsAndWidgets.getChildAt(i);
-            if (child == dragView) continue;
+            if (child == dragView || i >= solution.count) continue;
             LayoutParams lp = (LayoutParams) child.getLayoutParams();
-            CellAndSpan c = solution.map.get(child);
-            if (c != null) {
-                lp.tmpCellX = c.x;
-                lp.tmpCellY = c.y;
-                lp.cellHSpan = c.spanX;
-                lp.cellVSpan = c.spanY;
-                markCellsForView(c.x, c.y, c.spanX, c.spanY, mTmpOccupied, true);
-            }
+            lp.tmpCellX = solution.x[i];
+            lp.tmpCellY = solution.y[i];
+            lp.cellHSpan = solution.spanX[i];
+            lp.cellVSpan = solution.spanY[i];
+            markCellsForView(solution.x[i], solution.y[i], solution.spanX[i], solution.spanY[i],
+                    mTmpOccupied, true);
         }
         markCellsForView(solution.dragViewX, solution.dragViewY, solution.dragViewSpanX,
                 solution.dragViewSpanY, mTmpOccupied, true);
     }
 
-    private void animateItemsToSolution(ItemConfiguration solution, View dragView, boolean
-            commitDragView) {
+    private void animateItemsToSolution(ReorderSolver.ItemConfiguration solution, View dragView,
+            boolean commitDragView) {
 
         boolean[][] occupied = DESTRUCTIVE_REORDER ? mOccupied : mTmpOccupied;
         for (int i = 0; i < mCountX; i++) {
@@ -2047,17 +1516,16 @@ public class CellLayout extends ViewGroup {
                 occupied[i][j] = false;
             }
         }
+        invalidateOccupancy(occupied);
 
         int childCount = mShortcutsAndWidgets.getChildCount();
         for (int i = 0; i < childCount; i++) {
             View child = mShortcutsAndWidgets.getChildAt(i);
-            if (child == dragView) continue;
-            CellAndSpan c = solution.map.get(child);
-            if (c != null) {
-                animateChildToPosition(child, c.x, c.y, REORDER_ANIMATION_DURATION, 0,
-                        DESTRUCTIVE_REORDER, false);
-                markCellsForView(c.x, c.y, c.spanX, c.spanY, occupied, true);
-            }
+            if (child == dragView || i >= solution.count) continue;
+            animateChildToPosition(child, solution.x[i], solution.y[i],
+                    REORDER_ANIMATION_DURATION, 0, DESTRUCTIVE_REORDER, false);
+            markCellsForView(solution.x[i], solution.y[i], solution.spanX[i], solution.spanY[i],
+                    occupied, true);
         }
         if (commitDragView) {
             markCellsForView(solution.dragViewX, solution.dragViewY, solution.dragViewSpanX,
@@ -2066,18 +1534,16 @@ public class CellLayout extends ViewGroup {
     }
 
     // This method starts or changes the reorder hint animations
-    private void beginOrAdjustHintAnimations(ItemConfiguration solution, View dragView, int delay) {
+    private void beginOrAdjustHintAnimations(ReorderSolver.ItemConfiguration solution,
+            View dragView, int delay) {
         int childCount = mShortcutsAndWidgets.getChildCount();
         for (int i = 0; i < childCount; i++) {
             View child = mShortcutsAndWidgets.getChildAt(i);
-            if (child == dragView) continue;
-            CellAndSpan c = solution.map.get(child);
+            if (child == dragView || i >= solution.count) continue;
             LayoutParams lp = (LayoutParams) child.getLayoutParams();
-            if (c != null) {
-                ReorderHintAnimation rha = new ReorderHintAnimation(child, lp.cellX, lp.cellY,
-                        c.x, c.y, c.spanX, c.spanY);
-                rha.animate();
-            }
+            ReorderHintAnimation rha = new ReorderHintAnimation(child, lp.cellX, lp.cellY,
+                    solution.x[i], solution.y[i], solution.spanX[i], solution.spanY[i]);
+            rha.animate();
         }
     }
 
@@ -2212,6 +1678,7 @@ public class CellLayout extends ViewGroup {
                 mOccupied[i][j] = mTmpOccupied[i][j];
             }
         }
+        mOccupiedIndex.invalidate();
         int childCount = mShortcutsAndWidgets.getChildCount();
         for (int i = 0; i < childCount; i++) {
             View child = mShortcutsAndWidgets.getChildAt(i);
@@ -2237,75 +1704,10 @@ public class CellLayout extends ViewGroup {
         }
     }
 
-    ItemConfiguration findConfigurationNoShuffle(int pixelX, int pixelY, int minSpanX, int minSpanY,
-            int spanX, int spanY, View dragView, ItemConfiguration solution) {
-        int[] result = new int[2];
-        int[] resultSpan = new int[2];
-        findNearestVacantArea(pixelX, pixelY, minSpanX, minSpanY, spanX, spanY, null, result,
-                resultSpan);
-        if (result[0] >= 0 && result[1] >= 0) {
-            copyCurrentStateToSolution(solution, false);
-            solution.dragViewX = result[0];
-            solution.dragViewY = result[1];
-            solution.dragViewSpanX = resultSpan[0];
-            solution.dragViewSpanY = resultSpan[1];
-            solution.isSolution = true;
-        } else {
-            solution.isSolution = false;
-        }
-        return solution;
-    }
-
     public void prepareChildForDrag(View child) {
         markCellsAsUnoccupiedForView(child);
     }
 
-    /* This seems like it should be obvious and straight-forward, but when the direction vector
-    needs to match with the notion of the dragView pushing other views, we have to employ
-    a slightly more subtle notion of the direction vector. The question is what two points is
-    the vector between? The center of the dragView and its desired destination? Not quite, as
-    this doesn't necessarily coincide with the interaction of the dragView and items occupying
-    those cells. Instead we use some heuristics to often lock the vector to up, down, left
-    or right, which helps make pushing feel right.
-    */
-    private void getDirectionVectorForDrop(int dragViewCenterX, int dragViewCenterY, int spanX,
-            int spanY, View dragView, int[] resultDirection) {
-        int[] targetDestination = new int[2];
-
-        findNearestArea(dragViewCenterX, dragViewCenterY, spanX, spanY, targetDestination);
-        Rect dragRect = new Rect();
-        regionToRect(targetDestination[0], targetDestination[1], spanX, spanY, dragRect);
-        dragRect.offset(dragViewCenterX - dragRect.centerX(), dragViewCenterY - dragRect.centerY());
-
-        Rect dropRegionRect = new Rect();
-        getViewsIntersectingRegion(targetDestination[0], targetDestination[1], spanX, spanY,
-                dragView, dropRegionRect, mIntersectingViews);
-
-        int dropRegionSpanX = dropRegionRect.width();
-        int dropRegionSpanY = dropRegionRect.height();
-
-        regionToRect(dropRegionRect.left, dropRegionRect.top, dropRegionRect.width(),
-                dropRegionRect.height(), dropRegionRect);
-
-        int deltaX = (dropRegionRect.centerX() - dragViewCenterX) / spanX;
-        int deltaY = (dropRegionRect.centerY() - dragViewCenterY) / spanY;
-
-        if (dropRegionSpanX == mCountX || spanX == mCountX) {
-            deltaX = 0;
-        }
-        if (dropRegionSpanY == mCountY || spanY == mCountY) {
-            deltaY = 0;
-        }
-
-        if (deltaX == 0 && deltaY == 0) {
-            // No idea what to do, give a random direction.
-            resultDirection[0] = 1;
-            resultDirection[1] = 0;
-        } else {
-            computeDirectionVector(deltaX, deltaY, resultDirection);
-        }
-    }
-
     // For a given cell and span, fetch the set of views intersecting the region.
     private void getViewsIntersectingRegion(int cellX, int cellY, int spanX, int spanY,
             View dragView, Rect boundingRect, ArrayList<View> intersectingViews) {
@@ -2313,8 +1715,9 @@ public class CellLayout extends ViewGroup {
             boundingRect.set(cellX, cellY, cellX + spanX, cellY + spanY);
         }
         intersectingViews.clear();
-        Rect r0 = new Rect(cellX, cellY, cellX + spanX, cellY + spanY);
-        Rect r1 = new Rect();
+        Rect r0 = mTmpRegionRect;
+        r0.set(cellX, cellY, cellX + spanX, cellY + spanY);
+        Rect r1 = mTmpChildRect;
         final int count = mShortcutsAndWidgets.getChildCount();
         for (int i = 0; i < count; i++) {
             View child = mShortcutsAndWidgets.getChildAt(i);
@@ -2339,6 +1742,7 @@ public class CellLayout extends ViewGroup {
     }
 
     void revertTempState() {
+        cancelPendingReorder();
         if (!isItemPlacementDirty() || DESTRUCTIVE_REORDER) return;
         final int count = mShortcutsAndWidgets.getChildCount();
         for (int i = 0; i < count; i++) {
@@ -2357,15 +1761,14 @@ public class CellLayout extends ViewGroup {
 
     boolean createAreaForResize(int cellX, int cellY, int spanX, int spanY,
             View dragView, int[] direction, boolean commit) {
-        int[] pixelXY = new int[2];
-        regionToCenterPoint(cellX, cellY, spanX, spanY, pixelXY);
+        int dragItem = syncReorderSolver(dragView);
 
         // First we determine if things have moved enough to cause a different layout
-        ItemConfiguration swapSolution = simpleSwap(pixelXY[0], pixelXY[1], spanX, spanY,
-                 spanX,  spanY, direction, dragView,  true,  new ItemConfiguration());
+        ReorderSolver.ItemConfiguration swapSolution = mReorderSolver.solveResize(cellX, cellY,
+                spanX, spanY, direction, dragItem);
 
         setUseTempCoords(true);
-        if (swapSolution != null && swapSolution.isSolution) {
+        if (swapSolution.isSolution) {
             // If we're just testing for a possible location (MODE_ACCEPT_DROP), we don't bother
             // committing anything or animating anything as we just want to determine if a solution
             // exists
@@ -2388,13 +1791,18 @@ public class CellLayout extends ViewGroup {
 
     int[] createArea(int pixelX, int pixelY, int minSpanX, int minSpanY, int spanX, int spanY,
             View dragView, int[] result, int resultSpan[], int mode) {
+        // A synchronous solve supersedes whatever drag-over request is still in flight
+        cancelPendingReorder();
+
         // First we determine if things have moved enough to cause a different layout
         result = findNearestArea(pixelX, pixelY, spanX, spanY, result);
 
         if (resultSpan == null) {
-            resultSpan = new int[2];
+            resultSpan = mTmpResultSpan;
         }
 
+        int dragItem = syncReorderSolver(dragView);
+
         // When we are checking drop validity or actually dropping, we don't recompute the
         // direction vector, since we want the solution to match the preview, and it's possible
         // that the exact position of the item has changed to result in a new reordering outcome.
@@ -2408,25 +1816,101 @@ public class CellLayout extends ViewGroup {
                 mPreviousReorderDirection[1] = INVALID_DIRECTION;
             }
         } else {
-            getDirectionVectorForDrop(pixelX, pixelY, spanX, spanY, dragView, mDirectionVector);
+            mReorderSolver.getDirectionVectorForDrop(pixelX, pixelY, spanX, spanY, dragItem,
+                    mDirectionVector);
             mPreviousReorderDirection[0] = mDirectionVector[0];
             mPreviousReorderDirection[1] = mDirectionVector[1];
         }
 
-        ItemConfiguration swapSolution = simpleSwap(pixelX, pixelY, minSpanX, minSpanY,
-                 spanX,  spanY, mDirectionVector, dragView,  true,  new ItemConfiguration());
+        ReorderSolver.ItemConfiguration finalSolution = mReorderSolver.solve(pixelX, pixelY,
+                minSpanX, minSpanY, spanX, spanY, mDirectionVector, dragItem);
+        return applyReorderSolution(finalSolution, dragView, result, resultSpan, mode);
+    }
 
-        // We attempt the approach which doesn't shuffle views at all
-        ItemConfiguration noShuffleSolution = findConfigurationNoShuffle(pixelX, pixelY, minSpanX,
-                minSpanY, spanX, spanY, dragView, new ItemConfiguration());
+    /**
+     * Same as {@link #createArea} in MODE_DRAG_OVER, except that the search runs on the reorder
+     * worker. The preview is applied and the listener told once the result is back, unless the
+     * request was cancelled or the children changed in the meantime.
+     */
+    void createAreaAsync(int pixelX, int pixelY, int minSpanX, int minSpanY, int spanX,
+            int spanY, View dragView, OnReorderSolvedListener listener) {
+        cancelPendingReorder();
+
+        final int size = mIdleReorderRequests.size();
+        ReorderRequest request = size > 0 ? mIdleReorderRequests.remove(size - 1)
+                : new ReorderRequest();
+        request.dragItem = syncReorderSolver(request.solver, dragView);
+        final int childCount = mShortcutsAndWidgets.getChildCount();
+        if (request.children.length < childCount) {
+            request.children = new View[childCount];
+        }
+        for (int i = 0; i < childCount; i++) {
+            request.children[i] = mShortcutsAndWidgets.getChildAt(i);
+        }
+        request.childCount = childCount;
+        request.generation = mReorderGeneration;
+        request.pixelX = pixelX;
+        request.pixelY = pixelY;
+        request.minSpanX = minSpanX;
+        request.minSpanY = minSpanY;
+        request.spanX = spanX;
+        request.spanY = spanY;
+        request.dragView = dragView;
+        request.listener = listener;
+        mPendingReorderListener = listener;
+        sReorderWorker.post(request);
+    }
+
+    /**
+     * Makes sure no drag-over result that is still being solved will be applied, and tells its
+     * listener that it is not coming.
+     */
+    void cancelPendingReorder() {
+        mReorderGeneration++;
+        final OnReorderSolvedListener listener = mPendingReorderListener;
+        if (listener != null) {
+            mPendingReorderListener = null;
+            listener.onReorderCancelled(this);
+        }
+    }
+
+    private void onReorderSolved(ReorderRequest request) {
+        if (request.generation == mReorderGeneration) {
+            mPendingReorderListener = null;
+            if (hasChildren(request)) {
+                // Remember the direction of the preview the user sees, so the drop agrees
+                // with it
+                mPreviousReorderDirection[0] = request.direction[0];
+                mPreviousReorderDirection[1] = request.direction[1];
+                applyReorderSolution(request.solution, request.dragView, request.result,
+                        request.resultSpan, MODE_DRAG_OVER);
+                request.listener.onReorderSolved(this, request.result, request.resultSpan);
+            } else {
+                request.listener.onReorderCancelled(this);
+            }
+        }
+        Arrays.fill(request.children, 0, request.childCount, null);
+        request.dragView = null;
+        request.listener = null;
+        request.solution = null;
+        request.solved = false;
+        mIdleReorderRequests.add(request);
+    }
 
-        ItemConfiguration finalSolution = null;
-        if (swapSolution.isSolution && swapSolution.area() >= noShuffleSolution.area()) {
-            finalSolution = swapSolution;
-        } else if (noShuffleSolution.isSolution) {
-            finalSolution = noShuffleSolution;
+    private boolean hasChildren(ReorderRequest request) {
+        if (mShortcutsAndWidgets.getChildCount() != request.childCount) {
+            return false;
         }
+        for (int i = 0; i < request.childCount; i++) {
+            if (mShortcutsAndWidgets.getChildAt(i) != request.children[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
 
+    private int[] applyReorderSolution(ReorderSolver.ItemConfiguration finalSolution,
+            View dragView, int[] result, int[] resultSpan, int mode) {
         boolean foundSolution = true;
         if (!DESTRUCTIVE_REORDER) {
             setUseTempCoords(true);
@@ -2471,33 +1955,60 @@ public class CellLayout extends ViewGroup {
         return result;
     }
 
-    void setItemPlacementDirty(boolean dirty) {
-        mItemPlacementDirty = dirty;
-    }
-    boolean isItemPlacementDirty() {
-        return mItemPlacementDirty;
-    }
+    /**
+     * Receives the outcome of {@link #createAreaAsync} on the UI thread.
+     */
+    interface OnReorderSolvedListener {
+        /**
+         * @param result the cell the dragged item would land on, or -1s if it does not fit
+         * @param resultSpan the span it would take there; both arrays are reused afterwards
+         */
+        void onReorderSolved(CellLayout layout, int[] result, int[] resultSpan);
 
-    private class ItemConfiguration {
-        HashMap<View, CellAndSpan> map = new HashMap<View, CellAndSpan>();
-        boolean isSolution = false;
-        int dragViewX, dragViewY, dragViewSpanX, dragViewSpanY;
+        /**
+         * Called instead of {@link #onReorderSolved} when the request was cancelled or
+         * superseded before its result could be applied.
+         */
+        void onReorderCancelled(CellLayout layout);
+    }
 
-        int area() {
-            return dragViewSpanX * dragViewSpanY;
+    /**
+     * One drag-over solve. Runs once on the reorder worker and then once more on the UI
+     * thread to hand the result back; requests are recycled through mIdleReorderRequests.
+     */
+    private class ReorderRequest implements Runnable {
+        final ReorderSolver solver = new ReorderSolver();
+        final int[] direction = new int[2];
+        final int[] result = new int[2];
+        final int[] resultSpan = new int[2];
+        View[] children = new View[0];
+        int childCount;
+        int generation;
+        int pixelX, pixelY, minSpanX, minSpanY, spanX, spanY;
+        int dragItem;
+        View dragView;
+        OnReorderSolvedListener listener;
+        ReorderSolver.ItemConfiguration solution;
+        boolean solved;
+
+        public void run() {
+            if (solved) {
+                onReorderSolved(this);
+                return;
+            }
+            solver.getDirectionVectorForDrop(pixelX, pixelY, spanX, spanY, dragItem, direction);
+            solution = solver.solve(pixelX, pixelY, minSpanX, minSpanY, spanX, spanY, direction,
+                    dragItem);
+            solved = true;
+            mHandler.post(this);
         }
     }
 
-    private class CellAndSpan {
-        int x, y;
-        int spanX, spanY;
-
-        public CellAndSpan(int x, int y, int spanX, int spanY) {
-            this.x = x;
-            this.y = y;
-            this.spanX = spanX;
-            this.spanY = spanY;
-        }
+    void setItemPlacementDirty(boolean dirty) {
+        mItemPlacementDirty = dirty;
+    }
+    boolean isItemPlacementDirty() {
+        return mItemPlacementDirty;
     }
 
     /**
@@ -2558,7 +2069,7 @@ public class CellLayout extends ViewGroup {
     }
 
     boolean existsEmptyCell() {
-        return findCellForSpan(null, 1, 1);
+        return mOccupiedIndex.getOccupiedCount() < mCountX * mCountY;
     }
 
     /**
@@ -2616,8 +2127,7 @@ public class CellLayout extends ViewGroup {
      */
     boolean findCellForSpanThatIntersectsIgnoring(int[] cellXY, int spanX, int spanY,
             int intersectX, int intersectY, View ignoreView, boolean occupied[][]) {
-        // mark space take by ignoreView as available (method checks if ignoreView is null)
-        markCellsAsUnoccupiedForView(ignoreView, occupied);
+        final OccupancyIndex index = getOccupancyIndex(occupied, ignoreView);
 
         boolean foundCell = false;
         while (true) {
@@ -2639,17 +2149,9 @@ public class CellLayout extends ViewGroup {
             }
 
             for (int y = startY; y < endY && !foundCell; y++) {
-                inner:
                 for (int x = startX; x < endX; x++) {
-                    for (int i = 0; i < spanX; i++) {
-                        for (int j = 0; j < spanY; j++) {
-                            if (occupied[x + i][y + j]) {
-                                // small optimization: we can skip to after the column we just found
-                                // an occupied cell
-                                x += i;
-                                continue inner;
-                            }
-                        }
+                    if (!index.isVacant(x, y, spanX, spanY)) {
+                        continue;
                     }
                     if (cellXY != null) {
                         cellXY[0] = x;
@@ -2670,8 +2172,7 @@ public class CellLayout extends ViewGroup {
             }
         }
 
-        // re-mark space taken by ignoreView as occupied
-        markCellsAsOccupiedForView(ignoreView, occupied);
+        index.clearIgnoredRect();
         return foundCell;
     }
     /**
@@ -2720,7 +2221,8 @@ public class CellLayout extends ViewGroup {
         
         int spanLastCellX=0;
         int spanLastCellY=0;
-        while (true) {
+        // Nothing can be found on an empty page; this is asked on every draw
+        while (mOccupiedIndex.getOccupiedCount() > 0) {
         	
            
             int startX = 0;
@@ -2741,19 +2243,11 @@ public class CellLayout extends ViewGroup {
             }
           
             for (int y = endY-1; y >=startY && !foundCell; y--) {
-                inner:
                 for (int x = endX-1; x >= startX ; x--) {
-                    for (int i = spanX-1; i >=0; i--) {
-                        for (int j = spanY-1; j >=0; j--) {
-                        
-                            if (!mOccupied[x - i][y - j]) {
-                                // small optimization: we can skip to after the column we just found
-                                // an occupied cell
-                                x -= i;
-                           
-                                continue inner;
-                            }
-                        }
+                    if (x - (spanX - 1) < 0 || y - (spanY - 1) < 0
+                            || !mOccupiedIndex.isFull(x - (spanX - 1), y - (spanY - 1),
+                                    spanX, spanY)) {
+                        continue;
                     }
                     spanLastCellX=x;
                     spanLastCellY=y;
@@ -3034,6 +2528,7 @@ out:            for (int i = x; i < x + spanX - 1 && x < xCount; i++) {
                 mOccupied[x][y] = false;
             }
         }
+        mOccupiedIndex.invalidate();
     }
 
     public void onMove(View view, int newCellX, int newCellY, int newSpanX, int newSpanY) {
@@ -3062,6 +2557,11 @@ out:            for (int i = x; i < x + spanX - 1 && x < xCount; i++) {
     private void markCellsForView(int cellX, int cellY, int spanX, int spanY, boolean[][] occupied,
             boolean value) {
         if (cellX < 0 || cellY < 0) return;
+        if (occupied == mOccupied) {
+            // Writes the grid and updates its vacancy index in place
+            mOccupiedIndex.fill(cellX, cellY, spanX, spanY, value);
+            return;
+        }
         for (int x = cellX; x < cellX + spanX && x < mCountX; x++) {
             for (int y = cellY; y < cellY + spanY && y < mCountY; y++) {
                 occupied[x][y] = value;
@@ -3069,6 +2569,36 @@ out:            for (int i = x; i < x + spanX - 1 && x < xCount; i++) {
         }
     }
 
+    // Must follow every write to an occupancy grid that doesn't go through markCellsForView,
+    // so the vacancy index over mOccupied is rebuilt before its next query.
+    private void invalidateOccupancy(boolean[][] occupied) {
+        if (occupied == mOccupied) {
+            mOccupiedIndex.invalidate();
+        }
+    }
+
+    private OccupancyIndex getOccupancyIndex(boolean[][] occupied) {
+        if (mOccupiedIndex.isIndexing(occupied)) {
+            return mOccupiedIndex;
+        }
+        mScratchIndex.setGrid(occupied, mCountX, mCountY);
+        return mScratchIndex;
+    }
+
+    /**
+     * Returns the index over occupied with the cells of ignoreView counted as vacant, so the
+     * searches can skip the item being moved without writing the grid. Callers clear the
+     * ignored rect when they are done.
+     */
+    private OccupancyIndex getOccupancyIndex(boolean[][] occupied, View ignoreView) {
+        final OccupancyIndex index = getOccupancyIndex(occupied);
+        if (ignoreView != null && ignoreView.getParent() == mShortcutsAndWidgets) {
+            LayoutParams lp = (LayoutParams) ignoreView.getLayoutParams();
+            index.setIgnoredRect(lp.cellX, lp.cellY, lp.cellHSpan, lp.cellVSpan);
+        }
+        return index;
+    }
+
     public int getDesiredWidth() {
         return getPaddingLeft() + getPaddingRight() + (mCountX * mCellWidth) +
                 (Math.max((mCountX - 1), 0) * mWidthGap);
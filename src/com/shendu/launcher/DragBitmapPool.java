@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shendu.launcher;
+
+import android.graphics.Bitmap;
+import android.util.SparseArray;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+
+/**
+ * Reuses the large bitmaps a drag needs from one drag to the next.
+ *
+ * Buffers are bucketed by their size rounded up to {@link #BUCKET_STEP} pixels, so a buffer is
+ * usually larger than what is drawn into it and users draw from it through a source rect.
+ * Only access from the UI thread.
+ */
+public class DragBitmapPool {
+    private static final int BUCKET_STEP = 32;
+    private static final int MAX_IDLE_PER_BUCKET = 2;
+
+    private final SparseArray<ArrayList<Bitmap>> mIdle = new SparseArray<ArrayList<Bitmap>>();
+
+    private int mObtained;
+    private int mReused;
+    private int mTrimmed;
+
+    /**
+     * Returns a cleared ARGB_8888 buffer at least {@code width} by {@code height} pixels. Hand
+     * it back through {@link #release(Bitmap)} once it is no longer drawn.
+     */
+    Bitmap obtain(int width, int height) {
+        final int bucketWidth = roundUp(width);
+        final int bucketHeight = roundUp(height);
+        mObtained++;
+        ArrayList<Bitmap> idle = mIdle.get(getBucket(bucketWidth, bucketHeight));
+        if (idle != null && !idle.isEmpty()) {
+            Bitmap b = idle.remove(idle.size() - 1);
+            b.eraseColor(0);
+            mReused++;
+            return b;
+        }
+        return Bitmap.createBitmap(bucketWidth, bucketHeight, Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+     * Takes a buffer back. Bitmaps that did not come from {@link #obtain(int, int)} and
+     * buffers beyond what the pool keeps idle are recycled.
+     */
+    void release(Bitmap b) {
+        if (b == null || b.isRecycled()) {
+            return;
+        }
+        final int width = b.getWidth();
+        final int height = b.getHeight();
+        if (width % BUCKET_STEP != 0 || height % BUCKET_STEP != 0
+                || b.getConfig() != Bitmap.Config.ARGB_8888 || !b.isMutable()) {
+            b.recycle();
+            return;
+        }
+        final int bucket = getBucket(width, height);
+        ArrayList<Bitmap> idle = mIdle.get(bucket);
+        if (idle == null) {
+            idle = new ArrayList<Bitmap>(MAX_IDLE_PER_BUCKET);
+            mIdle.put(bucket, idle);
+        }
+        if (idle.contains(b)) {
+            return;
+        }
+        if (idle.size() < MAX_IDLE_PER_BUCKET) {
+            idle.add(b);
+        } else {
+            b.recycle();
+        }
+    }
+
+    /**
+     * Recycles every idle buffer.
+     */
+    void trim() {
+        for (int i = 0; i < mIdle.size(); i++) {
+            ArrayList<Bitmap> idle = mIdle.valueAt(i);
+            for (Bitmap b : idle) {
+                b.recycle();
+                mTrimmed++;
+            }
+        }
+        mIdle.clear();
+    }
+
+    void dump(String prefix, PrintWriter writer) {
+        int idleCount = 0;
+        long idleBytes = 0;
+        for (int i = 0; i < mIdle.size(); i++) {
+            for (Bitmap b : mIdle.valueAt(i)) {
+                idleCount++;
+                idleBytes += b.getRowBytes() * b.getHeight();
+            }
+        }
+        writer.println(prefix + "Drag bitmaps: " + mObtained + " obtained, " + mReused
+                + " reused, " + mTrimmed + " trimmed, " + idleCount + " idle using "
+                + (idleBytes / 1024) + "KB");
+    }
+
+    private static int roundUp(int size) {
+        return Math.max(1, (size + BUCKET_STEP - 1) / BUCKET_STEP) * BUCKET_STEP;
+    }
+
+    private static int getBucket(int bucketWidth, int bucketHeight) {
+        return (bucketWidth / BUCKET_STEP) << 16 | (bucketHeight / BUCKET_STEP);
+    }
+}
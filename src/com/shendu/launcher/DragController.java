@@ -71,6 +71,7 @@ public class DragController {
     // temporaries to avoid gc thrash
     private Rect mRectTemp = new Rect();
     private final int[] mCoordinatesTemp = new int[2];
+    private final DragBitmapPool mBitmapPool = new DragBitmapPool();
 
     /** Whether or not we're dragging. */
     private boolean mDragging;
@@ -221,6 +222,21 @@ public class DragController {
     public void startDrag(Bitmap b, int dragLayerX, int dragLayerY,
             DragSource source, Object dragInfo, int dragAction, Point dragOffset, Rect dragRegion,
             float initialDragViewScale) {
+        startDrag(b, null, dragLayerX, dragLayerY, source, dragInfo, dragAction, dragOffset,
+                dragRegion, initialDragViewScale);
+    }
+
+    /**
+     * Starts a drag showing part of a buffer from {@link #getBitmapPool()}. The drag takes the
+     * buffer over and hands it back to the pool when the drag view goes away.
+     *
+     * @param b A buffer obtained from the drag bitmap pool.
+     * @param bitmapRegion The part of the buffer holding the drag image, or null if the
+     *          bitmap is not pooled and must be copied as a whole.
+     */
+    public void startDrag(Bitmap b, Rect bitmapRegion, int dragLayerX,
+            int dragLayerY, DragSource source, Object dragInfo, int dragAction, Point dragOffset,
+            Rect dragRegion, float initialDragViewScale) {
         if (PROFILE_DRAWING_DURING_DRAG) {
             android.os.Debug.startMethodTracing("Launcher");
         }
@@ -254,8 +270,11 @@ public class DragController {
 
         mVibrator.vibrate(VIBRATE_DURATION);
 
-        final DragView dragView = mDragObject.dragView = new DragView(mLauncher, b, registrationX,
-                registrationY, 0, 0, b.getWidth(), b.getHeight(), initialDragViewScale);
+        final DragView dragView = mDragObject.dragView = bitmapRegion != null
+                ? new DragView(mLauncher, b, bitmapRegion, registrationX, registrationY,
+                        initialDragViewScale)
+                : new DragView(mLauncher, b, registrationX, registrationY, 0, 0, b.getWidth(),
+                        b.getHeight(), initialDragViewScale);
 
         if (dragOffset != null) {
             dragView.setDragVisualizeOffset(new Point(dragOffset));
@@ -268,6 +287,13 @@ public class DragController {
         handleMoveEvent(mMotionDownX, mMotionDownY);
     }
 
+    /**
+     * Returns the pool of drag bitmap buffers. Only access it from the UI thread.
+     */
+    DragBitmapPool getBitmapPool() {
+        return mBitmapPool;
+    }
+
     /**
      * Draw the view into a bitmap.
      */
@@ -35,7 +35,15 @@ import com.shendu.launcher.R;
 public class DragView extends View {
     private static float sDragAlpha = 1f;
 
+    // < only access in the UI thread >
+    private static final Canvas sCopyCanvas = new Canvas();
+    // </ only access in the UI thread >
+
+    private final DragBitmapPool mBitmapPool;
+    // A pooled buffer, drawn through mBitmapRegion; null once the view is removed
     private Bitmap mBitmap;
+    private final Rect mBitmapRegion = new Rect();
+    private final Rect mDrawRect = new Rect();
     private Bitmap mCrossFadeBitmap;
     private Paint mPaint;
     private int mRegistrationX;
@@ -65,8 +73,34 @@ public class DragView extends View {
      */
     public DragView(Launcher launcher, Bitmap bitmap, int registrationX, int registrationY,
             int left, int top, int width, int height, final float initialScale) {
+        this(launcher, null, registrationX, registrationY, width, height, initialScale);
+
+        // Copy the region, the caller keeps the bitmap
+        mBitmap = mBitmapPool.obtain(width, height);
+        sCopyCanvas.setBitmap(mBitmap);
+        sCopyCanvas.drawBitmap(bitmap, new Rect(left, top, left + width, top + height),
+                mBitmapRegion, null);
+        sCopyCanvas.setBitmap(null);
+    }
+
+    /**
+     * Construct the drag view from a buffer of the drag bitmap pool, which the view takes over
+     * and hands back to the pool in {@link #remove()}.
+     *
+     * @param region The part of the buffer to show.
+     */
+    public DragView(Launcher launcher, Bitmap pooledBitmap, Rect region, int registrationX,
+            int registrationY, float initialScale) {
+        this(launcher, pooledBitmap, registrationX, registrationY, region.width(),
+                region.height(), initialScale);
+        mBitmapRegion.set(region);
+    }
+
+    private DragView(Launcher launcher, Bitmap pooledBitmap, int registrationX,
+            int registrationY, int width, int height, final float initialScale) {
         super(launcher);
         mDragLayer = launcher.getDragLayer();
+        mBitmapPool = launcher.getDragController().getBitmapPool();
         mInitialScale = initialScale;
 
         final Resources res = getResources();
@@ -103,7 +137,9 @@ public class DragView extends View {
             }
         });
 
-        mBitmap = Bitmap.createBitmap(bitmap, left, top, width, height);
+        mBitmap = pooledBitmap;
+        mBitmapRegion.set(0, 0, width, height);
+        mDrawRect.set(0, 0, width, height);
         setDragRegion(new Rect(0, 0, width, height));
 
         // The point in our scaled bitmap that the touch events are located
@@ -162,7 +198,7 @@ public class DragView extends View {
 
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
-        setMeasuredDimension(mBitmap.getWidth(), mBitmap.getHeight());
+        setMeasuredDimension(mDrawRect.width(), mDrawRect.height());
     }
 
     @Override
@@ -176,18 +212,21 @@ public class DragView extends View {
             canvas.drawRect(0, 0, getWidth(), getHeight(), p);
         }
 
+        if (mBitmap == null) {
+            return;
+        }
         mHasDrawn = true;
         boolean crossFade = mCrossFadeProgress > 0 && mCrossFadeBitmap != null;
         if (crossFade) {
             int alpha = crossFade ? (int) (255 * (1 - mCrossFadeProgress)) : 255;
             mPaint.setAlpha(alpha);
         }
-        canvas.drawBitmap(mBitmap, 0.0f, 0.0f, mPaint);
+        canvas.drawBitmap(mBitmap, mBitmapRegion, mDrawRect, mPaint);
         if (crossFade) {
             mPaint.setAlpha((int) (255 * mCrossFadeProgress));
             canvas.save();
-            float sX = (mBitmap.getWidth() * 1.0f) / mCrossFadeBitmap.getWidth();
-            float sY = (mBitmap.getHeight() * 1.0f) / mCrossFadeBitmap.getHeight();
+            float sX = (mDrawRect.width() * 1.0f) / mCrossFadeBitmap.getWidth();
+            float sY = (mDrawRect.height() * 1.0f) / mCrossFadeBitmap.getHeight();
             canvas.scale(sX, sY);
             canvas.drawBitmap(mCrossFadeBitmap, 0.0f, 0.0f, mPaint);
             canvas.restore();
@@ -256,8 +295,8 @@ public class DragView extends View {
 
         // Start the pick-up animation
         DragLayer.LayoutParams lp = new DragLayer.LayoutParams(0, 0);
-        lp.width = mBitmap.getWidth();
-        lp.height = mBitmap.getHeight();
+        lp.width = mDrawRect.width();
+        lp.height = mDrawRect.height();
         lp.customPosition = true;
         setLayoutParams(lp);
         setTranslationX(touchX - mRegistrationX);
@@ -294,6 +333,10 @@ public class DragView extends View {
 
             mDragLayer.removeView(DragView.this);
         }
+        if (mBitmap != null) {
+            mBitmapPool.release(mBitmap);
+            mBitmap = null;
+        }
     }
 }
 
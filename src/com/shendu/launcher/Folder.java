@@ -22,14 +22,11 @@ import android.animation.AnimatorSet;
 import android.animation.ObjectAnimator;
 import android.content.ComponentName;
 import android.content.Context;
-import android.content.Intent;
-import android.content.ServiceConnection;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.PointF;
 import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
-import android.os.IBinder;
 import android.text.InputType;
 import android.text.Selection;
 import android.text.Spannable;
@@ -57,8 +54,6 @@ import android.widget.TextView;
 import com.shendu.launcher.R;
 import com.shendu.launcher.FolderInfo.FolderListener;
 import com.shendu.launcher.preference.PreferencesProvider;
-import com.shendu.launcher.screenshot.TakeScreenshotService;
-import com.shendu.launcher.screenshot.TakeScreenshotService.LocalBinder;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -95,6 +90,7 @@ public class Folder extends LinearLayout implements DragSource, View.OnClickList
     private int mMaxCountY;
     private int mMaxNumItems;
     private ArrayList<View> mItemsInReadingOrder = new ArrayList<View>();
+    private ArrayList<ShortcutInfo> mPreviousContents = new ArrayList<ShortcutInfo>();
     private Drawable mIconDrawable;
     boolean mItemsInvalidated = false;
     private ShortcutInfo mCurrentDragInfo;
@@ -124,7 +120,7 @@ public class Folder extends LinearLayout implements DragSource, View.OnClickList
     
   	private ArrayList<FolderCoverView> mFolderCovers;
   	FolderCoverView upCover, downCover;
-  	Bitmap mCurrentPageBitmap, mCurrentFolderBitmap;
+  	Bitmap mCurrentFolderBitmap;
   	RelativeLayout mLayoutForFolder;
   	int slideDistance;
   	//float folderTop,folderHeight;
@@ -475,52 +471,22 @@ public class Folder extends LinearLayout implements DragSource, View.OnClickList
 		}
 		mLayoutForFolder.setVisibility(View.VISIBLE);
 		mLayoutForFolder.bringToFront();
-		takeScreenshot();
+		captureCover();
+		OpenAfterScreenshot();
 	}
-      
-      final Object mScreenshotLock = new Object();
 
-      TakeScreenshotService mService=null;
-      
-      final Runnable mScreenshotTimeout = new Runnable() {
-          public void run() {
-              synchronized (mScreenshotLock) {
-                  if (mConnection != null) {
-                  	mLauncher.unbindService(mConnection);
-                  }
-              }
-          }
-      };
-     
-	private void takeScreenshot() {
-		ComponentName cn = new ComponentName("com.shendu.launcher",
-				"com.shendu.launcher.screenshot.TakeScreenshotService");
-		Intent intent = new Intent();
-		intent.setComponent(cn);
-		mLauncher.bindService(intent, mConnection, Context.BIND_AUTO_CREATE);
+	/**
+	 * Captures what is on screen behind the folder into the launcher's shared cover buffer.
+	 * Done in-process and synchronously, so the folder opens on the next frame.
+	 */
+	private void captureCover() {
+		View content = mLauncher.getWindow().getDecorView().findViewById(android.R.id.content);
+		Workspace workspace = mLauncher.getWorkspace();
+		mLauncher.getFolderCoverCapture().capture(content,
+				workspace.getWallpaperOffsetX(), workspace.getWallpaperOffsetY());
 	}
-    
-	private ServiceConnection mConnection = new ServiceConnection() {
-		public void onServiceConnected(ComponentName className, IBinder service) {
-			LocalBinder binder = (LocalBinder) service;
-			mService = binder.getService();
-
-			Rect frame = new Rect();
-			mLauncher.getWindow().getDecorView().getWindowVisibleDisplayFrame(frame);
-
-			mCurrentPageBitmap = mService.takeScreenshot(frame.top);
-			OpenAfterScreenshot();
-		}
-
-		public void onServiceDisconnected(ComponentName arg0) {
-		}
-	};  
       
 	public void OpenAfterScreenshot() {
-
-		if (mConnection != null) {
-			mLauncher.unbindService(mConnection);
-		}
 		animateOpen();
 		createFoldercoverView(mFolderIcon);
 		SlideFolder();
@@ -536,24 +502,25 @@ public class Folder extends LinearLayout implements DragSource, View.OnClickList
 
 		int rectTop = mTempRect.top;
     	int rectBottom = mTempRect.bottom;
-		int currentBitmapW = mCurrentPageBitmap.getWidth();
-		int currentBitmapH = mCurrentPageBitmap.getHeight();
+		FolderCoverCapture capture = mLauncher.getFolderCoverCapture();
+		int currentBitmapW = capture.getWidth();
+		int currentBitmapH = capture.getHeight();
 		RelativeLayout.LayoutParams layoutP = new RelativeLayout.LayoutParams(
 				FrameLayout.LayoutParams.MATCH_PARENT,
 				FrameLayout.LayoutParams.WRAP_CONTENT);
 		if (mInfo.container == LauncherSettings.Favorites.CONTAINER_HOTSEAT) {
 			int upCoverH = currentBitmapH-mBottomHotSeatH;
-			upCover = new FolderCoverView(mLauncher, mCurrentPageBitmap, 0,
+			upCover = new FolderCoverView(mLauncher, capture, 0,
 					currentBitmapW, upCoverH, null, 0, 0, 0, 1);
-			downCover = new FolderCoverView(mLauncher, mCurrentPageBitmap,
+			downCover = new FolderCoverView(mLauncher, capture,
 					upCoverH, currentBitmapW, mBottomHotSeatH,
 					mCurrentFolderBitmap, v.getLeft(), rectTop, 0, -1);
 		} else {
 			int upCoverH = rectBottom;
-			upCover = new FolderCoverView(mLauncher, mCurrentPageBitmap, 0,
+			upCover = new FolderCoverView(mLauncher, capture, 0,
 					currentBitmapW,upCoverH,
 					mCurrentFolderBitmap, v.getLeft(),rectTop, 0, 1);
-			downCover = new FolderCoverView(mLauncher, mCurrentPageBitmap,
+			downCover = new FolderCoverView(mLauncher, capture,
 					upCoverH, currentBitmapW,currentBitmapH-rectBottom, 
 					null,0, 0, 0, -1);
 		}
@@ -598,11 +565,6 @@ public class Folder extends LinearLayout implements DragSource, View.OnClickList
 				mLayoutForFolder.removeView(view);
 			}
 		}
-
-		if (mCurrentPageBitmap != null) {
-			mCurrentPageBitmap.recycle();
-			mCurrentPageBitmap = null;
-		}
 	}
 
 	/**
@@ -695,24 +657,9 @@ public class Folder extends LinearLayout implements DragSource, View.OnClickList
     	LinearLayout app_view = (LinearLayout) mInflater.inflate(R.layout.app_shortcutinfo, this, false);
     	TextView app_icon = (TextView)app_view.findViewById(R.id.app_shortcutinfo_icon_id);
     	TextView app_name = (TextView)app_view.findViewById(R.id.app_shortcutinfo_name_id);
-		TextView app_mark = (TextView)app_view.findViewById(R.id.app_shortcutinfo_mark_id);
     	app_icon.setBackgroundDrawable(new FastBitmapDrawable(item.getIcon(mIconCache)));
     	ComponentName componentName = item.intent.getComponent();
-    	if((componentName!=null) && 
-    			componentName.equals(LauncherApplication.sMMSComponentName)){
-        	int unReadMMS_mark = mLauncher.shenduGetUnreadMMSCount();
-        	if(unReadMMS_mark>0){
-            	app_mark.setText(unReadMMS_mark+"");
-            	app_mark.setVisibility(View.VISIBLE);
-        	}
-    	}else if((componentName!=null) &&
-    		componentName.equals(LauncherApplication.sCallComponentName)){
-        	int missCall_mark = mLauncher.shenduGetMissCallCount();
-        	if(missCall_mark>0){
-            	app_mark.setText(String.valueOf(missCall_mark));
-            	app_mark.setVisibility(View.VISIBLE);
-        	}
-        }
+        BadgeManager.applyUnreadCount(app_view, mLauncher.getUnreadCount(componentName));
     	app_name.setText(item.title);
     	app_view.setTag(item);
     	app_view.setOnClickListener(this);
@@ -1247,6 +1194,8 @@ public class Folder extends LinearLayout implements DragSource, View.OnClickList
 
     public ArrayList<View> getItemsInReadingOrder(boolean includeCurrentDragItem) {
         if (mItemsInvalidated) {
+            mPreviousContents.clear();
+            mPreviousContents.addAll(mInfo.contents);
             mItemsInReadingOrder.clear();
             mInfo.contents.clear();
             for (int j = 0; j < mContent.getCountY(); j++) {
@@ -1263,6 +1212,10 @@ public class Folder extends LinearLayout implements DragSource, View.OnClickList
                 }
             }
             mItemsInvalidated = false;
+            if (!mPreviousContents.equals(mInfo.contents)) {
+                mInfo.contentsReordered();
+            }
+            mPreviousContents.clear();
         }
         return mItemsInReadingOrder;
     }
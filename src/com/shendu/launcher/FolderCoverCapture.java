@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shendu.launcher;
+
+import android.app.WallpaperManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.view.View;
+
+/**
+ * Captures what the launcher shows behind an opening folder, for the {@link FolderCoverView}s
+ * that slide apart to reveal it.
+ *
+ * The capture is drawn in-process at reduced resolution: the wallpaper at its current offsets,
+ * then the launcher content, then the cover mask. It lands in one buffer that is reused for
+ * every folder open and shared by both covers, which draw their halves from it with source
+ * rects. Only access from the UI thread.
+ */
+public class FolderCoverCapture {
+    // Fraction of the screen resolution the capture is taken at
+    static final float CAPTURE_SCALE = 0.5f;
+
+    private final WallpaperManager mWallpaperManager;
+    private final Drawable mMask;
+    private final Canvas mCanvas = new Canvas();
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Rect mSrcRect = new Rect();
+    private final Rect mDstRect = new Rect();
+    private final int[] mTmpLocation = new int[2];
+
+    private Bitmap mBuffer;
+    private int mWidth;
+    private int mHeight;
+
+    public FolderCoverCapture(Context context) {
+        mWallpaperManager = WallpaperManager.getInstance(context);
+        mMask = context.getResources().getDrawable(R.drawable.open_folder_top_botom_mask);
+    }
+
+    /**
+     * Captures the content view as it is on screen.
+     *
+     * @param content the view to capture, usually the activity content view
+     * @param wallpaperX the horizontal wallpaper offset currently applied, in [0, 1]
+     * @param wallpaperY the vertical wallpaper offset currently applied, in [0, 1]
+     */
+    void capture(View content, float wallpaperX, float wallpaperY) {
+        mWidth = content.getWidth();
+        mHeight = content.getHeight();
+        final int bufferWidth = Math.max(1, (int) (mWidth * CAPTURE_SCALE));
+        final int bufferHeight = Math.max(1, (int) (mHeight * CAPTURE_SCALE));
+        if (mBuffer == null || mBuffer.getWidth() != bufferWidth
+                || mBuffer.getHeight() != bufferHeight) {
+            if (mBuffer != null) {
+                mBuffer.recycle();
+            }
+            mBuffer = Bitmap.createBitmap(bufferWidth, bufferHeight, Bitmap.Config.ARGB_8888);
+            mCanvas.setBitmap(mBuffer);
+        }
+
+        final Canvas canvas = mCanvas;
+        canvas.save();
+        canvas.scale((float) bufferWidth / mWidth, (float) bufferHeight / mHeight);
+        drawWallpaper(canvas, content, wallpaperX, wallpaperY);
+        content.draw(canvas);
+        mMask.setBounds(0, 0, mWidth, mHeight);
+        mMask.draw(canvas);
+        canvas.restore();
+    }
+
+    /**
+     * Draws the wallpaper where the wallpaper service shows it for the given offsets. Live
+     * wallpapers cannot be drawn from here, so they are stood in for by black.
+     */
+    private void drawWallpaper(Canvas canvas, View content, float wallpaperX, float wallpaperY) {
+        Drawable wallpaper = null;
+        if (mWallpaperManager.getWallpaperInfo() == null) {
+            wallpaper = mWallpaperManager.peekFastDrawable();
+        }
+        if (wallpaper == null) {
+            canvas.drawColor(Color.BLACK);
+            return;
+        }
+
+        // The wallpaper is positioned against the whole window, not the content view
+        final View root = content.getRootView();
+        content.getLocationInWindow(mTmpLocation);
+        final int wallpaperWidth = wallpaper.getIntrinsicWidth();
+        final int wallpaperHeight = wallpaper.getIntrinsicHeight();
+        final int availableWidth = root.getWidth() - wallpaperWidth;
+        final int availableHeight = root.getHeight() - wallpaperHeight;
+        int left = availableWidth < 0 ? (int) (availableWidth * wallpaperX + .5f)
+                : availableWidth / 2;
+        int top = availableHeight < 0 ? (int) (availableHeight * wallpaperY + .5f)
+                : availableHeight / 2;
+        left -= mTmpLocation[0];
+        top -= mTmpLocation[1];
+        wallpaper.setBounds(left, top, left + wallpaperWidth, top + wallpaperHeight);
+        wallpaper.draw(canvas);
+    }
+
+    /**
+     * Width of the captured view, in screen pixels.
+     */
+    int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * Height of the captured view, in screen pixels.
+     */
+    int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Draws the band [top, top + height) of the last capture at the same place on the canvas.
+     */
+    void drawBand(Canvas canvas, int top, int height) {
+        if (mBuffer == null || mWidth == 0 || mHeight == 0) {
+            return;
+        }
+        final float scale = (float) mBuffer.getHeight() / mHeight;
+        mSrcRect.set(0, (int) (top * scale), mBuffer.getWidth(),
+                (int) ((top + height) * scale + .5f));
+        mDstRect.set(0, top, mWidth, top + height);
+        canvas.drawBitmap(mBuffer, mSrcRect, mDstRect, mPaint);
+    }
+}
@@ -1,7 +1,5 @@
 package com.shendu.launcher;
 
-import java.util.ArrayList;
-
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
@@ -13,7 +11,7 @@ import android.view.View;
 import android.widget.Scroller;
 
 public class FolderCoverView extends View {
-	private Bitmap  mCurrentPageBitmap;
+	private FolderCoverCapture mCapture;
 	private Bitmap mFolderBitmap;
 	private int mWidth;
 	private int mHeight;
@@ -21,7 +19,6 @@ public class FolderCoverView extends View {
 	private int mFolderLeft;
 	private int mFolderTop;
 	private Scroller mScroller;
-	private ArrayList<Bitmap> mRecycleBitmaps;
 	private int mDeltay;
 	public static final int SCROLL_CLOSE_DURATION =300;
 	
@@ -29,7 +26,7 @@ public class FolderCoverView extends View {
 
 	/**
 	 * @param context
-	 * @param currentPageBitmap   
+	 * @param capture the capture both covers draw their band from
 	 * @param top
 	 * @param width
 	 * @param height
@@ -37,12 +34,12 @@ public class FolderCoverView extends View {
 	 * @param iconLeft  
 	 * @param iconTop
 	 */
-	public FolderCoverView(Context context, Bitmap currentPageBitmap, int top,
+	public FolderCoverView(Context context, FolderCoverCapture capture, int top,
 			int width, int height, Bitmap currentFolderBitmap, int iconLeft,
 			int iconTop, int wallpaperTop,int upOrDown) {
 		super(context);
 		
-		mCurrentPageBitmap = currentPageBitmap;
+		mCapture = capture;
 		mFolderBitmap = currentFolderBitmap;
 		mWidth = width;
 		mHeight = height;
@@ -50,26 +47,24 @@ public class FolderCoverView extends View {
 		mScroller = new Scroller(context);
 		mFolderLeft = iconLeft;
 		mFolderTop = iconTop;
-		mRecycleBitmaps = new ArrayList<Bitmap>();
-		mRecycleBitmaps.add(currentPageBitmap);
 		this.upOrDown =upOrDown;
 		
-		if(arrow==null){
-			 arrow = createArrowBitmap();	
-		}
-		
-		if(upOrDown==-1){
+		// The arrows only depend on resources, so every cover shares them
+		if(sArrow==null){
+			sArrow = createArrowBitmap();
 			Matrix matrix = new Matrix();		
 			matrix.postRotate(180);
-			arrow = Bitmap.createBitmap(arrow, 0, 0, arrow.getWidth(),
-					 arrow.getHeight(), matrix, true); 
+			sArrowFlipped = Bitmap.createBitmap(sArrow, 0, 0, sArrow.getWidth(),
+					 sArrow.getHeight(), matrix, true); 
 		}
+		arrow = upOrDown==-1 ? sArrowFlipped : sArrow;
 	}
 	
+	private static Bitmap sArrow, sArrowFlipped;
 	Bitmap arrow;
 	
 	public void draw(Canvas canvas) {
-		canvas.drawBitmap(createCurrentWallpaper(mCurrentPageBitmap), 0, mTop,null);
+		mCapture.drawBand(canvas, mTop, mHeight);
 		if (mFolderBitmap != null) {
 			canvas.drawBitmap(mFolderBitmap, mFolderLeft, mFolderTop, null);
 			canvas.drawBitmap(arrow, 
@@ -117,11 +112,6 @@ public class FolderCoverView extends View {
 		}
 	}
 
-	public Bitmap createCurrentWallpaper(Bitmap currentPageBitmap) {
-		Bitmap coverBg = Bitmap.createBitmap(currentPageBitmap, 0, mTop,mWidth, mHeight);
-		return coverBg;
-	}
-
 	public Bitmap createArrowBitmap() {
 		Bitmap arrow = FolderCoverView.createBitmapThumbnail(
 				BitmapFactory.decodeResource(getResources(),
@@ -133,15 +123,6 @@ public class FolderCoverView extends View {
 		return arrow;
 	}
 
-	public void recycleAll() {
-		for (Bitmap garbage : mRecycleBitmaps) {
-			garbage.recycle();
-		}
-
-		mRecycleBitmaps.clear();
-		mRecycleBitmaps = null;
-	}
-
 	public int getDeltay() {
 		return mDeltay;
 	}
@@ -22,14 +22,10 @@ import android.animation.ValueAnimator;
 import android.animation.ValueAnimator.AnimatorUpdateListener;
 import android.content.Context;
 import android.content.res.Resources;
-import android.graphics.Bitmap;
-import android.graphics.Bitmap.Config;
 import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.Matrix;
 import android.graphics.PorterDuff;
 import android.graphics.Rect;
-import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.os.Parcelable;
 import android.util.AttributeSet;
@@ -42,14 +38,11 @@ import android.view.animation.AccelerateInterpolator;
 import android.view.animation.DecelerateInterpolator;
 import android.widget.ImageView;
 import android.widget.LinearLayout;
-import android.widget.TextView;
 
 import com.shendu.launcher.DropTarget.DragObject;
 import com.shendu.launcher.FolderInfo.FolderListener;
 import com.shendu.launcher.preference.PreferencesProvider;
 
-import java.util.ArrayList;
-
 /**
  * An icon that can appear on in the workspace representing an {@link UserFolder}.
  */
@@ -83,6 +76,8 @@ public class FolderIcon extends LinearLayout implements FolderListener {
     public static Drawable sSharedFolderLeaveBehind = null;
 
     private ImageView mPreviewBackground;
+    // The thumbnail currently set on mPreviewBackground
+    private Drawable mThumbnail;
     private BubbleTextView mFolderName;
 
     FolderRingAnimator mFolderRingAnimator = null;
@@ -143,7 +138,7 @@ public class FolderIcon extends LinearLayout implements FolderListener {
         icon.mInfo = folderInfo;
         icon.mLauncher = launcher;
         icon.mPreviewBackground.setBackgroundDrawable(folderInfo.getmIcon(launcher));
-        icon.mPreviewBackground.setImageDrawable(icon.shenduCreateFolderThumBitmap(folderInfo));
+        icon.updateThumbnail();
         icon.setContentDescription(String.format(launcher.getString(R.string.folder_name_format),
                 folderInfo.title));
         Folder folder = Folder.fromXml(launcher);
@@ -304,8 +299,6 @@ public class FolderIcon extends LinearLayout implements FolderListener {
 
     public void addItem(ShortcutInfo item) {
         mInfo.add(item);
-    
-        //mFolder.mFolderIcon.mPreviewBackground.setImageDrawable(shenduCreateFolderThumBitmap(mInfo));
         LauncherModel.addOrMoveItemInDatabase(mLauncher, item, mInfo.id, 0, item.cellX, item.cellY);
     }
 
@@ -348,63 +341,24 @@ public class FolderIcon extends LinearLayout implements FolderListener {
     }
     
     /**
-     * 2012-9-10 hhl
-     * @param folderInfo: the folder content
-     * @return: thumBitmap
-     * TODO: create folder thumBitmap with folder content
+     * Shows the cached thumbnail of the folder contents, asking the cache for a new one when
+     * the contents changed since it was built.
      */
-    public Drawable shenduCreateFolderThumBitmap(FolderInfo folderInfo){
-    	int folderSize = (int)mLauncher.getResources().getDimension(R.dimen.app_icon_size);
-		Bitmap oldBitmap = Bitmap.createBitmap(folderSize,folderSize,Config.ARGB_8888);
-		Bitmap mutableBitmap = Bitmap.createScaledBitmap(
-								oldBitmap,
-								(oldBitmap.getWidth())*3/2,
-								(oldBitmap.getHeight())*3/2, 
-								false); 
-		int count = folderInfo.contents.size();
-		count = count>4 ? 4:count;
-		Canvas canvas = new Canvas(mutableBitmap); 
-		for(int i=0; i<count; i++) {
-			
-			ItemInfo info = folderInfo.contents.get(i); 
-			
-
-			Bitmap orgbmp=null;
-				orgbmp = ((ShortcutInfo)info).iconBitmap; 
-				if(orgbmp==null){
-					orgbmp = ((ShortcutInfo)info).mIcon;
-				}
-			int oldWidth  = orgbmp.getWidth();
-			int oldHeight = orgbmp.getHeight();
-//			int mgapInfolder=folderSize/10;
-//			int newWidth  =folderSize*3/4-mgapInfolder;
-//			int newHeight = folderSize*3/4-mgapInfolder;
-			
-			int mgapInfolder=folderSize/5;
-			int newWidth  =folderSize*3/4-mgapInfolder;
-			int newHeight = folderSize*3/4-mgapInfolder;
-			
-			float scaleW  = ((float)newWidth) / oldWidth;
-			float scaleH  = ((float)newHeight) / oldHeight;
-			Matrix matrix = new Matrix();
-			matrix.postScale(scaleW, scaleH); 
-			Bitmap thumbmp = Bitmap.createBitmap(orgbmp,0,0,oldWidth,oldHeight,matrix,true); 
-			
-			if (i == 3)
-				canvas.drawBitmap(thumbmp, newWidth+mgapInfolder, newWidth+mgapInfolder, null);
-			if (i == 2)
-				canvas.drawBitmap(thumbmp, mgapInfolder, newWidth+mgapInfolder, null);
-			if (i == 1)
-				canvas.drawBitmap(thumbmp, newWidth+mgapInfolder, mgapInfolder, null);
-			if (i == 0)
-				canvas.drawBitmap(thumbmp, mgapInfolder, mgapInfolder, null);
-			canvas.save(Canvas.ALL_SAVE_FLAG);
-			canvas.restore();
-		}
-		BitmapDrawable closeIcon = new BitmapDrawable(mutableBitmap); 
-		return closeIcon; 
+    void updateThumbnail() {
+        Drawable thumbnail = mLauncher.getFolderThumbnailCache().getThumbnail(this, mInfo);
+        if (thumbnail != mThumbnail) {
+            mThumbnail = thumbnail;
+            mPreviewBackground.setImageDrawable(thumbnail);
+        }
     }
-    
+
+    /**
+     * Called by the {@link FolderThumbnailCache} when a thumbnail it was building for us is done.
+     */
+    void onThumbnailReady() {
+        updateThumbnail();
+    }
+
     /**
      * 2012-9-26 hhl
      * @param imageView: need to dispaly or hide background object
@@ -536,30 +490,10 @@ public class FolderIcon extends LinearLayout implements FolderListener {
         super.dispatchDraw(canvas);
 
         if (mFolder == null) return;
-        if (mFolder.getItemCount() == 0 && !mAnimating) return;
-
-        ArrayList<View> items = mFolder.getItemsInReadingOrder(false);
-        
-        TextView app_icon;
-        
-        Drawable d;
-            	app_icon = (TextView)items.get(0).findViewById(R.id.app_shortcutinfo_icon_id);
-            	d = app_icon.getBackground();
-    	mFolder.mFolderIcon.mPreviewBackground.setImageDrawable(shenduCreateFolderThumBitmap(mFolder.mInfo));
-
-        int nItemsInPreview = Math.min(items.size(), NUM_ITEMS_IN_PREVIEW);
-        if (!mAnimating) {
-            for (int i = nItemsInPreview - 1; i >= 0; i--) {
-                //v = (TextView) items.get(i);
-                //d = v.getCompoundDrawables()[1];
-            	app_icon = (TextView)items.get(i).findViewById(R.id.app_shortcutinfo_icon_id);
-            	d = app_icon.getBackground();
-
-                mParams = computePreviewItemDrawingParams(i, mParams);
-                mParams.drawable = d;
-                drawPreviewItem(canvas, mParams);
-            }
-        } else {
+
+        // The contents are shown by the thumbnail in mPreviewBackground, which is kept up to
+        // date from the FolderListener callbacks; only the first-item animation draws here.
+        if (mAnimating) {
             drawPreviewItem(canvas, mAnimParams);
         }
     }
@@ -611,6 +545,7 @@ public class FolderIcon extends LinearLayout implements FolderListener {
     }
 
     public void onItemsChanged() {
+        updateThumbnail();
         invalidate();
         requestLayout();
     }
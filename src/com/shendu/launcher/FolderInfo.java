@@ -62,6 +62,12 @@ class FolderInfo extends ItemInfo {
 
     ArrayList<FolderListener> listeners = new ArrayList<FolderListener>();
 
+    /**
+     * Bumped whenever something the folder thumbnail shows changes: which items are in the
+     * folder, their order, or one of their icons.
+     */
+    int contentVersion;
+
     FolderInfo() {
         itemType = LauncherSettings.Favorites.ITEM_TYPE_FOLDER;
     }
@@ -73,6 +79,7 @@ class FolderInfo extends ItemInfo {
      */
     public void add(ShortcutInfo item) {
         contents.add(item);
+        contentVersion++;
 
         for (int i = 0; i < listeners.size(); i++) {
             listeners.get(i).onAdd(item);
@@ -87,6 +94,7 @@ class FolderInfo extends ItemInfo {
      */
     public void remove(ShortcutInfo item) {
         contents.remove(item);
+        contentVersion++;
         for (int i = 0; i < listeners.size(); i++) {
             listeners.get(i).onRemove(item);
         }
@@ -116,6 +124,22 @@ class FolderInfo extends ItemInfo {
         }
     }
 
+    /**
+     * Called after the icon of one of the items changed.
+     */
+    void iconsChanged() {
+        contentVersion++;
+        itemsChanged();
+    }
+
+    /**
+     * Called after the items were put in a different order.
+     */
+    void contentsReordered() {
+        contentVersion++;
+        itemsChanged();
+    }
+
     void itemsChanged() {
         for (int i = 0; i < listeners.size(); i++) {
             listeners.get(i).onItemsChanged();
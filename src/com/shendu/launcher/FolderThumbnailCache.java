@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shendu.launcher;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Caches the four-icon thumbnail shown on each {@link FolderIcon}.
+ *
+ * Thumbnails are keyed by folder id and remember the {@link FolderInfo#contentVersion} they
+ * were built for. A stale thumbnail keeps being shown while its replacement is built on a
+ * background thread, so drawing a folder icon never builds one. A theme change restarts the
+ * process, so nothing here has to be invalidated for it. Only access from the UI thread.
+ */
+public class FolderThumbnailCache {
+    static final String TAG = "Launcher.FolderThumbnailCache";
+    static final boolean DEBUG_THUMBNAILS = false;
+
+    // The thumbnail shows at most this many folder items, two per row
+    static final int MAX_ITEMS = 4;
+
+    private static final HandlerThread sWorkerThread = new HandlerThread(
+            "launcher-folder-thumbnails", Process.THREAD_PRIORITY_BACKGROUND);
+    static {
+        sWorkerThread.start();
+    }
+    private static final Handler sWorker = new Handler(sWorkerThread.getLooper());
+
+    private static class Entry {
+        // The thumbnail on screen and what it was built from
+        Drawable thumbnail;
+        int contentVersion = -1;
+
+        // The build in flight, if any
+        int pendingVersion = -1;
+
+        // The icon to notify when a build lands
+        FolderIcon icon;
+    }
+
+    private final Context mContext;
+    private final Handler mHandler = new Handler();
+
+    // < only access in the UI thread >
+    private final HashMap<Long, Entry> mEntries = new HashMap<Long, Entry>();
+    private int mBuildsRequested;
+    private int mBuildsDropped;
+    // </ only access in the UI thread >
+
+    // < only access in the thumbnail worker thread >
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Rect mDstRect = new Rect();
+    // </ only access in the thumbnail worker thread >
+
+    /**
+     * Must be created on the UI thread.
+     */
+    public FolderThumbnailCache(Context context) {
+        mContext = context;
+    }
+
+    /**
+     * Returns the thumbnail for the folder shown by the icon, or null if none was built yet.
+     * When the cached thumbnail is older than the folder contents, a rebuild is
+     * scheduled and the icon is told through {@link FolderIcon#onThumbnailReady()} once it is
+     * done; the stale thumbnail is returned in the meantime.
+     */
+    Drawable getThumbnail(FolderIcon icon, FolderInfo info) {
+        Entry entry = mEntries.get(info.id);
+        if (entry == null) {
+            entry = new Entry();
+            mEntries.put(info.id, entry);
+        }
+        entry.icon = icon;
+        if (entry.contentVersion == info.contentVersion) {
+            return entry.thumbnail;
+        }
+        if (entry.pendingVersion != info.contentVersion) {
+            scheduleBuild(entry, info);
+        }
+        return entry.thumbnail;
+    }
+
+    /**
+     * Drops the thumbnail of a folder that was removed.
+     */
+    void remove(long folderId) {
+        mEntries.remove(folderId);
+    }
+
+    private void scheduleBuild(final Entry entry, FolderInfo info) {
+        final long folderId = info.id;
+        final int version = info.contentVersion;
+        final int iconSize = (int) mContext.getResources().getDimension(R.dimen.app_icon_size);
+
+        // Snapshot the icons here; the worker must not walk the live contents list
+        final int count = Math.min(MAX_ITEMS, info.contents.size());
+        final ArrayList<Bitmap> icons = new ArrayList<Bitmap>(count);
+        for (int i = 0; i < count; i++) {
+            ShortcutInfo item = info.contents.get(i);
+            icons.add(item.iconBitmap != null ? item.iconBitmap : item.mIcon);
+        }
+
+        entry.pendingVersion = version;
+        mBuildsRequested++;
+        sWorker.post(new Runnable() {
+            public void run() {
+                final Drawable thumbnail = new BitmapDrawable(buildThumbnail(icons, iconSize));
+                mHandler.post(new Runnable() {
+                    public void run() {
+                        onThumbnailBuilt(folderId, version, thumbnail);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onThumbnailBuilt(long folderId, int version, Drawable thumbnail) {
+        Entry entry = mEntries.get(folderId);
+        if (entry == null || entry.pendingVersion != version) {
+            // The folder went away or changed again while we were building
+            mBuildsDropped++;
+            return;
+        }
+        entry.thumbnail = thumbnail;
+        entry.contentVersion = version;
+        entry.pendingVersion = -1;
+        if (DEBUG_THUMBNAILS) {
+            Log.d(TAG, "built thumbnail for folder " + folderId + " v" + version + ", "
+                    + mBuildsRequested + " requested, " + mBuildsDropped + " dropped");
+        }
+        if (entry.icon != null) {
+            entry.icon.onThumbnailReady();
+        }
+    }
+
+    /**
+     * Draws up to four icons scaled into the quadrants of a square one and a half icons wide.
+     * Runs on the thumbnail worker thread.
+     */
+    private Bitmap buildThumbnail(ArrayList<Bitmap> icons, int iconSize) {
+        final int size = iconSize * 3 / 2;
+        final int gap = iconSize / 5;
+        final int cell = iconSize * 3 / 4 - gap;
+
+        Bitmap thumbnail = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(thumbnail);
+        final int count = icons.size();
+        for (int i = 0; i < count; i++) {
+            Bitmap icon = icons.get(i);
+            if (icon == null) {
+                continue;
+            }
+            int left = (i % 2 == 0) ? gap : cell + gap;
+            int top = (i < 2) ? gap : cell + gap;
+            mDstRect.set(left, top, left + cell, top + cell);
+            canvas.drawBitmap(icon, null, mDstRect, mPaint);
+        }
+        return thumbnail;
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shendu.launcher;
+
+import android.util.Log;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+
+/**
+ * Per-frame timings of a paged view while it scrolls, snaps or changes state.
+ *
+ * Every frame is written to a fixed ring buffer and counted into a histogram keyed by label
+ * (the transition effect) and phase, so recording never allocates once a label has been seen.
+ * {@link #dump} prints percentiles per effect; with {@link #LOG_FRAMES} each finished session
+ * is also written to the log, one line per frame, for offline analysis.
+ *
+ * Only access from the UI thread.
+ */
+public class FrameStats {
+    static final String TAG = "Launcher.FrameStats";
+    // Log every frame of a session once it ends, as "frame,phase,label,startMs,drawUs,intervalUs"
+    static final boolean LOG_FRAMES = false;
+
+    static final int PHASE_NONE = 0;
+    static final int PHASE_SCROLL = 1;
+    static final int PHASE_SNAP = 2;
+    static final int PHASE_DEMO = 3;
+    static final int PHASE_STATE = 4;
+    private static final String[] PHASE_NAMES = { "none", "scroll", "snap", "demo", "state" };
+
+    private static final int CAPACITY = 512;
+    // 1ms buckets, the last one also holds everything slower
+    private static final int BUCKETS = 100;
+    private static final long FRAME_INTERVAL_NANOS = 1000000000L / 60;
+    private static final int[] PERCENTILES = { 50, 90, 95, 99 };
+
+    private static class Histogram {
+        final int[] draw = new int[BUCKETS];
+        final int[] interval = new int[BUCKETS];
+        int frames;
+        int intervals;
+        // Frames that took longer than one vsync, and the vsyncs they missed in total
+        int janky;
+        int missedVsyncs;
+    }
+
+    // Ring of the most recent frames
+    private final long[] mStarts = new long[CAPACITY];
+    private final int[] mDrawMicros = new int[CAPACITY];
+    private final int[] mIntervalMicros = new int[CAPACITY];
+    private final byte[] mPhases = new byte[CAPACITY];
+    private final String[] mLabels = new String[CAPACITY];
+    private int mNext;
+    private int mSize;
+
+    // Label -> one histogram per phase
+    private final HashMap<String, Histogram[]> mHistograms = new HashMap<String, Histogram[]>();
+
+    private long mLastFrameStart = -1;
+    private int mSessionFrames;
+
+    /**
+     * Records one frame that started drawing at {@code startNanos} and finished at
+     * {@code endNanos}. The first frame of a session has no interval.
+     */
+    void recordFrame(int phase, String label, long startNanos, long endNanos) {
+        final int drawMicros = (int) ((endNanos - startNanos) / 1000);
+        final long interval = mLastFrameStart >= 0 ? startNanos - mLastFrameStart : -1;
+        mLastFrameStart = startNanos;
+
+        final int i = mNext;
+        mStarts[i] = startNanos;
+        mDrawMicros[i] = drawMicros;
+        mIntervalMicros[i] = interval >= 0 ? (int) (interval / 1000) : -1;
+        mPhases[i] = (byte) phase;
+        mLabels[i] = label;
+        mNext = (i + 1) % CAPACITY;
+        if (mSize < CAPACITY) {
+            mSize++;
+        }
+        mSessionFrames++;
+
+        Histogram[] byPhase = mHistograms.get(label);
+        if (byPhase == null) {
+            byPhase = new Histogram[PHASE_NAMES.length];
+            mHistograms.put(label, byPhase);
+        }
+        Histogram h = byPhase[phase];
+        if (h == null) {
+            h = new Histogram();
+            byPhase[phase] = h;
+        }
+        h.frames++;
+        h.draw[bucket(drawMicros)]++;
+        if (interval >= 0) {
+            h.intervals++;
+            h.interval[bucket((int) (interval / 1000))]++;
+            // Allow half a vsync of scheduling slack before calling a frame late
+            final int vsyncs = (int) ((interval + FRAME_INTERVAL_NANOS / 2) / FRAME_INTERVAL_NANOS);
+            if (vsyncs > 1) {
+                h.janky++;
+                h.missedVsyncs += vsyncs - 1;
+            }
+        }
+    }
+
+    /**
+     * Ends the current session, so the next frame does not count the idle time before it.
+     */
+    void endSession() {
+        if (mLastFrameStart < 0) {
+            return;
+        }
+        if (LOG_FRAMES) {
+            final int count = Math.min(mSessionFrames, mSize);
+            for (int n = count; n > 0; n--) {
+                final int i = (mNext - n + CAPACITY) % CAPACITY;
+                Log.d(TAG, "frame," + PHASE_NAMES[mPhases[i]] + "," + mLabels[i] + ","
+                        + (mStarts[i] / 1000000) + "," + mDrawMicros[i] + ","
+                        + mIntervalMicros[i]);
+            }
+        }
+        mLastFrameStart = -1;
+        mSessionFrames = 0;
+    }
+
+    void reset() {
+        mHistograms.clear();
+        mNext = 0;
+        mSize = 0;
+        mLastFrameStart = -1;
+        mSessionFrames = 0;
+    }
+
+    void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "Frame stats (" + mSize + " recent frames buffered):");
+        ArrayList<String> labels = new ArrayList<String>(mHistograms.keySet());
+        Collections.sort(labels);
+        for (String label : labels) {
+            final Histogram[] byPhase = mHistograms.get(label);
+            writer.println(prefix + "  " + label + ":");
+            for (int phase = 0; phase < byPhase.length; phase++) {
+                final Histogram h = byPhase[phase];
+                if (h == null) {
+                    continue;
+                }
+                StringBuilder line = new StringBuilder(prefix).append("    ")
+                        .append(PHASE_NAMES[phase]).append(": ").append(h.frames)
+                        .append(" frames, draw ");
+                appendPercentiles(line, h.draw, h.frames);
+                line.append(", interval ");
+                appendPercentiles(line, h.interval, h.intervals);
+                line.append(", janky ").append(h.janky).append(" (")
+                        .append(h.intervals > 0 ? h.janky * 100 / h.intervals : 0)
+                        .append("%), missed vsyncs ").append(h.missedVsyncs);
+                writer.println(line);
+
+                line.setLength(0);
+                line.append(prefix).append("      interval histogram:");
+                appendHistogram(line, h.interval);
+                writer.println(line);
+            }
+        }
+    }
+
+    private static int bucket(int micros) {
+        return Math.max(0, Math.min(BUCKETS - 1, micros / 1000));
+    }
+
+    private static void appendPercentiles(StringBuilder line, int[] buckets, int total) {
+        for (int p = 0; p < PERCENTILES.length; p++) {
+            line.append(p == 0 ? "" : " ").append('p').append(PERCENTILES[p]).append('=');
+            if (total == 0) {
+                line.append('-');
+                continue;
+            }
+            // Smallest bucket covering the percentile; reported as its upper bound in ms
+            final long target = ((long) total * PERCENTILES[p] + 99) / 100;
+            long seen = 0;
+            int b = 0;
+            for (; b < BUCKETS - 1; b++) {
+                seen += buckets[b];
+                if (seen >= target) {
+                    break;
+                }
+            }
+            line.append(b == BUCKETS - 1 ? ">" + (BUCKETS - 1) : String.valueOf(b + 1))
+                    .append("ms");
+        }
+    }
+
+    private static void appendHistogram(StringBuilder line, int[] buckets) {
+        for (int b = 0; b < BUCKETS; b++) {
+            if (buckets[b] != 0) {
+                line.append(' ').append(b == BUCKETS - 1 ? ">" + b : String.valueOf(b))
+                        .append("ms:").append(buckets[b]);
+            }
+        }
+    }
+}
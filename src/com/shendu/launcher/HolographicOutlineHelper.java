@@ -24,6 +24,12 @@ import android.graphics.Paint;
 import android.graphics.PorterDuff;
 import android.graphics.PorterDuffXfermode;
 import android.graphics.TableMaskFilter;
+import android.graphics.drawable.Drawable;
+import android.util.LruCache;
+import android.view.View;
+import android.widget.TextView;
+
+import com.shendu.launcher.R;
 
 public class HolographicOutlineHelper {
     private final Paint mHolographicPaint = new Paint();
@@ -42,9 +48,11 @@ public class HolographicOutlineHelper {
     private static final BlurMaskFilter sExtraThickInnerBlurMaskFilter;
     private static final BlurMaskFilter sMediumInnerBlurMaskFilter;
 
-    private static final int THICK = 0;
-    private static final int MEDIUM = 1;
-    private static final int EXTRA_THICK = 2;
+    static final int THICK = 0;
+    static final int MEDIUM = 1;
+    static final int EXTRA_THICK = 2;
+    // The glow drawn by applyOuterBlur, only used to key cached glows
+    static final int OUTER_GLOW = 3;
 
     static {
         final float scale = LauncherApplication.getScreenDensity();
@@ -63,6 +71,89 @@ public class HolographicOutlineHelper {
 
     private static final MaskFilter sCoarseClipTable = TableMaskFilter.CreateClipTable(0, 200);
     private int[] mTempOffset = new int[2];
+    private final int[] mOuterBlurOffset = new int[2];
+    private final int[] mBrightOutlineOffset = new int[2];
+    private final int[] mThickInnerBlurOffset = new int[2];
+    private final Canvas mGlowCanvas = new Canvas();
+
+    /**
+     * Identifies an outline by what was drawn into its source bitmap and how it was outlined.
+     * Callers draw different parts of a view for different thicknesses, so the thickness also
+     * tells their drawings apart.
+     */
+    static final class OutlineKey {
+        private final Bitmap mIcon;
+        private final String mLabel;
+        private final String mBadge;
+        private final boolean mHasBackground;
+        private final int mWidth;
+        private final int mHeight;
+        private final int mPadding;
+        private final int mColor;
+        private final int mOutlineColor;
+        private final int mThickness;
+        private final int mHashCode;
+
+        OutlineKey(Bitmap icon, String label, String badge, boolean hasBackground, int width,
+                int height, int padding, int color, int outlineColor, int thickness) {
+            mIcon = icon;
+            mLabel = label;
+            mBadge = badge;
+            mHasBackground = hasBackground;
+            mWidth = width;
+            mHeight = height;
+            mPadding = padding;
+            mColor = color;
+            mOutlineColor = outlineColor;
+            mThickness = thickness;
+            int hash = System.identityHashCode(icon);
+            hash = 31 * hash + (label != null ? label.hashCode() : 0);
+            hash = 31 * hash + (badge != null ? badge.hashCode() : 0);
+            hash = 31 * hash + (hasBackground ? 1 : 0);
+            hash = 31 * hash + width;
+            hash = 31 * hash + height;
+            hash = 31 * hash + padding;
+            hash = 31 * hash + color;
+            hash = 31 * hash + outlineColor;
+            mHashCode = 31 * hash + thickness;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof OutlineKey)) {
+                return false;
+            }
+            OutlineKey other = (OutlineKey) o;
+            // Icons come from the icon cache, so the same icon is the same bitmap instance
+            return mIcon == other.mIcon && equal(mLabel, other.mLabel)
+                    && equal(mBadge, other.mBadge) && mHasBackground == other.mHasBackground
+                    && mWidth == other.mWidth && mHeight == other.mHeight
+                    && mPadding == other.mPadding && mColor == other.mColor
+                    && mOutlineColor == other.mOutlineColor && mThickness == other.mThickness;
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+
+        private static boolean equal(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
+    // Outlines and glows shared by every helper. The bitmaps are handed out to several views,
+    // so they must never be recycled by the callers.
+    // < only access in the UI thread >
+    private static final LruCache<OutlineKey, Bitmap> sOutlineCache =
+            new LruCache<OutlineKey, Bitmap>((int) Math.min(Runtime.getRuntime().maxMemory() / 16,
+                    4 * 1024 * 1024)) {
+                @Override
+                protected int sizeOf(OutlineKey key, Bitmap value) {
+                    return value.getRowBytes() * value.getHeight();
+                }
+            };
+    // </ only access in the UI thread >
 
     HolographicOutlineHelper() {
         mHolographicPaint.setFilterBitmap(true);
@@ -77,6 +168,71 @@ public class HolographicOutlineHelper {
         mAlphaClipPaint.setMaskFilter(alphaClipTable);
     }
 
+    /**
+     * Returns the key for outlining a shortcut view into a bitmap of the given size, or null if
+     * the view is not a shortcut whose drawing can be identified from its contents.
+     */
+    static OutlineKey getOutlineKey(View v, int width, int height, int padding, int color,
+            int outlineColor, int thickness) {
+        if (v instanceof BubbleTextView) {
+            Bitmap icon = getBitmap(((TextView) v).getCompoundDrawables()[1]);
+            if (icon == null) {
+                return null;
+            }
+            // The label is clipped out of every outline drawn from a BubbleTextView
+            return new OutlineKey(icon, null, null, v.getBackground() != null, width, height,
+                    padding, color, outlineColor, thickness);
+        } else if (v instanceof BubbleLinearLayout) {
+            // Inflated from R.layout.app_shortcutinfo, drawn whole
+            TextView iconView = (TextView) v.findViewById(R.id.app_shortcutinfo_icon_id);
+            TextView nameView = (TextView) v.findViewById(R.id.app_shortcutinfo_name_id);
+            TextView markView = (TextView) v.findViewById(R.id.app_shortcutinfo_mark_id);
+            View background = v.findViewById(R.id.app_shortcutinfo_bg);
+            Bitmap icon = iconView != null ? getBitmap(iconView.getBackground()) : null;
+            if (icon == null) {
+                return null;
+            }
+            String label = nameView != null && nameView.getVisibility() == View.VISIBLE
+                    ? String.valueOf(nameView.getText()) : null;
+            String badge = markView != null && markView.getVisibility() == View.VISIBLE
+                    ? String.valueOf(markView.getText()) : null;
+            return new OutlineKey(icon, label, badge,
+                    background != null && background.getBackground() != null, width, height,
+                    padding, color, outlineColor, thickness);
+        }
+        return null;
+    }
+
+    private static Bitmap getBitmap(Drawable d) {
+        return d instanceof FastBitmapDrawable ? ((FastBitmapDrawable) d).getBitmap() : null;
+    }
+
+    /**
+     * Returns the cached outline or glow for the key, or null. Only call this from the UI
+     * thread.
+     */
+    static Bitmap getCachedOutline(OutlineKey key) {
+        if (key == null) {
+            return null;
+        }
+        Bitmap outline = sOutlineCache.get(key);
+        if (outline != null && outline.isRecycled()) {
+            sOutlineCache.remove(key);
+            return null;
+        }
+        return outline;
+    }
+
+    /**
+     * Caches an outline. The bitmap is shared from now on and must not be recycled. Only call
+     * this from the UI thread.
+     */
+    static void cacheOutline(OutlineKey key, Bitmap outline) {
+        if (key != null && outline != null) {
+            sOutlineCache.put(key, outline);
+        }
+    }
+
     /**
      * Returns the interpolated holographic highlight alpha for the effect we want when scrolling
      * pages.
@@ -106,16 +262,46 @@ public class HolographicOutlineHelper {
      * used for click/longclick item outer effect
      */
     void applyOuterBlur(Bitmap bitmap, Canvas canvas, int color) {
-        mBlurPaint.setMaskFilter(sThickOuterBlurMaskFilter);
-        Bitmap glow = bitmap.extractAlpha(mBlurPaint, mTempOffset);
+        applyOuterBlur(bitmap, canvas, color, null);
+    }
+
+    /**
+     * Applies an outer blur, reusing the glow cached for the key when there is one.
+     *
+     * @param key identifies what is drawn in the bitmap, or null to skip the cache
+     */
+    void applyOuterBlur(Bitmap bitmap, Canvas canvas, int color, OutlineKey key) {
+        Bitmap glow = getCachedOutline(key);
+        if (glow == null) {
+            glow = createOuterGlow(bitmap);
+            cacheOutline(key, glow);
+        }
 
         // Use the clip table to make the glow heavier closer to the outline
         mHolographicPaint.setMaskFilter(sCoarseClipTable);
         mHolographicPaint.setAlpha(150);
         mHolographicPaint.setColor(color);
 
-        canvas.drawBitmap(glow, mTempOffset[0], mTempOffset[1], mHolographicPaint);
-        glow.recycle();
+        canvas.drawBitmap(glow, 0, 0, mHolographicPaint);
+        if (key == null) {
+            glow.recycle();
+        }
+    }
+
+    /**
+     * Returns the outer glow of the bitmap, cropped to the bitmap's bounds so it can be drawn
+     * at the origin.
+     */
+    private Bitmap createOuterGlow(Bitmap bitmap) {
+        mBlurPaint.setMaskFilter(sThickOuterBlurMaskFilter);
+        Bitmap blur = bitmap.extractAlpha(mBlurPaint, mTempOffset);
+        Bitmap glow = Bitmap.createBitmap(bitmap.getWidth(), bitmap.getHeight(),
+                Bitmap.Config.ALPHA_8);
+        mGlowCanvas.setBitmap(glow);
+        mGlowCanvas.drawBitmap(blur, mTempOffset[0], mTempOffset[1], null);
+        mGlowCanvas.setBitmap(null);
+        blur.recycle();
+        return glow;
     }
 
     /**
@@ -153,7 +339,7 @@ public class HolographicOutlineHelper {
                 throw new RuntimeException("Invalid blur thickness");
         }
         mBlurPaint.setMaskFilter(outerBlurMaskFilter);
-        int[] outerBlurOffset = new int[2];
+        int[] outerBlurOffset = mOuterBlurOffset;
         Bitmap thickOuterBlur = glowShape.extractAlpha(mBlurPaint, outerBlurOffset);
         if (thickness == EXTRA_THICK) {
             mBlurPaint.setMaskFilter(sMediumOuterBlurMaskFilter);
@@ -161,7 +347,7 @@ public class HolographicOutlineHelper {
             mBlurPaint.setMaskFilter(sThinOuterBlurMaskFilter);
         }
 
-        int[] brightOutlineOffset = new int[2];
+        int[] brightOutlineOffset = mBrightOutlineOffset;
         Bitmap brightOutline = glowShape.extractAlpha(mBlurPaint, brightOutlineOffset);
 
         // calculate the inner blur
@@ -182,7 +368,7 @@ public class HolographicOutlineHelper {
                 throw new RuntimeException("Invalid blur thickness");
         }
         mBlurPaint.setMaskFilter(innerBlurMaskFilter);
-        int[] thickInnerBlurOffset = new int[2];
+        int[] thickInnerBlurOffset = mThickInnerBlurOffset;
         Bitmap thickInnerBlur = glowShape.extractAlpha(mBlurPaint, thickInnerBlurOffset);
 
         // mask out the inner blur
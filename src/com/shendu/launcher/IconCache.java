@@ -35,6 +35,7 @@ import android.graphics.PorterDuffXfermode;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.LayerDrawable;
+import android.text.TextUtils;
 import android.util.Log;
 
 import java.util.HashMap;
@@ -51,6 +52,7 @@ public class IconCache {
     private static class CacheEntry {
         public Bitmap icon;
         public String title;
+        public String sortKey;
     }
 
     private final Bitmap mDefaultIcon;
@@ -164,10 +166,33 @@ public class IconCache {
             CacheEntry entry = cacheLocked(application.componentName, info, labelCache);
 
             application.title = entry.title;
+            application.sortKey = sortKeyLocked(entry);
             application.iconBitmap = entry.icon;
         }
     }
 
+    /**
+     * Returns the sort key of the label, reusing the key cached with the component's title
+     * when the component is already in the cache under the same label. A renamed shortcut
+     * gets the key of its own label.
+     */
+    public String getSortKey(ComponentName component, CharSequence label) {
+        synchronized (mCache) {
+            CacheEntry entry = mCache.get(component);
+            if (entry != null && TextUtils.equals(entry.title, label)) {
+                return sortKeyLocked(entry);
+            }
+        }
+        return mContext.getSortKeyGenerator().getSortKey(label);
+    }
+
+    private String sortKeyLocked(CacheEntry entry) {
+        if (entry.sortKey == null) {
+            entry.sortKey = mContext.getSortKeyGenerator().getSortKey(entry.title);
+        }
+        return entry.sortKey;
+    }
+
     public Bitmap getIcon(Intent intent) {
         synchronized (mCache) {
             final ResolveInfo resolveInfo = mPackageManager.resolveActivity(intent, 0);
@@ -135,15 +135,31 @@ public class InstallShortcutReceiver extends BroadcastReceiver {
         flushInstallQueue(context);
     }
     static void flushInstallQueue(Context context) {
+        // Place the whole queue with one bind, so it costs one slot search and one transaction
+        ArrayList<ShortcutInfo> shortcuts = new ArrayList<ShortcutInfo>();
         Iterator<PendingInstallShortcutInfo> iter = mInstallQueue.iterator();
         while (iter.hasNext()) {
-            processInstallShortcut(context, iter.next());
+            ShortcutInfo shortcutInfo = infoFromPendingInstall(context, iter.next());
+            if (shortcutInfo != null) {
+                shortcuts.add(shortcutInfo);
+            }
             iter.remove();
         }
+        bindShortcuts(context, shortcuts);
     }
 
     private static void processInstallShortcut(Context context,
             PendingInstallShortcutInfo pendingInfo) {
+        ShortcutInfo shortcutInfo = infoFromPendingInstall(context, pendingInfo);
+        if (shortcutInfo != null) {
+            ArrayList<ShortcutInfo> list = new ArrayList<ShortcutInfo>();
+            list.add(shortcutInfo);
+            bindShortcuts(context, list);
+        }
+    }
+
+    private static ShortcutInfo infoFromPendingInstall(Context context,
+            PendingInstallShortcutInfo pendingInfo) {
         //String spKey = PreferencesProvider.PREFERENCES_KEY;//moditify
         //SharedPreferences sp = context.getSharedPreferences(spKey, Context.MODE_PRIVATE);
 
@@ -158,21 +174,26 @@ public class InstallShortcutReceiver extends BroadcastReceiver {
         //if(!exists){
         	LauncherModel launcherModel = app.getModel();
             if(launcherModel!=null){
-            	Callbacks callbacks = launcherModel.mCallbacks.get();
-            	ShortcutInfo shortcutInfo = launcherModel.infoFromShortcutIntent(context, data,null);
-            	if(shortcutInfo!=null){
-                	
-                	ArrayList<ShortcutInfo> list = new ArrayList<ShortcutInfo>();
-                	list.add(shortcutInfo);
-                	if(callbacks!=null){
-                		callbacks.bindAllApplications(list);
-                	}
-            	}
+            	return launcherModel.infoFromShortcutIntent(context, data,null);
             }
         //}else{
         	//Toast.makeText(context,context.getString(R.string.shortcut_exist_toast_message),Toast.LENGTH_SHORT).show();
         //}
-        
+        return null;
+    }
+
+    private static void bindShortcuts(Context context, ArrayList<ShortcutInfo> shortcuts) {
+        if (shortcuts.isEmpty()) {
+            return;
+        }
+        LauncherApplication app = (LauncherApplication) context.getApplicationContext();
+        LauncherModel launcherModel = app.getModel();
+        if (launcherModel != null) {
+            Callbacks callbacks = launcherModel.mCallbacks.get();
+            if (callbacks != null) {
+                callbacks.bindShortcutsInstalled(shortcuts);
+            }
+        }
     }
 
     /*private static boolean installShortcut(Context context, Intent data, ArrayList<ItemInfo> items,
@@ -16,6 +16,7 @@
 
 package com.shendu.launcher;
 
+import android.content.ComponentName;
 import android.content.ContentValues;
 import android.content.Intent;
 import android.graphics.Bitmap;
@@ -144,6 +145,18 @@ class ItemInfo {
         }
     }
 
+    /**
+     * Writes the pre-parsed package and component columns that accompany an intent.
+     */
+    static void writeComponentValues(ContentValues values, Intent intent) {
+        String packageName = getPackageName(intent);
+        ComponentName cn = intent != null ? intent.getComponent() : null;
+        values.put(LauncherSettings.Favorites.PACKAGE_NAME,
+                packageName.length() > 0 ? packageName : null);
+        values.put(LauncherSettings.Favorites.COMPONENT_NAME,
+                cn != null ? cn.flattenToShortString() : null);
+    }
+
     void updateValuesWithCoordinates(ContentValues values, int cellX, int cellY) {
         values.put(LauncherSettings.Favorites.CELLX, cellX);
         values.put(LauncherSettings.Favorites.CELLY, cellY);
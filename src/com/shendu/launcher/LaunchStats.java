@@ -0,0 +1,425 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shendu.launcher;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Records app launches and keeps a decayed launch count for every component.
+ *
+ * Launches are queued without taking a lock and written in batches on a background thread
+ * to an append-only log. Once the log holds enough records it is folded into a snapshot of
+ * per-component counters, written to a temporary file and renamed over the old snapshot, and
+ * the log starts over. Counts halve every two weeks, so steady use this week outweighs a
+ * burst a month ago. Readers see an immutable copy of the counters and never wait for the
+ * worker.
+ */
+public class LaunchStats {
+    static final String TAG = "Launcher.LaunchStats";
+    static final boolean DEBUG_LAUNCH_STATS = false;
+
+    private static final String LOG_FILE = "launch_stats.log";
+    private static final String SNAPSHOT_FILE = "launch_stats.snapshot";
+    private static final int SNAPSHOT_VERSION = 1;
+
+    // Launches recorded within this window are written together
+    private static final long FLUSH_DELAY = 5000;
+    // Fold the log into the snapshot once it holds this many records
+    private static final int MAX_LOG_RECORDS = 256;
+    private static final long HALF_LIFE = 14 * 24 * 60 * 60 * 1000L;
+    // Counters that decayed below this are dropped from the snapshot
+    private static final float MIN_SCORE = 0.01f;
+
+    private static final HandlerThread sWorkerThread = new HandlerThread("launcher-launch-stats",
+            Process.THREAD_PRIORITY_BACKGROUND);
+    static {
+        sWorkerThread.start();
+    }
+    private static final Handler sWorker = new Handler(sWorkerThread.getLooper());
+
+    private static class Launch {
+        final ComponentName mComponent;
+        final long mTime;
+
+        Launch(ComponentName component, long time) {
+            mComponent = component;
+            mTime = time;
+        }
+    }
+
+    /**
+     * Decayed launch count of one component as of its last launch. Immutable, so the counters
+     * can be handed to readers without copying them.
+     */
+    private static class Counter {
+        final float mScore;
+        final long mLastLaunch;
+
+        Counter(float score, long lastLaunch) {
+            mScore = score;
+            mLastLaunch = lastLaunch;
+        }
+
+        float scoreAt(long now) {
+            return decay(mScore, now - mLastLaunch);
+        }
+
+        Counter plusLaunch(long time) {
+            if (time >= mLastLaunch) {
+                return new Counter(scoreAt(time) + 1, time);
+            }
+            // Launches can replay out of order after a clock change; age the new one instead
+            return new Counter(mScore + decay(1, mLastLaunch - time), mLastLaunch);
+        }
+    }
+
+    private final File mLogFile;
+    private final File mSnapshotFile;
+    private final ConcurrentLinkedQueue<Launch> mPending = new ConcurrentLinkedQueue<Launch>();
+    private final AtomicBoolean mFlushScheduled = new AtomicBoolean();
+    // Replaced by the worker after every batch, read from any thread
+    private volatile HashMap<ComponentName, Counter> mCounters =
+            new HashMap<ComponentName, Counter>();
+
+    // < only access in the worker thread >
+    private final HashMap<ComponentName, Counter> mWorkingCounters =
+            new HashMap<ComponentName, Counter>();
+    private boolean mLoaded;
+    private int mLogRecords;
+    // </ only access in the worker thread >
+    private volatile int mLaunchesRecorded;
+
+    private final Runnable mFlushRunnable = new Runnable() {
+        public void run() {
+            flushPending();
+        }
+    };
+
+    public LaunchStats(Context context) {
+        mLogFile = context.getFileStreamPath(LOG_FILE);
+        mSnapshotFile = context.getFileStreamPath(SNAPSHOT_FILE);
+        sWorker.post(new Runnable() {
+            public void run() {
+                ensureLoaded();
+            }
+        });
+    }
+
+    /**
+     * Records a launch of the component. Only queues the launch; the log is written on the
+     * worker thread a few seconds later, together with any launches that follow.
+     */
+    public void recordLaunch(ComponentName component) {
+        if (component == null) {
+            return;
+        }
+        mPending.add(new Launch(component, System.currentTimeMillis()));
+        mLaunchesRecorded++;
+        if (mFlushScheduled.compareAndSet(false, true)) {
+            sWorker.postDelayed(mFlushRunnable, FLUSH_DELAY);
+        }
+    }
+
+    /**
+     * Writes queued launches now instead of waiting for the batch window.
+     */
+    public void flush() {
+        if (!mPending.isEmpty()) {
+            sWorker.removeCallbacks(mFlushRunnable);
+            sWorker.post(mFlushRunnable);
+        }
+    }
+
+    /**
+     * Returns the decayed launch count of the component, or 0 if it was never launched.
+     */
+    public float getScore(ComponentName component) {
+        final Counter counter = mCounters.get(component);
+        return counter != null ? counter.scoreAt(System.currentTimeMillis()) : 0;
+    }
+
+    /**
+     * Returns the time of the component's last recorded launch, or 0 if there is none.
+     */
+    public long getLastLaunchTime(ComponentName component) {
+        final Counter counter = mCounters.get(component);
+        return counter != null ? counter.mLastLaunch : 0;
+    }
+
+    /**
+     * Returns a comparator that puts the most used apps first. Apps with equal usage, such as
+     * apps that were never launched, compare as equal, so chain it with a name order where a
+     * total order is needed. The comparator reads the counters as they are now and keeps
+     * reading that copy, so it stays consistent while a sort runs.
+     */
+    public Comparator<ShortcutInfo> getUsageComparator() {
+        final HashMap<ComponentName, Counter> counters = mCounters;
+        final long now = System.currentTimeMillis();
+        return new Comparator<ShortcutInfo>() {
+            public int compare(ShortcutInfo a, ShortcutInfo b) {
+                return Float.compare(scoreOf(b), scoreOf(a));
+            }
+
+            private float scoreOf(ShortcutInfo info) {
+                final Counter counter = info.componentName != null
+                        ? counters.get(info.componentName) : null;
+                return counter != null ? counter.scoreAt(now) : 0;
+            }
+        };
+    }
+
+    /**
+     * Returns up to limit components, most used first.
+     */
+    public ArrayList<ComponentName> getMostUsed(int limit) {
+        final HashMap<ComponentName, Counter> counters = mCounters;
+        final long now = System.currentTimeMillis();
+        final ArrayList<ComponentName> components =
+                new ArrayList<ComponentName>(counters.keySet());
+        Collections.sort(components, new Comparator<ComponentName>() {
+            public int compare(ComponentName a, ComponentName b) {
+                return Float.compare(counters.get(b).scoreAt(now), counters.get(a).scoreAt(now));
+            }
+        });
+        while (components.size() > limit) {
+            components.remove(components.size() - 1);
+        }
+        return components;
+    }
+
+    void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "Launch stats: " + mCounters.size() + " components, "
+                + mLaunchesRecorded + " launches recorded, " + mPending.size() + " pending");
+    }
+
+    private static float decay(float score, long age) {
+        return age <= 0 ? score : (float) (score * Math.pow(0.5, (double) age / HALF_LIFE));
+    }
+
+    private void flushPending() {
+        // Clear the flag before draining, so a launch queued meanwhile schedules a new flush
+        mFlushScheduled.set(false);
+        ensureLoaded();
+        final ArrayList<Launch> launches = new ArrayList<Launch>();
+        Launch launch;
+        while ((launch = mPending.poll()) != null) {
+            launches.add(launch);
+        }
+        if (launches.isEmpty()) {
+            return;
+        }
+        appendToLog(launches);
+        for (Launch l : launches) {
+            apply(l.mComponent, l.mTime);
+        }
+        publish();
+        if (mLogRecords >= MAX_LOG_RECORDS) {
+            compact();
+        }
+        if (DEBUG_LAUNCH_STATS) {
+            Log.d(TAG, "wrote " + launches.size() + " launches, " + mLogRecords
+                    + " records in the log");
+        }
+    }
+
+    private void apply(ComponentName component, long time) {
+        final Counter counter = mWorkingCounters.get(component);
+        mWorkingCounters.put(component, counter != null
+                ? counter.plusLaunch(time) : new Counter(1, time));
+    }
+
+    private void publish() {
+        mCounters = new HashMap<ComponentName, Counter>(mWorkingCounters);
+    }
+
+    private void ensureLoaded() {
+        if (mLoaded) {
+            return;
+        }
+        mLoaded = true;
+        final long start = DEBUG_LAUNCH_STATS ? System.currentTimeMillis() : 0;
+        readSnapshot();
+        final boolean logIntact = replayLog();
+        publish();
+        if (!logIntact) {
+            // Rewrite without the torn record so appends don't land behind it
+            compact();
+        }
+        if (DEBUG_LAUNCH_STATS) {
+            Log.d(TAG, "loaded " + mWorkingCounters.size() + " counters and " + mLogRecords
+                    + " log records in " + (System.currentTimeMillis() - start) + "ms");
+        }
+    }
+
+    private void readSnapshot() {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(mSnapshotFile)));
+            if (in.readInt() != SNAPSHOT_VERSION) {
+                return;
+            }
+            final int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                final ComponentName component = ComponentName.unflattenFromString(in.readUTF());
+                final float score = in.readFloat();
+                final long lastLaunch = in.readLong();
+                if (component != null) {
+                    mWorkingCounters.put(component, new Counter(score, lastLaunch));
+                }
+            }
+        } catch (FileNotFoundException e) {
+            // Nothing recorded yet
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read launch stats snapshot", e);
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Applies every record of the log to the counters. Returns false if the log ends in a
+     * partial record, left behind when the process died during a write.
+     */
+    private boolean replayLog() {
+        mLogRecords = 0;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(mLogFile)));
+            while (true) {
+                // Only a clean end of file between records counts as the end of the log
+                in.mark(1);
+                if (in.read() < 0) {
+                    return true;
+                }
+                in.reset();
+                final long time = in.readLong();
+                final ComponentName component = ComponentName.unflattenFromString(in.readUTF());
+                if (component != null) {
+                    apply(component, time);
+                }
+                mLogRecords++;
+            }
+        } catch (FileNotFoundException e) {
+            return true;
+        } catch (IOException e) {
+            Log.w(TAG, "Launch stats log ends after " + mLogRecords + " records", e);
+            return false;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private void appendToLog(ArrayList<Launch> launches) {
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(mLogFile, true)));
+            for (Launch launch : launches) {
+                out.writeLong(launch.mTime);
+                out.writeUTF(launch.mComponent.flattenToShortString());
+            }
+            out.flush();
+            mLogRecords += launches.size();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to append to launch stats log", e);
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    /**
+     * Drops counters that decayed to nothing, writes the rest to a fresh snapshot and empties
+     * the log. The log is only deleted once the new snapshot is in place, so a failed write
+     * loses nothing.
+     */
+    private void compact() {
+        final long now = System.currentTimeMillis();
+        final Iterator<Counter> counters = mWorkingCounters.values().iterator();
+        while (counters.hasNext()) {
+            if (counters.next().scoreAt(now) < MIN_SCORE) {
+                counters.remove();
+            }
+        }
+        publish();
+
+        final File temp = new File(mSnapshotFile.getPath() + ".tmp");
+        boolean written = false;
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeInt(mWorkingCounters.size());
+            for (Map.Entry<ComponentName, Counter> entry : mWorkingCounters.entrySet()) {
+                final Counter counter = entry.getValue();
+                out.writeUTF(entry.getKey().flattenToShortString());
+                out.writeFloat(counter.mScore);
+                out.writeLong(counter.mLastLaunch);
+            }
+            out.flush();
+            written = true;
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write launch stats snapshot", e);
+        } finally {
+            closeQuietly(out);
+        }
+        if (!written || !temp.renameTo(mSnapshotFile)) {
+            Log.w(TAG, "Keeping the launch stats log, the snapshot was not replaced");
+            temp.delete();
+            return;
+        }
+        mLogFile.delete();
+        mLogRecords = 0;
+        if (DEBUG_LAUNCH_STATS) {
+            Log.d(TAG, "compacted launch stats to " + mWorkingCounters.size() + " counters");
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+}
@@ -84,7 +84,6 @@ import android.preference.Preference;
 import android.preference.PreferenceActivity;
 import android.preference.PreferenceManager;
 import android.preference.PreferenceScreen;
-import android.provider.CallLog.Calls;
 import android.provider.MediaStore;
 import android.provider.Settings;
 import android.speech.RecognizerIntent;
@@ -196,7 +195,6 @@ public final class Launcher extends Activity
 
     static final String EXTRA_SHORTCUT_DUPLICATE = "duplicate";
 
-    static final int MAX_SCREEN_COUNT = 20;
     static final int DEFAULT_SCREEN = 2;
 
     private static final String PREFERENCES = "launcher.preferences";
@@ -302,6 +300,8 @@ public final class Launcher extends Activity
 
     private LauncherModel mModel;
     private IconCache mIconCache;
+    private FolderThumbnailCache mFolderThumbnailCache;
+    private FolderCoverCapture mFolderCoverCapture;
     private boolean mUserPresent = true;
     private boolean mVisible = false;
     private boolean mAttached = false;
@@ -438,6 +438,7 @@ public final class Launcher extends Activity
         mEnableSearchBar = mSharedPrefs.getBoolean(PreferencesProvider.SEARCHBAR_EXIST,true);
         mModel = app.setLauncher(this);
         mIconCache = app.getIconCache();
+        mFolderThumbnailCache = new FolderThumbnailCache(this);
         mDragController = new DragController(this);
         mInflater = getLayoutInflater();
 
@@ -701,6 +702,10 @@ public final class Launcher extends Activity
     			ShortcutInfo shortcutInfo = (ShortcutInfo) itemInfo;
     			shortcutInfo.setIcon(bitmap);
     			shortcutInfo.writeBitmap(values,bitmap);
+    			FolderInfo folder = sFolders.get(shortcutInfo.container);
+    			if (folder != null) {
+    				folder.iconsChanged();
+    			}
     			((TextView)itemView.findViewById(R.id.app_shortcutinfo_icon_id))
     			  .setBackgroundDrawable(new FastBitmapDrawable(bitmap));
     		}else{ //folder
@@ -1439,7 +1444,6 @@ public final class Launcher extends Activity
     	LinearLayout app_view = (LinearLayout) mInflater.inflate(layoutResId, parent, false);
     	TextView app_icon = (TextView)app_view.findViewById(R.id.app_shortcutinfo_icon_id);
     	TextView app_name = (TextView)app_view.findViewById(R.id.app_shortcutinfo_name_id);
-		TextView app_mark = (TextView)app_view.findViewById(R.id.app_shortcutinfo_mark_id);
 		RelativeLayout appshortcutBg = (RelativeLayout)app_view.findViewById(R.id.app_shortcutinfo_bg);
 		
     	ComponentName componentName = info.intent.getComponent();
@@ -1462,21 +1466,7 @@ public final class Launcher extends Activity
     	}
     	
 		
-		if((componentName!=null) && 
-    		componentName.equals(LauncherApplication.sMMSComponentName)){
-    		int unReadMMS_mark = shenduGetUnreadMMSCount();
-    		if(unReadMMS_mark>0){
-        		app_mark.setText(unReadMMS_mark+"");
-        		app_mark.setVisibility(View.VISIBLE);
-    		}
-    	}else if((componentName!=null) &&
-    		componentName.equals(LauncherApplication.sCallComponentName)){
-    		int missCall_mark = shenduGetMissCallCount();
-    		if(missCall_mark>0){
-        		app_mark.setText(String.valueOf(missCall_mark));
-        		app_mark.setVisibility(View.VISIBLE);
-    		}
-    	}
+        BadgeManager.applyUnreadCount(app_view, getUnreadCount(componentName));
     	//app_icon.setImageBitmap(info.getIcon(mIconCache));
     	app_icon.setBackgroundDrawable(new FastBitmapDrawable(info.getIcon(mIconCache)));
     	app_name.setText(info.title);
@@ -1489,109 +1479,21 @@ public final class Launcher extends Activity
     }
     
     /**
-     * 2012-9-10 hhl
-     * @return: the unread mms and sms count
-     * TODO: get the unread mms and sms count
+     * Returns the unread count last published by the {@link BadgeManager} for the component.
      */
-    public int shenduGetUnreadMMSCount(){
-    	int result;
-    	ContentResolver cr = getContentResolver();  
-    	Cursor cursorUnreadSms = cr.query(Uri.parse("content://sms/inbox"),null,"read = 0",null,null);
-    	Cursor cursorUnreadMms = cr.query(Uri.parse("content://mms/inbox"),null,"read = 0",null,null);
-        if (cursorUnreadSms != null && cursorUnreadMms != null) {
-            result = cursorUnreadSms.getCount()+cursorUnreadMms.getCount();
-            cursorUnreadSms.close();
-            cursorUnreadMms.close();
-        } else {
-            result = 0;
-        }
-    	return result;
+    int getUnreadCount(ComponentName componentName) {
+        return ((LauncherApplication) getApplication()).getBadgeManager().getCount(componentName);
     }
-    
+
     /**
-     * 2012-9-10 hhl
-     * @return: the miss call count
-     * TODO: get the miss call count
+     * Implementation of the method from LauncherModel.Callbacks.
      */
-    public int shenduGetMissCallCount(){
-    	int result;
-    	ContentResolver phoneCR = getContentResolver();  
-    	Cursor cursorMissed=phoneCR.query(Calls.CONTENT_URI,null,
-    			Calls.TYPE+"="+Calls.MISSED_TYPE+" and "+Calls.NEW +" = 1",null,null);
-    	result = cursorMissed.getCount();
-    	cursorMissed.close();
-    	return result;
+    public void bindUnreadCountsChanged(HashMap<ComponentName, Integer> changed) {
+        if (mWorkspace != null) {
+            mWorkspace.updateUnreadCounts(changed);
+        }
     }
-    
-    /**
-     * 2012-9-10 hhl
-     * @see com.shendu.launcher.LauncherModel.Callbacks#shenduUpdateAppMark(int, long, int, int, int)
-     * @param mark: diff wihch app mark changed in call and sms
-     * @param container: used to changed app view container 
-     * @param screen: used to changed app view screen   
-     * @param x: used to changed app view x  
-     * @param y: used to changed app view y
-     * TODO: update the call or sms app view
-     */
-    public void shenduUpdateAppMark(int mark,Intent intent,long container,int screen,int x,int y){
-    	ShortcutAndWidgetContainer shortcutAndWidgetContainer = null;
-		if(container==LauncherSettings.Favorites.CONTAINER_DESKTOP){
-			shortcutAndWidgetContainer = 
-					(ShortcutAndWidgetContainer)((CellLayout)mWorkspace.getChildAt(screen)).getShortcutsAndWidgets();
-		}else if(container==LauncherSettings.Favorites.CONTAINER_HOTSEAT){
-			shortcutAndWidgetContainer = mHotseat.getLayout().getShortcutsAndWidgets();
-		}else{
-			Cursor folder_cursor = getContentResolver().query(LauncherSettings.Favorites.CONTENT_URI,
-				null,"_id = "+container,null,null);
-			if(folder_cursor.moveToFirst()){
-				int folder_container = folder_cursor.getInt(folder_cursor.getColumnIndex(LauncherSettings.Favorites.CONTAINER));
-				int folder_screen = folder_cursor.getInt(folder_cursor.getColumnIndex(LauncherSettings.Favorites.SCREEN));
-				int folder_x = folder_cursor.getInt(folder_cursor.getColumnIndex(LauncherSettings.Favorites.CELLX));
-				int folder_y = folder_cursor.getInt(folder_cursor.getColumnIndex(LauncherSettings.Favorites.CELLY));
-
-				if(folder_container==LauncherSettings.Favorites.CONTAINER_DESKTOP){
-					shortcutAndWidgetContainer = 
-							(ShortcutAndWidgetContainer)((CellLayout)mWorkspace.getChildAt(folder_screen)).getShortcutsAndWidgets();
-				}else if(folder_container==LauncherSettings.Favorites.CONTAINER_HOTSEAT){
-					shortcutAndWidgetContainer = mHotseat.getLayout().getShortcutsAndWidgets();
-				}
-				View view = shortcutAndWidgetContainer.getChildAt(folder_x, folder_y);
-				if(view instanceof FolderIcon){
-					FolderIcon folderIcon = (FolderIcon)view;
-					shortcutAndWidgetContainer = folderIcon.mFolder.mContent.getShortcutsAndWidgets();
-				}else{
-					shortcutAndWidgetContainer = null;
-				}
-			}
-			folder_cursor.close();
-		}
-		if(shortcutAndWidgetContainer!=null){
-			View view = shortcutAndWidgetContainer.getChildAt(x, y);
-			Object info = view.getTag();
-			
-			if(info instanceof ShortcutInfo){
-				
-			if(intent.getComponent().toString().equals(((ShortcutInfo) info).intent.getComponent().toString())){
-				TextView app_mark = (TextView)view.findViewById(R.id.app_shortcutinfo_mark_id);
-				int markSize = 0;
-				if(mark==LauncherApplication.MMS_MARK){
-					markSize = shenduGetUnreadMMSCount();
-				}else if(mark==LauncherApplication.CALL_MARK){
-					markSize = shenduGetMissCallCount();
-				}
-				if(markSize>0){
-					app_mark.setText(markSize+"");
-					app_mark.setVisibility(View.VISIBLE);
-				}else{
-					app_mark.setVisibility(View.INVISIBLE);
-				}
-			}
-			
-			}
-			view.requestLayout();	
-		}
-	}
-    
+
     /** 
      * 2013-01-07 hhl
      * (non-Javadoc)
@@ -1599,6 +1501,7 @@ public final class Launcher extends Activity
      * TODO: delete the table favorites icon data
      */
     public void shenduChangeTheme(){
+		((LauncherApplication) getApplication()).getWidgetPreviewCache().clear();
 		try {
 			ContentValues contentValues = new ContentValues();
 			byte[] data = null;
@@ -2115,6 +2018,17 @@ public final class Launcher extends Activity
         return mDragController;
     }
 
+    FolderThumbnailCache getFolderThumbnailCache() {
+        return mFolderThumbnailCache;
+    }
+
+    FolderCoverCapture getFolderCoverCapture() {
+        if (mFolderCoverCapture == null) {
+            mFolderCoverCapture = new FolderCoverCapture(this);
+        }
+        return mFolderCoverCapture;
+    }
+
     @Override
     public void startActivityForResult(Intent intent, int requestCode) {
         if (requestCode >= 0) mWaitingForResult = true;
@@ -2389,6 +2303,7 @@ public final class Launcher extends Activity
 
     void removeFolder(FolderInfo folder) {
         sFolders.remove(folder.id);
+        mFolderThumbnailCache.remove(folder.id);
     }
 
     private void startWallpaper() {
@@ -2750,6 +2665,10 @@ public final class Launcher extends Activity
         boolean success = false;
         try {
             success = startActivity(v, intent, tag);
+            if (success) {
+                ((LauncherApplication) getApplication()).getLaunchStats()
+                        .recordLaunch(intent.getComponent());
+            }
         } catch (ActivityNotFoundException e) {
             Toast.makeText(this, R.string.activity_not_found, Toast.LENGTH_SHORT).show();
             Log.e(TAG, "Unable to launch. tag=" + tag + " intent=" + intent, e);
@@ -3199,8 +3118,11 @@ public final class Launcher extends Activity
     @Override
     public void onTrimMemory(int level) {
         super.onTrimMemory(level);
+        // The process may be killed from here on; don't leave launches queued
+        ((LauncherApplication) getApplication()).getLaunchStats().flush();
         if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
             mAppsCustomizeTabHost.onTrimMemory();
+            mDragController.getBitmapPool().trim();
         }
     }
 
@@ -3628,6 +3550,15 @@ public final class Launcher extends Activity
         }
     }
 
+    /**
+     * Tells the workspace the screen ids of its pages, in page order.
+     *
+     * Implementation of the method from LauncherModel.Callbacks.
+     */
+    public void bindScreens(ArrayList<Long> screenIds) {
+        mWorkspace.bindScreenIds(screenIds);
+    }
+
     /**
      * Refreshes the shortcuts shown on the workspace.
      *
@@ -3846,6 +3777,8 @@ public final class Launcher extends Activity
         }
 
         mWorkspaceLoading = false;
+        // Views are laid out by the time the UI thread goes idle
+        mWorkspace.precomputeCurrentPageOutlines();
     }
 
     private boolean canRunNewAppsAnimation() {
@@ -3930,36 +3863,56 @@ public final class Launcher extends Activity
      * @param apps ArrayList of apps
      */
     public void addAppsToWorkspace(final ArrayList<ShortcutInfo> apps){
-    	final Workspace workspace = mWorkspace;
-       int count = apps.size();
-       int screenNum=workspace.getChildCount()-1;
-       int cellCountX = PreferencesProvider.Interface.Homescreen.getCellCountX(this, 4);
-       int cellCountY = PreferencesProvider.Interface.Homescreen.getCellCountY(this, 4);
-       int cellX=0;
-       int cellY=0;
-       int lastCell[]= ((CellLayout) mWorkspace.getChildAt(screenNum)).existsLastOccupiedCell();
-       cellX=lastCell[0];
-       cellY=lastCell[1];  
-       for (int i=0; i<count; i++) {
-    	   final ShortcutInfo shortcutInfo = apps.get(i);
-      	   if(cellX>=cellCountX-1&&cellY>=cellCountY-1){
-      		   screenNum++;
-      		   if(screenNum>=workspace.getChildCount()){
-      			   workspace.addScreen(false);
-      		   }
-      		   cellX=0; 
-      		   cellY=0;
-      	   }else if(cellX>=cellCountX-1&&cellY<cellCountY-1){
-      	   		cellX=0;
-      	   		cellY++; 
-      	   }else{
-      		   cellX++;  
-      	   }
-          View view = createShortcut(shortcutInfo);
-          workspace.addInScreen(view, LauncherSettings.Favorites.CONTAINER_DESKTOP, screenNum,cellX,cellY, 1, 1, false);
-          LauncherModel.addOrMoveItemInDatabase(Launcher.this, shortcutInfo, LauncherSettings.Favorites.CONTAINER_DESKTOP, screenNum, cellX,cellY);
-        }
-  		workspace.savedThePageCount();
+        addAppsToWorkspace(apps, WorkspaceSlotIndex.POLICY_FIRST_FIT);
+    }
+
+    /**
+     * Places the apps on free desktop cells, adding screens as needed, and stores the new ones
+     * with a single database transaction.
+     *
+     * @param policy one of the WorkspaceSlotIndex policies
+     */
+    void addAppsToWorkspace(final ArrayList<ShortcutInfo> apps, int policy) {
+        final int count = apps.size();
+        if (count == 0) {
+            return;
+        }
+        final Workspace workspace = mWorkspace;
+        final WorkspaceSlotIndex index = LauncherModel.buildSlotIndex();
+        String[] keys = null;
+        if (policy == WorkspaceSlotIndex.POLICY_NEAR_SIMILAR) {
+            keys = new String[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = WorkspaceSlotIndex.getSimilarityKey(apps.get(i));
+            }
+        }
+        final int[] slots = index.reserve(count, keys, policy);
+        while (workspace.getChildCount() < index.getScreenCount()) {
+            workspace.addScreen(false);
+        }
+
+        final ArrayList<ShortcutInfo> added = new ArrayList<ShortcutInfo>(count);
+        for (int i = 0; i < count; i++) {
+            final ShortcutInfo shortcutInfo = apps.get(i);
+            final int screen = index.getScreen(slots[i]);
+            final int cellX = index.getCellX(slots[i]);
+            final int cellY = index.getCellY(slots[i]);
+            View view = createShortcut(shortcutInfo);
+            workspace.addInScreen(view, LauncherSettings.Favorites.CONTAINER_DESKTOP, screen,
+                    cellX, cellY, 1, 1, false);
+            if (shortcutInfo.container == ItemInfo.NO_ID) {
+                shortcutInfo.container = LauncherSettings.Favorites.CONTAINER_DESKTOP;
+                shortcutInfo.screen = screen;
+                shortcutInfo.cellX = cellX;
+                shortcutInfo.cellY = cellY;
+                added.add(shortcutInfo);
+            } else {
+                LauncherModel.moveItemInDatabase(this, shortcutInfo,
+                        LauncherSettings.Favorites.CONTAINER_DESKTOP, screen, cellX, cellY);
+            }
+        }
+        LauncherModel.addItemsToDatabase(this, added, false);
+        workspace.savedThePageCount();
     }
 
     /**
@@ -3988,6 +3941,15 @@ public final class Launcher extends Activity
     	addAppsToWorkspace(apps);
     }
 
+    /**
+     * Shortcuts were requested through INSTALL_SHORTCUT; they go next to the apps they launch.
+     *
+     * Implementation of the method from LauncherModel.Callbacks.
+     */
+    public void bindShortcutsInstalled(ArrayList<ShortcutInfo> shortcuts) {
+        addAppsToWorkspace(shortcuts, WorkspaceSlotIndex.POLICY_NEAR_SIMILAR);
+    }
+
     /**
      * A package was updated.
      *
@@ -4279,6 +4241,17 @@ public final class Launcher extends Activity
         for (int i = 0; i < sDumpLogs.size(); i++) {
             writer.println("  " + sDumpLogs.get(i));
         }
+        if (mWorkspace != null) {
+            writer.println(" ");
+            mWorkspace.dumpFrameStats("", writer);
+            mWorkspace.dumpLayerStats("", writer);
+            mWorkspace.dumpWallpaperStats("", writer);
+            mWorkspace.dumpDragStats("", writer);
+        }
+        if (mAppsCustomizeContent != null) {
+            mAppsCustomizeContent.dumpPageLoadStats("", writer);
+        }
+        ((LauncherApplication) getApplication()).getLaunchStats().dump("", writer);
     }
     
 	private  Window mWindow ;
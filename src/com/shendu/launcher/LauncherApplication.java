@@ -25,25 +25,34 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.res.Configuration;
 import android.database.ContentObserver;
-import android.net.Uri;
 import android.os.Handler;
-import android.provider.CallLog.Calls;
+import android.util.Log;
 
 import com.shendu.launcher.R;
 
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.ref.WeakReference;
+import java.text.Collator;
 
 public class LauncherApplication extends Application {
+    static final String TAG = "Launcher.Application";
+
     public LauncherModel mModel;
     public IconCache mIconCache;
+    public WidgetPreviewCache mWidgetPreviewCache;
+    public WallpaperThumbnailCache mWallpaperThumbnailCache;
+    public BadgeManager mBadgeManager;
+    public LaunchStats mLaunchStats;
+    private PinyinConverter mPinyinConverter;
+    private SortKeyGenerator mSortKeyGenerator;
     private static boolean sIsScreenLarge;
     private static float sScreenDensity;
     public static final ComponentName sMMSComponentName = 
     		new ComponentName("com.android.mms","com.android.mms.ui.ConversationList");
     public static final ComponentName sCallComponentName = 
     		new ComponentName("com.android.contacts","com.android.contacts.activities.DialtactsActivity");
-    public static final int MMS_MARK = 1;
-    public static final int CALL_MARK = 2;
     private static int sLongPressTimeout = 300;
     //private static final String sSharedPreferencesKey = "com.shendu.launcher.prefs";
     WeakReference<LauncherProvider> mLauncherProvider;
@@ -57,6 +66,9 @@ public class LauncherApplication extends Application {
         sScreenDensity = getResources().getDisplayMetrics().density;
 
         mIconCache = new IconCache(this);
+        mWidgetPreviewCache = new WidgetPreviewCache(this);
+        mWallpaperThumbnailCache = new WallpaperThumbnailCache(this);
+        mLaunchStats = new LaunchStats(this);
         mModel = new LauncherModel(this, mIconCache);
 
         // Register intent receivers
@@ -84,12 +96,11 @@ public class LauncherApplication extends Application {
         resolver.registerContentObserver(LauncherSettings.Favorites.CONTENT_URI, true,
                 mFavoritesObserver);
         
-        // Register for changes to the call info
-        resolver.registerContentObserver(Calls.CONTENT_URI, true,mCallInfoObserver);
-        
-        // Register for changes to the sms and mms info
-        resolver.registerContentObserver(Uri.parse("content://mms-sms/conversations"),true,mSMSObserver);
-        
+        // Unread count badges for the dialer and messaging apps
+        mBadgeManager = new BadgeManager(this);
+        mBadgeManager.setCallbacks(mModel);
+        mBadgeManager.registerProvider(new MissedCallBadgeProvider());
+        mBadgeManager.registerProvider(new UnreadMessageBadgeProvider());
     }
 
     /**
@@ -101,8 +112,7 @@ public class LauncherApplication extends Application {
         unregisterReceiver(mModel);
         ContentResolver resolver = getContentResolver();
         resolver.unregisterContentObserver(mFavoritesObserver);
-        resolver.unregisterContentObserver(mCallInfoObserver);
-        resolver.unregisterContentObserver(mSMSObserver);
+        mBadgeManager.unregisterAll();
     }
 
     /**
@@ -118,42 +128,6 @@ public class LauncherApplication extends Application {
         }
     };
 
-    /**
-     * 2012-9-10 hhl
-     * LauncherApplication.java
-     * Trebuchet
-     * TODO: the listener of call info is changed
-     */
-    private final ContentObserver mCallInfoObserver = new ContentObserver(new Handler()) {
-    	public void onChange(boolean selfChange) {
-            //Log.i("hhl", "==LauncherApplications.java==mCallInfoObserver==");
-    		Intent intent = new Intent();
-    		intent.setAction(Intent.ACTION_MAIN);
-    		intent.setComponent(sCallComponentName);
-            intent.addCategory(Intent.CATEGORY_LAUNCHER);
-            intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK|Intent.FLAG_ACTIVITY_RESET_TASK_IF_NEEDED);
-    		mModel.shenduUpdateAppMarkFromRegister(CALL_MARK,intent);
-        }
-    };
-    
-    /**
-     * 2012-9-10 hhl
-     * LauncherApplication.java
-     * Trebuchet
-     * TODO: the listener of sms and mms info is changed
-     */
-    private final ContentObserver mSMSObserver = new ContentObserver(new Handler()) {
-    	public void onChange(boolean selfChange) {
-            //Log.i("hhl", "==LauncherApplications.java==mSMSObserver==");
-    		Intent intent = new Intent();
-    		intent.setAction(Intent.ACTION_MAIN);
-    		intent.setComponent(sMMSComponentName);
-            intent.addCategory(Intent.CATEGORY_LAUNCHER);
-            intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK|Intent.FLAG_ACTIVITY_RESET_TASK_IF_NEEDED);
-    		mModel.shenduUpdateAppMarkFromRegister(MMS_MARK,intent);
-        }
-    };
-
     LauncherModel setLauncher(Launcher launcher) {
         mModel.initialize(launcher);
         return mModel;
@@ -163,6 +137,53 @@ public class LauncherApplication extends Application {
         return mIconCache;
     }
 
+    WidgetPreviewCache getWidgetPreviewCache() {
+        return mWidgetPreviewCache;
+    }
+
+    WallpaperThumbnailCache getWallpaperThumbnailCache() {
+        return mWallpaperThumbnailCache;
+    }
+
+    BadgeManager getBadgeManager() {
+        return mBadgeManager;
+    }
+
+    LaunchStats getLaunchStats() {
+        return mLaunchStats;
+    }
+
+    /**
+     * Returns the pinyin table, reading it on first use. Callers should be off the UI thread
+     * the first time.
+     */
+    synchronized PinyinConverter getPinyinConverter() {
+        if (mPinyinConverter == null) {
+            InputStream in = new BufferedInputStream(
+                    getResources().openRawResource(R.raw.pinyin_table));
+            try {
+                mPinyinConverter = new PinyinConverter(in);
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to read the pinyin table", e);
+                mPinyinConverter = new PinyinConverter();
+            } finally {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+            }
+        }
+        return mPinyinConverter;
+    }
+
+    synchronized SortKeyGenerator getSortKeyGenerator() {
+        if (mSortKeyGenerator == null) {
+            mSortKeyGenerator = new SortKeyGenerator(getPinyinConverter(), Collator.getInstance());
+        }
+        return mSortKeyGenerator;
+    }
+
     LauncherModel getModel() {
         return mModel;
     }
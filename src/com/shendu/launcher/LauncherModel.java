@@ -55,10 +55,10 @@ import java.lang.ref.WeakReference;
 import java.net.URISyntaxException;
 import java.text.Collator;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 
@@ -69,7 +69,7 @@ import android.content.res.CustomTheme;
  * LauncherModel object held in a static. Also provide APIs for updating the database state
  * for the Launcher.
  */
-public class LauncherModel extends BroadcastReceiver {
+public class LauncherModel extends BroadcastReceiver implements BadgeManager.Callbacks {
     static final boolean DEBUG_LOADERS = false;
     static final String TAG = "Launcher.model";
 
@@ -79,6 +79,8 @@ public class LauncherModel extends BroadcastReceiver {
     private int mAllAppsLoadDelay; // milliseconds between batches
 
     private final LauncherApplication mApp;
+    // The loader reads the workspace through this context's content resolver
+    private final Context mLoaderContext;
     private final Object mLock = new Object();
     private DeferredHandler mHandler = new DeferredHandler();
     private LoaderTask mLoaderTask;
@@ -99,6 +101,8 @@ public class LauncherModel extends BroadcastReceiver {
 
     // < only access in worker thread >
     private AllAppsList mAllAppsList;
+    // Search index over mAllAppsList.data, created and written on the worker thread
+    private volatile AppSearchIndex<ShortcutInfo> mAppSearchIndex;
 
     // sItemsIdMap maps *all* the ItemInfos (shortcuts, folders, and widgets) created by
     // LauncherModel to their ids
@@ -113,12 +117,48 @@ public class LauncherModel extends BroadcastReceiver {
     static final ArrayList<LauncherAppWidgetInfo> sAppWidgets =
         new ArrayList<LauncherAppWidgetInfo>();
 
+    // sBgLock guards the structure of sWorkspaceItems, sAppWidgets and sPendingWorkspaceItems.
+    //       The worker thread writes them under it; other threads may only read them under it.
+    static final Object sBgLock = new Object();
+
+    // sPendingWorkspaceItems holds the items addItemsToDatabase() queued for the worker thread
+    //       and not yet added to the model, so that a batch placed right after them sees them.
+    static final ArrayList<ItemInfo> sPendingWorkspaceItems = new ArrayList<ItemInfo>();
+
     // sFolders is all FolderInfos created by LauncherModel. Passed to bindFolders()
     static final HashMap<Long, FolderInfo> sFolders = new HashMap<Long, FolderInfo>();
 
+    // sWorkspaceScreens holds the screen ids in page order. Desktop favorites store the id of
+    //       their screen, ItemInfo.screen the page index; see putScreenId(). Written on the
+    //       worker thread; other threads read it under its own lock.
+    static final ArrayList<Long> sWorkspaceScreens = new ArrayList<Long>();
+
     // sDbIconCache is the set of ItemInfos that need to have their icons updated in the database
     static final HashMap<Object, byte[]> sDbIconCache = new HashMap<Object, byte[]>();
 
+    // Whether a favorites row has an icon blob, computed by the workspace query
+    static final String HAS_ICON = "hasIcon";
+
+    // Every favorites column the loader reads, without the icon blobs
+    private static final String[] WORKSPACE_PROJECTION = new String[] {
+        LauncherSettings.Favorites._ID,
+        LauncherSettings.Favorites.INTENT,
+        LauncherSettings.Favorites.TITLE,
+        LauncherSettings.Favorites.ICON_TYPE,
+        LauncherSettings.Favorites.ICON_PACKAGE,
+        LauncherSettings.Favorites.ICON_RESOURCE,
+        LauncherSettings.Favorites.CONTAINER,
+        LauncherSettings.Favorites.ITEM_TYPE,
+        LauncherSettings.Favorites.APPWIDGET_ID,
+        LauncherSettings.Favorites.SCREEN,
+        LauncherSettings.Favorites.CELLX,
+        LauncherSettings.Favorites.CELLY,
+        LauncherSettings.Favorites.SPANX,
+        LauncherSettings.Favorites.SPANY,
+        LauncherSettings.Favorites.COMPONENT_NAME,
+        "(" + LauncherSettings.Favorites.ICON + " IS NOT NULL) AS " + HAS_ICON,
+    };
+
     // </ only access in worker thread >
 
     private IconCache mIconCache;
@@ -133,27 +173,10 @@ public class LauncherModel extends BroadcastReceiver {
     
     private boolean mLoadWorkspaceOk = false; //for package change receiver
 	
-    /**
-     * 2012-9-10 hhl
-     * LauncherModel.java
-     * Trebuchet
-     * TODO: used to update the call and sms package mark
-     */
-    Handler mUpdateAppMarkHandler = new Handler(){
-    	public void handleMessage(android.os.Message msg) {
-    		int mark = msg.what;
-    		ShortcutInfo shortcutInfo = (ShortcutInfo)msg.obj;
-    		Callbacks callbacks = mCallbacks != null ? mCallbacks.get() : null;
-            if (callbacks!= null) {
-                callbacks.shenduUpdateAppMark(mark,shortcutInfo.intent,shortcutInfo.container,
-                		shortcutInfo.screen,shortcutInfo.cellX,shortcutInfo.cellY);
-            }
-    	};
-    };
-    
     public interface Callbacks {
         public boolean setLoadOnResume();
         public int getCurrentWorkspaceScreen();
+        public void bindScreens(ArrayList<Long> screenIds);
         public void startBinding();
         public void bindItems(ArrayList<ItemInfo> shortcuts, int start, int end);
         public void bindFolders(HashMap<Long,FolderInfo> folders);
@@ -161,6 +184,7 @@ public class LauncherModel extends BroadcastReceiver {
         public void bindAppWidget(LauncherAppWidgetInfo info);
         public void bindAllApplications(ArrayList<ShortcutInfo> apps);
         public void bindAppsAdded(ArrayList<ShortcutInfo> apps);
+        public void bindShortcutsInstalled(ArrayList<ShortcutInfo> shortcuts);
         public void bindAppsUpdated(ArrayList<ShortcutInfo> apps);
         public void bindAppsRemoved(ArrayList<ShortcutInfo> apps, boolean permanent);
         public void bindPackagesUpdated();
@@ -168,13 +192,22 @@ public class LauncherModel extends BroadcastReceiver {
         //public boolean isAllAppsButtonRank(int rank); //do not used,remove by hhl
         public void bindSearchablesChanged();
         public void bindWallpaperChanged(); //used to changed current wallpaper,add by hhl
-        public void shenduUpdateAppMark(int mark,Intent intent,long container,int screen,int x,int y); //used to update app mark,add by hhl
+        public void bindUnreadCountsChanged(HashMap<ComponentName, Integer> changed);
         public void shenduChangeTheme(); //used to delete database icon
     }
 
     LauncherModel(LauncherApplication app, IconCache iconCache) {
+        this(app, iconCache, app);
+    }
+
+    /**
+     * Loads the workspace through loaderContext instead of the application, so tests can bind
+     * from a scratch database. Default favorites are only loaded into the application's own.
+     */
+    LauncherModel(LauncherApplication app, IconCache iconCache, Context loaderContext) {
         mAppsCanBeOnExternalStorage = !Environment.isExternalStorageEmulated();
         mApp = app;
+        mLoaderContext = loaderContext;
         mAllAppsList = new AllAppsList(iconCache);
         mIconCache = iconCache;
 
@@ -250,10 +283,13 @@ public class LauncherModel extends BroadcastReceiver {
         final long itemId = item.id;
         final Uri uri = LauncherSettings.Favorites.getContentUri(itemId, false);
         final ContentResolver cr = context.getContentResolver();
+        final boolean write = putScreenId(context, values, item.container);
 
         Runnable r = new Runnable() {
             public void run() {
-                cr.update(uri, values, null, null);
+                if (write) {
+                    cr.update(uri, values, null, null);
+                }
 
                 ItemInfo modelItem = sItemsIdMap.get(itemId);
                 if(modelItem==null){ //add
@@ -271,13 +307,15 @@ public class LauncherModel extends BroadcastReceiver {
                 // Items are added/removed from the corresponding FolderInfo elsewhere, such
                 // as in Workspace.onDrop. Here, we just add/remove them from the list of items
                 // that are on the desktop, as appropriate
-                if (modelItem.container == LauncherSettings.Favorites.CONTAINER_DESKTOP ||
-                        modelItem.container == LauncherSettings.Favorites.CONTAINER_HOTSEAT) {
-                    if (!sWorkspaceItems.contains(modelItem)) {
-                        sWorkspaceItems.add(modelItem);
+                synchronized (sBgLock) {
+                    if (modelItem.container == LauncherSettings.Favorites.CONTAINER_DESKTOP ||
+                            modelItem.container == LauncherSettings.Favorites.CONTAINER_HOTSEAT) {
+                        if (!sWorkspaceItems.contains(modelItem)) {
+                            sWorkspaceItems.add(modelItem);
+                        }
+                    } else {
+                        sWorkspaceItems.remove(modelItem);
                     }
-                } else {
-                    sWorkspaceItems.remove(modelItem);
                 }
             }
         };
@@ -366,9 +404,20 @@ public class LauncherModel extends BroadcastReceiver {
         /*Cursor c = cr.query(LauncherSettings.Favorites.CONTENT_URI,
             new String[] { "title", "intent" }, "title=? and intent=?",
             new String[] { title, intent.toUri(0) }, null);*/ //moditify
-        Cursor c = cr.query(LauncherSettings.Favorites.CONTENT_URI,
-                new String[] { "intent" }, "intent=?",
-                new String[] { intent.toUri(0) }, null);
+        final ComponentName cn = intent.getComponent();
+        final Cursor c;
+        if (cn != null) {
+            c = cr.query(LauncherSettings.Favorites.CONTENT_URI,
+                    new String[] { LauncherSettings.Favorites._ID },
+                    LauncherSettings.Favorites.COMPONENT_NAME + "=? and "
+                            + LauncherSettings.Favorites.INTENT + "=?",
+                    new String[] { cn.flattenToShortString(), intent.toUri(0) }, null);
+        } else {
+            c = cr.query(LauncherSettings.Favorites.CONTENT_URI,
+                    new String[] { LauncherSettings.Favorites._ID },
+                    LauncherSettings.Favorites.INTENT + "=?",
+                    new String[] { intent.toUri(0) }, null);
+        }
         boolean result = false;
         try {
             result = c.moveToFirst();
@@ -378,6 +427,42 @@ public class LauncherModel extends BroadcastReceiver {
         return result;
     }
 
+    // The uri of an application launch intent up to its component; see parseFavoriteIntent()
+    private static final String APP_INTENT_URI_PREFIX;
+    static {
+        Intent appIntent = new Intent(Intent.ACTION_MAIN);
+        appIntent.addCategory(Intent.CATEGORY_LAUNCHER);
+        appIntent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK |
+                Intent.FLAG_ACTIVITY_RESET_TASK_IF_NEEDED);
+        String uri = appIntent.toUri(0);
+        APP_INTENT_URI_PREFIX = uri.substring(0, uri.length() - "end".length()) + "component=";
+    }
+
+    /**
+     * Parses a favorites intent. Plain application launch intents, which make up most of the
+     * workspace, are rebuilt from the pre-parsed component column instead of going through
+     * {@link Intent#parseUri(String, int)}.
+     */
+    static Intent parseFavoriteIntent(String intentUri, String component)
+            throws URISyntaxException {
+        if (component != null && intentUri != null
+                && intentUri.length() == APP_INTENT_URI_PREFIX.length() + component.length() + 4
+                && intentUri.startsWith(APP_INTENT_URI_PREFIX)
+                && intentUri.startsWith(component, APP_INTENT_URI_PREFIX.length())
+                && intentUri.endsWith(";end")) {
+            ComponentName cn = ComponentName.unflattenFromString(component);
+            if (cn != null) {
+                Intent intent = new Intent(Intent.ACTION_MAIN);
+                intent.addCategory(Intent.CATEGORY_LAUNCHER);
+                intent.setComponent(cn);
+                intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK |
+                        Intent.FLAG_ACTIVITY_RESET_TASK_IF_NEEDED);
+                return intent;
+            }
+        }
+        return Intent.parseUri(intentUri, 0);
+    }
+
     /**
      * Returns an ItemInfo array containing all the items in the LauncherModel.
      * The ItemInfo.id is not set through this function.
@@ -488,34 +573,64 @@ public class LauncherModel extends BroadcastReceiver {
         item.id = app.getLauncherProvider().generateNewId();
         values.put(LauncherSettings.Favorites._ID, item.id);
         item.updateValuesWithCoordinates(values, item.cellX, item.cellY);
+        final boolean write = putScreenId(context, values, item.container);
 
         Runnable r = new Runnable() {
             public void run() {
-                cr.insert(notify ? LauncherSettings.Favorites.CONTENT_URI :
-                        LauncherSettings.Favorites.CONTENT_URI_NO_NOTIFICATION, 
-                        values);
+                if (write) {
+                    cr.insert(notify ? LauncherSettings.Favorites.CONTENT_URI :
+                            LauncherSettings.Favorites.CONTENT_URI_NO_NOTIFICATION,
+                            values);
+                }
+                addItemToModel(item, "addItemToDatabase");
+            }
+        };
+
+        if (sWorkerThread.getThreadId() == Process.myTid()) {
+            r.run();
+        } else {
+            sWorker.post(r);
+        }
+    }
 
-                if (sItemsIdMap.containsKey(item.id)) {
-                    // we should not be adding new items in the db with the same id
-                    throw new RuntimeException("Error: ItemInfo id (" + item.id + ") passed to " +
-                        "addItemToDatabase already exists." + item.toString());
+    /**
+     * Adds a batch of items to the database with a single transaction. Each item must already
+     * carry its container, screen and cell; ids are assigned here.
+     */
+    static void addItemsToDatabase(Context context, final ArrayList<? extends ItemInfo> items,
+            final boolean notify) {
+        final int count = items.size();
+        if (count == 0) {
+            return;
+        }
+        final ArrayList<ContentValues> rows = new ArrayList<ContentValues>(count);
+        final ContentResolver cr = context.getContentResolver();
+        LauncherApplication app = (LauncherApplication) context.getApplicationContext();
+        for (int i = 0; i < count; i++) {
+            final ItemInfo item = items.get(i);
+            final ContentValues row = new ContentValues();
+            item.onAddToDatabase(row);
+            item.id = app.getLauncherProvider().generateNewId();
+            row.put(LauncherSettings.Favorites._ID, item.id);
+            item.updateValuesWithCoordinates(row, item.cellX, item.cellY);
+            if (putScreenId(context, row, item.container)) {
+                rows.add(row);
+            }
+        }
+        final ContentValues[] values = rows.toArray(new ContentValues[rows.size()]);
+        final ArrayList<ItemInfo> added = new ArrayList<ItemInfo>(items);
+
+        Runnable r = new Runnable() {
+            public void run() {
+                if (values.length > 0) {
+                    cr.bulkInsert(notify ? LauncherSettings.Favorites.CONTENT_URI :
+                            LauncherSettings.Favorites.CONTENT_URI_NO_NOTIFICATION, values);
                 }
-                sItemsIdMap.put(item.id, item);
-                switch (item.itemType) {
-                    case LauncherSettings.Favorites.ITEM_TYPE_FOLDER:
-                        sFolders.put(item.id, (FolderInfo) item);
-                        // Fall through
-                    //case LauncherSettings.Favorites.ITEM_TYPE_APPLICATION:
-                    case LauncherSettings.Favorites.ITEM_TYPE_SHORTCUT:
-                    case LauncherSettings.Favorites.ITEM_TYPE_DELETESHOETCUT://for editstate widget/shortcut
-                        if (item.container == LauncherSettings.Favorites.CONTAINER_DESKTOP ||
-                                item.container == LauncherSettings.Favorites.CONTAINER_HOTSEAT) {
-                            sWorkspaceItems.add(item);
-                        }
-                        break;
-                    case LauncherSettings.Favorites.ITEM_TYPE_APPWIDGET:
-                        sAppWidgets.add((LauncherAppWidgetInfo) item);
-                        break;
+                synchronized (sBgLock) {
+                    for (int i = 0; i < count; i++) {
+                        addItemToModel(added.get(i), "addItemsToDatabase");
+                    }
+                    sPendingWorkspaceItems.removeAll(added);
                 }
             }
         };
@@ -523,17 +638,162 @@ public class LauncherModel extends BroadcastReceiver {
         if (sWorkerThread.getThreadId() == Process.myTid()) {
             r.run();
         } else {
+            synchronized (sBgLock) {
+                sPendingWorkspaceItems.addAll(added);
+            }
             sWorker.post(r);
         }
     }
 
+    /**
+     * Desktop favorites store the id of their screen rather than its page index, so that moving
+     * or removing a page only writes its workspaceScreens row. Replaces the page index in
+     * values by the screen id; values of other containers are left alone.
+     *
+     * The workspace knows the id of every page it shows, including pages it just added. Without
+     * a launcher, or for a page it has no id for, the page order the model last loaded or stored
+     * is used.
+     *
+     * @return false if there is no screen for the page index; the row must not be written then,
+     *         since the page index would be read back as a screen id
+     */
+    static boolean putScreenId(Context context, ContentValues values, long container) {
+        if (container != LauncherSettings.Favorites.CONTAINER_DESKTOP ||
+                !values.containsKey(LauncherSettings.Favorites.SCREEN)) {
+            return true;
+        }
+        final int page = values.getAsInteger(LauncherSettings.Favorites.SCREEN);
+        long screenId = -1;
+        if (context instanceof Launcher) {
+            screenId = ((Launcher) context).getWorkspace().getScreenIdForPage(page);
+        }
+        if (screenId < 0) {
+            synchronized (sWorkspaceScreens) {
+                if (page >= 0 && page < sWorkspaceScreens.size()) {
+                    screenId = sWorkspaceScreens.get(page);
+                }
+            }
+        }
+        if (screenId < 0) {
+            Log.e(TAG, "No workspace screen for page " + page + ", not storing the item");
+            return false;
+        }
+        values.put(LauncherSettings.Favorites.SCREEN, screenId);
+        return true;
+    }
+
+    /**
+     * Stores a new page order. Only the rows of screens that were added, moved or removed are
+     * written; favorites are not touched.
+     *
+     * @param screenIds the screen id of every page, in page order
+     */
+    static void updateWorkspaceScreenOrder(Context context, final ArrayList<Long> screenIds) {
+        final ContentResolver cr = context.getContentResolver();
+
+        Runnable r = new Runnable() {
+            public void run() {
+                final HashMap<Long, Integer> oldRanks = new HashMap<Long, Integer>();
+                final int oldCount = sWorkspaceScreens.size();
+                for (int rank = 0; rank < oldCount; rank++) {
+                    oldRanks.put(sWorkspaceScreens.get(rank), rank);
+                }
+                final ContentValues values = new ContentValues();
+                final int count = screenIds.size();
+                for (int rank = 0; rank < count; rank++) {
+                    final long screenId = screenIds.get(rank);
+                    final Integer oldRank = oldRanks.remove(screenId);
+                    if (oldRank != null && oldRank == rank) {
+                        continue;
+                    }
+                    values.clear();
+                    values.put(LauncherSettings.WorkspaceScreens.SCREEN_RANK, rank);
+                    if (oldRank == null) {
+                        values.put(LauncherSettings.WorkspaceScreens._ID, screenId);
+                        cr.insert(LauncherSettings.WorkspaceScreens.CONTENT_URI, values);
+                    } else {
+                        cr.update(LauncherSettings.WorkspaceScreens.getContentUri(screenId),
+                                values, null, null);
+                    }
+                }
+                // Whatever is left was removed from the workspace
+                for (long screenId : oldRanks.keySet()) {
+                    cr.delete(LauncherSettings.WorkspaceScreens.getContentUri(screenId),
+                            null, null);
+                }
+                synchronized (sWorkspaceScreens) {
+                    sWorkspaceScreens.clear();
+                    sWorkspaceScreens.addAll(screenIds);
+                }
+            }
+        };
+
+        if (sWorkerThread.getThreadId() == Process.myTid()) {
+            r.run();
+        } else {
+            sWorker.post(r);
+        }
+    }
+
+    // < only call in worker thread >
+    private static void addItemToModel(ItemInfo item, String callingFunction) {
+        if (sItemsIdMap.containsKey(item.id)) {
+            // we should not be adding new items in the db with the same id
+            throw new RuntimeException("Error: ItemInfo id (" + item.id + ") passed to " +
+                callingFunction + " already exists." + item.toString());
+        }
+        sItemsIdMap.put(item.id, item);
+        switch (item.itemType) {
+            case LauncherSettings.Favorites.ITEM_TYPE_FOLDER:
+                sFolders.put(item.id, (FolderInfo) item);
+                // Fall through
+            //case LauncherSettings.Favorites.ITEM_TYPE_APPLICATION:
+            case LauncherSettings.Favorites.ITEM_TYPE_SHORTCUT:
+            case LauncherSettings.Favorites.ITEM_TYPE_DELETESHOETCUT://for editstate widget/shortcut
+                if (item.container == LauncherSettings.Favorites.CONTAINER_DESKTOP ||
+                        item.container == LauncherSettings.Favorites.CONTAINER_HOTSEAT) {
+                    synchronized (sBgLock) {
+                        sWorkspaceItems.add(item);
+                    }
+                }
+                break;
+            case LauncherSettings.Favorites.ITEM_TYPE_APPWIDGET:
+                synchronized (sBgLock) {
+                    sAppWidgets.add((LauncherAppWidgetInfo) item);
+                }
+                break;
+        }
+    }
+
     /**
      * Creates a new unique child id, for a given cell span across all layouts.
      */
     static int getCellLayoutChildId(
             long container, int screen, int localCellX, int localCellY, int spanX, int spanY) {
+        // Cells never exceed 16 per side, which leaves 16 bits for the screen
         return (((int) container & 0xFF) << 24)
-                | (screen & 0xFF) << 16 | (localCellX & 0xFF) << 8 | (localCellY & 0xFF);
+                | (screen & 0xFFFF) << 8 | (localCellX & 0xF) << 4 | (localCellY & 0xF);
+    }
+
+    /**
+     * Snapshots the free desktop cells from the model so a batch of items can be placed in one
+     * pass; see {@link WorkspaceSlotIndex#fromItems}. Covers every page of sWorkspaceScreens
+     * and the items addItemsToDatabase() has not handed to the model yet.
+     */
+    static WorkspaceSlotIndex buildSlotIndex() {
+        final int screenCount;
+        synchronized (sWorkspaceScreens) {
+            screenCount = sWorkspaceScreens.size();
+        }
+        final ArrayList<ItemInfo> items;
+        synchronized (sBgLock) {
+            items = new ArrayList<ItemInfo>(sWorkspaceItems.size() + sAppWidgets.size()
+                    + sPendingWorkspaceItems.size());
+            items.addAll(sWorkspaceItems);
+            items.addAll(sAppWidgets);
+            items.addAll(sPendingWorkspaceItems);
+        }
+        return WorkspaceSlotIndex.fromItems(mCellCountX, mCellCountY, screenCount, items);
     }
 
     static int getCellCountX() {
@@ -564,19 +824,21 @@ public class LauncherModel extends BroadcastReceiver {
         Runnable r = new Runnable() {
             public void run() {
                 cr.delete(uriToDelete, null, null);
-                switch (item.itemType) {
-                    case LauncherSettings.Favorites.ITEM_TYPE_FOLDER:
-                        sFolders.remove(item.id);
-                        sWorkspaceItems.remove(item);
-                        break;
-                    //case LauncherSettings.Favorites.ITEM_TYPE_APPLICATION:
-                    case LauncherSettings.Favorites.ITEM_TYPE_SHORTCUT:
-                    case LauncherSettings.Favorites.ITEM_TYPE_DELETESHOETCUT://for editstate widget/shortcut
-                        sWorkspaceItems.remove(item);
-                        break;
-                    case LauncherSettings.Favorites.ITEM_TYPE_APPWIDGET:
-                        sAppWidgets.remove((LauncherAppWidgetInfo) item);
-                        break;
+                synchronized (sBgLock) {
+                    switch (item.itemType) {
+                        case LauncherSettings.Favorites.ITEM_TYPE_FOLDER:
+                            sFolders.remove(item.id);
+                            sWorkspaceItems.remove(item);
+                            break;
+                        //case LauncherSettings.Favorites.ITEM_TYPE_APPLICATION:
+                        case LauncherSettings.Favorites.ITEM_TYPE_SHORTCUT:
+                        case LauncherSettings.Favorites.ITEM_TYPE_DELETESHOETCUT://for editstate widget/shortcut
+                            sWorkspaceItems.remove(item);
+                            break;
+                        case LauncherSettings.Favorites.ITEM_TYPE_APPWIDGET:
+                            sAppWidgets.remove((LauncherAppWidgetInfo) item);
+                            break;
+                    }
                 }
                 sItemsIdMap.remove(item.id);
                 sDbIconCache.remove(item);
@@ -601,7 +863,9 @@ public class LauncherModel extends BroadcastReceiver {
                 sItemsIdMap.remove(info.id);
                 sFolders.remove(info.id);
                 sDbIconCache.remove(info);
-                sWorkspaceItems.remove(info);
+                synchronized (sBgLock) {
+                    sWorkspaceItems.remove(info);
+                }
 
                 cr.delete(LauncherSettings.Favorites.CONTENT_URI_NO_NOTIFICATION,
                         LauncherSettings.Favorites.CONTAINER + "=" + info.id, null);
@@ -725,6 +989,7 @@ public class LauncherModel extends BroadcastReceiver {
                 }
             }
         } else if(Intent.ACTION_WALLPAPER_CHANGED.equals(action)){
+            mApp.getWallpaperThumbnailCache().onWallpaperChanged();
         	Callbacks callbacks = mCallbacks==null?null:mCallbacks.get();
             if (callbacks != null) {
                 callbacks.bindWallpaperChanged();
@@ -808,7 +1073,7 @@ public class LauncherModel extends BroadcastReceiver {
                 // If there is already one running, tell it to stop.
                 // also, don't downgrade isLaunching if we're already running
                 isLaunching = isLaunching || stopLoaderLocked();
-                mLoaderTask = new LoaderTask(mApp, isLaunching);
+                mLoaderTask = new LoaderTask(mLoaderContext, isLaunching);
                 sWorkerThread.setPriority(Thread.NORM_PRIORITY);
                 sWorker.post(mLoaderTask);
             }
@@ -1032,8 +1297,12 @@ public class LauncherModel extends BroadcastReceiver {
         }
 
         // check & update map of what's occupied; used to discard overlapping/invalid items
-        private boolean checkItemPlacement(ItemInfo occupied[][][], ItemInfo item) {
-            int containerIndex = item.screen;
+        private boolean checkItemPlacement(ArrayList<ItemInfo[][]> occupied,
+                ArrayList<ItemInfo> hotseatOccupied, ItemInfo item) {
+            if (item.screen < 0) {
+                Log.e(TAG, "Error loading shortcut " + item + " onto screen " + item.screen);
+                return false;
+            }
             if (item.container == LauncherSettings.Favorites.CONTAINER_HOTSEAT) {
                 // Return early if we detect that an item is under the hotseat button
                  /* do not used,remove by hhl
@@ -1041,15 +1310,18 @@ public class LauncherModel extends BroadcastReceiver {
                     return false;
                 }*/
 
-                // We use the last index to refer to the hotseat and the screen as the rank, so
-                // test and update the occupied state accordingly
-                if (occupied[Launcher.MAX_SCREEN_COUNT][item.screen][0] != null) {
+                // The screen of a hotseat item is its rank, so test and update the hotseat
+                // occupied state accordingly
+                while (hotseatOccupied.size() <= item.screen) {
+                    hotseatOccupied.add(null);
+                }
+                if (hotseatOccupied.get(item.screen) != null) {
                     Log.e(TAG, "Error loading shortcut into hotseat " + item
                         + " into position (" + item.screen + ":" + item.cellX + "," + item.cellY
-                        + ") occupied by " + occupied[Launcher.MAX_SCREEN_COUNT][item.screen][0]);
+                        + ") occupied by " + hotseatOccupied.get(item.screen));
                     return false;
                 } else {
-                    occupied[Launcher.MAX_SCREEN_COUNT][item.screen][0] = item;
+                    hotseatOccupied.set(item.screen, item);
                     return true;
                 }
             } else if (item.container != LauncherSettings.Favorites.CONTAINER_DESKTOP) {
@@ -1057,31 +1329,92 @@ public class LauncherModel extends BroadcastReceiver {
                 return true;
             }
 
+            // Pages are allocated as items turn up on them, so memory follows the pages in use
+            while (occupied.size() <= item.screen) {
+                occupied.add(null);
+            }
+            ItemInfo[][] page = occupied.get(item.screen);
+            if (page == null) {
+                page = new ItemInfo[mCellCountX + 1][mCellCountY + 1];
+                occupied.set(item.screen, page);
+            }
+
             // Check if any workspace icons overlap with each other
             for (int x = item.cellX; x < (item.cellX+item.spanX); x++) {
                 for (int y = item.cellY; y < (item.cellY+item.spanY); y++) {
-                    if (occupied[containerIndex][x][y] != null) {
+                    if (page[x][y] != null) {
                   
              
                         	
                             Log.e(TAG, "Error loading shortcut " + item
-                                    + " into cell (" + containerIndex + "-" + item.screen + ":"
+                                    + " into cell (" + item.screen + ":"
                                     + x + "," + y
                                     + ") occupied by "
-                                    + occupied[containerIndex][x][y]);
+                                    + page[x][y]);
                             return false;
                     }
                 }
             }
             for (int x = item.cellX; x < (item.cellX+item.spanX); x++) {
                 for (int y = item.cellY; y < (item.cellY+item.spanY); y++) {
-                    occupied[containerIndex][x][y] = item;
+                    page[x][y] = item;
                 }
             }
 
             return true;
         }
 
+        /**
+         * Reads the page order into sWorkspaceScreens and returns the page index of every
+         * screen id.
+         */
+        private HashMap<Long, Integer> loadWorkspaceScreens(ContentResolver contentResolver) {
+            final ArrayList<Long> screenIds = new ArrayList<Long>();
+            final HashMap<Long, Integer> screenRanks = new HashMap<Long, Integer>();
+            final Cursor c = contentResolver.query(LauncherSettings.WorkspaceScreens.CONTENT_URI,
+                    new String[] { LauncherSettings.WorkspaceScreens._ID }, null, null,
+                    LauncherSettings.WorkspaceScreens.SCREEN_RANK);
+            try {
+                while (c.moveToNext()) {
+                    final long screenId = c.getLong(0);
+                    screenRanks.put(screenId, screenIds.size());
+                    screenIds.add(screenId);
+                }
+            } finally {
+                c.close();
+            }
+            synchronized (sWorkspaceScreens) {
+                sWorkspaceScreens.clear();
+                sWorkspaceScreens.addAll(screenIds);
+            }
+            return screenRanks;
+        }
+
+        /**
+         * Returns the page index of a desktop favorite's screen id; other containers keep their
+         * screen value. A screen whose row was never written becomes a new last page rather
+         * than losing its items.
+         */
+        private int getScreenRank(ContentResolver contentResolver,
+                HashMap<Long, Integer> screenRanks, int container, long screenId) {
+            if (container != LauncherSettings.Favorites.CONTAINER_DESKTOP) {
+                return (int) screenId;
+            }
+            Integer rank = screenRanks.get(screenId);
+            if (rank == null) {
+                synchronized (sWorkspaceScreens) {
+                    rank = sWorkspaceScreens.size();
+                    sWorkspaceScreens.add(screenId);
+                }
+                screenRanks.put(screenId, rank);
+                final ContentValues values = new ContentValues();
+                values.put(LauncherSettings.WorkspaceScreens._ID, screenId);
+                values.put(LauncherSettings.WorkspaceScreens.SCREEN_RANK, rank);
+                contentResolver.insert(LauncherSettings.WorkspaceScreens.CONTENT_URI, values);
+            }
+            return rank;
+        }
+
         private void loadWorkspace() {
             final long t = DEBUG_LOADERS ? SystemClock.uptimeMillis() : 0;
 
@@ -1092,24 +1425,39 @@ public class LauncherModel extends BroadcastReceiver {
             final boolean isSafeMode = manager.isSafeMode();
 
             // Make sure the default workspace is loaded, if needed
-            mApp.getLauncherProvider().loadDefaultFavoritesIfNecessary();
+            if (context == mApp) {
+                mApp.getLauncherProvider().loadDefaultFavoritesIfNecessary();
+            }
+            final HashMap<Long, Integer> screenRanks = loadWorkspaceScreens(contentResolver);
 
-            sWorkspaceItems.clear();
-            sAppWidgets.clear();
+            synchronized (sBgLock) {
+                sWorkspaceItems.clear();
+                sAppWidgets.clear();
+            }
             sFolders.clear();
             sItemsIdMap.clear();
             sDbIconCache.clear();
 
             final ArrayList<Long> itemsToRemove = new ArrayList<Long>();
 
+            // Leave the icon blobs out of the projection; they are read by id only for the
+            // rows that actually need them, which keeps the cursor window small
+            final long queryTime = DEBUG_LOADERS ? SystemClock.uptimeMillis() : 0;
             final Cursor c = contentResolver.query(
-                    LauncherSettings.Favorites.CONTENT_URI, null, null, null, null);
+                    LauncherSettings.Favorites.CONTENT_URI, WORKSPACE_PROJECTION, null, null,
+                    null);
+            final IconBlobLoader iconLoader = new IconBlobLoader(contentResolver, c);
+            if (DEBUG_LOADERS) {
+                // getCount() forces the first cursor window fill
+                final int count = c.getCount();
+                Log.d(TAG, "loaded workspace cursor of " + count + " rows in "
+                        + (SystemClock.uptimeMillis() - queryTime) + "ms");
+            }
 
-            // +1 for the hotseat (it can be larger than the workspace)
             // Load workspace in reverse order to ensure that latest items are loaded first (and
             // before any earlier duplicates)
-            final ItemInfo occupied[][][] =
-                    new ItemInfo[Launcher.MAX_SCREEN_COUNT + 1][mCellCountX + 1][mCellCountY + 1];
+            final ArrayList<ItemInfo[][]> occupied = new ArrayList<ItemInfo[][]>();
+            final ArrayList<ItemInfo> hotseatOccupied = new ArrayList<ItemInfo>();
 
             try {
                 final int idIndex = c.getColumnIndexOrThrow(LauncherSettings.Favorites._ID);
@@ -1119,8 +1467,6 @@ public class LauncherModel extends BroadcastReceiver {
                         (LauncherSettings.Favorites.TITLE);
                 final int iconTypeIndex = c.getColumnIndexOrThrow(
                         LauncherSettings.Favorites.ICON_TYPE);
-                final int iconIndex = c.getColumnIndexOrThrow(LauncherSettings.Favorites.ICON);
-                final int defaultIconIndex = c.getColumnIndexOrThrow(LauncherSettings.Favorites.DEFAULT_ICON);//add
                 final int iconPackageIndex = c.getColumnIndexOrThrow(
                         LauncherSettings.Favorites.ICON_PACKAGE);
                 final int iconResourceIndex = c.getColumnIndexOrThrow(
@@ -1141,6 +1487,8 @@ public class LauncherModel extends BroadcastReceiver {
                         (LauncherSettings.Favorites.SPANX);
                 final int spanYIndex = c.getColumnIndexOrThrow(
                         LauncherSettings.Favorites.SPANY);
+                final int componentNameIndex = c.getColumnIndexOrThrow(
+                        LauncherSettings.Favorites.COMPONENT_NAME);
                 //final int uriIndex = c.getColumnIndexOrThrow(LauncherSettings.Favorites.URI);
                 //final int displayModeIndex = c.getColumnIndexOrThrow(
                 //        LauncherSettings.Favorites.DISPLAY_MODE);
@@ -1163,20 +1511,22 @@ public class LauncherModel extends BroadcastReceiver {
                         case LauncherSettings.Favorites.ITEM_TYPE_DELETESHOETCUT:
                             intentDescription = c.getString(intentIndex);
                             try {
-                                intent = Intent.parseUri(intentDescription, 0);
+                                intent = parseFavoriteIntent(intentDescription,
+                                        c.getString(componentNameIndex));
                             } catch (URISyntaxException e) {
                                 continue;
                             }
 
                             if (itemType == LauncherSettings.Favorites.ITEM_TYPE_SHORTCUT) {
-                                info = getShortcutInfo(manager, intent, context, c, iconIndex,
+                                info = getShortcutInfo(manager, intent, context, c, iconLoader,
                                         titleIndex, mLabelCache);
                             } else {// ITEM_TYPE_DELETESHORTCUT ,moditify
                                 info = getShortcutInfo(c, context, iconTypeIndex,
-                                        iconPackageIndex, iconResourceIndex, iconIndex,
+                                        iconPackageIndex, iconResourceIndex, iconLoader,
                                         titleIndex,itemType);
                                 if(info !=null){
-                                		info.mDefaultIcon = getIconFromCursor(c, defaultIconIndex, context);
+                                		info.mDefaultIcon = iconLoader.loadIcon(c,
+                                		        LauncherSettings.Favorites.DEFAULT_ICON, context);
                                 	}
                                 // App shortcuts that used to be automatically added to Launcher
                                 // didn't always have the correct intent flags set, so do that here
@@ -1197,7 +1547,8 @@ public class LauncherModel extends BroadcastReceiver {
                                 info.id = c.getLong(idIndex);
                                 container = c.getInt(containerIndex);
                                 info.container = container;
-                                info.screen = c.getInt(screenIndex);
+                                info.screen = getScreenRank(contentResolver, screenRanks,
+                                        container, c.getLong(screenIndex));
                                 info.cellX = c.getInt(cellXIndex);
                                 info.cellY = c.getInt(cellYIndex);
                                 iconResource = new Intent.ShortcutIconResource();
@@ -1206,7 +1557,7 @@ public class LauncherModel extends BroadcastReceiver {
                                 info.iconResource = iconResource;
 
                                 // check & update map of what's occupied
-                                if (!checkItemPlacement(occupied, info)) {
+                                if (!checkItemPlacement(occupied, hotseatOccupied, info)) {
                                 	//Log.i(Launcher.TAG,TAG+"=loadWorkspace=after checkItemPlacement=="+info.title);
                                     break;
                                 }
@@ -1214,7 +1565,9 @@ public class LauncherModel extends BroadcastReceiver {
                                 switch (container) {
                                 case LauncherSettings.Favorites.CONTAINER_DESKTOP:
                                 case LauncherSettings.Favorites.CONTAINER_HOTSEAT:
-                                    sWorkspaceItems.add(info);
+                                    synchronized (sBgLock) {
+                                        sWorkspaceItems.add(info);
+                                    }
                                     break;
                                 default:
                                     // Item is in a user folder
@@ -1230,12 +1583,12 @@ public class LauncherModel extends BroadcastReceiver {
                                     final ContentValues values = new ContentValues();
                                     byte[] data = ItemInfo.flattenBitmap(info.mIcon);
                                     values.put(LauncherSettings.Favorites.ICON, data);
-                                    updateItemInDatabaseHelper(mApp, values, info, "moveItemInDatabase");	
+                                    updateItemInDatabaseHelper(context, values, info, "moveItemInDatabase");	
                                 }
 
                                 // now that we've loaded everthing re-save it with the
                                 // icon in case it disappears somehow.
-                                queueIconToBeChecked(sDbIconCache, info, c, iconIndex);
+                                queueIconToBeChecked(sDbIconCache, info);
                             } else {
                                 // Failed to load the shortcut, probably because the
                                 // activity manager couldn't resolve it (maybe the app
@@ -1256,19 +1609,23 @@ public class LauncherModel extends BroadcastReceiver {
                             folderInfo.id = id;
                             container = c.getInt(containerIndex);
                             folderInfo.container = container;
-                            folderInfo.screen = c.getInt(screenIndex);
+                            folderInfo.screen = getScreenRank(contentResolver, screenRanks,
+                                    container, c.getLong(screenIndex));
                             folderInfo.cellX = c.getInt(cellXIndex);
                             folderInfo.cellY = c.getInt(cellYIndex);
-                            folderInfo.mIcon = getIconFromCursor(c, iconIndex, context);//add
+                            folderInfo.mIcon = iconLoader.loadIcon(c,
+                                    LauncherSettings.Favorites.ICON, context);
 
                             // check & update map of what's occupied
-                            if (!checkItemPlacement(occupied, folderInfo)) {
+                            if (!checkItemPlacement(occupied, hotseatOccupied, folderInfo)) {
                                 break;
                             }
                             switch (container) {
                                 case LauncherSettings.Favorites.CONTAINER_DESKTOP:
                                 case LauncherSettings.Favorites.CONTAINER_HOTSEAT:
-                                    sWorkspaceItems.add(folderInfo);
+                                    synchronized (sBgLock) {
+                                        sWorkspaceItems.add(folderInfo);
+                                    }
                                     break;
                             }
 
@@ -1295,7 +1652,6 @@ public class LauncherModel extends BroadcastReceiver {
                                 appWidgetInfo = new LauncherAppWidgetInfo(appWidgetId,
                                         provider.provider);
                                 appWidgetInfo.id = id;
-                                appWidgetInfo.screen = c.getInt(screenIndex);
                                 appWidgetInfo.cellX = c.getInt(cellXIndex);
                                 appWidgetInfo.cellY = c.getInt(cellYIndex);
                                 appWidgetInfo.spanX = c.getInt(spanXIndex);
@@ -1312,13 +1668,17 @@ public class LauncherModel extends BroadcastReceiver {
                                     continue;
                                 }
                                 appWidgetInfo.container = c.getInt(containerIndex);
+                                appWidgetInfo.screen = getScreenRank(contentResolver,
+                                        screenRanks, container, c.getLong(screenIndex));
 
                                 // check & update map of what's occupied
-                                if (!checkItemPlacement(occupied, appWidgetInfo)) {
+                                if (!checkItemPlacement(occupied, hotseatOccupied, appWidgetInfo)) {
                                     break;
                                 }
                                 sItemsIdMap.put(appWidgetInfo.id, appWidgetInfo);
-                                sAppWidgets.add(appWidgetInfo);
+                                synchronized (sBgLock) {
+                                    sAppWidgets.add(appWidgetInfo);
+                                }
                             }
                             break;
                         }
@@ -1329,6 +1689,10 @@ public class LauncherModel extends BroadcastReceiver {
             } finally {
                 c.close();
             }
+            if (DEBUG_LOADERS) {
+                Log.d(TAG, "read " + iconLoader.mBlobCount + " icon blobs by id in "
+                        + iconLoader.mBlobTime + "ms");
+            }
 
             if (itemsToRemove.size() > 0) {
                 ContentProviderClient client = contentResolver.acquireContentProviderClient(
@@ -1353,12 +1717,13 @@ public class LauncherModel extends BroadcastReceiver {
                 Log.d(TAG, "workspace layout: ");
                 for (int y = 0; y < mCellCountY; y++) {
                     String line = "";
-                    for (int s = 0; s < Launcher.MAX_SCREEN_COUNT; s++) {
+                    for (int s = 0; s < occupied.size(); s++) {
                         if (s > 0) {
                             line += " | ";
                         }
+                        final ItemInfo[][] page = occupied.get(s);
                         for (int x = 0; x < mCellCountX; x++) {
-                            line += ((occupied[s][x][y] != null) ? "#" : ".");
+                            line += ((page != null && page[x][y] != null) ? "#" : ".");
                         }
                     }
                     Log.d(TAG, "[ " + line + " ]");
@@ -1390,15 +1755,17 @@ public class LauncherModel extends BroadcastReceiver {
             Collections.sort(tmpWorkspaceItems, new Comparator<ItemInfo>() {
                 @Override
                 public int compare(ItemInfo lhs, ItemInfo rhs) {
-                    int cellCountX = LauncherModel.getCellCountX();
-                    int cellCountY = LauncherModel.getCellCountY();
-                    int screenOffset = cellCountX * cellCountY;
-                    int containerOffset = screenOffset * (Launcher.MAX_SCREEN_COUNT + 1); // +1 hotseat
-                    long lr = (lhs.container * containerOffset + lhs.screen * screenOffset +
-                            lhs.cellY * cellCountX + lhs.cellX);
-                    long rr = (rhs.container * containerOffset + rhs.screen * screenOffset +
-                            rhs.cellY * cellCountX + rhs.cellX);
-                    return (int) (lr - rr);
+                    // Field by field, so the order holds for any number of screens
+                    if (lhs.container != rhs.container) {
+                        return lhs.container < rhs.container ? -1 : 1;
+                    }
+                    if (lhs.screen != rhs.screen) {
+                        return lhs.screen < rhs.screen ? -1 : 1;
+                    }
+                    if (lhs.cellY != rhs.cellY) {
+                        return lhs.cellY < rhs.cellY ? -1 : 1;
+                    }
+                    return lhs.cellX < rhs.cellX ? -1 : (lhs.cellX == rhs.cellX ? 0 : 1);
                 }
             });
             // Precondition: the items are ordered by page, screen
@@ -1416,10 +1783,12 @@ public class LauncherModel extends BroadcastReceiver {
             }
 
             // Tell the workspace that we're about to start firing items at it
+            final ArrayList<Long> screenIds = new ArrayList<Long>(sWorkspaceScreens);
             mHandler.post(new Runnable() {
                 public void run() {
                     Callbacks callbacks = tryGetCallbacks(oldCallbacks);
                     if (callbacks != null) {
+                        callbacks.bindScreens(screenIds);
                         callbacks.startBinding();
                     }
                 }
@@ -1591,6 +1960,9 @@ public class LauncherModel extends BroadcastReceiver {
             while (i < N && !mStopped) {
                 if (i == 0) {
                     mAllAppsList.clear();
+                    if (mAppSearchIndex != null) {
+                        mAppSearchIndex.clear();
+                    }
                     final long qiaTime = DEBUG_LOADERS ? SystemClock.uptimeMillis() : 0;
                     apps = packageManager.queryIntentActivities(mainIntent, 0);
                     if (DEBUG_LOADERS) {
@@ -1616,7 +1988,8 @@ public class LauncherModel extends BroadcastReceiver {
 
                     final long sortTime = DEBUG_LOADERS ? SystemClock.uptimeMillis() : 0;
                     Collections.sort(apps,
-                            new LauncherModel.ShortcutNameComparator(packageManager, mLabelCache));
+                            new LauncherModel.ShortcutNameComparator(packageManager, mIconCache,
+                                    mLabelCache));
                     if (DEBUG_LOADERS) {
                         Log.d(TAG, "sort took "
                                 + (SystemClock.uptimeMillis()-sortTime) + "ms");
@@ -1638,6 +2011,7 @@ public class LauncherModel extends BroadcastReceiver {
                 final Callbacks callbacks = tryGetCallbacks(oldCallbacks);
                 final ArrayList<ShortcutInfo> added = mAllAppsList.added;
                 mAllAppsList.added = new ArrayList<ShortcutInfo>();
+                updateAppSearchIndex(added, null, null);
                 mHandler.post(new Runnable() {
                     public void run() {
                         final long t = SystemClock.uptimeMillis();
@@ -1690,25 +2064,66 @@ public class LauncherModel extends BroadcastReceiver {
     }
 	private ArrayList<ShortcutInfo> addAppsWithoutInvalidate(ArrayList<ShortcutInfo> list) {
         // We add it in place, in alphabetical order
-		final ArrayList<ShortcutInfo> mPenddingWorkspaceItems =new ArrayList<ShortcutInfo>(list);
-       int i =0;
-       int listCount =list.size();
-     	final Collection<ItemInfo> mTmpWorkspaceItems =sItemsIdMap.values();
-     	
-     	for(ItemInfo info:mTmpWorkspaceItems){
-     		if(info instanceof ShortcutInfo){
-     			for(ShortcutInfo sInfo:list){
-     				if(sInfo.componentName.equals(((ShortcutInfo)info).componentName)){
-     					mPenddingWorkspaceItems.remove(sInfo);
-     					i++;
-     					continue;
-     				}
-     			}
-     		}
-     	}
-     	return mPenddingWorkspaceItems;
+		// Hash the components already placed once instead of comparing every pair
+		final HashSet<ComponentName> placed = new HashSet<ComponentName>();
+		for (ItemInfo info : sItemsIdMap.values()) {
+			if (info instanceof ShortcutInfo && ((ShortcutInfo) info).componentName != null) {
+				placed.add(((ShortcutInfo) info).componentName);
+			}
+		}
+		final ArrayList<ShortcutInfo> mPenddingWorkspaceItems =
+				new ArrayList<ShortcutInfo>(list.size());
+		for (ShortcutInfo sInfo : list) {
+			if (!placed.contains(sInfo.componentName)) {
+				mPenddingWorkspaceItems.add(sInfo);
+			}
+		}
+		return mPenddingWorkspaceItems;
 	}
 
+    /**
+     * Feeds one round of all apps deltas into the search index. Only call from the worker
+     * thread.
+     */
+    private void updateAppSearchIndex(ArrayList<ShortcutInfo> added,
+            ArrayList<ShortcutInfo> removed, ArrayList<ShortcutInfo> modified) {
+        AppSearchIndex<ShortcutInfo> index = mAppSearchIndex;
+        if (index == null) {
+            index = new AppSearchIndex<ShortcutInfo>(mApp.getPinyinConverter());
+            mAppSearchIndex = index;
+        }
+        if (removed != null) {
+            for (ShortcutInfo info : removed) {
+                index.remove(info);
+            }
+        }
+        if (added != null) {
+            for (ShortcutInfo info : added) {
+                index.add(info, info.title);
+            }
+        }
+        if (modified != null) {
+            // Re-indexes under the possibly changed label
+            for (ShortcutInfo info : modified) {
+                index.add(info, info.title);
+            }
+        }
+    }
+
+    /**
+     * Returns up to limit apps whose label, pinyin spelling or pinyin initials start with the
+     * query at some word, best match first and more used apps first among equal matches.
+     * Safe to call from the UI thread; returns an empty list until all apps have been loaded
+     * once.
+     */
+    ArrayList<ShortcutInfo> searchApps(CharSequence query, int limit) {
+        final AppSearchIndex<ShortcutInfo> index = mAppSearchIndex;
+        if (index == null) {
+            return new ArrayList<ShortcutInfo>();
+        }
+        return index.query(query, limit, mApp.getLaunchStats().getUsageComparator());
+    }
+
     void enqueuePackageUpdated(PackageUpdatedTask task) {
         sWorker.post(task);
     }
@@ -1735,6 +2150,8 @@ public class LauncherModel extends BroadcastReceiver {
 
             final String[] packages = mPackages;
             final int N = packages.length;
+            // Whatever happened to these packages, their widget previews are stale now
+            mApp.getWidgetPreviewCache().removePackages(packages);
             switch (mOp) {
                 case OP_ADD:
                     for (int i=0; i<N; i++) {
@@ -1776,6 +2193,7 @@ public class LauncherModel extends BroadcastReceiver {
                 modified = mAllAppsList.modified;
                 mAllAppsList.modified = new ArrayList<ShortcutInfo>();
             }
+            updateAppSearchIndex(added, removed, modified);
 
             final Callbacks callbacks = mCallbacks != null ? mCallbacks.get() : null;
             if (callbacks == null) {
@@ -1855,31 +2273,13 @@ public class LauncherModel extends BroadcastReceiver {
     }
    
     /**
-     * 2012-9-10 hhl
-     * LauncherModel.java
-     * Trebuchet
-     * @param mark: used to diff the call or sms mark changed
-     * @param intent: the mark changed app intent
-     * TODO: used to update the call and sms package mark
+     * Forwards the unread counts coalesced by the {@link BadgeManager} to the launcher.
      */
-    public void shenduUpdateAppMarkFromRegister(final int mark,final Intent intent){
-    	new Thread(){
-    		public void run(){
-    			ContentResolver resolver = mApp.getContentResolver();
-    			Cursor cursor = resolver.query(LauncherSettings.Favorites.CONTENT_URI, 
-    					null,LauncherSettings.Favorites.INTENT+" = \'"+intent.toUri(0)+"\'",null,null);
-    			if(cursor.moveToFirst()){
-        			ShortcutInfo shortcutInfo = new ShortcutInfo();
-        			shortcutInfo.intent=intent;
-        			shortcutInfo.screen = cursor.getInt(cursor.getColumnIndex(LauncherSettings.Favorites.SCREEN));
-        			shortcutInfo.container = cursor.getInt(cursor.getColumnIndex(LauncherSettings.Favorites.CONTAINER));
-        			shortcutInfo.cellX = cursor.getInt(cursor.getColumnIndex(LauncherSettings.Favorites.CELLX));
-        			shortcutInfo.cellY = cursor.getInt(cursor.getColumnIndex(LauncherSettings.Favorites.CELLY));
-        			mUpdateAppMarkHandler.sendMessage(mUpdateAppMarkHandler.obtainMessage(mark,shortcutInfo));
-    			}
-    			cursor.close();
-    		}
-    	}.start();
+    public void bindUnreadCountsChanged(HashMap<ComponentName, Integer> changed) {
+        Callbacks callbacks = mCallbacks != null ? mCallbacks.get() : null;
+        if (callbacks != null) {
+            callbacks.bindUnreadCountsChanged(changed);
+        }
     }
 
     /**
@@ -1887,16 +2287,18 @@ public class LauncherModel extends BroadcastReceiver {
      * doesn't have a Cursor, but
      */
     public ShortcutInfo getShortcutInfo(PackageManager manager, Intent intent, Context context) {
-        return getShortcutInfo(manager, intent, context, null, -1, -1, null);
+        return getShortcutInfo(manager, intent, context, null, null, -1, null);
     }
 
     /**
      * Make an ShortcutInfo object for a shortcut that is an application.
      *
-     * If c is not null, then it will be used to fill in missing data like the title and icon.
+     * If c is not null, then it will be used to fill in missing data like the title, and
+     * iconLoader to read the saved icon, which takes priority over the package icon.
      */
     public ShortcutInfo getShortcutInfo(PackageManager manager, Intent intent, Context context,
-            Cursor c, int iconIndex, int titleIndex, HashMap<Object, CharSequence> labelCache) {
+            Cursor c, IconBlobLoader iconLoader, int titleIndex,
+            HashMap<Object, CharSequence> labelCache) {
         Bitmap icon = null;
         final ShortcutInfo info = new ShortcutInfo();
 
@@ -1943,18 +2345,17 @@ public class LauncherModel extends BroadcastReceiver {
         if (resolveInfo == null) {
             resolveInfo = manager.resolveActivity(intent, 0);
         }
-        // the db
-        if (icon == null) {
-            if (c != null) {
-                icon = getIconFromCursor(c, iconIndex, context);
-            }
+        // the db -- a stored icon may be a custom one set from the quick action, so it wins
+        // over the package icon; rows without one skip the by-id read
+        final boolean hasIcon = iconLoader != null && c != null && iconLoader.hasIcon(c);
+        if (hasIcon) {
+            icon = iconLoader.loadIcon(c, LauncherSettings.Favorites.ICON, context);
         }
-        
-     // from the resource
+        // from the resource
         if (icon == null && resolveInfo != null) {
             icon = mIconCache.getIcon(componentName, resolveInfo, labelCache);
-            info.reSaveIcon=true;
-        	
+            // Keep a copy in the db in case the package disappears later (e.g. on SD card)
+            info.reSaveIcon = true;
         }
         // the fallback icon
         if (icon == null) {
@@ -1995,8 +2396,8 @@ public class LauncherModel extends BroadcastReceiver {
      * Make an ShortcutInfo object for a shortcut that isn't an application.
      */
     private ShortcutInfo getShortcutInfo(Cursor c, Context context,
-            int iconTypeIndex, int iconPackageIndex, int iconResourceIndex, int iconIndex,
-            int titleIndex,int itemType) {
+            int iconTypeIndex, int iconPackageIndex, int iconResourceIndex,
+            IconBlobLoader iconLoader, int titleIndex,int itemType) {
 
         Bitmap icon = null;
         final ShortcutInfo info = new ShortcutInfo();
@@ -2017,7 +2418,7 @@ public class LauncherModel extends BroadcastReceiver {
 
             // the db
             if (icon == null) {
-                icon = getIconFromCursor(c, iconIndex, context);
+                icon = iconLoader.loadIcon(c, LauncherSettings.Favorites.ICON, context);
             }
             // the resource
             try {
@@ -2037,7 +2438,7 @@ public class LauncherModel extends BroadcastReceiver {
             }
             break;
         case LauncherSettings.Favorites.ICON_TYPE_BITMAP:
-            icon = getIconFromCursor(c, iconIndex, context);
+            icon = iconLoader.loadIcon(c, LauncherSettings.Favorites.ICON, context);
             if (icon == null) {
                 icon = getFallbackIcon();
                 info.customIcon = false;
@@ -2047,7 +2448,7 @@ public class LauncherModel extends BroadcastReceiver {
             }
             break;
         default:
-            icon = getIconFromCursor(c, iconIndex, context);
+            icon = iconLoader.loadIcon(c, LauncherSettings.Favorites.ICON, context);
             if(icon==null){
                 icon = getFallbackIcon();
             }
@@ -2059,14 +2460,10 @@ public class LauncherModel extends BroadcastReceiver {
         return info;
     }
 
-    Bitmap getIconFromCursor(Cursor c, int iconIndex, Context context) {
-        @SuppressWarnings("all") // suppress dead code warning
-        final boolean debug = false;
-        if (debug) {
-            Log.d(TAG, "getIconFromCursor app="
-                    + c.getString(c.getColumnIndexOrThrow(LauncherSettings.Favorites.TITLE)));
+    static Bitmap getIconFromBlob(byte[] data, Context context) {
+        if (data == null) {
+            return null;
         }
-        byte[] data = c.getBlob(iconIndex);
         try {
             return Utilities.createIconBitmap(
                     BitmapFactory.decodeByteArray(data, 0, data.length), context);
@@ -2075,6 +2472,59 @@ public class LauncherModel extends BroadcastReceiver {
         }
     }
 
+    /**
+     * Reads the icon blobs of favorites rows by id. The workspace query leaves the blob
+     * columns out of its projection and only reports whether an icon is stored, so only the
+     * rows that need a saved icon (custom icons, deletable shortcuts, folders and apps the
+     * package manager can't resolve) pay for one.
+     */
+    static class IconBlobLoader {
+        private final ContentResolver mResolver;
+        private final int mIdIndex;
+        private final int mHasIconIndex;
+        private final String[] mProjection = new String[1];
+
+        int mBlobCount;
+        long mBlobTime;
+
+        IconBlobLoader(ContentResolver resolver, Cursor c) {
+            mResolver = resolver;
+            mIdIndex = c.getColumnIndexOrThrow(LauncherSettings.Favorites._ID);
+            mHasIconIndex = c.getColumnIndexOrThrow(HAS_ICON);
+        }
+
+        boolean hasIcon(Cursor c) {
+            return c.getInt(mHasIconIndex) != 0;
+        }
+
+        byte[] loadBlob(Cursor c, String column) {
+            if (LauncherSettings.Favorites.ICON.equals(column) && !hasIcon(c)) {
+                return null;
+            }
+            final long t = DEBUG_LOADERS ? SystemClock.uptimeMillis() : 0;
+            mProjection[0] = column;
+            Cursor blob = mResolver.query(
+                    LauncherSettings.Favorites.getContentUri(c.getLong(mIdIndex), false),
+                    mProjection, null, null, null);
+            if (blob == null) {
+                return null;
+            }
+            try {
+                return blob.moveToFirst() ? blob.getBlob(0) : null;
+            } finally {
+                blob.close();
+                if (DEBUG_LOADERS) {
+                    mBlobCount++;
+                    mBlobTime += SystemClock.uptimeMillis() - t;
+                }
+            }
+        }
+
+        Bitmap loadIcon(Cursor c, String column, Context context) {
+            return getIconFromBlob(loadBlob(c, column), context);
+        }
+    }
+
     ShortcutInfo addShortcut(Context context, Intent data, long container, int screen,
             int cellX, int cellY, boolean notify) {
         final ShortcutInfo info = infoFromShortcutIntent(context, data, null);
@@ -2202,8 +2652,7 @@ public class LauncherModel extends BroadcastReceiver {
         return info;
     }
 
-    boolean queueIconToBeChecked(HashMap<Object, byte[]> cache, ShortcutInfo info, Cursor c,
-            int iconIndex) {
+    boolean queueIconToBeChecked(HashMap<Object, byte[]> cache, ShortcutInfo info) {
         // If apps can't be on SD, don't even bother.
         if (!mAppsCanBeOnExternalStorage) {
             return false;
@@ -2257,15 +2706,34 @@ public class LauncherModel extends BroadcastReceiver {
     }
 
     private static final Collator sCollator = Collator.getInstance();
-    public static final Comparator<ShortcutInfo> APP_NAME_COMPARATOR
-            = new Comparator<ShortcutInfo>() {
+    /**
+     * Orders apps by {@link ShortcutInfo#sortKey}. Apps without one get a key generated from
+     * their title, so every pair is compared by key and the order stays transitive.
+     */
+    public static class AppNameComparator implements Comparator<ShortcutInfo> {
+        private SortKeyGenerator mSortKeyGenerator;
+        private HashMap<Object, String> mSortKeys = new HashMap<Object, String>();
+        AppNameComparator(SortKeyGenerator sortKeyGenerator) {
+            mSortKeyGenerator = sortKeyGenerator;
+        }
         public final int compare(ShortcutInfo a, ShortcutInfo b) {
-            int result = sCollator.compare(a.title.toString(), b.title.toString());
+            int result = getSortKey(a).compareTo(getSortKey(b));
             if (result == 0) {
                 result = a.componentName.compareTo(b.componentName);
             }
             return result;
         }
+        private String getSortKey(ShortcutInfo info) {
+            if (info.sortKey != null) {
+                return info.sortKey;
+            }
+            String sortKey = mSortKeys.get(info);
+            if (sortKey == null) {
+                sortKey = mSortKeyGenerator.getSortKey(info.title);
+                mSortKeys.put(info, sortKey);
+            }
+            return sortKey;
+        }
     };
     public static final Comparator<ShortcutInfo> APP_INSTALL_TIME_COMPARATOR
             = new Comparator<ShortcutInfo>() {
@@ -2288,64 +2756,65 @@ public class LauncherModel extends BroadcastReceiver {
             return new ComponentName(info.serviceInfo.packageName, info.serviceInfo.name);
         }
     }
+    /**
+     * Orders resolve infos by the sort keys of their labels. Each key is looked up once per
+     * component, from the icon cache when the component is already there, so a sort costs one
+     * key per app plus plain string compares.
+     */
     public static class ShortcutNameComparator implements Comparator<ResolveInfo> {
         private PackageManager mPackageManager;
+        private IconCache mIconCache;
         private HashMap<Object, CharSequence> mLabelCache;
-        ShortcutNameComparator(PackageManager pm) {
-            mPackageManager = pm;
-            mLabelCache = new HashMap<Object, CharSequence>();
+        private HashMap<Object, String> mSortKeys = new HashMap<Object, String>();
+        ShortcutNameComparator(PackageManager pm, IconCache iconCache) {
+            this(pm, iconCache, new HashMap<Object, CharSequence>());
         }
-        ShortcutNameComparator(PackageManager pm, HashMap<Object, CharSequence> labelCache) {
+        ShortcutNameComparator(PackageManager pm, IconCache iconCache,
+                HashMap<Object, CharSequence> labelCache) {
             mPackageManager = pm;
+            mIconCache = iconCache;
             mLabelCache = labelCache;
         }
         public final int compare(ResolveInfo a, ResolveInfo b) {
-            CharSequence labelA, labelB;
-            ComponentName keyA = LauncherModel.getComponentNameFromResolveInfo(a);
-            ComponentName keyB = LauncherModel.getComponentNameFromResolveInfo(b);
-            if (mLabelCache.containsKey(keyA)) {
-                labelA = mLabelCache.get(keyA);
-            } else {
-                labelA = a.loadLabel(mPackageManager).toString();
-
-                mLabelCache.put(keyA, labelA);
-            }
-            if (mLabelCache.containsKey(keyB)) {
-                labelB = mLabelCache.get(keyB);
-            } else {
-                labelB = b.loadLabel(mPackageManager).toString();
-
-                mLabelCache.put(keyB, labelB);
+            return getSortKey(a).compareTo(getSortKey(b));
+        }
+        private String getSortKey(ResolveInfo info) {
+            ComponentName component = LauncherModel.getComponentNameFromResolveInfo(info);
+            String sortKey = mSortKeys.get(component);
+            if (sortKey == null) {
+                CharSequence label = mLabelCache.get(component);
+                if (label == null) {
+                    label = info.loadLabel(mPackageManager).toString();
+                    mLabelCache.put(component, label);
+                }
+                sortKey = mIconCache.getSortKey(component, label);
+                mSortKeys.put(component, sortKey);
             }
-            return sCollator.compare(labelA, labelB);
+            return sortKey;
         }
     };
     public static class WidgetAndShortcutNameComparator implements Comparator<Object> {
         private PackageManager mPackageManager;
-        private HashMap<Object, String> mLabelCache;
-        WidgetAndShortcutNameComparator(PackageManager pm) {
+        private SortKeyGenerator mSortKeyGenerator;
+        private HashMap<Object, String> mSortKeys;
+        WidgetAndShortcutNameComparator(PackageManager pm, SortKeyGenerator sortKeyGenerator) {
             mPackageManager = pm;
-            mLabelCache = new HashMap<Object, String>();
+            mSortKeyGenerator = sortKeyGenerator;
+            mSortKeys = new HashMap<Object, String>();
         }
         public final int compare(Object a, Object b) {
-            String labelA, labelB;
-            if (mLabelCache.containsKey(a)) {
-                labelA = mLabelCache.get(a);
-            } else {
-                labelA = (a instanceof AppWidgetProviderInfo) ?
-                    ((AppWidgetProviderInfo) a).label :
-                    ((ResolveInfo) a).loadLabel(mPackageManager).toString();
-                mLabelCache.put(a, labelA);
-            }
-            if (mLabelCache.containsKey(b)) {
-                labelB = mLabelCache.get(b);
-            } else {
-                labelB = (b instanceof AppWidgetProviderInfo) ?
-                    ((AppWidgetProviderInfo) b).label :
-                    ((ResolveInfo) b).loadLabel(mPackageManager).toString();
-                mLabelCache.put(b, labelB);
-            }
-            return sCollator.compare(labelA, labelB);
+            return getSortKey(a).compareTo(getSortKey(b));
+        }
+        private String getSortKey(Object info) {
+            String sortKey = mSortKeys.get(info);
+            if (sortKey == null) {
+                String label = (info instanceof AppWidgetProviderInfo) ?
+                    ((AppWidgetProviderInfo) info).label :
+                    ((ResolveInfo) info).loadLabel(mPackageManager).toString();
+                sortKey = mSortKeyGenerator.getSortKey(label);
+                mSortKeys.put(info, sortKey);
+            }
+            return sortKey;
         }
     };
 
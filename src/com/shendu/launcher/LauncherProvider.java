@@ -34,6 +34,7 @@ import android.content.res.Resources;
 import android.content.res.TypedArray;
 import android.content.res.XmlResourceParser;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
@@ -67,11 +68,12 @@ public class LauncherProvider extends ContentProvider {
 
     private static final String DATABASE_NAME = "launcher.db";
 
-    private static final int DATABASE_VERSION = 13; //moditify,for default icon
+    private static final int DATABASE_VERSION = 15;
 
     static final String AUTHORITY = "com.shendu.launcher.settings";
 
     static final String TABLE_FAVORITES = "favorites";
+    static final String TABLE_WORKSPACE_SCREENS = "workspaceScreens";
     static final String PARAMETER_NOTIFY = "notify";
     static final String DB_CREATED_BUT_DEFAULT_WORKSPACE_NOT_LOADED =
             "DB_CREATED_BUT_DEFAULT_WORKSPACE_NOT_LOADED";
@@ -89,6 +91,18 @@ public class LauncherProvider extends ContentProvider {
 
     private DatabaseHelper mOpenHelper;
 
+    public LauncherProvider() {
+    }
+
+    /**
+     * Serves the named database without attaching to the launcher application or its app
+     * widget host, so tests and benchmarks can run the provider on a scratch copy.
+     */
+    LauncherProvider(Context context, String databaseName, boolean writeAheadLogging) {
+        super(context, null, null, null);
+        mOpenHelper = new DatabaseHelper(context, databaseName, null, writeAheadLogging);
+    }
+
     @Override
     public boolean onCreate() {
         mOpenHelper = new DatabaseHelper(getContext());
@@ -126,9 +140,31 @@ public class LauncherProvider extends ContentProvider {
         if (!values.containsKey(LauncherSettings.Favorites._ID)) {
             throw new RuntimeException("Error: attempting to add item without specifying an id");
         }
+        addComponentValues(values);
         return db.insert(table, nullColumnHack, values);
     }
 
+    /**
+     * Fills in the pre-parsed package and component columns whenever the intent is written
+     * and the caller did not already supply them, so readers can match on those indexed
+     * columns instead of parsing every intent uri.
+     */
+    private static void addComponentValues(ContentValues values) {
+        if (!values.containsKey(Favorites.INTENT) || values.containsKey(Favorites.COMPONENT_NAME)) {
+            return;
+        }
+        Intent intent = null;
+        String intentUri = values.getAsString(Favorites.INTENT);
+        if (intentUri != null) {
+            try {
+                intent = Intent.parseUri(intentUri, 0);
+            } catch (URISyntaxException e) {
+                // Leave the columns empty, readers fall back to the intent
+            }
+        }
+        ItemInfo.writeComponentValues(values, intent);
+    }
+
     private static void deleteId(SQLiteDatabase db, long id) {
         Uri uri = LauncherSettings.Favorites.getContentUri(id, false);
         SqlArguments args = new SqlArguments(uri, null, null);
@@ -187,7 +223,16 @@ public class LauncherProvider extends ContentProvider {
         SqlArguments args = new SqlArguments(uri, selection, selectionArgs);
 
         SQLiteDatabase db = mOpenHelper.getWritableDatabase();
-        int count = db.update(args.table, values, args.where, args.args);
+        int count = -1;
+        if (TABLE_FAVORITES.equals(args.table)) {
+            addComponentValues(values);
+            if (args.id != -1) {
+                count = mOpenHelper.updateFavorite(db, args.id, values);
+            }
+        }
+        if (count < 0) {
+            count = db.update(args.table, values, args.where, args.args);
+        }
         if (count > 0) sendNotify(uri);
 
         return count;
@@ -200,10 +245,19 @@ public class LauncherProvider extends ContentProvider {
         }
     }
 
+    @Override
+    public void shutdown() {
+        mOpenHelper.close();
+    }
+
     public long generateNewId() {
         return mOpenHelper.generateNewId();
     }
 
+    public long generateNewScreenId() {
+        return mOpenHelper.generateNewScreenId();
+    }
+
     synchronized public void loadDefaultFavoritesIfNecessary() {
         String spKey = PreferencesProvider.PREFERENCES_KEY;
         SharedPreferences sp = getContext().getSharedPreferences(spKey, Context.MODE_PRIVATE);
@@ -211,7 +265,9 @@ public class LauncherProvider extends ContentProvider {
             // Populate favorites table with initial favorites
             SharedPreferences.Editor editor = sp.edit();
             editor.remove(DB_CREATED_BUT_DEFAULT_WORKSPACE_NOT_LOADED);
-            mOpenHelper.loadFavorites(mOpenHelper.getWritableDatabase(), R.xml.default_workspace);
+            SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+            mOpenHelper.loadFavorites(db, R.xml.default_workspace);
+            mOpenHelper.initializeScreens(db);
             editor.commit();
         }
     }
@@ -226,14 +282,41 @@ public class LauncherProvider extends ContentProvider {
         private static final String TAG_FOLDER = "folder";
         private static final String TAG_EXTRA = "extra";
 
+        // Column sets of the single-row updates issued while the user drags, resizes and
+        // renames items; these run through precompiled statements, see updateFavorite()
+        private static final String[][] HOT_UPDATES = new String[][] {
+            // move
+            { Favorites.CONTAINER, Favorites.SCREEN, Favorites.CELLX, Favorites.CELLY },
+            // move and resize
+            { Favorites.CONTAINER, Favorites.SCREEN, Favorites.CELLX, Favorites.CELLY,
+                    Favorites.SPANX, Favorites.SPANY },
+            // title
+            { Favorites.TITLE },
+            // icon
+            { Favorites.ICON },
+        };
+
         private final Context mContext;
         private final AppWidgetHost mAppWidgetHost;
         private long mMaxId = -1;
+        // Initialized on first use, as the default workspace is loaded after onCreate()
+        private long mMaxScreenId = -1;
+        private final SQLiteStatement[] mHotUpdateStatements =
+                new SQLiteStatement[HOT_UPDATES.length];
 
         DatabaseHelper(Context context) {
-            super(context, DATABASE_NAME, null, DATABASE_VERSION);
+            this(context, DATABASE_NAME, new AppWidgetHost(context, Launcher.APPWIDGET_HOST_ID),
+                    true);
+        }
+
+        DatabaseHelper(Context context, String name, AppWidgetHost appWidgetHost,
+                boolean writeAheadLogging) {
+            super(context, name, null, DATABASE_VERSION);
             mContext = context;
-            mAppWidgetHost = new AppWidgetHost(context, Launcher.APPWIDGET_HOST_ID);
+            mAppWidgetHost = appWidgetHost;
+
+            // Let the loader read while drag and drop writes
+            setWriteAheadLoggingEnabled(writeAheadLogging);
 
             // In the case where neither onCreate nor onUpgrade gets called, we read the maxId from
             // the DB here
@@ -242,6 +325,94 @@ public class LauncherProvider extends ContentProvider {
             }
         }
 
+        @Override
+        public synchronized void close() {
+            synchronized (mHotUpdateStatements) {
+                for (int i = 0; i < mHotUpdateStatements.length; i++) {
+                    if (mHotUpdateStatements[i] != null) {
+                        mHotUpdateStatements[i].close();
+                        mHotUpdateStatements[i] = null;
+                    }
+                }
+            }
+            super.close();
+        }
+
+        /**
+         * Updates a single favorites row through a cached compiled statement if the updated
+         * columns are exactly one of {@link #HOT_UPDATES}.
+         *
+         * @return the number of rows changed, or -1 if the caller has to run the update itself
+         */
+        int updateFavorite(SQLiteDatabase db, long id, ContentValues values) {
+            final int shape = findHotUpdate(values);
+            if (shape < 0) {
+                return -1;
+            }
+            final String[] columns = HOT_UPDATES[shape];
+            SQLiteStatement statement;
+            synchronized (mHotUpdateStatements) {
+                statement = mHotUpdateStatements[shape];
+                if (statement == null) {
+                    StringBuilder sql = new StringBuilder("UPDATE favorites SET ");
+                    for (int i = 0; i < columns.length; i++) {
+                        if (i > 0) sql.append(',');
+                        sql.append(columns[i]).append("=?");
+                    }
+                    sql.append(" WHERE _id=?");
+                    statement = db.compileStatement(sql.toString());
+                    mHotUpdateStatements[shape] = statement;
+                }
+            }
+            // Bound arguments live on the statement, so one update at a time per statement
+            synchronized (statement) {
+                for (int i = 0; i < columns.length; i++) {
+                    bindValue(statement, i + 1, values.get(columns[i]));
+                }
+                statement.bindLong(columns.length + 1, id);
+                try {
+                    return statement.executeUpdateDelete();
+                } finally {
+                    statement.clearBindings();
+                }
+            }
+        }
+
+        private static int findHotUpdate(ContentValues values) {
+            final int size = values.size();
+            for (int i = 0; i < HOT_UPDATES.length; i++) {
+                final String[] columns = HOT_UPDATES[i];
+                if (columns.length != size) {
+                    continue;
+                }
+                boolean match = true;
+                for (String column : columns) {
+                    if (!values.containsKey(column)) {
+                        match = false;
+                        break;
+                    }
+                }
+                if (match) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private static void bindValue(SQLiteStatement statement, int index, Object value) {
+            if (value == null) {
+                statement.bindNull(index);
+            } else if (value instanceof byte[]) {
+                statement.bindBlob(index, (byte[]) value);
+            } else if (value instanceof Number) {
+                statement.bindLong(index, ((Number) value).longValue());
+            } else if (value instanceof Boolean) {
+                statement.bindLong(index, ((Boolean) value) ? 1 : 0);
+            } else {
+                statement.bindString(index, value.toString());
+            }
+        }
+
         /**
          * Send notification that we've deleted the {@link AppWidgetHost},
          * probably as part of the initial database creation. The receiver may
@@ -278,8 +449,12 @@ public class LauncherProvider extends ContentProvider {
                     "icon BLOB," +
                     "defaultIcon BLOB," +
                     "uri TEXT," +
-                    "displayMode INTEGER" +
+                    "displayMode INTEGER," +
+                    "packageName TEXT," +
+                    "componentName TEXT" +
                     ");");
+            createFavoritesIndexes(db);
+            createWorkspaceScreensTable(db);
 
             // Database was just created, so wipe any previous widgets
             if (mAppWidgetHost != null) {
@@ -290,6 +465,49 @@ public class LauncherProvider extends ContentProvider {
             if (!convertDatabase(db)) {
                 // Set a shared pref so that we know we need to load the default workspace later
                 setFlagToLoadDefaultWorkspaceLater();
+            } else {
+                initializeScreens(db);
+            }
+        }
+
+        private void createWorkspaceScreensTable(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + TABLE_WORKSPACE_SCREENS + " (" +
+                    LauncherSettings.WorkspaceScreens._ID + " INTEGER PRIMARY KEY," +
+                    LauncherSettings.WorkspaceScreens.SCREEN_RANK + " INTEGER" +
+                    ");");
+        }
+
+        /**
+         * Gives an empty screens table one row per page up to the last one holding a desktop
+         * favorite, with id and rank equal to the page number the favorites were written with.
+         * Empty pages in between keep their place.
+         */
+        void initializeScreens(SQLiteDatabase db) {
+            if (DatabaseUtils.queryNumEntries(db, TABLE_WORKSPACE_SCREENS) > 0) {
+                return;
+            }
+            Cursor c = db.rawQuery("SELECT MAX(" + Favorites.SCREEN + ") FROM " +
+                    TABLE_FAVORITES + " WHERE " + Favorites.CONTAINER + "=" +
+                    Favorites.CONTAINER_DESKTOP, null);
+            int maxScreen = -1;
+            try {
+                if (c.moveToNext() && !c.isNull(0)) {
+                    maxScreen = c.getInt(0);
+                }
+            } finally {
+                c.close();
+            }
+            db.beginTransaction();
+            try {
+                ContentValues values = new ContentValues();
+                for (int screen = 0; screen <= maxScreen; screen++) {
+                    values.put(LauncherSettings.WorkspaceScreens._ID, screen);
+                    values.put(LauncherSettings.WorkspaceScreens.SCREEN_RANK, screen);
+                    db.insert(TABLE_WORKSPACE_SCREENS, null, values);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
             }
         }
 
@@ -402,6 +620,18 @@ public class LauncherProvider extends ContentProvider {
             if (LOGD) Log.d(TAG, "onUpgrade triggered");
 
             int version = oldVersion;
+            if (version < 14) {
+                // Every insert goes through addComponentValues, which fills the version 14
+                // columns. Add them before any step below inserts favorites; the version 14
+                // step then only backfills and indexes.
+                try {
+                    addComponentColumns(db);
+                } catch (SQLException ex) {
+                    // Old version remains, which means we wipe old data
+                    Log.e(TAG, ex.getMessage(), ex);
+                }
+            }
+
             if (version < 3) {
                 // upgrade 1,2 -> 3 added appWidgetId column
                 db.beginTransaction();
@@ -508,13 +738,134 @@ public class LauncherProvider extends ContentProvider {
                 }
             }
 
+            if (version < 14) {
+                // Version 14 pre-parses the intent into package and component columns and
+                // indexes the columns used by the loader and the shortcut receivers
+                db.beginTransaction();
+                try {
+                    addComponentColumns(db);
+                    backfillComponentColumns(db);
+                    createFavoritesIndexes(db);
+                    db.setTransactionSuccessful();
+                    version = 14;
+                } catch (SQLException ex) {
+                    // Old version remains, which means we wipe old data
+                    Log.e(TAG, ex.getMessage(), ex);
+                } finally {
+                    db.endTransaction();
+                }
+            }
+
+            if (version < 15) {
+                // Version 15 moves the page order into the workspaceScreens table; the
+                // favorites keep their screen values, which become the screen ids
+                db.beginTransaction();
+                try {
+                    createWorkspaceScreensTable(db);
+                    initializeScreens(db);
+                    db.setTransactionSuccessful();
+                    version = 15;
+                } catch (SQLException ex) {
+                    // Old version remains, which means we wipe old data
+                    Log.e(TAG, ex.getMessage(), ex);
+                } finally {
+                    db.endTransaction();
+                }
+            }
+
             if (version != DATABASE_VERSION) {
                 Log.w(TAG, "Destroying all old data.");
                 db.execSQL("DROP TABLE IF EXISTS " + TABLE_FAVORITES);
+                db.execSQL("DROP TABLE IF EXISTS " + TABLE_WORKSPACE_SCREENS);
                 onCreate(db);
             }
         }
 
+        /**
+         * Adds the packageName and componentName columns unless the table already has them.
+         */
+        private void addComponentColumns(SQLiteDatabase db) {
+            boolean hasPackage = false;
+            boolean hasComponent = false;
+            Cursor c = db.rawQuery("PRAGMA table_info(favorites)", null);
+            try {
+                final int nameIndex = c.getColumnIndexOrThrow("name");
+                while (c.moveToNext()) {
+                    final String name = c.getString(nameIndex);
+                    if (Favorites.PACKAGE_NAME.equals(name)) {
+                        hasPackage = true;
+                    } else if (Favorites.COMPONENT_NAME.equals(name)) {
+                        hasComponent = true;
+                    }
+                }
+            } finally {
+                c.close();
+            }
+            if (!hasPackage) {
+                db.execSQL("ALTER TABLE favorites ADD COLUMN packageName TEXT;");
+            }
+            if (!hasComponent) {
+                db.execSQL("ALTER TABLE favorites ADD COLUMN componentName TEXT;");
+            }
+        }
+
+        private void createFavoritesIndexes(SQLiteDatabase db) {
+            db.execSQL("CREATE INDEX IF NOT EXISTS favorites_container_screen " +
+                    "ON favorites (container, screen);");
+            db.execSQL("CREATE INDEX IF NOT EXISTS favorites_intent ON favorites (intent);");
+            db.execSQL("CREATE INDEX IF NOT EXISTS favorites_package ON favorites (packageName);");
+            db.execSQL("CREATE INDEX IF NOT EXISTS favorites_component " +
+                    "ON favorites (componentName);");
+        }
+
+        /**
+         * Parses every stored intent once and writes its package and component columns.
+         * Must be called inside a transaction.
+         */
+        private void backfillComponentColumns(SQLiteDatabase db) {
+            Cursor c = null;
+            SQLiteStatement update = null;
+            try {
+                update = db.compileStatement("UPDATE favorites "
+                        + "SET packageName=?, componentName=? WHERE _id=?");
+                c = db.rawQuery("SELECT _id, intent FROM favorites WHERE intent IS NOT NULL",
+                        null);
+                final int idIndex = c.getColumnIndexOrThrow(Favorites._ID);
+                final int intentIndex = c.getColumnIndexOrThrow(Favorites.INTENT);
+                final ContentValues values = new ContentValues(3);
+
+                while (c.moveToNext()) {
+                    values.clear();
+                    values.put(Favorites.INTENT, c.getString(intentIndex));
+                    addComponentValues(values);
+                    String packageName = values.getAsString(Favorites.PACKAGE_NAME);
+                    String componentName = values.getAsString(Favorites.COMPONENT_NAME);
+                    if (packageName == null && componentName == null) {
+                        continue;
+                    }
+                    if (packageName != null) {
+                        update.bindString(1, packageName);
+                    } else {
+                        update.bindNull(1);
+                    }
+                    if (componentName != null) {
+                        update.bindString(2, componentName);
+                    } else {
+                        update.bindNull(2);
+                    }
+                    update.bindLong(3, c.getLong(idIndex));
+                    update.execute();
+                }
+            } finally {
+                if (update != null) {
+                    update.close();
+                }
+                if (c != null) {
+                    c.close();
+                }
+            }
+        }
+
         private boolean updateContactsShortcuts(SQLiteDatabase db) {
             final String selectWhere = buildOrWhereString(Favorites.ITEM_TYPE,
                     new int[] { Favorites.ITEM_TYPE_SHORTCUT });
@@ -664,6 +1015,33 @@ public class LauncherProvider extends ContentProvider {
             return mMaxId;
         }
 
+        public long generateNewScreenId() {
+            if (mMaxScreenId < 0) {
+                mMaxScreenId = initializeMaxScreenId(getWritableDatabase());
+            }
+            mMaxScreenId += 1;
+            return mMaxScreenId;
+        }
+
+        private long initializeMaxScreenId(SQLiteDatabase db) {
+            // Favorites may point at screens whose row was never written, count those too
+            Cursor c = db.rawQuery("SELECT MAX(id) FROM (" +
+                    "SELECT MAX(" + LauncherSettings.WorkspaceScreens._ID + ") AS id FROM " +
+                    TABLE_WORKSPACE_SCREENS + " UNION ALL " +
+                    "SELECT MAX(" + Favorites.SCREEN + ") AS id FROM " + TABLE_FAVORITES +
+                    " WHERE " + Favorites.CONTAINER + "=" + Favorites.CONTAINER_DESKTOP + ")",
+                    null);
+            long id = -1;
+            try {
+                if (c.moveToNext() && !c.isNull(0)) {
+                    id = c.getLong(0);
+                }
+            } finally {
+                c.close();
+            }
+            return id;
+        }
+
         private long initializeMaxId(SQLiteDatabase db) {
             Cursor c = db.rawQuery("SELECT MAX(_id) FROM favorites", null);
 
@@ -1170,19 +1548,23 @@ public class LauncherProvider extends ContentProvider {
         public final String table;
         public final String where;
         public final String[] args;
+        // The row id for single-row uris, -1 otherwise
+        public final long id;
 
         SqlArguments(Uri url, String where, String[] args) {
             if (url.getPathSegments().size() == 1) {
                 this.table = url.getPathSegments().get(0);
                 this.where = where;
                 this.args = args;
+                this.id = -1;
             } else if (url.getPathSegments().size() != 2) {
                 throw new IllegalArgumentException("Invalid URI: " + url);
             } else if (!TextUtils.isEmpty(where)) {
                 throw new UnsupportedOperationException("WHERE clause not supported: " + url);
             } else {
                 this.table = url.getPathSegments().get(0);
-                this.where = "_id=" + ContentUris.parseId(url);
+                this.id = ContentUris.parseId(url);
+                this.where = "_id=" + id;
                 this.args = null;
             }
         }
@@ -1192,6 +1574,7 @@ public class LauncherProvider extends ContentProvider {
                 table = url.getPathSegments().get(0);
                 where = null;
                 args = null;
+                id = -1;
             } else {
                 throw new IllegalArgumentException("Invalid URI: " + url);
             }
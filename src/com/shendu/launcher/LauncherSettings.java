@@ -144,7 +144,8 @@ class LauncherSettings {
         static final int CONTAINER_HOTSEAT = -101;
 
         /**
-         * The screen holding the favorite (if container is CONTAINER_DESKTOP)
+         * The screen holding the favorite. For CONTAINER_DESKTOP this is the _id of a
+         * {@link WorkspaceScreens} row, for CONTAINER_HOTSEAT the rank in the hotseat.
          * <P>Type: INTEGER</P>
          */
         static final String SCREEN = "screen";
@@ -248,5 +249,47 @@ class LauncherSettings {
          * @see android.provider.LiveFolders#DISPLAY_MODE_LIST
          */
         static final String DISPLAY_MODE = "displayMode";
+
+        /**
+         * The package the intent resolves to, pre-parsed from {@link #INTENT} by the
+         * provider so lookups don't have to parse intent uris.
+         * <P>Type: TEXT</P>
+         */
+        static final String PACKAGE_NAME = "packageName";
+
+        /**
+         * The component of the intent in {@link android.content.ComponentName#flattenToShortString()}
+         * form, pre-parsed from {@link #INTENT} by the provider.
+         * <P>Type: TEXT</P>
+         */
+        static final String COMPONENT_NAME = "componentName";
+    }
+
+    /**
+     * Workspace screens. Desktop favorites point at a screen by its _id, so pages can be
+     * added, moved or removed by writing this table only.
+     */
+    static final class WorkspaceScreens implements BaseColumns {
+        /**
+         * The content:// style URL for this table. Changes are never notified.
+         */
+        static final Uri CONTENT_URI = Uri.parse("content://" +
+                LauncherProvider.AUTHORITY + "/" + LauncherProvider.TABLE_WORKSPACE_SCREENS +
+                "?" + LauncherProvider.PARAMETER_NOTIFY + "=false");
+
+        /**
+         * The content:// style URL for a given screen, identified by its id.
+         */
+        static Uri getContentUri(long id) {
+            return Uri.parse("content://" + LauncherProvider.AUTHORITY +
+                    "/" + LauncherProvider.TABLE_WORKSPACE_SCREENS + "/" + id + "?" +
+                    LauncherProvider.PARAMETER_NOTIFY + "=false");
+        }
+
+        /**
+         * The position of the screen in the workspace, from left to right.
+         * <P>Type: INTEGER</P>
+         */
+        static final String SCREEN_RANK = "screenRank";
     }
 }
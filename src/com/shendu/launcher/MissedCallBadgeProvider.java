@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shendu.launcher;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.CallLog.Calls;
+
+/**
+ * Counts new missed calls for the dialer badge.
+ */
+class MissedCallBadgeProvider extends BadgeProvider {
+    private static final String[] COUNT_PROJECTION = new String[] { Calls._ID };
+    private static final String SELECTION =
+            Calls.TYPE + "=" + Calls.MISSED_TYPE + " and " + Calls.NEW + " = 1";
+    private static final long MIN_REFRESH_INTERVAL = 500;
+
+    MissedCallBadgeProvider() {
+        super(LauncherApplication.sCallComponentName, MIN_REFRESH_INTERVAL);
+    }
+
+    @Override
+    public Uri[] getObservedUris() {
+        return new Uri[] { Calls.CONTENT_URI };
+    }
+
+    @Override
+    public int queryCount(Context context) {
+        Cursor c = context.getContentResolver().query(Calls.CONTENT_URI, COUNT_PROJECTION,
+                SELECTION, null, null);
+        if (c == null) {
+            return 0;
+        }
+        try {
+            return c.getCount();
+        } finally {
+            c.close();
+        }
+    }
+}
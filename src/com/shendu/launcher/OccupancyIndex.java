@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shendu.launcher;
+
+/**
+ * Summed-area table over a cell occupancy grid.
+ *
+ * Answers "how many cells of this rectangle are occupied" in constant time, which turns the
+ * vacancy checks of the cell searches from O(span area) into O(1) per candidate origin.
+ * Rectangles written through {@link #fill} update the table in place. Writers that touch the
+ * grid directly mark the index dirty with {@link #invalidate()} instead; the table is then
+ * rebuilt in a single pass on the next query, so a batch of writes costs one rebuild.
+ *
+ * A query can treat one rectangle as vacant, see {@link #setIgnoredRect}, which lets the
+ * searches skip the item being moved without writing the grid.
+ */
+public class OccupancyIndex {
+    private boolean[][] mGrid;
+    private int mCountX;
+    private int mCountY;
+    // mSums[x + 1][y + 1] holds the number of occupied cells in [0, x] x [0, y]
+    private int[][] mSums = new int[1][1];
+    // Per row, the number of cells changed so far by the fill in progress
+    private int[] mRowChanges = new int[0];
+    private boolean mDirty = true;
+    // Counted as vacant by the queries; empty when mIgnoreRight <= mIgnoreLeft
+    private int mIgnoreLeft, mIgnoreTop, mIgnoreRight, mIgnoreBottom;
+
+    /**
+     * Points the index at a grid. The grid is read, never written, and must stay at least
+     * countX by countY.
+     */
+    void setGrid(boolean[][] grid, int countX, int countY) {
+        mGrid = grid;
+        if (countX != mCountX || countY != mCountY) {
+            mCountX = countX;
+            mCountY = countY;
+            mSums = new int[countX + 1][countY + 1];
+            mRowChanges = new int[countY];
+        }
+        mDirty = true;
+        clearIgnoredRect();
+    }
+
+    boolean isIndexing(boolean[][] grid) {
+        return grid == mGrid;
+    }
+
+    void invalidate() {
+        mDirty = true;
+    }
+
+    /**
+     * Sets every cell of the rectangle, clipped to the grid, to value. Only the part of the
+     * table below and to the right of the rectangle's top-left cell is updated, by the number
+     * of cells that actually changed.
+     */
+    void fill(int cellX, int cellY, int spanX, int spanY, boolean value) {
+        if (cellX < 0 || cellY < 0) return;
+        final boolean[][] grid = mGrid;
+        final int right = Math.min(cellX + spanX, mCountX);
+        final int bottom = Math.min(cellY + spanY, mCountY);
+        if (mDirty) {
+            // The next query rebuilds the whole table anyway
+            for (int x = cellX; x < right; x++) {
+                for (int y = cellY; y < bottom; y++) {
+                    grid[x][y] = value;
+                }
+            }
+            return;
+        }
+
+        final int[][] sums = mSums;
+        final int[] rowChanges = mRowChanges;
+        final int delta = value ? 1 : -1;
+        boolean changed = false;
+        for (int x = cellX; x < mCountX; x++) {
+            if (x < right) {
+                final boolean[] column = grid[x];
+                for (int y = cellY; y < bottom; y++) {
+                    if (column[y] != value) {
+                        column[y] = value;
+                        rowChanges[y]++;
+                        changed = true;
+                    }
+                }
+            }
+            if (!changed) {
+                continue;
+            }
+            // rowChanges now counts the changed cells of columns cellX..x, so the sum of its
+            // rows up to y is the change in the occupied count of [0, x] x [0, y]
+            final int[] sumColumn = sums[x + 1];
+            int run = 0;
+            for (int y = cellY; y < mCountY; y++) {
+                if (y < bottom) {
+                    run += rowChanges[y];
+                }
+                sumColumn[y + 1] += delta * run;
+            }
+        }
+        for (int y = cellY; y < bottom; y++) {
+            rowChanges[y] = 0;
+        }
+    }
+
+    /**
+     * Makes the queries count the cells of the rectangle as vacant until
+     * {@link #clearIgnoredRect()}. The grid and the table are left as they are.
+     */
+    void setIgnoredRect(int cellX, int cellY, int spanX, int spanY) {
+        mIgnoreLeft = cellX;
+        mIgnoreTop = cellY;
+        mIgnoreRight = cellX + spanX;
+        mIgnoreBottom = cellY + spanY;
+    }
+
+    void clearIgnoredRect() {
+        mIgnoreLeft = mIgnoreTop = mIgnoreRight = mIgnoreBottom = 0;
+    }
+
+    private void ensureFresh() {
+        if (!mDirty) {
+            return;
+        }
+        final boolean[][] grid = mGrid;
+        final int[][] sums = mSums;
+        for (int x = 0; x < mCountX; x++) {
+            final boolean[] column = grid[x];
+            final int[] prev = sums[x];
+            final int[] cur = sums[x + 1];
+            int columnSum = 0;
+            for (int y = 0; y < mCountY; y++) {
+                if (column[y]) {
+                    columnSum++;
+                }
+                cur[y + 1] = prev[y + 1] + columnSum;
+            }
+        }
+        mDirty = false;
+    }
+
+    /**
+     * Returns the number of occupied cells in the given rectangle, which must lie inside
+     * the grid.
+     */
+    int countOccupied(int cellX, int cellY, int spanX, int spanY) {
+        ensureFresh();
+        final int right = cellX + spanX;
+        final int bottom = cellY + spanY;
+        int count = sum(cellX, cellY, right, bottom);
+        if (mIgnoreRight > mIgnoreLeft) {
+            final int left = Math.max(cellX, mIgnoreLeft);
+            final int top = Math.max(cellY, mIgnoreTop);
+            final int ignoreRight = Math.min(right, mIgnoreRight);
+            final int ignoreBottom = Math.min(bottom, mIgnoreBottom);
+            if (left < ignoreRight && top < ignoreBottom) {
+                count -= sum(left, top, ignoreRight, ignoreBottom);
+            }
+        }
+        return count;
+    }
+
+    private int sum(int left, int top, int right, int bottom) {
+        final int[][] sums = mSums;
+        return sums[right][bottom] - sums[left][bottom] - sums[right][top] + sums[left][top];
+    }
+
+    boolean isVacant(int cellX, int cellY, int spanX, int spanY) {
+        return countOccupied(cellX, cellY, spanX, spanY) == 0;
+    }
+
+    boolean isFull(int cellX, int cellY, int spanX, int spanY) {
+        return countOccupied(cellX, cellY, spanX, spanY) == spanX * spanY;
+    }
+
+    int getOccupiedCount() {
+        return countOccupied(0, 0, mCountX, mCountY);
+    }
+}
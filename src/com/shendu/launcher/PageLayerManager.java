@@ -0,0 +1,372 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shendu.launcher;
+
+import android.os.SystemClock;
+import android.util.DisplayMetrics;
+import android.util.Log;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Decides which workspace pages hold a hardware layer.
+ *
+ * While the workspace moves, the pages about to show are predicted from the scroll position,
+ * its smoothed velocity and the page being snapped to, and their layers are turned on and
+ * rendered ahead of the frame that needs them, one per message loop. Layers are not released
+ * mid-gesture unless the memory cap needs the room; when the gesture ends only the current
+ * page and its neighbours keep theirs. Churn is counted per gesture and reported by
+ * {@link #dump}.
+ *
+ * Only access from the UI thread.
+ */
+public class PageLayerManager {
+    static final String TAG = "Launcher.PageLayerManager";
+    static final boolean DEBUG_LAYERS = false;
+
+    // Layer memory allowed, in full screens of pixels
+    private static final int MAX_LAYER_SCREENS = 4;
+    // How far ahead the scroll velocity is projected to find the pages about to show
+    private static final float LOOKAHEAD_SECONDS = 0.15f;
+    // Weight of the newest frame in the smoothed velocity
+    private static final float VELOCITY_SMOOTHING = 0.5f;
+
+    private static class PageLayer {
+        boolean layered;
+        int bytes;
+        // Churn bookkeeping of the current gesture
+        boolean builtInGesture;
+        boolean releasedInGesture;
+        boolean shownInGesture;
+    }
+
+    private final Workspace mWorkspace;
+    private final int mScreenBytes;
+    private final long mMaxBytes;
+    private final HashMap<CellLayout, PageLayer> mPages = new HashMap<CellLayout, PageLayer>();
+    private long mBytes;
+
+    // Offscreen pages whose layer is rendered ahead, one per message
+    private final ArrayList<CellLayout> mPendingBuilds = new ArrayList<CellLayout>();
+    private boolean mBuildPosted;
+    private final Runnable mBuildRunnable = new Runnable() {
+        public void run() {
+            mBuildPosted = false;
+            if (!mPendingBuilds.isEmpty()) {
+                CellLayout cl = mPendingBuilds.remove(0);
+                PageLayer layer = mPages.get(cl);
+                if (layer != null && layer.layered) {
+                    cl.buildHardwareLayer();
+                }
+                postBuild();
+            }
+        }
+    };
+
+    private boolean mInGesture;
+    private float mLastPosition = Float.NaN;
+    private long mLastPositionTime;
+    // Pages per second
+    private float mVelocity;
+    private int mWantedFirst = -1;
+    private int mWantedLast = -1;
+
+    private int mGestureBuilt;
+    private int mGestureReleased;
+    private int mGestureRebuilt;
+    private int mGestures;
+    private int mTotalBuilt;
+    private int mTotalReleased;
+    private int mTotalRebuilt;
+    private int mTotalUnused;
+    private long mPeakBytes;
+
+    PageLayerManager(Workspace workspace) {
+        mWorkspace = workspace;
+        DisplayMetrics metrics = workspace.getResources().getDisplayMetrics();
+        mScreenBytes = metrics.widthPixels * metrics.heightPixels * 4;
+        mMaxBytes = (long) mScreenBytes * MAX_LAYER_SCREENS;
+    }
+
+    /**
+     * Returns how many pages beyond the two around the screen center can show. Every
+     * transition effect puts pages scrolled a full page away back at rest, so only the
+     * scaled down small state shows more.
+     */
+    static int getVisibleReach(boolean small) {
+        return small ? 1 : 0;
+    }
+
+    void beginGesture() {
+        mInGesture = true;
+        mGestureBuilt = 0;
+        mGestureReleased = 0;
+        mGestureRebuilt = 0;
+        for (PageLayer layer : mPages.values()) {
+            layer.builtInGesture = false;
+            layer.releasedInGesture = false;
+            layer.shownInGesture = false;
+        }
+        mLastPosition = Float.NaN;
+        mVelocity = 0;
+    }
+
+    /**
+     * Called every scroll frame with the scroll position in pages (0 when page 0 is centered)
+     * and the page being snapped to, or -1.
+     */
+    void onScrolled(float position, int targetPage, int reach) {
+        final long now = SystemClock.uptimeMillis();
+        if (!Float.isNaN(mLastPosition) && now > mLastPositionTime) {
+            final float velocity = (position - mLastPosition) * 1000 / (now - mLastPositionTime);
+            mVelocity += (velocity - mVelocity) * VELOCITY_SMOOTHING;
+        }
+        mLastPosition = position;
+        mLastPositionTime = now;
+
+        final int pageCount = mWorkspace.getChildCount();
+        if (pageCount == 0) {
+            return;
+        }
+        final int shownFirst = Math.max(0, (int) Math.floor(position) - reach);
+        final int shownLast = Math.min(pageCount - 1, (int) Math.ceil(position) + reach);
+        if (mInGesture) {
+            for (int i = shownFirst; i <= shownLast; i++) {
+                PageLayer layer = mPages.get(mWorkspace.getPageAt(i));
+                if (layer != null) {
+                    layer.shownInGesture = true;
+                }
+            }
+        }
+
+        final float projected = position + mVelocity * LOOKAHEAD_SECONDS;
+        float low = Math.min(position, projected);
+        float high = Math.max(position, projected);
+        if (targetPage >= 0) {
+            low = Math.min(low, targetPage);
+            high = Math.max(high, targetPage);
+        }
+        final boolean forward = targetPage >= 0 ? targetPage >= position : mVelocity >= 0;
+        updateWantedRange((int) Math.floor(low) - reach, (int) Math.ceil(high) + reach,
+                shownFirst, shownLast, forward, position);
+    }
+
+    /**
+     * Ends the gesture: only the page at {@code position} and its neighbours keep their
+     * layers, ready for the next gesture.
+     */
+    void endGesture(int position, int reach) {
+        settle(position, reach);
+        if (!mInGesture) {
+            return;
+        }
+        mInGesture = false;
+        int unused = 0;
+        for (PageLayer layer : mPages.values()) {
+            if (layer.builtInGesture && !layer.shownInGesture) {
+                unused++;
+            }
+        }
+        mGestures++;
+        mTotalBuilt += mGestureBuilt;
+        mTotalReleased += mGestureReleased;
+        mTotalRebuilt += mGestureRebuilt;
+        mTotalUnused += unused;
+        if (DEBUG_LAYERS) {
+            Log.d(TAG, "gesture: built " + mGestureBuilt + ", released " + mGestureReleased
+                    + ", rebuilt " + mGestureRebuilt + ", never shown " + unused + ", "
+                    + (mBytes / 1024) + "KB held");
+        }
+    }
+
+    /**
+     * Keeps layers on the page at {@code position} and its neighbours only.
+     */
+    void settle(int position, int reach) {
+        mLastPosition = Float.NaN;
+        mVelocity = 0;
+        final int pageCount = mWorkspace.getChildCount();
+        if (pageCount == 0) {
+            return;
+        }
+        mWantedFirst = Math.max(0, position - reach - 1);
+        mWantedLast = Math.min(pageCount - 1, position + reach + 1);
+        // Release first so the neighbours have room under the cap
+        for (int i = 0; i < pageCount; i++) {
+            if (i < mWantedFirst || i > mWantedLast) {
+                CellLayout cl = (CellLayout) mWorkspace.getPageAt(i);
+                PageLayer layer = mPages.get(cl);
+                if (layer != null && layer.layered) {
+                    release(cl, layer);
+                }
+            }
+        }
+        acquire((CellLayout) mWorkspace.getPageAt(position), true);
+        for (int i = mWantedFirst; i <= mWantedLast; i++) {
+            acquire((CellLayout) mWorkspace.getPageAt(i), i == position);
+        }
+    }
+
+    void onPageRemoved(CellLayout cl) {
+        PageLayer layer = mPages.remove(cl);
+        if (layer != null && layer.layered) {
+            mBytes -= layer.bytes;
+        }
+        mPendingBuilds.remove(cl);
+    }
+
+    private void updateWantedRange(int first, int last, int shownFirst, int shownLast,
+            boolean forward, float position) {
+        final int pageCount = mWorkspace.getChildCount();
+        first = Math.max(0, first);
+        last = Math.min(pageCount - 1, last);
+        // Under the cap, keep the pages on screen and those ahead of the motion
+        final int maxPages = (int) Math.max(1, mMaxBytes / getPageBytes(
+                (CellLayout) mWorkspace.getPageAt(Math.max(0, Math.min(pageCount - 1,
+                        Math.round(position))))));
+        if (last - first + 1 > maxPages) {
+            if (forward) {
+                first = Math.max(first, shownFirst);
+                last = Math.min(last, first + maxPages - 1);
+            } else {
+                last = Math.min(last, shownLast);
+                first = Math.max(first, last - maxPages + 1);
+            }
+        }
+        if (first == mWantedFirst && last == mWantedLast) {
+            return;
+        }
+        mWantedFirst = first;
+        mWantedLast = last;
+        // Pages on screen first, then outwards in the direction of motion
+        for (int i = shownFirst; i <= shownLast; i++) {
+            acquire((CellLayout) mWorkspace.getPageAt(i), true);
+        }
+        if (forward) {
+            for (int i = shownLast + 1; i <= last; i++) {
+                acquire((CellLayout) mWorkspace.getPageAt(i), false);
+            }
+            for (int i = shownFirst - 1; i >= first; i--) {
+                acquire((CellLayout) mWorkspace.getPageAt(i), false);
+            }
+        } else {
+            for (int i = shownFirst - 1; i >= first; i--) {
+                acquire((CellLayout) mWorkspace.getPageAt(i), false);
+            }
+            for (int i = shownLast + 1; i <= last; i++) {
+                acquire((CellLayout) mWorkspace.getPageAt(i), false);
+            }
+        }
+    }
+
+    private int getPageBytes(CellLayout cl) {
+        final int bytes = cl.getHardwareLayerSize();
+        // Pages that were not laid out yet are assumed to fill the screen
+        return bytes > 0 ? bytes : mScreenBytes;
+    }
+
+    private void acquire(CellLayout cl, boolean shown) {
+        if (cl == null) {
+            return;
+        }
+        PageLayer layer = mPages.get(cl);
+        if (layer == null) {
+            layer = new PageLayer();
+            mPages.put(cl, layer);
+        }
+        if (layer.layered) {
+            return;
+        }
+        final int bytes = getPageBytes(cl);
+        if (mBytes + bytes > mMaxBytes && !evictOutsideWanted(bytes)) {
+            return;
+        }
+        cl.enableHardwareLayers();
+        layer.layered = true;
+        layer.bytes = bytes;
+        mBytes += bytes;
+        mPeakBytes = Math.max(mPeakBytes, mBytes);
+        if (mInGesture) {
+            mGestureBuilt++;
+            if (layer.releasedInGesture) {
+                mGestureRebuilt++;
+            }
+            layer.builtInGesture = true;
+        }
+        if (!shown) {
+            mPendingBuilds.add(cl);
+            postBuild();
+        }
+    }
+
+    private void release(CellLayout cl, PageLayer layer) {
+        cl.disableHardwareLayers();
+        layer.layered = false;
+        mBytes -= layer.bytes;
+        mPendingBuilds.remove(cl);
+        if (mInGesture) {
+            mGestureReleased++;
+            layer.releasedInGesture = true;
+        }
+    }
+
+    /**
+     * Releases the layers of pages outside the wanted range, farthest first, until
+     * {@code bytes} more fit under the cap. Returns whether they fit.
+     */
+    private boolean evictOutsideWanted(int bytes) {
+        final int pageCount = mWorkspace.getChildCount();
+        final int center = (mWantedFirst + mWantedLast) / 2;
+        for (int distance = pageCount; distance > 0 && mBytes + bytes > mMaxBytes; distance--) {
+            for (int side = -1; side <= 1; side += 2) {
+                final int i = center + side * distance;
+                if (i < 0 || i >= pageCount || (i >= mWantedFirst && i <= mWantedLast)) {
+                    continue;
+                }
+                CellLayout cl = (CellLayout) mWorkspace.getPageAt(i);
+                PageLayer layer = mPages.get(cl);
+                if (layer != null && layer.layered) {
+                    release(cl, layer);
+                }
+            }
+        }
+        return mBytes + bytes <= mMaxBytes;
+    }
+
+    private void postBuild() {
+        if (!mBuildPosted && !mPendingBuilds.isEmpty()) {
+            mBuildPosted = true;
+            mWorkspace.post(mBuildRunnable);
+        }
+    }
+
+    void dump(String prefix, PrintWriter writer) {
+        int layered = 0;
+        for (PageLayer layer : mPages.values()) {
+            if (layer.layered) {
+                layered++;
+            }
+        }
+        writer.println(prefix + "Page layers: " + layered + " pages, " + (mBytes / 1024)
+                + "KB of " + (mMaxBytes / 1024) + "KB, peak " + (mPeakBytes / 1024) + "KB");
+        writer.println(prefix + "  " + mGestures + " gestures: built " + mTotalBuilt
+                + ", released " + mTotalReleased + ", rebuilt " + mTotalRebuilt
+                + ", built but never shown " + mTotalUnused);
+    }
+}
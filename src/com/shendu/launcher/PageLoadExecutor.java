@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shendu.launcher;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+
+/**
+ * Runs page loading requests of a paged view on a few dedicated threads, nearest page first.
+ *
+ * Requests are not ordered when they are submitted but when a thread becomes free, by their
+ * distance from the page the view is heading to, so moving the target re-orders everything
+ * that is still queued. Pages ahead in the direction of travel win ties. The number of threads
+ * is capped by the number of cores, leaving one for the UI thread.
+ */
+public class PageLoadExecutor {
+    static final String TAG = "Launcher.PageLoadExecutor";
+    static final boolean DEBUG_PAGE_LOADS = false;
+
+    private static final int MAX_THREADS = 3;
+
+    /**
+     * One page worth of background work. {@link #runInBackground()} runs on a loader thread
+     * unless the request was cancelled while queued; {@link #onPostExecute()} always follows on
+     * the UI thread.
+     */
+    static abstract class Request implements Runnable {
+        final int page;
+        private PageLoadExecutor mExecutor;
+        private volatile boolean mCancelled;
+        private long mSequence;
+        private long mEnqueueTime;
+        private int mThreadPriority = Integer.MIN_VALUE;
+
+        Request(int page) {
+            this.page = page;
+        }
+
+        abstract void runInBackground();
+
+        abstract void onPostExecute();
+
+        /**
+         * Cancels the request. A queued request is skipped; a running one is expected to poll
+         * {@link #isCancelled()}.
+         */
+        void cancel() {
+            mCancelled = true;
+        }
+
+        boolean isCancelled() {
+            return mCancelled;
+        }
+
+        /**
+         * Moves the calling loader thread to the priority this page deserves now. Called by the
+         * request between items, as the user may have scrolled since it started.
+         */
+        void syncThreadPriority() {
+            PageLoadExecutor executor = mExecutor;
+            if (executor == null) {
+                return;
+            }
+            int priority = executor.getDistance(page) == 0
+                    ? Process.THREAD_PRIORITY_LESS_FAVORABLE : Process.THREAD_PRIORITY_LOWEST;
+            if (priority != mThreadPriority) {
+                mThreadPriority = priority;
+                Process.setThreadPriority(priority);
+            }
+        }
+
+        public final void run() {
+            if (!mCancelled) {
+                syncThreadPriority();
+                runInBackground();
+            }
+            mExecutor.mHandler.post(new Runnable() {
+                public void run() {
+                    onPostExecute();
+                }
+            });
+        }
+    }
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final ArrayList<Request> mPending = new ArrayList<Request>();
+    private final int mThreadCount;
+    private long mNextSequence;
+
+    // The page the view is heading to and the direction it is moving in, -1, 0 or 1
+    private volatile int mTargetPage;
+    private volatile int mDirection;
+
+    // Queue latency, from submit to start; guarded by mPending
+    private int mStarted;
+    private long mTotalLatency;
+    private long mMaxLatency;
+
+    public PageLoadExecutor(String name) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        mThreadCount = Math.max(1, Math.min(MAX_THREADS, cores - 1));
+        for (int i = 0; i < mThreadCount; i++) {
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    while (true) {
+                        takeNext().run();
+                    }
+                }
+            }, name + "-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Tells the executor which page the view is showing or snapping to.
+     *
+     * @param direction the direction of travel, negative when going towards lower pages
+     */
+    void setTargetPage(int page, int direction) {
+        mTargetPage = page;
+        mDirection = Integer.signum(direction);
+    }
+
+    void execute(Request request) {
+        synchronized (mPending) {
+            request.mExecutor = this;
+            request.mSequence = mNextSequence++;
+            request.mEnqueueTime = SystemClock.uptimeMillis();
+            mPending.add(request);
+            mPending.notify();
+        }
+    }
+
+    /**
+     * Returns how far the page is from the target, counting pages behind the direction of
+     * travel as half a page further away.
+     */
+    int getDistance(int page) {
+        final int target = mTargetPage;
+        final int offset = page - target;
+        final boolean behind = mDirection != 0 && Integer.signum(offset) == -mDirection;
+        return Math.abs(offset) * 2 + (behind ? 1 : 0);
+    }
+
+    private Request takeNext() {
+        synchronized (mPending) {
+            while (mPending.isEmpty()) {
+                try {
+                    mPending.wait();
+                } catch (InterruptedException e) {
+                    // Keep serving
+                }
+            }
+            int best = 0;
+            int bestDistance = Integer.MAX_VALUE;
+            long bestSequence = Long.MAX_VALUE;
+            final int count = mPending.size();
+            for (int i = 0; i < count; i++) {
+                Request r = mPending.get(i);
+                // Cancelled requests go first, so they are out of the way quickly
+                int distance = r.isCancelled() ? -1 : getDistance(r.page);
+                if (distance < bestDistance
+                        || (distance == bestDistance && r.mSequence < bestSequence)) {
+                    best = i;
+                    bestDistance = distance;
+                    bestSequence = r.mSequence;
+                }
+            }
+            Request request = mPending.remove(best);
+            if (!request.isCancelled()) {
+                long latency = SystemClock.uptimeMillis() - request.mEnqueueTime;
+                mStarted++;
+                mTotalLatency += latency;
+                mMaxLatency = Math.max(mMaxLatency, latency);
+                if (DEBUG_PAGE_LOADS) {
+                    Log.d(TAG, "page " + request.page + " waited " + latency + "ms, "
+                            + mPending.size() + " still queued");
+                }
+            }
+            return request;
+        }
+    }
+
+    void dump(String prefix, PrintWriter writer) {
+        synchronized (mPending) {
+            writer.println(prefix + "PageLoadExecutor: threads=" + mThreadCount
+                    + " queued=" + mPending.size() + " started=" + mStarted
+                    + " avgQueueMs=" + (mStarted > 0 ? mTotalLatency / mStarted : 0)
+                    + " maxQueueMs=" + mMaxLatency);
+        }
+    }
+}
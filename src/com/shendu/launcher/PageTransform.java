@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shendu.launcher;
+
+/**
+ * The properties a workspace transition effect sets on one page for a given scroll progress.
+ *
+ * Only the properties named in {@link #mask} are applied; the others are left as they are.
+ * Workspace keeps the last applied transform per page so a page whose transform did not change
+ * since the previous frame skips its setters and its invalidate.
+ */
+public class PageTransform {
+    static final int TRANSLATION_X = 1 << 0;
+    static final int TRANSLATION_Y = 1 << 1;
+    // Scale X and Y are always set together
+    static final int SCALE = 1 << 2;
+    static final int ROTATION = 1 << 3;
+    static final int ROTATION_Y = 1 << 4;
+    static final int PIVOT_X = 1 << 5;
+    static final int PIVOT_Y = 1 << 6;
+    static final int CAMERA_DISTANCE = 1 << 7;
+    // The alpha of the page view itself
+    static final int ALPHA = 1 << 8;
+    // CellLayout.setShortcutAndWidgetAlpha
+    static final int CONTENT_ALPHA = 1 << 9;
+    static final int BACKGROUND_ALPHA = 1 << 10;
+    static final int VISIBILITY = 1 << 11;
+
+    int mask;
+    float translationX;
+    float translationY;
+    float scale;
+    float rotation;
+    float rotationY;
+    float pivotX;
+    float pivotY;
+    float cameraDistance;
+    float alpha;
+    float contentAlpha;
+    float backgroundAlpha;
+    boolean visible;
+
+    // Workspace's transform generation when this was applied; not part of the value
+    int generation = -1;
+
+    void reset() {
+        mask = 0;
+    }
+
+    void set(PageTransform t) {
+        mask = t.mask;
+        translationX = t.translationX;
+        translationY = t.translationY;
+        scale = t.scale;
+        rotation = t.rotation;
+        rotationY = t.rotationY;
+        pivotX = t.pivotX;
+        pivotY = t.pivotY;
+        cameraDistance = t.cameraDistance;
+        alpha = t.alpha;
+        contentAlpha = t.contentAlpha;
+        backgroundAlpha = t.backgroundAlpha;
+        visible = t.visible;
+    }
+
+    /**
+     * Returns whether both transforms set the same properties to the same values.
+     */
+    boolean sameAs(PageTransform t) {
+        final int m = mask;
+        return m == t.mask
+                && ((m & TRANSLATION_X) == 0 || translationX == t.translationX)
+                && ((m & TRANSLATION_Y) == 0 || translationY == t.translationY)
+                && ((m & SCALE) == 0 || scale == t.scale)
+                && ((m & ROTATION) == 0 || rotation == t.rotation)
+                && ((m & ROTATION_Y) == 0 || rotationY == t.rotationY)
+                && ((m & PIVOT_X) == 0 || pivotX == t.pivotX)
+                && ((m & PIVOT_Y) == 0 || pivotY == t.pivotY)
+                && ((m & CAMERA_DISTANCE) == 0 || cameraDistance == t.cameraDistance)
+                && ((m & ALPHA) == 0 || alpha == t.alpha)
+                && ((m & CONTENT_ALPHA) == 0 || contentAlpha == t.contentAlpha)
+                && ((m & BACKGROUND_ALPHA) == 0 || backgroundAlpha == t.backgroundAlpha)
+                && ((m & VISIBILITY) == 0 || visible == t.visible);
+    }
+
+    @Override
+    public String toString() {
+        return "PageTransform(mask=0x" + Integer.toHexString(mask) + " tx=" + translationX
+                + " ty=" + translationY + " scale=" + scale + " rot=" + rotation
+                + " rotY=" + rotationY + " pivot=" + pivotX + "," + pivotY
+                + " camera=" + cameraDistance + " alpha=" + alpha + " content=" + contentAlpha
+                + " background=" + backgroundAlpha + " visible=" + visible + ")";
+    }
+}
@@ -52,7 +52,12 @@ public class PagedViewWallpaper extends FrameLayout {
         TextView wallpaperMark = (TextView)findViewById(R.id.editstate_tabhost_tabcontent_wallpaper_mark_id);
         if(info.getChoice()==ShenduPrograme.CHOICE_WALLPAPER_LAUNCHER){
         	bgResId = R.drawable.editstate_tabhost_tabcontent_wallpaper_bg;
-        	wallpaperIcon.setImageResource(info.getResSmallId());
+        	if (info.getResSmallId() != 0) {
+        	    wallpaperIcon.setImageResource(info.getResSmallId());
+        	} else {
+        	    // Generated thumbnail, null until the thumbnail cache delivers it
+        	    wallpaperIcon.setImageDrawable(info.getResDrawable());
+        	}
         }else if(info.getChoice()==ShenduPrograme.CHOICE_WALLPAPER_CURRENT){
         	bgResId = R.drawable.editstate_tabhost_tabcontent_wallpaper_bg;
         	wallpaperIcon.setImageDrawable(info.getResDrawable());
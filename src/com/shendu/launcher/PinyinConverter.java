@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shendu.launcher;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Maps CJK unified ideographs to toneless pinyin syllables.
+ *
+ * The table lives in res/raw/pinyin_table and covers U+4E00..U+9FA5 with one primary reading
+ * per character, plus a second reading for a short list of common polyphones. Lookups are a
+ * single array access, so converting a label costs no more than walking its characters. Only
+ * plain Java is used here; the caller owns opening the stream.
+ */
+public class PinyinConverter {
+    private static final short NO_READING = -1;
+
+    private final String[] mSyllables;
+    private final char mFirst;
+    private final short[] mReadings;
+    // Sorted by character; mAlternateReadings[i] is the second reading of mAlternateChars[i]
+    private final char[] mAlternateChars;
+    private final short[] mAlternateReadings;
+
+    /**
+     * Creates a converter that knows no characters.
+     */
+    public PinyinConverter() {
+        mSyllables = new String[0];
+        mFirst = 0;
+        mReadings = new short[0];
+        mAlternateChars = new char[0];
+        mAlternateReadings = new short[0];
+    }
+
+    /**
+     * Reads the table from the stream. The stream is not closed.
+     */
+    public PinyinConverter(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        final int syllableCount = data.readUnsignedShort();
+        mSyllables = new String[syllableCount];
+        for (int i = 0; i < syllableCount; i++) {
+            byte[] ascii = new byte[data.readUnsignedShort()];
+            data.readFully(ascii);
+            mSyllables[i] = new String(ascii, "US-ASCII");
+        }
+        mFirst = data.readChar();
+        mReadings = new short[data.readUnsignedShort()];
+        for (int i = 0; i < mReadings.length; i++) {
+            mReadings[i] = checkReading(data.readShort());
+        }
+        final int alternateCount = data.readUnsignedShort();
+        mAlternateChars = new char[alternateCount];
+        mAlternateReadings = new short[alternateCount];
+        for (int i = 0; i < alternateCount; i++) {
+            mAlternateChars[i] = data.readChar();
+            mAlternateReadings[i] = checkReading(data.readShort());
+        }
+    }
+
+    private short checkReading(short reading) throws IOException {
+        if (reading < NO_READING || reading >= mSyllables.length) {
+            throw new IOException("Bad syllable index " + reading);
+        }
+        return reading;
+    }
+
+    /**
+     * Returns true if the table has a reading for the character.
+     */
+    public boolean hasPinyin(char c) {
+        final int index = c - mFirst;
+        return index >= 0 && index < mReadings.length && mReadings[index] != NO_READING;
+    }
+
+    /**
+     * Returns the primary reading of the character in lower case without tone, using "v"
+     * for u-umlaut, or null if the character is not in the table.
+     */
+    public String getPinyin(char c) {
+        final int index = c - mFirst;
+        if (index < 0 || index >= mReadings.length || mReadings[index] == NO_READING) {
+            return null;
+        }
+        return mSyllables[mReadings[index]];
+    }
+
+    /**
+     * Returns the second reading of a polyphone, or null if the table only knows one.
+     */
+    public String getAlternatePinyin(char c) {
+        int low = 0;
+        int high = mAlternateChars.length - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final char midChar = mAlternateChars[mid];
+            if (midChar < c) {
+                low = mid + 1;
+            } else if (midChar > c) {
+                high = mid - 1;
+            } else {
+                return mSyllables[mAlternateReadings[mid]];
+            }
+        }
+        return null;
+    }
+}
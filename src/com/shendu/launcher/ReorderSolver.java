@@ -0,0 +1,973 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shendu.launcher;
+
+/**
+ * The reorder search behind {@link CellLayout#createArea} and
+ * {@link CellLayout#createAreaForResize}, kept free of views and animation.
+ *
+ * The solver only sees a grid of item rectangles. A layout copies its occupancy and the
+ * committed cell of each child in with {@link #setGrid} and {@link #setItem}, asks for a
+ * solution and applies the returned {@link ItemConfiguration} to its views itself. Items are
+ * addressed by their child index at the time of the copy.
+ *
+ * An instance is not thread safe. All scratch state is sized to the grid and the item count,
+ * so repeated solves over the same layout do not allocate.
+ */
+public class ReorderSolver {
+    private int mCountX;
+    private int mCountY;
+    private boolean[][] mOccupied = new boolean[0][0];
+    private final OccupancyIndex mOccupiedIndex = new OccupancyIndex();
+    private boolean[][] mTmpOccupied = new boolean[0][0];
+    private boolean[][] mBlockOccupied = new boolean[0][0];
+
+    // Pixel geometry, used to map drag positions onto cells
+    private int mPaddingLeft;
+    private int mPaddingTop;
+    private int mCellWidth;
+    private int mCellHeight;
+    private int mWidthGap;
+    private int mHeightGap;
+
+    // Committed cell of every item
+    private int mItemCount;
+    private int[] mItemX = new int[0];
+    private int[] mItemY = new int[0];
+    private int[] mItemSpanX = new int[0];
+    private int[] mItemSpanY = new int[0];
+    private boolean[] mItemCanReorder = new boolean[0];
+
+    private final ItemConfiguration mSwapSolution = new ItemConfiguration();
+    private final ItemConfiguration mNoShuffleSolution = new ItemConfiguration();
+
+    // Scratch state
+    private CellRect[] mValidRegions = new CellRect[0];
+    private final CellRect mBestRect = new CellRect();
+    private final CellRect mOccupiedRect = new CellRect();
+    private final CellRect mRegionRect = new CellRect();
+    private final CellRect mItemRect = new CellRect();
+    private final CellRect mBoundingRect = new CellRect();
+    private final int[] mTmpPoint = new int[2];
+    private final int[] mTmpCenter = new int[2];
+    private final int[] mTempLocation = new int[2];
+    private final int[] mSwapCell = new int[2];
+    private final int[] mNoShuffleCell = new int[2];
+    private final int[] mNoShuffleSpan = new int[2];
+    private final int[] mTargetCell = new int[2];
+    private int[] mIntersecting = new int[0];
+    private int mIntersectingCount;
+    private int[] mGroup = new int[0];
+    private int mGroupCount;
+    private boolean[] mInGroup = new boolean[0];
+
+    /**
+     * Result of a solve: the cell of every item plus where the dragged item lands.
+     */
+    static class ItemConfiguration {
+        int count;
+        int[] x = new int[0];
+        int[] y = new int[0];
+        int[] spanX = new int[0];
+        int[] spanY = new int[0];
+        boolean isSolution = false;
+        int dragViewX, dragViewY, dragViewSpanX, dragViewSpanY;
+
+        void ensureCapacity(int capacity) {
+            if (x.length < capacity) {
+                x = new int[capacity];
+                y = new int[capacity];
+                spanX = new int[capacity];
+                spanY = new int[capacity];
+            }
+        }
+
+        /**
+         * Marks this as no solution and clears the drag area, so a configuration reused from an
+         * earlier solve never reports that solve's area.
+         */
+        void fail() {
+            isSolution = false;
+            dragViewX = dragViewY = dragViewSpanX = dragViewSpanY = 0;
+        }
+
+        int area() {
+            return dragViewSpanX * dragViewSpanY;
+        }
+    }
+
+    /**
+     * Minimal integer rect in cell units, with the same semantics as android.graphics.Rect.
+     */
+    static class CellRect {
+        int left, top, right, bottom;
+
+        void set(int left, int top, int right, int bottom) {
+            this.left = left;
+            this.top = top;
+            this.right = right;
+            this.bottom = bottom;
+        }
+
+        void set(CellRect r) {
+            set(r.left, r.top, r.right, r.bottom);
+        }
+
+        int width() {
+            return right - left;
+        }
+
+        int height() {
+            return bottom - top;
+        }
+
+        boolean isEmpty() {
+            return left >= right || top >= bottom;
+        }
+
+        boolean contains(CellRect r) {
+            return !isEmpty() && left <= r.left && top <= r.top
+                    && right >= r.right && bottom >= r.bottom;
+        }
+
+        void union(int left, int top, int right, int bottom) {
+            if (left < right && top < bottom) {
+                if (!isEmpty()) {
+                    if (this.left > left) this.left = left;
+                    if (this.top > top) this.top = top;
+                    if (this.right < right) this.right = right;
+                    if (this.bottom < bottom) this.bottom = bottom;
+                } else {
+                    set(left, top, right, bottom);
+                }
+            }
+        }
+
+        static boolean intersects(CellRect a, CellRect b) {
+            return a.left < b.right && b.left < a.right && a.top < b.bottom && b.top < a.bottom;
+        }
+    }
+
+    /**
+     * Copies the occupancy grid and sets the number of items that follow through
+     * {@link #setItem}.
+     */
+    void setGrid(int countX, int countY, boolean[][] occupied, int itemCount) {
+        if (countX != mCountX || countY != mCountY) {
+            mCountX = countX;
+            mCountY = countY;
+            mOccupied = new boolean[countX][countY];
+            mTmpOccupied = new boolean[countX][countY];
+            mBlockOccupied = new boolean[countX][countY];
+            mValidRegions = new CellRect[countX * countY];
+            for (int i = 0; i < mValidRegions.length; i++) {
+                mValidRegions[i] = new CellRect();
+            }
+            mOccupiedIndex.setGrid(mOccupied, countX, countY);
+        }
+        copyOccupied(occupied, mOccupied);
+        mOccupiedIndex.invalidate();
+
+        if (mItemX.length < itemCount) {
+            mItemX = new int[itemCount];
+            mItemY = new int[itemCount];
+            mItemSpanX = new int[itemCount];
+            mItemSpanY = new int[itemCount];
+            mItemCanReorder = new boolean[itemCount];
+            mIntersecting = new int[itemCount];
+            mGroup = new int[itemCount];
+            mInGroup = new boolean[itemCount];
+        }
+        mItemCount = itemCount;
+    }
+
+    void setItem(int index, int cellX, int cellY, int spanX, int spanY, boolean canReorder) {
+        mItemX[index] = cellX;
+        mItemY[index] = cellY;
+        mItemSpanX[index] = spanX;
+        mItemSpanY[index] = spanY;
+        mItemCanReorder[index] = canReorder;
+    }
+
+    void setCellMetrics(int paddingLeft, int paddingTop, int cellWidth, int cellHeight,
+            int widthGap, int heightGap) {
+        mPaddingLeft = paddingLeft;
+        mPaddingTop = paddingTop;
+        mCellWidth = cellWidth;
+        mCellHeight = cellHeight;
+        mWidthGap = widthGap;
+        mHeightGap = heightGap;
+    }
+
+    int getItemCount() {
+        return mItemCount;
+    }
+
+    /**
+     * Runs both the swap search and the search that leaves every item in place, and returns
+     * whichever gives the dragged item the larger area, or null if neither fits.
+     *
+     * @param dragItem index of the item being dragged, or -1 if it is not part of the grid
+     */
+    ItemConfiguration solve(int pixelX, int pixelY, int minSpanX, int minSpanY, int spanX,
+            int spanY, int[] direction, int dragItem) {
+        // Both solutions are reused from the last solve; start them failed so neither search
+        // can win the area comparison with a span it didn't find this time
+        mSwapSolution.fail();
+        mNoShuffleSolution.fail();
+        ItemConfiguration swapSolution = simpleSwap(pixelX, pixelY, minSpanX, minSpanY,
+                spanX, spanY, direction, dragItem, true, mSwapSolution);
+
+        // We attempt the approach which doesn't shuffle views at all
+        ItemConfiguration noShuffleSolution = findConfigurationNoShuffle(pixelX, pixelY,
+                minSpanX, minSpanY, spanX, spanY, mNoShuffleSolution);
+
+        if (swapSolution.isSolution && swapSolution.area() >= noShuffleSolution.area()) {
+            return swapSolution;
+        } else if (noShuffleSolution.isSolution) {
+            return noShuffleSolution;
+        }
+        return null;
+    }
+
+    /**
+     * Solves a widget resize, where the item keeps to the requested cell and span.
+     */
+    ItemConfiguration solveResize(int cellX, int cellY, int spanX, int spanY, int[] direction,
+            int dragItem) {
+        mSwapSolution.fail();
+        regionToCenterPoint(cellX, cellY, spanX, spanY, mTmpCenter);
+        return simpleSwap(mTmpCenter[0], mTmpCenter[1], spanX, spanY, spanX, spanY, direction,
+                dragItem, true, mSwapSolution);
+    }
+
+    void regionToCenterPoint(int cellX, int cellY, int spanX, int spanY, int[] result) {
+        result[0] = mPaddingLeft + cellX * (mCellWidth + mWidthGap) +
+                (spanX * mCellWidth + (spanX - 1) * mWidthGap) / 2;
+        result[1] = mPaddingTop + cellY * (mCellHeight + mHeightGap) +
+                (spanY * mCellHeight + (spanY - 1) * mHeightGap) / 2;
+    }
+
+    /**
+     * Find a vacant area that will fit the given bounds nearest the requested
+     * cell location. Uses Euclidean distance to score multiple vacant areas.
+     *
+     * @param pixelX The X location at which you want to search for a vacant area.
+     * @param pixelY The Y location at which you want to search for a vacant area.
+     * @param minSpanX The minimum horizontal span required
+     * @param minSpanY The minimum vertical span required
+     * @param spanX Horizontal span of the object.
+     * @param spanY Vertical span of the object.
+     * @param ignoreOccupied If true, the result can be an occupied cell
+     * @param result Array in which to place the result, or null (in which case a new array will
+     *        be allocated)
+     * @param occupied Index over the grid to search; only read when ignoreOccupied is true
+     * @return The X, Y cell of a vacant area that can contain this object,
+     *         nearest the requested location.
+     */
+    int[] findNearestArea(int pixelX, int pixelY, int minSpanX, int minSpanY, int spanX,
+            int spanY, boolean ignoreOccupied, int[] result, int[] resultSpan,
+            OccupancyIndex occupied) {
+        // For items with a spanX / spanY > 1, the passed in point (pixelX, pixelY) corresponds
+        // to the center of the item, but we are searching based on the top-left cell, so
+        // we translate the point over to correspond to the top-left.
+        pixelX -= (mCellWidth + mWidthGap) * (spanX - 1) / 2f;
+        pixelY -= (mCellHeight + mHeightGap) * (spanY - 1) / 2f;
+
+        // Keep track of best-scoring drop area
+        final int[] bestXY = result != null ? result : new int[2];
+        double bestDistance = Double.MAX_VALUE;
+        final CellRect bestRect = mBestRect;
+        bestRect.set(-1, -1, -1, -1);
+        final CellRect[] validRegions = mValidRegions;
+        int regionCount = 0;
+
+        final int countX = mCountX;
+        final int countY = mCountY;
+
+        if (minSpanX <= 0 || minSpanY <= 0 || spanX <= 0 || spanY <= 0 ||
+                spanX < minSpanX || spanY < minSpanY) {
+            return bestXY;
+        }
+
+        for (int y = 0; y < countY - (minSpanY - 1); y++) {
+            for (int x = 0; x < countX - (minSpanX - 1); x++) {
+                int ySize = -1;
+                int xSize = -1;
+                if (ignoreOccupied) {
+                    // First, let's see if this thing fits anywhere
+                    if (!occupied.isVacant(x, y, minSpanX, minSpanY)) {
+                        continue;
+                    }
+                    xSize = minSpanX;
+                    ySize = minSpanY;
+
+                    // We know that the item will fit at _some_ acceptable size, now let's see
+                    // how big we can make it. We'll alternate between incrementing x and y spans
+                    // until we hit a limit.
+                    boolean incX = true;
+                    boolean hitMaxX = xSize >= spanX;
+                    boolean hitMaxY = ySize >= spanY;
+                    while (!(hitMaxX && hitMaxY)) {
+                        if (incX && !hitMaxX) {
+                            if (x + xSize > countX - 1
+                                    || !occupied.isVacant(x + xSize, y, 1, ySize)) {
+                                // We can't move out horizontally
+                                hitMaxX = true;
+                            }
+                            if (!hitMaxX) {
+                                xSize++;
+                            }
+                        } else if (!hitMaxY) {
+                            if (y + ySize > countY - 1
+                                    || !occupied.isVacant(x, y + ySize, xSize, 1)) {
+                                // We can't move out vertically
+                                hitMaxY = true;
+                            }
+                            if (!hitMaxY) {
+                                ySize++;
+                            }
+                        }
+                        hitMaxX |= xSize >= spanX;
+                        hitMaxY |= ySize >= spanY;
+                        incX = !incX;
+                    }
+                }
+                final int[] cellXY = mTmpCenter;
+                regionToCenterPoint(x, y, 1, 1, cellXY);
+
+                // We verify that the current rect is not a sub-rect of any of our previous
+                // candidates. In this case, the current rect is disqualified in favour of the
+                // containing rect.
+                CellRect currentRect = validRegions[regionCount];
+                currentRect.set(x, y, x + xSize, y + ySize);
+                boolean contained = false;
+                for (int i = 0; i < regionCount; i++) {
+                    if (validRegions[i].contains(currentRect)) {
+                        contained = true;
+                        break;
+                    }
+                }
+                regionCount++;
+                double distance = Math.sqrt(Math.pow(cellXY[0] - pixelX, 2)
+                        + Math.pow(cellXY[1] - pixelY, 2));
+
+                if ((distance <= bestDistance && !contained) ||
+                        currentRect.contains(bestRect)) {
+                    bestDistance = distance;
+                    bestXY[0] = x;
+                    bestXY[1] = y;
+                    if (resultSpan != null) {
+                        resultSpan[0] = xSize;
+                        resultSpan[1] = ySize;
+                    }
+                    bestRect.set(currentRect);
+                }
+            }
+        }
+
+        // Return -1, -1 if no suitable location found
+        if (bestDistance == Double.MAX_VALUE) {
+            bestXY[0] = -1;
+            bestXY[1] = -1;
+        }
+        return bestXY;
+    }
+
+    /**
+     * Find a vacant area that will fit the given bounds nearest the requested
+     * cell location, and will also weigh in a suggested direction vector of the
+     * desired location. This method computers distance based on unit grid distances,
+     * not pixel distances.
+     *
+     * @param cellX The X cell nearest to which you want to search for a vacant area.
+     * @param cellY The Y cell nearest which you want to search for a vacant area.
+     * @param spanX Horizontal span of the object.
+     * @param spanY Vertical span of the object.
+     * @param direction The favored direction in which the views should move from x, y
+     * @param occupied The array which represents which cells in the grid are occupied
+     * @param blockOccupied The array which represents which cells in the specified block (cellX,
+     *        cellY, spanX, spanY) are occupied. This is used when try to move a group of views.
+     * @param result Array in which to place the result
+     * @return The X, Y cell of a vacant area that can contain this object,
+     *         nearest the requested location.
+     */
+    private int[] findNearestArea(int cellX, int cellY, int spanX, int spanY, int[] direction,
+            boolean[][] occupied, boolean blockOccupied[][], int[] result) {
+        // Keep track of best-scoring drop area
+        final int[] bestXY = result;
+        float bestDistance = Float.MAX_VALUE;
+        int bestDirectionScore = Integer.MIN_VALUE;
+
+        final int countX = mCountX;
+        final int countY = mCountY;
+
+        for (int y = 0; y < countY - (spanY - 1); y++) {
+            inner:
+            for (int x = 0; x < countX - (spanX - 1); x++) {
+                // First, let's see if this thing fits anywhere
+                for (int i = 0; i < spanX; i++) {
+                    for (int j = 0; j < spanY; j++) {
+                        if (occupied[x + i][y + j] && (blockOccupied == null || blockOccupied[i][j])) {
+                            continue inner;
+                        }
+                    }
+                }
+
+                float distance = (float)
+                        Math.sqrt((x - cellX) * (x - cellX) + (y - cellY) * (y - cellY));
+                int[] curDirection = mTmpPoint;
+                computeDirectionVector(x - cellX, y - cellY, curDirection);
+                // The direction score is just the dot product of the two candidate direction
+                // and that passed in.
+                int curDirectionScore = direction[0] * curDirection[0] +
+                        direction[1] * curDirection[1];
+                boolean exactDirectionOnly = false;
+                boolean directionMatches = direction[0] == curDirection[0] &&
+                        direction[0] == curDirection[0];
+                if ((directionMatches || !exactDirectionOnly) &&
+                        Float.compare(distance,  bestDistance) < 0 || (Float.compare(distance,
+                        bestDistance) == 0 && curDirectionScore > bestDirectionScore)) {
+                    bestDistance = distance;
+                    bestDirectionScore = curDirectionScore;
+                    bestXY[0] = x;
+                    bestXY[1] = y;
+                }
+            }
+        }
+
+        // Return -1, -1 if no suitable location found
+        if (bestDistance == Float.MAX_VALUE) {
+            bestXY[0] = -1;
+            bestXY[1] = -1;
+        }
+        return bestXY;
+    }
+
+    private int[] findNearestAreaInDirection(int cellX, int cellY, int spanX, int spanY,
+            int[] direction, boolean[][] occupied,
+            boolean blockOccupied[][], int[] result) {
+        // Keep track of best-scoring drop area
+        final int[] bestXY = result;
+        bestXY[0] = -1;
+        bestXY[1] = -1;
+        float bestDistance = Float.MAX_VALUE;
+
+        // We use this to march in a single direction
+        if ((direction[0] != 0 && direction[1] != 0) ||
+                (direction[0] == 0 && direction[1] == 0)) {
+            return bestXY;
+        }
+
+        // This will only incrememnet one of x or y based on the assertion above
+        int x = cellX + direction[0];
+        int y = cellY + direction[1];
+        while (x >= 0 && x + spanX <= mCountX && y >= 0 && y + spanY <= mCountY) {
+
+            boolean fail = false;
+            for (int i = 0; i < spanX; i++) {
+                for (int j = 0; j < spanY; j++) {
+                    if (occupied[x + i][y + j] && (blockOccupied == null || blockOccupied[i][j])) {
+                        fail = true;
+                    }
+                }
+            }
+            if (!fail) {
+                float distance = (float)
+                        Math.sqrt((x - cellX) * (x - cellX) + (y - cellY) * (y - cellY));
+                if (Float.compare(distance,  bestDistance) < 0) {
+                    bestDistance = distance;
+                    bestXY[0] = x;
+                    bestXY[1] = y;
+                }
+            }
+            x += direction[0];
+            y += direction[1];
+        }
+        return bestXY;
+    }
+
+    private boolean addItemToTempLocation(int item, CellRect rectOccupiedByPotentialDrop,
+            int[] direction, ItemConfiguration currentState) {
+        boolean success = false;
+        markCells(currentState.x[item], currentState.y[item], currentState.spanX[item],
+                currentState.spanY[item], mTmpOccupied, false);
+        markCellsForRect(rectOccupiedByPotentialDrop, mTmpOccupied, true);
+
+        findNearestArea(currentState.x[item], currentState.y[item], currentState.spanX[item],
+                currentState.spanY[item], direction, mTmpOccupied, null, mTempLocation);
+
+        if (mTempLocation[0] >= 0 && mTempLocation[1] >= 0) {
+            currentState.x[item] = mTempLocation[0];
+            currentState.y[item] = mTempLocation[1];
+            success = true;
+        }
+        markCells(currentState.x[item], currentState.y[item], currentState.spanX[item],
+                currentState.spanY[item], mTmpOccupied, true);
+        return success;
+    }
+
+    // This method looks in the specified direction to see if there is an additional item
+    // immediately adjecent in that direction, and adds it to the group being moved
+    private boolean addItemInDirection(CellRect boundingRect, int[] direction,
+            boolean[][] occupied, int dragItem, ItemConfiguration currentState) {
+        boolean found = false;
+
+        CellRect r0 = mRegionRect;
+        r0.set(boundingRect);
+        CellRect r1 = mItemRect;
+
+        int deltaX = 0;
+        int deltaY = 0;
+        if (direction[1] < 0) {
+            r0.set(r0.left, r0.top - 1, r0.right, r0.bottom);
+            deltaY = -1;
+        } else if (direction[1] > 0) {
+            r0.set(r0.left, r0.top, r0.right, r0.bottom + 1);
+            deltaY = 1;
+        } else if (direction[0] < 0) {
+            r0.set(r0.left - 1, r0.top, r0.right, r0.bottom);
+            deltaX = -1;
+        } else if (direction[0] > 0) {
+            r0.set(r0.left, r0.top, r0.right + 1, r0.bottom);
+            deltaX = 1;
+        }
+
+        for (int i = 0; i < mItemCount; i++) {
+            if (mInGroup[i] || i == dragItem) continue;
+            int cx = currentState.x[i];
+            int cy = currentState.y[i];
+            int cSpanX = currentState.spanX[i];
+            int cSpanY = currentState.spanY[i];
+
+            r1.set(cx, cy, cx + cSpanX, cy + cSpanY);
+            if (CellRect.intersects(r0, r1)) {
+                if (!mItemCanReorder[i]) {
+                    return false;
+                }
+                boolean pushed = false;
+                for (int x = cx; x < cx + cSpanX; x++) {
+                    for (int y = cy; y < cy + cSpanY; y++) {
+                        boolean inBounds = x - deltaX >= 0 && x -deltaX < mCountX
+                                && y - deltaY >= 0 && y - deltaY < mCountY;
+                        if (inBounds && occupied[x - deltaX][y - deltaY]) {
+                            pushed = true;
+                        }
+                    }
+                }
+                if (pushed) {
+                    mGroup[mGroupCount++] = i;
+                    mInGroup[i] = true;
+                    boundingRect.union(cx, cy, cx + cSpanX, cy + cSpanY);
+                    found = true;
+                }
+            }
+        }
+        return found;
+    }
+
+    private boolean addItemsToTempLocation(int[] items, int itemCount,
+            CellRect rectOccupiedByPotentialDrop, int[] direction, boolean push, int dragItem,
+            ItemConfiguration currentState) {
+        if (itemCount == 0) return true;
+
+        boolean success = false;
+        final CellRect boundingRect = mBoundingRect;
+        // We construct a rect which represents the entire group of items passed in
+        mGroupCount = 0;
+        for (int i = 0; i < itemCount; i++) {
+            int item = items[i];
+            int cx = currentState.x[item];
+            int cy = currentState.y[item];
+            if (i == 0) {
+                boundingRect.set(cx, cy, cx + currentState.spanX[item],
+                        cy + currentState.spanY[item]);
+            } else {
+                boundingRect.union(cx, cy, cx + currentState.spanX[item],
+                        cy + currentState.spanY[item]);
+            }
+            mGroup[mGroupCount++] = item;
+            mInGroup[item] = true;
+        }
+
+        // We try and expand the group of items in the direction vector passed, based on
+        // whether they are physically adjacent, ie. based on "push mechanics".
+        while (push && addItemInDirection(boundingRect, direction, mTmpOccupied, dragItem,
+                currentState)) {
+        }
+
+        // Mark the occupied state as false for the group of items we want to move.
+        final int[] group = mGroup;
+        final int groupCount = mGroupCount;
+        for (int i = 0; i < groupCount; i++) {
+            int item = group[i];
+            markCells(currentState.x[item], currentState.y[item], currentState.spanX[item],
+                    currentState.spanY[item], mTmpOccupied, false);
+        }
+
+        // The bounding rect never exceeds the grid, so the grid-sized scratch array only
+        // needs its top-left corner cleared.
+        boolean[][] blockOccupied = mBlockOccupied;
+        markCells(0, 0, boundingRect.width(), boundingRect.height(), blockOccupied, false);
+        int top = boundingRect.top;
+        int left = boundingRect.left;
+        // We mark more precisely which parts of the bounding rect are truly occupied, allowing
+        // for tetris-style interlocking.
+        for (int i = 0; i < groupCount; i++) {
+            int item = group[i];
+            markCells(currentState.x[item] - left, currentState.y[item] - top,
+                    currentState.spanX[item], currentState.spanY[item], blockOccupied, true);
+        }
+
+        markCellsForRect(rectOccupiedByPotentialDrop, mTmpOccupied, true);
+
+        if (push) {
+            findNearestAreaInDirection(boundingRect.left, boundingRect.top, boundingRect.width(),
+                    boundingRect.height(), direction, mTmpOccupied, blockOccupied, mTempLocation);
+        } else {
+            findNearestArea(boundingRect.left, boundingRect.top, boundingRect.width(),
+                    boundingRect.height(), direction, mTmpOccupied, blockOccupied, mTempLocation);
+        }
+
+        // If we successfuly found a location by pushing the block of items, we commit it
+        if (mTempLocation[0] >= 0 && mTempLocation[1] >= 0) {
+            int deltaX = mTempLocation[0] - boundingRect.left;
+            int deltaY = mTempLocation[1] - boundingRect.top;
+            for (int i = 0; i < groupCount; i++) {
+                int item = group[i];
+                currentState.x[item] += deltaX;
+                currentState.y[item] += deltaY;
+            }
+            success = true;
+        }
+
+        // In either case, we set the occupied array as marked for the location of the items
+        for (int i = 0; i < groupCount; i++) {
+            int item = group[i];
+            markCells(currentState.x[item], currentState.y[item], currentState.spanX[item],
+                    currentState.spanY[item], mTmpOccupied, true);
+            mInGroup[item] = false;
+        }
+        return success;
+    }
+
+    // This method tries to find a reordering solution which satisfies the push mechanic by trying
+    // to push items in each of the cardinal directions, in an order based on the direction vector
+    // passed.
+    private boolean attemptPushInDirection(int[] items, int itemCount, CellRect occupied,
+            int[] direction, int dragItem, ItemConfiguration solution) {
+        if ((Math.abs(direction[0]) + Math.abs(direction[1])) > 1) {
+            // If the direction vector has two non-zero components, we try pushing
+            // separately in each of the components.
+            int temp = direction[1];
+            direction[1] = 0;
+            if (addItemsToTempLocation(items, itemCount, occupied, direction, true,
+                    dragItem, solution)) {
+                return true;
+            }
+            direction[1] = temp;
+            temp = direction[0];
+            direction[0] = 0;
+            if (addItemsToTempLocation(items, itemCount, occupied, direction, true,
+                    dragItem, solution)) {
+                return true;
+            }
+            // Revert the direction
+            direction[0] = temp;
+
+            // Now we try pushing in each component of the opposite direction
+            direction[0] *= -1;
+            direction[1] *= -1;
+            temp = direction[1];
+            direction[1] = 0;
+            if (addItemsToTempLocation(items, itemCount, occupied, direction, true,
+                    dragItem, solution)) {
+                return true;
+            }
+
+            direction[1] = temp;
+            temp = direction[0];
+            direction[0] = 0;
+            if (addItemsToTempLocation(items, itemCount, occupied, direction, true,
+                    dragItem, solution)) {
+                return true;
+            }
+            // revert the direction
+            direction[0] = temp;
+            direction[0] *= -1;
+            direction[1] *= -1;
+
+        } else {
+            // If the direction vector has a single non-zero component, we push first in the
+            // direction of the vector
+            if (addItemsToTempLocation(items, itemCount, occupied, direction, true,
+                    dragItem, solution)) {
+                return true;
+            }
+
+            // Then we try the opposite direction
+            direction[0] *= -1;
+            direction[1] *= -1;
+            if (addItemsToTempLocation(items, itemCount, occupied, direction, true,
+                    dragItem, solution)) {
+                return true;
+            }
+            // Switch the direction back
+            direction[0] *= -1;
+            direction[1] *= -1;
+
+            // If we have failed to find a push solution with the above, then we try
+            // to find a solution by pushing along the perpendicular axis.
+
+            // Swap the components
+            int temp = direction[1];
+            direction[1] = direction[0];
+            direction[0] = temp;
+            if (addItemsToTempLocation(items, itemCount, occupied, direction, true,
+                    dragItem, solution)) {
+                return true;
+            }
+
+            // Then we try the opposite direction
+            direction[0] *= -1;
+            direction[1] *= -1;
+            if (addItemsToTempLocation(items, itemCount, occupied, direction, true,
+                    dragItem, solution)) {
+                return true;
+            }
+            // Switch the direction back
+            direction[0] *= -1;
+            direction[1] *= -1;
+
+            // Swap the components back
+            temp = direction[1];
+            direction[1] = direction[0];
+            direction[0] = temp;
+        }
+        return false;
+    }
+
+    private boolean rearrangementExists(int cellX, int cellY, int spanX, int spanY,
+            int[] direction, int dragItem, ItemConfiguration solution) {
+        // Return early if get invalid cell positions
+        if (cellX < 0 || cellY < 0) return false;
+
+        mIntersectingCount = 0;
+        mOccupiedRect.set(cellX, cellY, cellX + spanX, cellY + spanY);
+
+        // Mark the desired location of the item currently being dragged.
+        if (dragItem >= 0) {
+            solution.x[dragItem] = cellX;
+            solution.y[dragItem] = cellY;
+        }
+        CellRect r0 = mRegionRect;
+        r0.set(cellX, cellY, cellX + spanX, cellY + spanY);
+        CellRect r1 = mItemRect;
+        for (int i = 0; i < mItemCount; i++) {
+            if (i == dragItem) continue;
+            r1.set(solution.x[i], solution.y[i], solution.x[i] + solution.spanX[i],
+                    solution.y[i] + solution.spanY[i]);
+            if (CellRect.intersects(r0, r1)) {
+                if (!mItemCanReorder[i]) {
+                    return false;
+                }
+                mIntersecting[mIntersectingCount++] = i;
+            }
+        }
+
+        // First we try to find a solution which respects the push mechanic. That is,
+        // we try to find a solution such that no displaced item travels through another item
+        // without also displacing that item.
+        if (attemptPushInDirection(mIntersecting, mIntersectingCount, mOccupiedRect, direction,
+                dragItem, solution)) {
+            return true;
+        }
+
+        // Next we try moving the items as a block, but without requiring the push mechanic.
+        if (addItemsToTempLocation(mIntersecting, mIntersectingCount, mOccupiedRect, direction,
+                false, dragItem, solution)) {
+            return true;
+        }
+
+        // Ok, they couldn't move as a block, let's move them individually
+        for (int i = 0; i < mIntersectingCount; i++) {
+            if (!addItemToTempLocation(mIntersecting[i], mOccupiedRect, direction, solution)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    ItemConfiguration simpleSwap(int pixelX, int pixelY, int minSpanX, int minSpanY, int spanX,
+            int spanY, int[] direction, int dragItem, boolean decX, ItemConfiguration solution) {
+        // Copy the current state into the solution. This solution will be manipulated as necessary.
+        copyCurrentStateToSolution(solution);
+        // Copy the current occupied array into the temporary occupied array. This array will be
+        // manipulated as necessary to find a solution.
+        copyOccupied(mOccupied, mTmpOccupied);
+
+        // We find the nearest cell into which we would place the dragged item, assuming there's
+        // nothing in its way.
+        int result[] = findNearestArea(pixelX, pixelY, spanX, spanY, spanX, spanY, false,
+                mSwapCell, null, mOccupiedIndex);
+
+        boolean success = false;
+        // First we try the exact nearest position of the item being dragged,
+        // we will then want to try to move this around to other neighbouring positions
+        success = rearrangementExists(result[0], result[1], spanX, spanY, direction, dragItem,
+                solution);
+
+        if (!success) {
+            // We try shrinking the widget down to size in an alternating pattern, shrink 1 in
+            // x, then 1 in y etc.
+            if (spanX > minSpanX && (minSpanY == spanY || decX)) {
+                return simpleSwap(pixelX, pixelY, minSpanX, minSpanY, spanX - 1, spanY, direction,
+                        dragItem, false, solution);
+            } else if (spanY > minSpanY) {
+                return simpleSwap(pixelX, pixelY, minSpanX, minSpanY, spanX, spanY - 1, direction,
+                        dragItem, true, solution);
+            }
+            solution.fail();
+        } else {
+            solution.isSolution = true;
+            solution.dragViewX = result[0];
+            solution.dragViewY = result[1];
+            solution.dragViewSpanX = spanX;
+            solution.dragViewSpanY = spanY;
+        }
+        return solution;
+    }
+
+    ItemConfiguration findConfigurationNoShuffle(int pixelX, int pixelY, int minSpanX,
+            int minSpanY, int spanX, int spanY, ItemConfiguration solution) {
+        int[] result = mNoShuffleCell;
+        int[] resultSpan = mNoShuffleSpan;
+        findNearestArea(pixelX, pixelY, minSpanX, minSpanY, spanX, spanY, true, result,
+                resultSpan, mOccupiedIndex);
+        if (result[0] >= 0 && result[1] >= 0) {
+            copyCurrentStateToSolution(solution);
+            solution.dragViewX = result[0];
+            solution.dragViewY = result[1];
+            solution.dragViewSpanX = resultSpan[0];
+            solution.dragViewSpanY = resultSpan[1];
+            solution.isSolution = true;
+        } else {
+            solution.fail();
+        }
+        return solution;
+    }
+
+    /* This seems like it should be obvious and straight-forward, but when the direction vector
+    needs to match with the notion of the dragView pushing other views, we have to employ
+    a slightly more subtle notion of the direction vector. The question is what two points is
+    the vector between? The center of the dragView and its desired destination? Not quite, as
+    this doesn't necessarily coincide with the interaction of the dragView and items occupying
+    those cells. Instead we use some heuristics to often lock the vector to up, down, left
+    or right, which helps make pushing feel right.
+    */
+    void getDirectionVectorForDrop(int dragViewCenterX, int dragViewCenterY, int spanX,
+            int spanY, int dragItem, int[] resultDirection) {
+        int[] targetDestination = mTargetCell;
+        findNearestArea(dragViewCenterX, dragViewCenterY, spanX, spanY, spanX, spanY, false,
+                targetDestination, null, mOccupiedIndex);
+
+        // Bounding rect of the target and every item intersecting it, in committed cells
+        CellRect dropRegionRect = mBoundingRect;
+        dropRegionRect.set(targetDestination[0], targetDestination[1],
+                targetDestination[0] + spanX, targetDestination[1] + spanY);
+        CellRect r0 = mRegionRect;
+        r0.set(dropRegionRect);
+        CellRect r1 = mItemRect;
+        for (int i = 0; i < mItemCount; i++) {
+            if (i == dragItem) continue;
+            r1.set(mItemX[i], mItemY[i], mItemX[i] + mItemSpanX[i], mItemY[i] + mItemSpanY[i]);
+            if (CellRect.intersects(r0, r1)) {
+                dropRegionRect.union(r1.left, r1.top, r1.right, r1.bottom);
+            }
+        }
+
+        int dropRegionSpanX = dropRegionRect.width();
+        int dropRegionSpanY = dropRegionRect.height();
+
+        regionToCenterPoint(dropRegionRect.left, dropRegionRect.top, dropRegionSpanX,
+                dropRegionSpanY, mTmpCenter);
+
+        int deltaX = (mTmpCenter[0] - dragViewCenterX) / spanX;
+        int deltaY = (mTmpCenter[1] - dragViewCenterY) / spanY;
+
+        if (dropRegionSpanX == mCountX || spanX == mCountX) {
+            deltaX = 0;
+        }
+        if (dropRegionSpanY == mCountY || spanY == mCountY) {
+            deltaY = 0;
+        }
+
+        if (deltaX == 0 && deltaY == 0) {
+            // No idea what to do, give a random direction.
+            resultDirection[0] = 1;
+            resultDirection[1] = 0;
+        } else {
+            computeDirectionVector(deltaX, deltaY, resultDirection);
+        }
+    }
+
+    /*
+     * Returns a pair (x, y), where x,y are in {-1, 0, 1} corresponding to vector between
+     * the provided point and the provided cell
+     */
+    static void computeDirectionVector(float deltaX, float deltaY, int[] result) {
+        double angle = Math.atan(((float) deltaY) / deltaX);
+
+        result[0] = 0;
+        result[1] = 0;
+        if (Math.abs(Math.cos(angle)) > 0.5f) {
+            result[0] = (int) Math.signum(deltaX);
+        }
+        if (Math.abs(Math.sin(angle)) > 0.5f) {
+            result[1] = (int) Math.signum(deltaY);
+        }
+    }
+
+    private void copyCurrentStateToSolution(ItemConfiguration solution) {
+        solution.ensureCapacity(mItemCount);
+        solution.count = mItemCount;
+        System.arraycopy(mItemX, 0, solution.x, 0, mItemCount);
+        System.arraycopy(mItemY, 0, solution.y, 0, mItemCount);
+        System.arraycopy(mItemSpanX, 0, solution.spanX, 0, mItemCount);
+        System.arraycopy(mItemSpanY, 0, solution.spanY, 0, mItemCount);
+    }
+
+    private void copyOccupied(boolean[][] src, boolean[][] dst) {
+        for (int i = 0; i < mCountX; i++) {
+            System.arraycopy(src[i], 0, dst[i], 0, mCountY);
+        }
+    }
+
+    private void markCellsForRect(CellRect r, boolean[][] occupied, boolean value) {
+        markCells(r.left, r.top, r.width(), r.height(), occupied, value);
+    }
+
+    private void markCells(int cellX, int cellY, int spanX, int spanY, boolean[][] occupied,
+            boolean value) {
+        if (cellX < 0 || cellY < 0) return;
+        for (int x = cellX; x < cellX + spanX && x < mCountX; x++) {
+            for (int y = cellY; y < cellY + spanY && y < mCountY; y++) {
+                occupied[x][y] = value;
+            }
+        }
+    }
+}
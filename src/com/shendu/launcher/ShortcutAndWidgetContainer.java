@@ -48,6 +48,10 @@ public class ShortcutAndWidgetContainer extends ViewGroup {
         setLayerType(LAYER_TYPE_HARDWARE, null);
     }
 
+    public void disableHardwareLayers() {
+        setLayerType(LAYER_TYPE_NONE, null);
+    }
+
     public void setCellDimensions(int cellWidth, int cellHeight, int widthGap, int heightGap ) {
         mCellWidth = cellWidth;
         mCellHeight = cellHeight;
@@ -38,6 +38,12 @@ class ShortcutInfo extends ItemInfo {
      */
     CharSequence title;
 
+    /**
+     * Pinyin-aware sort key of the title, see {@link SortKeyGenerator}. Only set for items
+     * that got their title from the {@link IconCache}.
+     */
+    String sortKey;
+
     /**
      * The intent used to start the application.
      */
@@ -178,6 +184,7 @@ class ShortcutInfo extends ItemInfo {
 
         String uri = intent != null ? intent.toUri(0) : null;
         values.put(LauncherSettings.BaseLauncherColumns.INTENT, uri);
+        writeComponentValues(values, intent);
         if (customIcon) {
             values.put(LauncherSettings.BaseLauncherColumns.ICON_TYPE,
                     LauncherSettings.BaseLauncherColumns.ICON_TYPE_BITMAP);
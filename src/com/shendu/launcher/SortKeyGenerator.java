@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shendu.launcher;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.text.Normalizer;
+
+/**
+ * Turns labels into keys that sort in pinyin order under a plain {@link String#compareTo}.
+ *
+ * Han characters become their pinyin syllables, Latin letters lose case and accents and digits
+ * stay as they are, so a Han label read "wei xin" files among the Latin labels under W. A run
+ * of any other script becomes its collation key, placed after all Latin and pinyin text. Spaces
+ * and punctuation are dropped. Keys are meant to be made once per label and stored with it, so
+ * sorting never has to go through the collator.
+ */
+public class SortKeyGenerator {
+    // Ends every syllable, so a two-syllable "xi an" sorts before the single syllable "xian"
+    private static final char SYLLABLE_END = ' ';
+    // Starts a run of collation key bytes; sorts after every digit and lower-case Latin letter
+    private static final char OTHER_SCRIPT = '\u0100';
+    // Collation key bytes are stored above OTHER_SCRIPT, which keeps their unsigned order
+    private static final char COLLATION_BYTE_BASE = '\u0101';
+
+    private final PinyinConverter mConverter;
+    private final Collator mCollator;
+    private final StringBuilder mKey = new StringBuilder();
+    private final StringBuilder mRun = new StringBuilder();
+
+    public SortKeyGenerator(PinyinConverter converter, Collator collator) {
+        mConverter = converter;
+        mCollator = collator;
+    }
+
+    /**
+     * Returns the sort key of the label. Safe to call from any thread.
+     */
+    public synchronized String getSortKey(CharSequence label) {
+        final StringBuilder key = mKey;
+        key.setLength(0);
+        if (label == null) {
+            return "";
+        }
+        final StringBuilder run = mRun;
+        run.setLength(0);
+        final int length = label.length();
+        for (int i = 0; i < length; i++) {
+            final char c = label.charAt(i);
+            final String pinyin = mConverter.getPinyin(c);
+            if (pinyin != null) {
+                flushRun(run, key);
+                key.append(pinyin).append(SYLLABLE_END);
+                continue;
+            }
+            final char latin = toLatin(c);
+            if (latin != 0) {
+                flushRun(run, key);
+                key.append(latin);
+            } else if (Character.isLetterOrDigit(c)
+                    || (run.length() > 0 && Character.getType(c) == Character.NON_SPACING_MARK)) {
+                run.append(c);
+            } else {
+                flushRun(run, key);
+            }
+        }
+        flushRun(run, key);
+        return key.toString();
+    }
+
+    /**
+     * Returns the lower-case ASCII letter or digit the character stands for, or 0 if it is not
+     * a Latin letter or a digit.
+     */
+    private static char toLatin(char c) {
+        if (c < 0x80) {
+            return Character.isLetterOrDigit(c) ? Character.toLowerCase(c) : 0;
+        }
+        if (Character.isDigit(c)) {
+            return (char) ('0' + Character.digit(c, 10));
+        }
+        // Latin-1 Supplement through Latin Extended-B: strip accents from the base letter
+        if (c < 0x250 && Character.isLetter(c)) {
+            final char base = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD)
+                    .charAt(0);
+            if (base < 0x80 && Character.isLetter(base)) {
+                return Character.toLowerCase(base);
+            }
+        }
+        return 0;
+    }
+
+    private void flushRun(StringBuilder run, StringBuilder key) {
+        if (run.length() == 0) {
+            return;
+        }
+        final CollationKey collationKey;
+        synchronized (mCollator) {
+            collationKey = mCollator.getCollationKey(run.toString());
+        }
+        key.append(OTHER_SCRIPT);
+        for (byte b : collationKey.toByteArray()) {
+            key.append((char) (COLLATION_BYTE_BASE + (b & 0xff)));
+        }
+        run.setLength(0);
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shendu.launcher;
+
+/**
+ * The math of the workspace transition effects, as pure functions from a page's scroll
+ * progress (-1 to 1, 0 when it is centered) and geometry to a {@link PageTransform}.
+ * {@code fade} is whether adjacent pages fade, which Workspace never asks for in the small
+ * state.
+ *
+ * The curves the effects ease through are sampled once into lookup tables and read back with
+ * linear interpolation, so a frame costs a few multiplies per page instead of pow() and
+ * camera math.
+ */
+public class TransitionTransforms {
+    // Segments of every lookup table; the samples land exactly on 0 and 1
+    static final int CURVE_SEGMENTS = 128;
+
+    private static final float ROTATE_ANGLE = 12.5f;
+    // Distance of the rotate pivot from the page, in page widths
+    private static final float ROTATE_PIVOT_DISTANCE =
+            0.5f / (float) Math.tan(Math.toRadians(ROTATE_ANGLE * 0.5f));
+    // Rotation of the tablet effect at full scroll
+    static final float TABLET_ANGLE = 12.5f;
+    private static final float CUBE_ANGLE = 90.0f;
+    // Scale of the pages in the small (edit) state
+    private static final float SMALL_SCALE = 0.75f;
+    // Pivot the small cube effect turns pages around
+    private static final float SMALL_CUBE_PIVOT_X = 240;
+
+    // Workspace.ZInterpolator(0.5f), AccelerateInterpolator(0.9f) and DecelerateInterpolator(4)
+    private static final float[] STACK_SCALE_CURVE = new float[CURVE_SEGMENTS + 1];
+    private static final float[] STACK_ALPHA_CURVE = new float[CURVE_SEGMENTS + 1];
+    private static final float[] STACK_LEFT_ALPHA_CURVE = new float[CURVE_SEGMENTS + 1];
+    static {
+        final float focalLength = 0.5f;
+        for (int i = 0; i <= CURVE_SEGMENTS; i++) {
+            final float x = (float) i / CURVE_SEGMENTS;
+            STACK_SCALE_CURVE[i] = (1.0f - focalLength / (focalLength + x)) /
+                    (1.0f - focalLength / (focalLength + 1.0f));
+            STACK_ALPHA_CURVE[i] = (float) Math.pow(x, 2 * 0.9f);
+            STACK_LEFT_ALPHA_CURVE[i] = 1.0f - (float) Math.pow(1.0f - x, 2 * 4);
+        }
+    }
+
+    /**
+     * Reads a table sampled at {@link #CURVE_SEGMENTS} + 1 even steps over [0, 1].
+     */
+    static float lookup(float[] curve, float x) {
+        if (x <= 0) {
+            return curve[0];
+        }
+        final float position = x * CURVE_SEGMENTS;
+        final int i = (int) position;
+        if (i >= CURVE_SEGMENTS) {
+            return curve[CURVE_SEGMENTS];
+        }
+        return curve[i] + (curve[i + 1] - curve[i]) * (position - i);
+    }
+
+    private static boolean isAtRest(float progress) {
+        // A page scrolled fully out of view gets its transform cleared
+        return progress == 1 || progress == -1;
+    }
+
+    static void standard(float progress, boolean fade, PageTransform out) {
+        out.reset();
+        if (fade) {
+            out.mask = PageTransform.CONTENT_ALPHA;
+            out.contentAlpha = 1 - Math.abs(progress);
+        }
+    }
+
+    /**
+     * @param offsets the translation that hides the gap next to a page rotated by 0 to
+     *        {@link #TABLET_ANGLE} degrees, sampled like the other curves
+     */
+    static void tablet(float progress, boolean fade, float[] offsets, PageTransform out) {
+        out.reset();
+        out.mask = PageTransform.TRANSLATION_X | PageTransform.ROTATION_Y;
+        if (isAtRest(progress)) {
+            out.rotationY = 0;
+            out.translationX = 0;
+        } else {
+            out.rotationY = TABLET_ANGLE * progress;
+            out.translationX = lookup(offsets, Math.abs(progress)) * (progress > 0 ? 1.0f : -1.0f);
+        }
+        if (fade) {
+            out.mask |= PageTransform.CONTENT_ALPHA;
+            out.contentAlpha = 1 - Math.abs(progress);
+        }
+    }
+
+    static void zoom(float progress, boolean in, boolean small, boolean fade, int width,
+            PageTransform out) {
+        out.reset();
+        final boolean atRest = isAtRest(progress);
+        out.mask = PageTransform.SCALE;
+        float scale = atRest ? 1.0f : 1.0f + (in ? -0.2f : 0.1f) * Math.abs(progress);
+        out.scale = small ? scale * SMALL_SCALE : scale;
+        if (!in) {
+            // Extra translation to account for the increase in size
+            out.mask |= PageTransform.TRANSLATION_X;
+            out.translationX = atRest ? 0 : width * 0.1f * -progress;
+        }
+        if (fade) {
+            out.mask |= PageTransform.ALPHA;
+            out.alpha = 1 - Math.abs(progress);
+        }
+    }
+
+    /**
+     * @param smallTranslationY the translation the small state gives this page
+     */
+    static void rotate(float progress, boolean up, boolean small, boolean fade, int width,
+            int height, float smallTranslationY, PageTransform out) {
+        out.reset();
+        final float rotation = (up ? ROTATE_ANGLE : -ROTATE_ANGLE) * progress;
+        out.mask = PageTransform.PIVOT_X | PageTransform.PIVOT_Y | PageTransform.TRANSLATION_Y
+                | PageTransform.ROTATION;
+        out.pivotX = width * 0.5f;
+        if (small) {
+            out.pivotY = width * 0.5f;
+            out.translationY = smallTranslationY;
+            if (progress == 0 || isAtRest(progress)) {
+                out.rotation = 0;
+            } else {
+                out.rotation = up ? rotation : rotation * 2;
+            }
+        } else {
+            final float rotatePoint = width * ROTATE_PIVOT_DISTANCE;
+            out.pivotY = up ? -rotatePoint : height + rotatePoint;
+            out.translationY = 0;
+            out.rotation = rotation;
+            out.mask |= PageTransform.TRANSLATION_X;
+            out.translationX = width * progress;
+            if (fade) {
+                out.mask |= PageTransform.CONTENT_ALPHA;
+                out.contentAlpha = 1 - Math.abs(progress);
+            }
+        }
+    }
+
+    static void cube(float progress, boolean in, boolean small, int width, int height,
+            float cameraDistance, PageTransform out) {
+        out.reset();
+        out.mask = PageTransform.PIVOT_X | PageTransform.PIVOT_Y | PageTransform.ROTATION_Y;
+        if (in) {
+            out.mask |= PageTransform.CAMERA_DISTANCE;
+            out.cameraDistance = cameraDistance;
+        }
+        out.rotationY = isAtRest(progress) ? 0 : (in ? CUBE_ANGLE : -CUBE_ANGLE) * progress;
+        out.pivotY = height * 0.5f;
+        if (small) {
+            out.pivotX = SMALL_CUBE_PIVOT_X;
+            out.mask |= PageTransform.ALPHA;
+            out.alpha = 1;
+        } else {
+            out.pivotX = progress < 0 ? 0 : width;
+            out.mask |= PageTransform.CONTENT_ALPHA;
+            out.contentAlpha = 1;
+        }
+    }
+
+    static void stack(float progress, boolean small, boolean largeScreen, int width,
+            PageTransform out) {
+        out.reset();
+        out.mask = PageTransform.TRANSLATION_X | PageTransform.SCALE
+                | PageTransform.CONTENT_ALPHA | PageTransform.VISIBILITY;
+        float translationX;
+        float scale;
+        float alpha;
+        if (isAtRest(progress)) {
+            translationX = 0;
+            scale = 1;
+            alpha = 1;
+        } else {
+            final float interpolatedProgress =
+                    lookup(STACK_SCALE_CURVE, Math.abs(Math.min(progress, 0)));
+            scale = (1 - interpolatedProgress) + interpolatedProgress * 0.76f;
+            translationX = Math.min(0, progress) * width * (small ? SMALL_SCALE : 1.0f);
+            if (!largeScreen || progress < 0) {
+                alpha = progress < 0 ? lookup(STACK_ALPHA_CURVE, 1 - Math.abs(progress)) : 1.0f;
+            } else {
+                // On large screens we need to fade the page as it nears its leftmost position
+                alpha = lookup(STACK_LEFT_ALPHA_CURVE, 1 - progress);
+            }
+        }
+        out.translationX = translationX;
+        out.scale = small ? scale * SMALL_SCALE : scale;
+        out.contentAlpha = alpha;
+        // Pages with no alpha are hidden so they do not take touches
+        out.visible = alpha > 0;
+        if (small) {
+            out.mask |= PageTransform.BACKGROUND_ALPHA;
+            out.backgroundAlpha = alpha;
+        }
+    }
+}
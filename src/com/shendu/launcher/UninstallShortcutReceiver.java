@@ -17,6 +17,7 @@
 package com.shendu.launcher;
 
 import android.content.BroadcastReceiver;
+import android.content.ComponentName;
 import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
@@ -101,9 +102,22 @@ public class UninstallShortcutReceiver extends BroadcastReceiver {
 
         if (intent != null && name != null) {
             final ContentResolver cr = context.getContentResolver();
+            // Narrow the candidates with the indexed component column when we can, so only
+            // rows for the same activity have their intents parsed
+            final ComponentName cn = intent.getComponent();
+            final String selection;
+            final String[] selectionArgs;
+            if (cn != null) {
+                selection = LauncherSettings.Favorites.COMPONENT_NAME + "=? and "
+                        + LauncherSettings.Favorites.TITLE + "=?";
+                selectionArgs = new String[] { cn.flattenToShortString(), name };
+            } else {
+                selection = LauncherSettings.Favorites.TITLE + "=?";
+                selectionArgs = new String[] { name };
+            }
             Cursor c = cr.query(LauncherSettings.Favorites.CONTENT_URI,
                 new String[] { LauncherSettings.Favorites._ID, LauncherSettings.Favorites.INTENT },
-                LauncherSettings.Favorites.TITLE + "=?", new String[] { name }, null);
+                selection, selectionArgs, null);
 
             final int intentIndex = c.getColumnIndexOrThrow(LauncherSettings.Favorites.INTENT);
             final int idIndex = c.getColumnIndexOrThrow(LauncherSettings.Favorites._ID);
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shendu.launcher;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+
+/**
+ * Counts unread sms and mms for the messaging app badge.
+ */
+class UnreadMessageBadgeProvider extends BadgeProvider {
+    private static final Uri CONVERSATIONS_URI = Uri.parse("content://mms-sms/conversations");
+    private static final Uri SMS_INBOX_URI = Uri.parse("content://sms/inbox");
+    private static final Uri MMS_INBOX_URI = Uri.parse("content://mms/inbox");
+    private static final String[] COUNT_PROJECTION = new String[] { "_id" };
+    private static final long MIN_REFRESH_INTERVAL = 500;
+
+    UnreadMessageBadgeProvider() {
+        super(LauncherApplication.sMMSComponentName, MIN_REFRESH_INTERVAL);
+    }
+
+    @Override
+    public Uri[] getObservedUris() {
+        return new Uri[] { CONVERSATIONS_URI };
+    }
+
+    @Override
+    public int queryCount(Context context) {
+        ContentResolver cr = context.getContentResolver();
+        return countUnread(cr, SMS_INBOX_URI) + countUnread(cr, MMS_INBOX_URI);
+    }
+
+    private static int countUnread(ContentResolver cr, Uri uri) {
+        Cursor c = cr.query(uri, COUNT_PROJECTION, "read = 0", null, null);
+        if (c == null) {
+            return 0;
+        }
+        try {
+            return c.getCount();
+        } finally {
+            c.close();
+        }
+    }
+}
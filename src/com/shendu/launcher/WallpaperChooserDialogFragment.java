@@ -21,11 +21,12 @@ import android.app.DialogFragment;
 import android.app.WallpaperManager;
 import android.content.Context;
 import android.content.DialogInterface;
-import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
 import android.graphics.Canvas;
 import android.graphics.ColorFilter;
+import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
 import android.os.AsyncTask;
 import android.os.Bundle;
@@ -44,6 +45,7 @@ import android.widget.SpinnerAdapter;
 import com.shendu.launcher.R;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 
 public class WallpaperChooserDialogFragment extends DialogFragment implements
@@ -181,7 +183,10 @@ public class WallpaperChooserDialogFragment extends DialogFragment implements
         if (mLoader != null && mLoader.getStatus() != WallpaperLoader.Status.FINISHED) {
             mLoader.cancel();
         }
-        mLoader = (WallpaperLoader) new WallpaperLoader().execute(position);
+        View content = getView();
+        int width = content != null ? content.getWidth() : 0;
+        int height = content != null ? content.getHeight() : 0;
+        mLoader = (WallpaperLoader) new WallpaperLoader(width, height).execute(position);
     }
 
     @Override
@@ -192,30 +197,13 @@ public class WallpaperChooserDialogFragment extends DialogFragment implements
         mThumbs = new ArrayList<Integer>(24);
         mImages = new ArrayList<Integer>(24);
 
-        final Resources resources = getResources();
-        // Context.getPackageName() may return the "original" package name,
-        // com.shendu.launcher; Resources needs the real package name,
-        // com.shendu.launcher. So we ask Resources for what it thinks the
-        // package name should be.
-        final String packageName = resources.getResourcePackageName(R.array.wallpapers);
-
-        addWallpapers(resources, packageName, R.array.wallpapers);
-        //addWallpapers(resources, packageName, R.array.extra_wallpapers);
-    }
-
-    private void addWallpapers(Resources resources, String packageName, int list) {
-        final String[] extras = resources.getStringArray(list);
-        for (String extra : extras) {
-            int res = resources.getIdentifier(extra, "drawable", packageName);
-            if (res != 0) {
-                final int thumbRes = resources.getIdentifier(extra + "_small",
-                        "drawable", packageName);
-
-                if (thumbRes != 0) {
-                    mThumbs.add(thumbRes);
-                    mImages.add(res);
-                    // Log.d(TAG, "add: [" + packageName + "]: " + extra + " (" + res + ")");
-                }
+        // Resolved once per process by the thumbnail cache
+        LauncherApplication app = (LauncherApplication) getActivity().getApplication();
+        for (WallpaperThumbnailCache.BuiltInWallpaper wallpaper :
+                app.getWallpaperThumbnailCache().getBuiltInWallpapers()) {
+            if (wallpaper.thumbResId != 0) {
+                mThumbs.add(wallpaper.thumbResId);
+                mImages.add(wallpaper.resId);
             }
         }
     }
@@ -264,23 +252,61 @@ public class WallpaperChooserDialogFragment extends DialogFragment implements
         }
     }
 
+    /**
+     * Decodes the part of a wallpaper the centered preview can show. The full image is only
+     * decoded by {@link WallpaperManager#setResource(int)} once the user applies it.
+     */
     class WallpaperLoader extends AsyncTask<Integer, Void, Bitmap> {
         BitmapFactory.Options mOptions;
+        private final int mWidth;
+        private final int mHeight;
 
-        WallpaperLoader() {
+        /**
+         * @param width the width of the preview, or 0 to decode the whole wallpaper
+         * @param height the height of the preview, or 0 to decode the whole wallpaper
+         */
+        WallpaperLoader(int width, int height) {
             mOptions = new BitmapFactory.Options();
-            mOptions.inDither = false;
-            mOptions.inPreferredConfig = Bitmap.Config.ARGB_8888;
+            mOptions.inDither = true;
+            mOptions.inPreferredConfig = Bitmap.Config.RGB_565;
+            mWidth = width;
+            mHeight = height;
         }
 
         @Override
         protected Bitmap doInBackground(Integer... params) {
             if (isCancelled()) return null;
+            InputStream in = null;
             try {
-                return BitmapFactory.decodeResource(getResources(),
-                        mImages.get(params[0]), mOptions);
+                in = getResources().openRawResource(mImages.get(params[0]));
+                return decodeCenter(in);
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to decode wallpaper #" + params[0], e);
+                return null;
             } catch (OutOfMemoryError e) {
                 return null;
+            } finally {
+                if (in != null) {
+                    try {
+                        in.close();
+                    } catch (IOException e) {
+                        // Ignore
+                    }
+                }
+            }
+        }
+
+        private Bitmap decodeCenter(InputStream in) throws IOException {
+            BitmapRegionDecoder decoder = BitmapRegionDecoder.newInstance(in, false);
+            try {
+                Rect region = new Rect(0, 0, decoder.getWidth(), decoder.getHeight());
+                if (mWidth > 0 && mHeight > 0) {
+                    region.inset(Math.max(0, (region.width() - mWidth) / 2),
+                            Math.max(0, (region.height() - mHeight) / 2));
+                }
+                return decoder.decodeRegion(region, mOptions);
+            } finally {
+                decoder.recycle();
             }
         }
 
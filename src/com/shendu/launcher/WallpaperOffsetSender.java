@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shendu.launcher;
+
+import android.app.WallpaperManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.IBinder;
+import android.os.Process;
+import android.util.Log;
+import android.view.Choreographer;
+
+import java.io.PrintWriter;
+
+/**
+ * Sends wallpaper offsets to the wallpaper service from a background thread.
+ *
+ * {@link WallpaperManager#setWallpaperOffsets} is a binder call, so the UI thread only records
+ * the newest offsets. At most one value per frame is handed to the sender thread: the first
+ * one of a frame goes at once, later ones wait for the next vsync and replace each other.
+ * The sender thread always sends the newest value it has been handed, and values that move
+ * the wallpaper by less than a pixel are not sent at all.
+ */
+public class WallpaperOffsetSender {
+    static final String TAG = "Launcher.WallpaperOffsetSender";
+    static final boolean DEBUG_WALLPAPER = false;
+
+    private static final HandlerThread sWorkerThread = new HandlerThread("launcher-wallpaper",
+            Process.THREAD_PRIORITY_DISPLAY);
+    static {
+        sWorkerThread.start();
+    }
+    private static final Handler sWorker = new Handler(sWorkerThread.getLooper());
+
+    private final WallpaperManager mWallpaperManager;
+    private final Choreographer mChoreographer;
+
+    // Handed over by the UI thread, sent by the worker; guarded by this
+    private IBinder mSendToken;
+    private float mSendX;
+    private float mSendY;
+    private boolean mSendQueued;
+    private int mBinderCalls;
+
+    // < only access in the UI thread >
+    private IBinder mPendingToken;
+    private float mPendingX;
+    private float mPendingY;
+    private boolean mPendingExact;
+    private boolean mHasPending;
+    private float mHandedX = Float.NaN;
+    private float mHandedY = Float.NaN;
+    // Set once a value was handed over this frame, until the next vsync
+    private boolean mFrameArmed;
+    // Wallpaper travel in pixels for an offset change of 1
+    private int mTravelX;
+    private int mTravelY;
+
+    private int mRequests;
+    private int mCoalesced;
+    private int mSkipped;
+    private int mScrollRequests;
+    private int mScrollCoalesced;
+    private int mScrollSkipped;
+    private int mScrollBinderCalls;
+    private int mScrolls;
+    private int mLastScrollBinderCalls;
+    private int mLastScrollRequests;
+    private int mTotalScrollBinderCalls;
+    // </ only access in the UI thread >
+
+    private final Choreographer.FrameCallback mFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mFrameArmed = false;
+            handOff();
+        }
+    };
+
+    private final Runnable mSendRunnable = new Runnable() {
+        public void run() {
+            IBinder token;
+            float x;
+            float y;
+            synchronized (WallpaperOffsetSender.this) {
+                token = mSendToken;
+                x = mSendX;
+                y = mSendY;
+                mSendQueued = false;
+            }
+            mWallpaperManager.setWallpaperOffsets(token, x, y);
+            synchronized (WallpaperOffsetSender.this) {
+                mBinderCalls++;
+            }
+        }
+    };
+
+    /**
+     * Must be created on the UI thread.
+     */
+    public WallpaperOffsetSender(WallpaperManager wallpaperManager) {
+        mWallpaperManager = wallpaperManager;
+        mChoreographer = Choreographer.getInstance();
+    }
+
+    /**
+     * Sets how many pixels the wallpaper moves between offsets 0 and 1. A travel of 0 or less
+     * sends every change.
+     */
+    void setTravel(int xPixels, int yPixels) {
+        mTravelX = xPixels;
+        mTravelY = yPixels;
+    }
+
+    /**
+     * Records new offsets. {@code exact} values are sent whenever they differ at all from the
+     * last one sent, so a settled wallpaper lands on the precise offset.
+     */
+    void setOffsets(IBinder windowToken, float x, float y, boolean exact) {
+        if (!mHasPending && x == mHandedX && y == mHandedY) {
+            return;
+        }
+        mRequests++;
+        if (mHasPending) {
+            mCoalesced++;
+        }
+        mPendingToken = windowToken;
+        mPendingX = x;
+        mPendingY = y;
+        mPendingExact = exact;
+        mHasPending = true;
+        if (!mFrameArmed) {
+            handOff();
+        }
+    }
+
+    private void handOff() {
+        if (!mHasPending) {
+            return;
+        }
+        mHasPending = false;
+        if (!mPendingExact && isBelowOnePixel(mPendingX - mHandedX, mPendingY - mHandedY)) {
+            mSkipped++;
+            return;
+        }
+        mHandedX = mPendingX;
+        mHandedY = mPendingY;
+        synchronized (this) {
+            mSendToken = mPendingToken;
+            mSendX = mPendingX;
+            mSendY = mPendingY;
+            if (mSendQueued) {
+                // The sender thread has not picked up the previous value yet; it is replaced
+                mCoalesced++;
+            } else {
+                mSendQueued = true;
+                sWorker.post(mSendRunnable);
+            }
+        }
+        mPendingToken = null;
+        mFrameArmed = true;
+        mChoreographer.postFrameCallback(mFrameCallback);
+    }
+
+    private boolean isBelowOnePixel(float dx, float dy) {
+        if (Float.isNaN(dx) || Float.isNaN(dy)) {
+            return false;
+        }
+        return travel(dx, mTravelX) < 1 && travel(dy, mTravelY) < 1;
+    }
+
+    private static float travel(float delta, int travelPixels) {
+        if (travelPixels <= 0) {
+            return delta != 0 ? 1 : 0;
+        }
+        return Math.abs(delta) * travelPixels;
+    }
+
+    void beginScroll() {
+        mScrollRequests = mRequests;
+        mScrollCoalesced = mCoalesced;
+        mScrollSkipped = mSkipped;
+        mScrollBinderCalls = getBinderCalls();
+    }
+
+    void endScroll() {
+        mScrolls++;
+        mLastScrollRequests = mRequests - mScrollRequests;
+        mLastScrollBinderCalls = getBinderCalls() - mScrollBinderCalls;
+        mTotalScrollBinderCalls += mLastScrollBinderCalls;
+        if (DEBUG_WALLPAPER) {
+            Log.d(TAG, "scroll: " + mLastScrollRequests + " offset updates, "
+                    + mLastScrollBinderCalls + " binder calls, "
+                    + (mCoalesced - mScrollCoalesced) + " coalesced, "
+                    + (mSkipped - mScrollSkipped) + " below one pixel");
+        }
+    }
+
+    private synchronized int getBinderCalls() {
+        return mBinderCalls;
+    }
+
+    void dump(String prefix, PrintWriter writer) {
+        final int binderCalls = getBinderCalls();
+        writer.println(prefix + "Wallpaper offsets: " + mRequests + " updates, " + binderCalls
+                + " binder calls, " + mCoalesced + " coalesced, " + mSkipped
+                + " below one pixel");
+        writer.println(prefix + "  " + mScrolls + " scrolls, "
+                + (mScrolls > 0 ? mTotalScrollBinderCalls / mScrolls : 0)
+                + " binder calls per scroll, last "
+                + mLastScrollBinderCalls + " calls for " + mLastScrollRequests + " updates");
+    }
+}
@@ -0,0 +1,379 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shendu.launcher;
+
+import android.app.IWallpaperManager;
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.ParcelFileDescriptor;
+import android.os.Process;
+import android.os.RemoteException;
+import android.os.ServiceManager;
+import android.util.Log;
+
+import com.shendu.launcher.R;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+
+/**
+ * Supplies the small wallpaper tiles shown by the wallpaper pickers.
+ *
+ * The built-in wallpapers listed in R.array.wallpapers are resolved to resource ids once per
+ * process. Thumbnails that have to be generated, the one of the current wallpaper and those of
+ * built-in wallpapers without a "_small" variant, are decoded with a sample size close to the
+ * tile size on a background thread and kept as small PNGs in the cache directory, so the full
+ * image is only ever decoded when a wallpaper is applied.
+ */
+public class WallpaperThumbnailCache {
+    static final String TAG = "Launcher.WallpaperThumbnailCache";
+    static final boolean DEBUG_THUMBNAILS = false;
+
+    private static final String CACHE_DIR = "wallpaper_thumbnails";
+    private static final String CURRENT_PREFIX = "current_";
+    private static final String BUILT_IN_PREFIX = "builtin_";
+    private static final String SUFFIX = ".png";
+
+    public interface Callback {
+        /**
+         * Called on the UI thread with the thumbnail, or with null if it could not be decoded.
+         */
+        public void onThumbnailLoaded(Bitmap thumbnail);
+    }
+
+    /**
+     * A wallpaper shipped with the launcher.
+     */
+    static class BuiltInWallpaper {
+        final String name;
+        final int resId;
+        /** The "_small" thumbnail resource, or 0 if the wallpaper has none. */
+        final int thumbResId;
+
+        BuiltInWallpaper(String name, int resId, int thumbResId) {
+            this.name = name;
+            this.resId = resId;
+            this.thumbResId = thumbResId;
+        }
+    }
+
+    private static final HandlerThread sWorkerThread = new HandlerThread(
+            "launcher-wallpaper-thumbnails", Process.THREAD_PRIORITY_BACKGROUND);
+    static {
+        sWorkerThread.start();
+    }
+    private static final Handler sWorker = new Handler(sWorkerThread.getLooper());
+
+    private final Context mContext;
+    private final Handler mHandler = new Handler();
+    private final File mCacheDir;
+    private final int mThumbnailWidth;
+    private final int mThumbnailHeight;
+
+    // < only access in the UI thread >
+    private ArrayList<BuiltInWallpaper> mBuiltInWallpapers;
+    private int mCurrentGeneration;
+    // </ only access in the UI thread >
+
+    /**
+     * Must be created on the UI thread.
+     */
+    public WallpaperThumbnailCache(Context context) {
+        mContext = context.getApplicationContext();
+        mCacheDir = new File(mContext.getCacheDir(), CACHE_DIR);
+        Resources res = mContext.getResources();
+        mThumbnailWidth = res.getDimensionPixelSize(R.dimen.wallpaper_thumbnail_width);
+        mThumbnailHeight = res.getDimensionPixelSize(R.dimen.wallpaper_thumbnail_height);
+    }
+
+    /**
+     * Returns the built-in wallpapers, resolving R.array.wallpapers on the first call only.
+     * Only call this from the UI thread.
+     */
+    ArrayList<BuiltInWallpaper> getBuiltInWallpapers() {
+        if (mBuiltInWallpapers == null) {
+            final Resources res = mContext.getResources();
+            // Context.getPackageName() may return the "original" package name; Resources needs
+            // the real one, so ask Resources what it thinks the package name should be.
+            final String packageName = res.getResourcePackageName(R.array.wallpapers);
+            final String[] extras = res.getStringArray(R.array.wallpapers);
+            mBuiltInWallpapers = new ArrayList<BuiltInWallpaper>(extras.length);
+            for (String extra : extras) {
+                int resId = res.getIdentifier(extra, "drawable", packageName);
+                if (resId != 0) {
+                    int thumbResId = res.getIdentifier(extra + "_small", "drawable", packageName);
+                    mBuiltInWallpapers.add(new BuiltInWallpaper(extra, resId, thumbResId));
+                }
+            }
+        }
+        return mBuiltInWallpapers;
+    }
+
+    /**
+     * Loads a tile for a built-in wallpaper that has no "_small" variant. The callback is
+     * dropped if the current wallpaper changes before the thumbnail is ready, as the pickers
+     * rebuild their lists then anyway.
+     */
+    void loadBuiltInThumbnail(final BuiltInWallpaper wallpaper, final Callback callback) {
+        final int generation = mCurrentGeneration;
+        sWorker.post(new Runnable() {
+            public void run() {
+                File file = new File(mCacheDir,
+                        BUILT_IN_PREFIX + wallpaper.name + "_" + getVersionCode() + SUFFIX);
+                Bitmap thumbnail = readThumbnail(file);
+                if (thumbnail == null) {
+                    thumbnail = decodeSampled(mContext.getResources(), wallpaper.resId);
+                    writeThumbnail(file, BUILT_IN_PREFIX + wallpaper.name + "_", thumbnail);
+                }
+                postResult(generation, thumbnail, callback);
+            }
+        });
+    }
+
+    /**
+     * Loads the tile of the current static wallpaper.
+     */
+    void loadCurrentThumbnail(final Callback callback) {
+        final int generation = mCurrentGeneration;
+        sWorker.post(new Runnable() {
+            public void run() {
+                postResult(generation, loadCurrentThumbnailInBackground(), callback);
+            }
+        });
+    }
+
+    /**
+     * Forgets the current wallpaper tile and drops callbacks still waiting for the old one.
+     * Only call this from the UI thread.
+     */
+    void onWallpaperChanged() {
+        mCurrentGeneration++;
+        sWorker.post(new Runnable() {
+            public void run() {
+                deleteThumbnails(CURRENT_PREFIX);
+            }
+        });
+    }
+
+    private void postResult(final int generation, final Bitmap thumbnail,
+            final Callback callback) {
+        mHandler.post(new Runnable() {
+            public void run() {
+                if (generation == mCurrentGeneration) {
+                    callback.onThumbnailLoaded(thumbnail);
+                }
+            }
+        });
+    }
+
+    private Bitmap loadCurrentThumbnailInBackground() {
+        ParcelFileDescriptor fd = null;
+        try {
+            IWallpaperManager service = IWallpaperManager.Stub.asInterface(
+                    ServiceManager.getService(Context.WALLPAPER_SERVICE));
+            fd = service.getWallpaper(null, new Bundle());
+        } catch (RemoteException e) {
+            Log.w(TAG, "Failed to open the current wallpaper", e);
+        }
+        if (fd == null) {
+            // No wallpaper was set, the system default is showing
+            return decodeSampled(Resources.getSystem(),
+                    com.android.internal.R.drawable.default_wallpaper);
+        }
+        try {
+            // The size keeps a tile written before a missed change broadcast from being reused
+            final String prefix = CURRENT_PREFIX + fd.getStatSize() + "_";
+            File file = new File(mCacheDir, prefix + mThumbnailWidth + "x" + mThumbnailHeight
+                    + SUFFIX);
+            Bitmap thumbnail = readThumbnail(file);
+            if (thumbnail == null) {
+                thumbnail = decodeSampled(fd.getFileDescriptor());
+                writeThumbnail(file, CURRENT_PREFIX, thumbnail);
+            }
+            return thumbnail;
+        } finally {
+            try {
+                fd.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+
+    /**
+     * Decodes the raw resource stream; decodeResource would first scale the whole image to the
+     * display density.
+     */
+    private Bitmap decodeSampled(Resources res, int resId) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try {
+            decodeResourceStream(res, resId, options);
+            prepareSampledDecode(options);
+            return scaleToThumbnail(decodeResourceStream(res, resId, options));
+        } catch (Resources.NotFoundException e) {
+            Log.w(TAG, "Missing wallpaper resource " + resId, e);
+            return null;
+        } catch (OutOfMemoryError e) {
+            Log.w(TAG, "Out of memory decoding wallpaper resource " + resId);
+            return null;
+        }
+    }
+
+    private static Bitmap decodeResourceStream(Resources res, int resId,
+            BitmapFactory.Options options) {
+        InputStream in = res.openRawResource(resId);
+        try {
+            return BitmapFactory.decodeStream(in, null, options);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+
+    private Bitmap decodeSampled(FileDescriptor fd) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFileDescriptor(fd, null, options);
+        prepareSampledDecode(options);
+        try {
+            return scaleToThumbnail(BitmapFactory.decodeFileDescriptor(fd, null, options));
+        } catch (OutOfMemoryError e) {
+            Log.w(TAG, "Out of memory decoding the current wallpaper");
+            return null;
+        }
+    }
+
+    private void prepareSampledDecode(BitmapFactory.Options options) {
+        options.inSampleSize = computeSampleSize(options.outWidth, options.outHeight,
+                mThumbnailWidth, mThumbnailHeight);
+        options.inJustDecodeBounds = false;
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        options.inDither = true;
+        if (DEBUG_THUMBNAILS) {
+            Log.d(TAG, "decoding " + options.outWidth + "x" + options.outHeight
+                    + " wallpaper with sample size " + options.inSampleSize);
+        }
+    }
+
+    /**
+     * Returns the largest power of two that still leaves the image at least as large as the
+     * requested size in both dimensions.
+     */
+    static int computeSampleSize(int width, int height, int reqWidth, int reqHeight) {
+        int sampleSize = 1;
+        if (reqWidth <= 0 || reqHeight <= 0) {
+            return sampleSize;
+        }
+        while (width / (sampleSize * 2) >= reqWidth && height / (sampleSize * 2) >= reqHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private Bitmap scaleToThumbnail(Bitmap bitmap) {
+        if (bitmap == null || (bitmap.getWidth() <= mThumbnailWidth
+                && bitmap.getHeight() <= mThumbnailHeight)) {
+            return bitmap;
+        }
+        Bitmap scaled = Bitmap.createScaledBitmap(bitmap, mThumbnailWidth, mThumbnailHeight,
+                true);
+        if (scaled != bitmap) {
+            bitmap.recycle();
+        }
+        return scaled;
+    }
+
+    private Bitmap readThumbnail(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        Bitmap thumbnail = BitmapFactory.decodeFile(file.getPath());
+        if (thumbnail == null) {
+            file.delete();
+        }
+        return thumbnail;
+    }
+
+    /**
+     * Writes the thumbnail, first deleting older files starting with {@code stalePrefix}
+     * unless it is null.
+     */
+    private void writeThumbnail(File file, String stalePrefix, Bitmap thumbnail) {
+        if (thumbnail == null) {
+            return;
+        }
+        if (stalePrefix != null) {
+            deleteThumbnails(stalePrefix);
+        }
+        if (!mCacheDir.isDirectory() && !mCacheDir.mkdirs()) {
+            return;
+        }
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(file);
+            thumbnail.compress(Bitmap.CompressFormat.PNG, 100, out);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write " + file, e);
+            file.delete();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+            }
+        }
+    }
+
+    private void deleteThumbnails(String prefix) {
+        File[] files = mCacheDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.getName().startsWith(prefix)) {
+                file.delete();
+            }
+        }
+    }
+
+    private int getVersionCode() {
+        try {
+            PackageInfo info = mContext.getPackageManager().getPackageInfo(
+                    mContext.getPackageName(), 0);
+            return info.versionCode;
+        } catch (PackageManager.NameNotFoundException e) {
+            return 0;
+        }
+    }
+}
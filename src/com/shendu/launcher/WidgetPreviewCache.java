@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shendu.launcher;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+
+/**
+ * Keeps the rendered previews of the widgets tab in a local database, so that a preview is
+ * only ever rendered once per provider, package version and target size.
+ *
+ * Lookups and compression happen on the caller's thread, which is expected to be a preview
+ * loading thread; database writes are handed to a background thread of their own. Package
+ * updates drop the previews of the package through {@link #removePackages(String[])}.
+ */
+public class WidgetPreviewCache {
+    static final String TAG = "Launcher.WidgetPreviewCache";
+    static final boolean DEBUG_PREVIEWS = false;
+
+    private static final String DATABASE_NAME = "widgetpreviews.db";
+    private static final int DATABASE_VERSION = 1;
+
+    private static final String TABLE_PREVIEWS = "previews";
+    private static final String COLUMN_NAME = "name";
+    private static final String COLUMN_SIZE = "size";
+    private static final String COLUMN_PACKAGE = "package";
+    private static final String COLUMN_VERSION = "version";
+    private static final String COLUMN_PREVIEW = "preview";
+
+    static final String WIDGET_PREFIX = "Widget:";
+    static final String SHORTCUT_PREFIX = "Shortcut:";
+
+    private static final HandlerThread sWorkerThread = new HandlerThread(
+            "launcher-widget-previews", Process.THREAD_PRIORITY_BACKGROUND);
+    static {
+        sWorkerThread.start();
+    }
+    private static final Handler sWorker = new Handler(sWorkerThread.getLooper());
+
+    private final PackageManager mPackageManager;
+    private final CacheDb mDb;
+
+    // Package name to version string; guarded by itself
+    private final HashMap<String, String> mPackageVersions = new HashMap<String, String>();
+
+    private int mHits;
+    private int mMisses;
+
+    public WidgetPreviewCache(Context context) {
+        mPackageManager = context.getPackageManager();
+        mDb = new CacheDb(context);
+    }
+
+    private static class CacheDb extends SQLiteOpenHelper {
+        CacheDb(Context context) {
+            super(context, DATABASE_NAME, null, DATABASE_VERSION);
+            // Let the preview loaders read while the worker writes
+            setWriteAheadLoggingEnabled(true);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + TABLE_PREVIEWS + " (" +
+                    COLUMN_NAME + " TEXT NOT NULL, " +
+                    COLUMN_SIZE + " TEXT NOT NULL, " +
+                    COLUMN_PACKAGE + " TEXT NOT NULL, " +
+                    COLUMN_VERSION + " TEXT NOT NULL, " +
+                    COLUMN_PREVIEW + " BLOB NOT NULL, " +
+                    "PRIMARY KEY (" + COLUMN_NAME + ", " + COLUMN_SIZE + ")" +
+                    ");");
+            db.execSQL("CREATE INDEX " + TABLE_PREVIEWS + "_" + COLUMN_PACKAGE + " ON " +
+                    TABLE_PREVIEWS + " (" + COLUMN_PACKAGE + ");");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            // It's only a cache, start over
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_PREVIEWS);
+            onCreate(db);
+        }
+
+        @Override
+        public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            onUpgrade(db, oldVersion, newVersion);
+        }
+    }
+
+    /**
+     * Returns the cached preview, or null if there is none for the current version of the
+     * package at this size.
+     *
+     * @param name the preview name, a type prefix followed by the flattened component
+     */
+    Bitmap load(String name, String packageName, int width, int height) {
+        final String version = getPackageVersion(packageName);
+        if (version == null) {
+            return null;
+        }
+        Cursor c = null;
+        try {
+            c = mDb.getReadableDatabase().query(TABLE_PREVIEWS,
+                    new String[] { COLUMN_PREVIEW },
+                    COLUMN_NAME + " = ? AND " + COLUMN_SIZE + " = ? AND " + COLUMN_VERSION + " = ?",
+                    new String[] { name, getSizeKey(width, height), version },
+                    null, null, null);
+            if (c.moveToFirst()) {
+                byte[] data = c.getBlob(0);
+                Bitmap preview = BitmapFactory.decodeByteArray(data, 0, data.length);
+                if (preview != null) {
+                    mHits++;
+                    return preview;
+                }
+            }
+        } catch (SQLiteException e) {
+            Log.w(TAG, "Failed to read preview of " + name, e);
+        } finally {
+            if (c != null) {
+                c.close();
+            }
+        }
+        mMisses++;
+        if (DEBUG_PREVIEWS) {
+            Log.d(TAG, "preview miss for " + name + ", " + mHits + " hits, " + mMisses
+                    + " misses");
+        }
+        return null;
+    }
+
+    /**
+     * Stores a freshly rendered preview. The bitmap is compressed on the calling thread, as the
+     * caller may recycle it as soon as this returns; the write itself happens in the background.
+     */
+    void store(String name, String packageName, int width, int height, Bitmap preview) {
+        final String version = getPackageVersion(packageName);
+        if (version == null || preview == null || preview.isRecycled()) {
+            return;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(
+                preview.getWidth() * preview.getHeight());
+        if (!preview.compress(Bitmap.CompressFormat.PNG, 100, out)) {
+            return;
+        }
+        final ContentValues values = new ContentValues();
+        values.put(COLUMN_NAME, name);
+        values.put(COLUMN_SIZE, getSizeKey(width, height));
+        values.put(COLUMN_PACKAGE, packageName);
+        values.put(COLUMN_VERSION, version);
+        values.put(COLUMN_PREVIEW, out.toByteArray());
+        sWorker.post(new Runnable() {
+            public void run() {
+                try {
+                    mDb.getWritableDatabase().insertWithOnConflict(TABLE_PREVIEWS, null,
+                            values, SQLiteDatabase.CONFLICT_REPLACE);
+                } catch (SQLiteException e) {
+                    Log.w(TAG, "Failed to write preview", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Drops the previews of packages that were added, updated or removed.
+     */
+    void removePackages(final String[] packageNames) {
+        synchronized (mPackageVersions) {
+            for (String packageName : packageNames) {
+                mPackageVersions.remove(packageName);
+            }
+        }
+        sWorker.post(new Runnable() {
+            public void run() {
+                try {
+                    SQLiteDatabase db = mDb.getWritableDatabase();
+                    for (String packageName : packageNames) {
+                        db.delete(TABLE_PREVIEWS, COLUMN_PACKAGE + " = ?",
+                                new String[] { packageName });
+                    }
+                } catch (SQLiteException e) {
+                    Log.w(TAG, "Failed to remove previews", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Drops every preview, e.g. because the theme changed the icons drawn into them. Runs on
+     * the calling thread, so the previews are gone even if the process dies right after.
+     */
+    void clear() {
+        synchronized (mPackageVersions) {
+            mPackageVersions.clear();
+        }
+        try {
+            mDb.getWritableDatabase().delete(TABLE_PREVIEWS, null, null);
+        } catch (SQLiteException e) {
+            Log.w(TAG, "Failed to clear previews", e);
+        }
+    }
+
+    private static String getSizeKey(int width, int height) {
+        return width + "x" + height;
+    }
+
+    /**
+     * Returns a string that changes whenever the package is reinstalled or updated, or null if
+     * the package is not installed.
+     */
+    private String getPackageVersion(String packageName) {
+        synchronized (mPackageVersions) {
+            String version = mPackageVersions.get(packageName);
+            if (version != null) {
+                return version;
+            }
+        }
+        String version;
+        try {
+            PackageInfo info = mPackageManager.getPackageInfo(packageName, 0);
+            version = info.versionCode + "-" + info.lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            return null;
+        }
+        synchronized (mPackageVersions) {
+            mPackageVersions.put(packageName, version);
+        }
+        return version;
+    }
+}
@@ -60,6 +60,8 @@ import android.graphics.Region.Op;
 import android.graphics.drawable.Drawable;
 import android.media.audiofx.BassBoost.Settings;
 import android.os.IBinder;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.os.Parcelable;
 import android.os.SystemClock;
 import android.util.AttributeSet;
@@ -87,8 +89,10 @@ import com.shendu.launcher.FolderIcon.FolderRingAnimator;
 import com.shendu.launcher.LauncherSettings.Favorites;
 import com.shendu.launcher.preference.PreferencesProvider;
 
+import java.io.PrintWriter;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -104,6 +108,7 @@ public class Workspace extends SmoothPagedView
         implements DropTarget, DragSource, DragScroller, View.OnTouchListener,
         DragController.DragListener, LauncherTransitionable, ViewGroup.OnHierarchyChangeListener {
     private static final String TAG = "Launcher.Workspace";
+    private static final boolean DEBUG_DRAG_START = false;
 
     // Y rotation to apply to the workspace screens
     private static final float WORKSPACE_OVERSCROLL_ROTATION = 24f;
@@ -197,6 +202,12 @@ public class Workspace extends SmoothPagedView
 
     private final HolographicOutlineHelper mOutlineHelper = new HolographicOutlineHelper();
     private Bitmap mDragOutline = null;
+    private final Canvas mDragCanvas = new Canvas();
+    private final Rect mDragBitmapRegion = new Rect();
+    private int mDragStarts;
+    private long mTotalDragStartMillis;
+    private long mMaxDragStartMillis;
+    private final OutlinePrecomputer mOutlinePrecomputer = new OutlinePrecomputer();
     private final Rect mTempRect = new Rect();
     private final int[] mTempXY = new int[2];
     private int mDragViewMultiplyColor;
@@ -215,6 +226,17 @@ public class Workspace extends SmoothPagedView
     int mWallpaperWidth;
     int mWallpaperHeight;
     WallpaperOffsetInterpolator mWallpaperOffset;
+    private WallpaperOffsetSender mWallpaperOffsetSender;
+    // Steps the offset interpolator on the next frame without redrawing the workspace
+    private boolean mWallpaperOffsetTickPosted;
+    private final Runnable mWallpaperOffsetTick = new Runnable() {
+        public void run() {
+            mWallpaperOffsetTickPosted = false;
+            if (mScrollWallpaper) {
+                updateWallpaperOffsets();
+            }
+        }
+    };
     boolean mUpdateWallpaperOffsetImmediately = false;
     private Runnable mDelayedResizeRunnable;
     private Runnable mDelayedSnapToPageRunnable;
@@ -229,6 +251,12 @@ public class Workspace extends SmoothPagedView
     private static final int REORDER_TIMEOUT = 250;
     private final Alarm mFolderCreationAlarm = new Alarm();
     private final Alarm mReorderAlarm = new Alarm();
+    // Reused for every drag over event; the alarms are only re-armed once they have fired or
+    // been cancelled, so a single listener of each kind is enough.
+    private final FolderCreationAlarmListener mFolderCreationAlarmListener =
+            new FolderCreationAlarmListener();
+    private final ReorderAlarmListener mReorderAlarmListener = new ReorderAlarmListener();
+    private final Rect mDragOverHitRect = new Rect();
     private FolderRingAnimator mDragFolderRingAnimator = null;
     private FolderIcon mDragOverFolderIcon = null;
     private boolean mCreateUserFolderOnDrop = false;
@@ -311,6 +339,22 @@ public class Workspace extends SmoothPagedView
     }
 
     private TransitionEffect mTransitionEffect; //for effect
+
+    // Frame timings of scrolls, snaps and state changes, per transition effect
+    private final FrameStats mFrameStats = new FrameStats();
+    private PageLayerManager mLayerManager;
+    private boolean mStateAnimating;
+    // 1 while an effect demonstration snaps away, 2 while it snaps back
+    private int mDemonstrationStep;
+
+    // Scratch transform for the effects, and the generation of the transforms pages hold;
+    // pages applied in an older generation are always reapplied
+    private final PageTransform mPageTransform = new PageTransform();
+    private int mTransformGeneration;
+    // Tablet effect offsets sampled for the current page size
+    private final float[] mTabletOffsets = new float[TransitionTransforms.CURVE_SEGMENTS + 1];
+    private int mTabletOffsetsWidth = -1;
+    private int mTabletOffsetsHeight = -1;
 	
     public TransitionEffect getmTransitionEffect() {
 		return mTransitionEffect;
@@ -318,11 +362,11 @@ public class Workspace extends SmoothPagedView
 
 	public void setmTransitionEffect(TransitionEffect mTransitionEffect) {
 		this.mTransitionEffect = mTransitionEffect;
+		invalidatePageTransforms();
 	}
 
     private static final float WORKSPACE_ROTATION_ANGLE = 12.5f; //for effect
     private static float CAMERA_DISTANCE = 6500; 
-    private static final float WORKSPACE_ROTATION = 12.5f;
     private float[] mOldBackgroundAlphaMultipliers;
     private float[] mNewBackgroundAlphaMultipliers;
     private float[] mNewRotations;
@@ -585,6 +629,7 @@ public class Workspace extends SmoothPagedView
         mIconCache = app.getIconCache();
         setWillNotDraw(false);
         setChildrenDrawnWithCacheEnabled(true);
+        mLayerManager = new PageLayerManager(this);
 
         final Resources res = getResources();
         mLayoutInflater = (LayoutInflater) getContext().getSystemService(Context.LAYOUT_INFLATER_SERVICE);
@@ -612,6 +657,7 @@ public class Workspace extends SmoothPagedView
         //}
 
         mWallpaperOffset = new WallpaperOffsetInterpolator();
+        mWallpaperOffsetSender = new WallpaperOffsetSender(mWallpaperManager);
         Display display = mLauncher.getWindowManager().getDefaultDisplay();
         display.getSize(mDisplaySize);
         if (mScrollWallpaper) {
@@ -637,13 +683,17 @@ public class Workspace extends SmoothPagedView
         CellLayout cl = ((CellLayout) child);
         cl.setOnInterceptTouchListener(this);
         cl.setClickable(true);
-        cl.enableHardwareLayers();
+        if (mWindowToken != null) {
+            settlePageLayers(cl);
+        }
         cl.setContentDescription(getContext().getString(
                 R.string.workspace_description_format, getChildCount()));
+        invalidatePageTransforms();
     }
 
     @Override
     public void onChildViewRemoved(View parent, View child) {
+        mLayerManager.onPageRemoved((CellLayout) child);
     }
 
     protected boolean shouldDrawChild(View child) {
@@ -977,9 +1027,12 @@ public class Workspace extends SmoothPagedView
 
     protected void onPageBeginMoving() {
         super.onPageBeginMoving();
+        mWallpaperOffsetSender.beginScroll();
+        mOutlinePrecomputer.cancel();
 
         if (isHardwareAccelerated()) {
             updateChildrenLayersEnabled();
+            mLayerManager.beginGesture();
         } else {
             if (mNextPage != INVALID_PAGE) {
                 // we're snapping to a particular screen
@@ -1007,12 +1060,17 @@ public class Workspace extends SmoothPagedView
     }
 
     protected void onPageEndMoving() {
+        if (mDemonstrationStep == 2) {
+            mDemonstrationStep = 0;
+        }
+        mWallpaperOffsetSender.endScroll();
         if (mFadeScrollingIndicator) {
             hideScrollingIndicator(false);
         }
 
         if (isHardwareAccelerated()) {
             updateChildrenLayersEnabled();
+            mLayerManager.endGesture(mCurrentPage, getLayerReach());
         } else {
             clearChildrenCache();
         }
@@ -1034,6 +1092,7 @@ public class Workspace extends SmoothPagedView
             if (mFadeScrollingIndicator && !mDragController.isDragging()) {
                 hideScrollingIndicator(false);
             }
+            precomputeCurrentPageOutlines();
         }
         mOverScrollMaxBackgroundAlpha = 0.0f;
 
@@ -1110,6 +1169,8 @@ public class Workspace extends SmoothPagedView
             mWallpaperWidth = Math.max((int) (minDim * WALLPAPER_SCREENS_SPAN), maxDim);
             mWallpaperHeight = maxDim;
         }
+        mWallpaperOffsetSender.setTravel(mWallpaperWidth - mDisplaySize.x,
+                mWallpaperHeight - mDisplaySize.y);
         new Thread("setWallpaperDimension") {
             public void run() {
                 mWallpaperManager.suggestDesiredDimensions(mWallpaperWidth, mWallpaperHeight);
@@ -1158,10 +1219,24 @@ public class Workspace extends SmoothPagedView
         }
     }
 
+    /**
+     * Returns the horizontal wallpaper offset currently applied, in [0, 1].
+     */
+    float getWallpaperOffsetX() {
+        return mWallpaperOffset.getCurrX();
+    }
+
+    /**
+     * Returns the vertical wallpaper offset currently applied, in [0, 1].
+     */
+    float getWallpaperOffsetY() {
+        return mWallpaperOffset.getCurrY();
+    }
+
     private void centerWallpaperOffset() {
         if (mWindowToken != null) {
             mWallpaperManager.setWallpaperOffsetSteps(0.5f, 0);
-            mWallpaperManager.setWallpaperOffsets(mWindowToken, 0.5f, 0);
+            mWallpaperOffsetSender.setOffsets(mWindowToken, 0.5f, 0, true);
         }
     }
 
@@ -1170,24 +1245,22 @@ public class Workspace extends SmoothPagedView
     }
 
     private void updateWallpaperOffsets() {
-        boolean updateNow = false;
         boolean keepUpdating = true;
         if (mUpdateWallpaperOffsetImmediately) {
-            updateNow = true;
             keepUpdating = false;
             mWallpaperOffset.jumpToFinal();
             mUpdateWallpaperOffsetImmediately = false;
         } else {
-            updateNow = keepUpdating = mWallpaperOffset.computeScrollOffset();
+            keepUpdating = mWallpaperOffset.computeScrollOffset();
         }
-        if (updateNow) {
-            if (mWindowToken != null) {
-                mWallpaperManager.setWallpaperOffsets(mWindowToken,
-                        mWallpaperOffset.getCurrX(), mWallpaperOffset.getCurrY());
-            }
+        if (mWindowToken != null) {
+            // Offsets still on their way are sent at pixel granularity, settled ones exactly
+            mWallpaperOffsetSender.setOffsets(mWindowToken, mWallpaperOffset.getCurrX(),
+                    mWallpaperOffset.getCurrY(), !keepUpdating);
         }
-        if (keepUpdating) {
-            invalidate();
+        if (keepUpdating && !mWallpaperOffsetTickPosted) {
+            mWallpaperOffsetTickPosted = true;
+            postOnAnimation(mWallpaperOffsetTick);
         }
     }
 
@@ -1387,6 +1460,7 @@ public class Workspace extends SmoothPagedView
 
     public void setChildrenOutlineAlpha(float alpha) {
         mChildrenOutlineAlpha = alpha;
+        invalidatePageTransforms();
         for (int i = 0; i < getChildCount(); i++) {
             CellLayout cl = (CellLayout) getChildAt(i);
             cl.setBackgroundAlpha(alpha);
@@ -1498,6 +1572,7 @@ public class Workspace extends SmoothPagedView
                 mState == State.NORMAL &&
                 !mIsSwitchingState &&
                 !isInOverscroll) {
+            invalidatePageTransforms();
             for (int i = 0; i < getChildCount(); i++) {
                 CellLayout child = (CellLayout) getChildAt(i);
                 if (child != null) {
@@ -1523,392 +1598,174 @@ public class Workspace extends SmoothPagedView
     }
 
 	public void screenScrolledStandard(int screenScroll) {
-		for(int i = 0; i < getChildCount(); i++) {
+		final boolean fade = mFadeInAdjacentScreens && !isSmall();
+		for (int i = 0; i < getChildCount(); i++) {
 			CellLayout cl = (CellLayout) getPageAt(i);
 			if (cl != null) {
 				float scrollProgress = getScrollProgress(screenScroll, cl, i);
-				if (mFadeInAdjacentScreens && !isSmall()) {
-					float alpha = 1 - Math.abs(scrollProgress);
-					cl.setShortcutAndWidgetAlpha(alpha);
-					cl.invalidate();
-				}
+				TransitionTransforms.standard(scrollProgress, fade, mPageTransform);
+				applyPageTransform(cl, mPageTransform);
 			}
 		}
 	}
 
 	private void screenScrolledTablet(int screenScroll) {
+		final boolean fade = mFadeInAdjacentScreens && !isSmall();
 		for (int i = 0; i < getChildCount(); i++) {
 			CellLayout cl = (CellLayout) getPageAt(i);
 			if (cl != null) {
 				float scrollProgress = getScrollProgress(screenScroll, cl, i);
-				float rotation = WORKSPACE_ROTATION * scrollProgress;
-				float translationX = getOffsetXForRotation(rotation, cl.getWidth(), cl.getHeight());
-				if(scrollProgress==1 || scrollProgress==-1){
-					mIsBack = true;
-				}else{
-					mIsBack = false;
-				}
-				if(mIsBack){
-					rotation = 0;
-					translationX = 0;
-				}
-				cl.setTranslationX(translationX);
-				cl.setRotationY(rotation);
-				if (mFadeInAdjacentScreens && !isSmall()) {
-					float alpha = 1 - Math.abs(scrollProgress);
-					cl.setShortcutAndWidgetAlpha(alpha);
-                }
-				cl.invalidate();
+				float[] offsets = getTabletOffsets(cl.getWidth(), cl.getHeight());
+				TransitionTransforms.tablet(scrollProgress, fade, offsets, mPageTransform);
+				applyPageTransform(cl, mPageTransform);
 			}
 		}
 		invalidate();
 	}
 
 	private void screenScrolledZoom(int screenScroll, boolean in) {
-		if(isSmall()){
-			for (int i = 0; i < getChildCount(); i++) {
-				CellLayout cl = (CellLayout) getPageAt(i);
-				if (cl != null) {
-					float scrollProgress = getScrollProgress(screenScroll, cl, i);
-					float scale = (1.0f + (in ? -0.2f : 0.1f) * Math.abs(scrollProgress));
-					// Extra translation to account for the increase in size
-					if(scrollProgress==1 || scrollProgress==-1){
-						mIsBack = true;
-					}else{
-						mIsBack = false;
-					}
-					if (!in) {
-						float translationX = cl.getMeasuredWidth() * 0.1f * -scrollProgress;
-						if(mIsBack){
-							translationX = 0;
-						}
-						cl.setTranslationX(translationX);
-					}
-					if(mIsBack){
-						scale = 1.0f;
-					}
-					//cl.setFastScaleX(scale*0.75f); //moditify
-					cl.setScaleX(scale*0.75f);
-					//cl.setFastScaleY(scale*0.75f); //moditify
-					cl.setScaleY(scale*0.75f);
-					if (mFadeInAdjacentScreens && !isSmall()) {
-						float alpha = 1 - Math.abs(scrollProgress);
-						//cl.setFastAlpha(alpha); //moditify
-						cl.setAlpha(alpha);
-					}
-					//cl.fastInvalidate(); //moditify
-					cl.invalidate();
-				}
-			}
-		}else{
-			for (int i = 0; i < getChildCount(); i++) {
-				CellLayout cl = (CellLayout) getPageAt(i);
-				if (cl != null) {
-					float scrollProgress = getScrollProgress(screenScroll, cl, i);
-					float scale = 1.0f + (in ? -0.2f : 0.1f) * Math.abs(scrollProgress);
-					//if(scrollProgress==0 || scrollProgress==1 || scrollProgress==-1){
-					if(scrollProgress==1 || scrollProgress==-1){
-						mIsBack = true;
-					}else{
-						mIsBack = false;
-					}
-					// Extra translation to account for the increase in size
-					if (!in) {
-						float translationX = cl.getMeasuredWidth() * 0.1f * -scrollProgress;
-						if(mIsBack){
-							translationX = 0;
-						}
-						//cl.setFastTranslationX(translationX); //moditify
-						cl.setTranslationX(translationX);
-					}
-					if(mIsBack){
-						scale = 1.0f;
-					}
-					//cl.setFastScaleX(scale); //moditify
-					cl.setScaleX(scale);
-					//cl.setFastScaleY(scale); //moditify
-					cl.setScaleY(scale);
-					if (mFadeInAdjacentScreens && !isSmall()) {
-						float alpha = 1 - Math.abs(scrollProgress);
-						//cl.setFastAlpha(alpha); //moditify
-						cl.setAlpha(alpha);
-					}
-					//cl.fastInvalidate(); //moditify
-					cl.invalidate();
-				}
+		final boolean small = isSmall();
+		final boolean fade = mFadeInAdjacentScreens && !small;
+		for (int i = 0; i < getChildCount(); i++) {
+			CellLayout cl = (CellLayout) getPageAt(i);
+			if (cl != null) {
+				float scrollProgress = getScrollProgress(screenScroll, cl, i);
+				TransitionTransforms.zoom(scrollProgress, in, small, fade,
+						cl.getMeasuredWidth(), mPageTransform);
+				applyPageTransform(cl, mPageTransform);
 			}
 		}
 	}
 
 	private void screenScrolledRotate(int screenScroll, boolean up) {
-		if(isSmall()){
-			for (int i = 0; i < getChildCount(); i++) {
-				CellLayout cl = (CellLayout) getPageAt(i);
-				if (cl != null) {
-					float scrollProgress = getScrollProgress(screenScroll, cl, i);
-					float rotation=(up ? WORKSPACE_ROTATION_ANGLE : -WORKSPACE_ROTATION_ANGLE) * scrollProgress;
-					float translationX = cl.getMeasuredWidth() * scrollProgress;
-					float rotatePoint = (cl.getMeasuredWidth() * 0.5f) /
-							(float) Math.tan(Math.toRadians((double) (WORKSPACE_ROTATION_ANGLE * 0.5f)));
-					cl.setPivotX(cl.getMeasuredWidth() * 0.5f);
-					if(scrollProgress==0 || scrollProgress==1 || scrollProgress==-1){
-						mIsBack = true;
-					}else{
-						mIsBack = false;
-					}
-					if(mIsBack){
-						if (up) {
-							//cl.setPivotY(-rotatePoint*0.30f);
-							cl.setPivotY(cl.getMeasuredWidth() * 0.5f);
-							//cl.setTranslationY(185);
-							cl.setTranslationY(mNewTranslationYs[i]);
-							cl.setRotation(0);
-							//cl.setTranslationX(mNewTranslationXs[i]);
-						} else {
-							//cl.setPivotY((cl.getMeasuredHeight() + rotatePoint)*0.30f);
-							cl.setPivotY(cl.getMeasuredWidth() * 0.5f);
-							//cl.setTranslationY(-235);
-							cl.setTranslationY(mNewTranslationYs[i]);
-							cl.setRotation(0);
-							//cl.setTranslationX(mNewTranslationXs[i]);
-						}
-					}else{
-						if (up) {
-							cl.setPivotY(cl.getMeasuredWidth() * 0.5f);
-							//cl.setTranslationY(185);
-							cl.setTranslationY(mNewTranslationYs[i]);
-							cl.setRotation(rotation);
-							//cl.setTranslationX(mNewTranslationXs[i]);
-							//cl.setTranslationX(translationX*0.75f);
-						} else {
-							//  cl.setTranslationX(20);
-							//cl.setPivotY((cl.getMeasuredHeight() + rotatePoint)*0.30f);
-							cl.setPivotY(cl.getMeasuredWidth() * 0.5f);
-							//Log.i(Launcher.TAG,
-							cl.setTranslationY(mNewTranslationYs[i]);
-							cl.setRotation(rotation * 2);
-						}
-					}
-					
-					// cl.setRotation(rotation);
-					if (mFadeInAdjacentScreens && !isSmall()) {
-						float alpha = 1 - Math.abs(scrollProgress);
-						// cl.setFastAlpha(alpha); //moditify
-						cl.setAlpha(alpha);
-					}
-					cl.invalidate();
-				}
-			}
-		}else{
-			for (int i = 0; i < getChildCount(); i++) {
-				CellLayout cl = (CellLayout) getPageAt(i);
-				if (cl != null) {
-					float scrollProgress = getScrollProgress(screenScroll, cl,i);
-					float rotation = (up ? WORKSPACE_ROTATION_ANGLE: -WORKSPACE_ROTATION_ANGLE) * scrollProgress;
-					float translationX = cl.getMeasuredWidth() * scrollProgress;
-					float rotatePoint = (cl.getMeasuredWidth() * 0.5f)/
-							(float) Math.tan(Math.toRadians((double) (WORKSPACE_ROTATION_ANGLE * 0.5f)));
-					float translationY = 0;
-					cl.setPivotX(cl.getMeasuredWidth() * 0.5f);
-					if (up) {
-						cl.setPivotY(-rotatePoint);
-					} else {
-						cl.setPivotY(cl.getMeasuredHeight() + rotatePoint);
-					}
-					cl.setTranslationY(0);
-					cl.setRotation(rotation);
-					cl.setTranslationX(translationX);
-					if (mFadeInAdjacentScreens && !isSmall()) {
-						float alpha = 1 - Math.abs(scrollProgress);
-						cl.setShortcutAndWidgetAlpha(alpha);
-					}
-					cl.invalidate();
-					// cl.fastInvalidate(); //moditify
-				}
-			}
-    	}
-    }
-    
-    private void screenScrolledCube(int screenScroll, boolean in) {
-		if (isSmall()) {
-			for (int i = 0; i < getChildCount(); i++) {
-				CellLayout cl = (CellLayout) getPageAt(i);
-				if (cl != null) {
-					float scrollProgress = getScrollProgress(screenScroll, cl,i);
-					float rotation = (in ? 90.0f : -90.0f) * scrollProgress;
-					float alpha = 1 - Math.abs(scrollProgress * 0.75f);
-					// float translationX = Math.min(0, scrollProgress) *
-					// cl.getMeasuredWidth()*0.75f;
-					if (in) {
-						cl.setCameraDistance(mDensity * CAMERA_DISTANCE);
-					}
-					if(scrollProgress==1 || scrollProgress==-1){
-						mIsBack = true;
-					}else{
-						mIsBack = false;
-					}
-					if(mIsBack){
-						rotation=0;
-					}
-					// scrollProgress+isSmall()+cl.getMeasuredWidth()+alpha);
-					// cl.setPivotX(scrollProgress < 0 ? 0 :
-					// cl.getMeasuredWidth());
-					cl.setPivotX(240);
-					cl.setPivotY(cl.getMeasuredHeight() * 0.5f);
-					cl.setRotationY(rotation);
-					// cl.setFastAlpha(alpha); //moditify
-					cl.setAlpha(1);
-					// if(i==mCurrentPage){
-					// cl.setFastBackgroundAlpha(1);
-					// }
-					// cl.fastInvalidate(); //moditify
-					cl.invalidate();
-				}
-			}
-			//mIsBack = true;
-		} else {
-			for (int i = 0; i < getChildCount(); i++) {
-				CellLayout cl = (CellLayout) getPageAt(i);
-				if (cl != null) {
-					float scrollProgress = getScrollProgress(screenScroll, cl,
-							i);
-					float rotation = (in ? 90.0f : -90.0f) * scrollProgress;
-					float alpha = 1 - Math.abs(scrollProgress);
-					if (in) {
-						cl.setCameraDistance(mDensity * CAMERA_DISTANCE);
-					}
-					//if(scrollProgress==0 || scrollProgress==1 || scrollProgress==-1){
-					if(scrollProgress==1 || scrollProgress==-1){
-						mIsBack = true;
-					}else{
-						mIsBack = false;
-					}
-					if(mIsBack){
-						rotation=0;
-					}
-					cl.setPivotX(scrollProgress < 0 ? 0 : cl.getMeasuredWidth());
-					cl.setPivotY(cl.getMeasuredHeight() * 0.5f);
-					cl.setRotationY(rotation);
-					cl.setShortcutAndWidgetAlpha(1f);
-					//cl.setAlpha(alpha);
-					cl.invalidate();
-					// cl.fastInvalidate(); //moditify
-				}
+		final boolean small = isSmall();
+		final boolean fade = mFadeInAdjacentScreens && !small;
+		for (int i = 0; i < getChildCount(); i++) {
+			CellLayout cl = (CellLayout) getPageAt(i);
+			if (cl != null) {
+				float scrollProgress = getScrollProgress(screenScroll, cl, i);
+				TransitionTransforms.rotate(scrollProgress, up, small, fade,
+						cl.getMeasuredWidth(), cl.getMeasuredHeight(),
+						small ? mNewTranslationYs[i] : 0, mPageTransform);
+				applyPageTransform(cl, mPageTransform);
 			}
 		}
-    }
-    
-    private void screenScrolledStack(int screenScroll) {
-		if (isSmall()) {
-			for (int i = 0; i < getChildCount(); i++) {
-				CellLayout cl = (CellLayout) getPageAt(i);
-				//if(i==mCurrentPage || i==getNextPage()){
-					if (cl != null) {
-						float scrollProgress = getScrollProgress(screenScroll, cl,i);
-						float interpolatedProgress = mZInterpolator.getInterpolation(Math.abs(Math.min(scrollProgress,0)));
-						float scale = (1 - interpolatedProgress)+ interpolatedProgress * 0.76f;
-						float translationX = Math.min(0, scrollProgress)* cl.getMeasuredWidth() * 0.75f;
-						float alpha;
-						if (!LauncherApplication.isScreenLarge()|| scrollProgress < 0) {
-							alpha = scrollProgress < 0 ? mAlphaInterpolator
-									.getInterpolation(1 - Math.abs(scrollProgress)): 1.0f;
-						} else {
-							// On large screens we need to fade the page as it nears
-							// its leftmost position
-							alpha = mLeftScreenAlphaInterpolator.getInterpolation(1 - scrollProgress);
-						}
-						if (Math.abs(scrollProgress) == 1.0) {
-							alpha = 0.0f;
-						}
-						if(scrollProgress==1 || scrollProgress==-1){
-							mIsBack = true;
-						}else{
-							mIsBack = false;
-						}
-						if(mIsBack){
-							translationX = 0;
-							scale = 1;
-							alpha = 1;
-						}
-						cl.setTranslationX(translationX);
-						cl.setScaleX(scale * 0.75f);
-						cl.setScaleY(scale * 0.75f);
-						//cl.setAlpha(alpha);
-						cl.setShortcutAndWidgetAlpha(alpha);
-						// If the view has 0 alpha, we set it to be invisible so as
-						// to prevent
-						// it from accepting touches
-						if (alpha <= 0) {
-							// cl.setFastBackgroundAlpha(alpha); //moditify
-							cl.setBackgroundAlpha(alpha);
-							cl.setVisibility(INVISIBLE);
-						} else {
-							// cl.setFastBackgroundAlpha(alpha); //moditify
-							cl.setBackgroundAlpha(alpha);
-							cl.setVisibility(VISIBLE);
-						}
-						// cl.fastInvalidate(); //moditify
-						cl.invalidate();
-					}
-				
+	}
+
+	private void screenScrolledCube(int screenScroll, boolean in) {
+		final boolean small = isSmall();
+		for (int i = 0; i < getChildCount(); i++) {
+			CellLayout cl = (CellLayout) getPageAt(i);
+			if (cl != null) {
+				float scrollProgress = getScrollProgress(screenScroll, cl, i);
+				TransitionTransforms.cube(scrollProgress, in, small, cl.getMeasuredWidth(),
+						cl.getMeasuredHeight(), mDensity * CAMERA_DISTANCE, mPageTransform);
+				applyPageTransform(cl, mPageTransform);
 			}
-		} else {
-			for (int i = 0; i < getChildCount(); i++) {
-				CellLayout cl = (CellLayout) getPageAt(i);
-				if (cl != null) {
-					float scrollProgress = getScrollProgress(screenScroll, cl,i);
-					float interpolatedProgress = mZInterpolator
-							.getInterpolation(Math.abs(Math.min(scrollProgress,0)));
-					float scale = (1 - interpolatedProgress)+ interpolatedProgress * 0.76f;
-					float translationX = Math.min(0, scrollProgress)* cl.getMeasuredWidth();
-					float alpha;
-					if (!LauncherApplication.isScreenLarge()|| scrollProgress < 0) {
-						alpha = scrollProgress < 0 ? mAlphaInterpolator
-								.getInterpolation(1 - Math.abs(scrollProgress)): 1.0f;
-					} else {
-						// On large screens we need to fade the page as it nears
-						// its leftmost position
-						alpha = mLeftScreenAlphaInterpolator.getInterpolation(1 - scrollProgress);
-					}
-					//if(scrollProgress==0 || scrollProgress==1 || scrollProgress==-1){
-					if(scrollProgress==1 || scrollProgress==-1){
-						mIsBack = true;
-					}else{
-						mIsBack = false;
-					}
-					if(mIsBack){
-						translationX = 0;
-						scale = 1;
-						alpha = 1;
-					}
-					cl.setTranslationX(translationX);
-					// cl.setFastTranslationX(translationX); //moditify
-					cl.setScaleX(scale);
-					// cl.setFastScaleX(scale); //moditify
-					cl.setScaleY(scale);
-					// cl.setFastScaleY(scale); //moditify
-					cl.setShortcutAndWidgetAlpha(alpha);
-					// If the view has 0 alpha, we set it to be invisible so as
-					// to prevent
-					// it from accepting touches
-					if (alpha <= 0) {
-						cl.setVisibility(INVISIBLE);
-					} else if (cl.getVisibility() != VISIBLE) {
-					//} else {
-						//cl.setAlpha(alpha);
-						cl.setVisibility(VISIBLE);
-					}
-					cl.invalidate();
-					// cl.fastInvalidate(); //moditify
-				}
+		}
+	}
+
+	private void screenScrolledStack(int screenScroll) {
+		final boolean small = isSmall();
+		final boolean largeScreen = LauncherApplication.isScreenLarge();
+		for (int i = 0; i < getChildCount(); i++) {
+			CellLayout cl = (CellLayout) getPageAt(i);
+			if (cl != null) {
+				float scrollProgress = getScrollProgress(screenScroll, cl, i);
+				TransitionTransforms.stack(scrollProgress, small, largeScreen,
+						cl.getMeasuredWidth(), mPageTransform);
+				applyPageTransform(cl, mPageTransform);
 			}
 		}
+	}
+
+    /**
+     * Applies a transition effect transform to a page, unless the page already has it.
+     */
+    private void applyPageTransform(CellLayout cl, PageTransform t) {
+        final PageTransform applied = cl.getAppliedTransform();
+        if (applied.generation == mTransformGeneration && applied.sameAs(t)) {
+            return;
+        }
+        final int mask = t.mask;
+        if ((mask & PageTransform.CAMERA_DISTANCE) != 0) {
+            cl.setCameraDistance(t.cameraDistance);
+        }
+        if ((mask & PageTransform.PIVOT_X) != 0) {
+            cl.setPivotX(t.pivotX);
+        }
+        if ((mask & PageTransform.PIVOT_Y) != 0) {
+            cl.setPivotY(t.pivotY);
+        }
+        if ((mask & PageTransform.TRANSLATION_X) != 0) {
+            cl.setTranslationX(t.translationX);
+        }
+        if ((mask & PageTransform.TRANSLATION_Y) != 0) {
+            cl.setTranslationY(t.translationY);
+        }
+        if ((mask & PageTransform.SCALE) != 0) {
+            cl.setScaleX(t.scale);
+            cl.setScaleY(t.scale);
+        }
+        if ((mask & PageTransform.ROTATION) != 0) {
+            cl.setRotation(t.rotation);
+        }
+        if ((mask & PageTransform.ROTATION_Y) != 0) {
+            cl.setRotationY(t.rotationY);
+        }
+        if ((mask & PageTransform.ALPHA) != 0) {
+            cl.setAlpha(t.alpha);
+        }
+        if ((mask & PageTransform.CONTENT_ALPHA) != 0) {
+            cl.setShortcutAndWidgetAlpha(t.contentAlpha);
+        }
+        if ((mask & PageTransform.BACKGROUND_ALPHA) != 0) {
+            cl.setBackgroundAlpha(t.backgroundAlpha);
+        }
+        if ((mask & PageTransform.VISIBILITY) != 0) {
+            cl.setVisibility(t.visible ? VISIBLE : INVISIBLE);
+        }
+        if (mask != 0) {
+            cl.invalidate();
+        }
+        applied.set(t);
+        applied.generation = mTransformGeneration;
+    }
+
+    /**
+     * Makes the next frame apply the effect transform to every page. Call after anything
+     * other than the effects changes page transforms or alphas.
+     */
+    void invalidatePageTransforms() {
+        mTransformGeneration++;
+    }
+
+    /**
+     * Returns the tablet effect offsets for pages of the given size, sampling
+     * {@link #getOffsetXForRotation} when the size changes.
+     */
+    private float[] getTabletOffsets(int width, int height) {
+        if (width != mTabletOffsetsWidth || height != mTabletOffsetsHeight) {
+            final int segments = TransitionTransforms.CURVE_SEGMENTS;
+            for (int i = 0; i <= segments; i++) {
+                mTabletOffsets[i] = getOffsetXForRotation(
+                        TransitionTransforms.TABLET_ANGLE * i / segments, width, height);
+            }
+            mTabletOffsetsWidth = width;
+            mTabletOffsetsHeight = height;
+        }
+        return mTabletOffsets;
     }
 
     @Override
     protected void screenScrolled(int screenCenter) {
         super.screenScrolled(screenCenter);
 
+        if (isHardwareAccelerated() && getChildCount() > 0) {
+            mLayerManager.onScrolled(getPagePosition(screenCenter),
+                    mNextPage != INVALID_PAGE ? mNextPage : -1, getLayerReach());
+        }
+
         updatePageAlphaValues(screenCenter);
 
         if (mOverScrollX < 0 || mOverScrollX > mMaxScrollX) {
@@ -1936,6 +1793,11 @@ public class Workspace extends SmoothPagedView
                 mOverscrollTransformsSet = false;
                 ((CellLayout) getChildAt(0)).resetOverscrollTransforms();
                 ((CellLayout) getChildAt(getChildCount() - 1)).resetOverscrollTransforms();
+                invalidatePageTransforms();
+            }
+            if (mStateAnimating || mIsSwitchingState) {
+                // State animations move the pages every frame as well
+                invalidatePageTransforms();
             }
 			switch (mTransitionEffect) { //effect switch
 			case Standard:
@@ -1982,6 +1844,7 @@ public class Workspace extends SmoothPagedView
         mWindowToken = getWindowToken();
         computeScroll();
         mDragController.setWindowToken(mWindowToken);
+        settlePageLayers(null);
     }
 
     protected void onDetachedFromWindow() {
@@ -1993,6 +1856,9 @@ public class Workspace extends SmoothPagedView
         if (mFirstLayout && mCurrentPage >= 0 && mCurrentPage < getChildCount()) {
             mUpdateWallpaperOffsetImmediately = true;
         }
+        if (changed) {
+            invalidatePageTransforms();
+        }
         super.onLayout(changed, left, top, right, bottom);
     }
 
@@ -2014,6 +1880,99 @@ public class Workspace extends SmoothPagedView
         super.onDraw(canvas);
     }
 
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        final int phase = getFramePhase();
+        if (phase == FrameStats.PHASE_NONE) {
+            mFrameStats.endSession();
+            super.dispatchDraw(canvas);
+            return;
+        }
+        final long start = System.nanoTime();
+        super.dispatchDraw(canvas);
+        mFrameStats.recordFrame(phase, mTransitionEffect.name(), start, System.nanoTime());
+    }
+
+    private int getFramePhase() {
+        if (mDemonstrationStep != 0) {
+            return FrameStats.PHASE_DEMO;
+        }
+        if (mStateAnimating || mIsSwitchingState) {
+            return FrameStats.PHASE_STATE;
+        }
+        if (isPageMoving()) {
+            return mTouchState == TOUCH_STATE_SCROLLING ?
+                    FrameStats.PHASE_SCROLL : FrameStats.PHASE_SNAP;
+        }
+        return FrameStats.PHASE_NONE;
+    }
+
+    private void trackStateAnimation(Animator anim) {
+        mStateAnimating = true;
+        anim.addListener(new AnimatorListenerAdapter() {
+            @Override
+            public void onAnimationEnd(Animator animation) {
+                mStateAnimating = false;
+                invalidatePageTransforms();
+            }
+        });
+    }
+
+    void dumpFrameStats(String prefix, PrintWriter writer) {
+        mFrameStats.endSession();
+        mFrameStats.dump(prefix, writer);
+    }
+
+    void dumpLayerStats(String prefix, PrintWriter writer) {
+        mLayerManager.dump(prefix, writer);
+    }
+
+    void dumpWallpaperStats(String prefix, PrintWriter writer) {
+        mWallpaperOffsetSender.dump(prefix, writer);
+    }
+
+    void dumpDragStats(String prefix, PrintWriter writer) {
+        writer.println(prefix + "Drag starts: " + mDragStarts + ", average "
+                + (mDragStarts > 0 ? mTotalDragStartMillis / mDragStarts : 0) + "ms, max "
+                + mMaxDragStartMillis + "ms");
+        mDragController.getBitmapPool().dump(prefix + "  ", writer);
+    }
+
+    /**
+     * Hands page layers to the layer manager once the window tells whether rendering is
+     * hardware accelerated. Without it every page keeps a (software) layer as before.
+     */
+    private void settlePageLayers(CellLayout added) {
+        if (isHardwareAccelerated()) {
+            mLayerManager.settle(Math.max(0, Math.min(mCurrentPage, getChildCount() - 1)),
+                    getLayerReach());
+        } else if (added != null) {
+            added.enableHardwareLayers();
+        } else {
+            for (int i = 0; i < getChildCount(); i++) {
+                ((CellLayout) getChildAt(i)).enableHardwareLayers();
+            }
+        }
+    }
+
+    private int getLayerReach() {
+        return PageLayerManager.getVisibleReach(isSmall() || mIsSwitchingState);
+    }
+
+    /**
+     * Returns the scroll position in pages, 0 when page 0 is centered, without the clamping
+     * of {@link #getScrollProgress}.
+     */
+    private float getPagePosition(int screenCenter) {
+        final int pageWidth = getScaledMeasuredWidth(getPageAt(0)) + mPageSpacing;
+        if (pageWidth <= 0) {
+            return mCurrentPage;
+        }
+        final int delta = screenCenter - (getChildOffset(0) - getRelativeChildOffset(0)
+                + getMeasuredWidth() / 2);
+        return delta / (float) pageWidth;
+    }
+
     boolean isDrawingBackgroundGradient() {
         return (mBackground != null && mBackgroundAlpha > 0.0f && mDrawBackground);
     }
@@ -2242,6 +2201,7 @@ public class Workspace extends SmoothPagedView
         if (mState == state) {
             return null;
         }
+        invalidatePageTransforms();
         // Initialize animation arrays for the first time if necessary
         initAnimationArrays();
         AnimatorSet anim = animated ? new AnimatorSet() : null;
@@ -2422,6 +2382,7 @@ public class Workspace extends SmoothPagedView
         	
             
         	anim.playTogether(animWithInterpolator);
+        	trackStateAnimation(anim);
         	anim.start();
         	
         }
@@ -2436,6 +2397,7 @@ public class Workspace extends SmoothPagedView
      * @param animated true
      */
     public void  recoveryState(State state1,State state ,boolean animated){// Initialize animation arrays for the first time if necessary
+        invalidatePageTransforms();
         initAnimationArrays();
         AnimatorSet anim = animated ? new AnimatorSet() : null;
         // Stop any scrolling, move to the current page right away
@@ -2616,6 +2578,7 @@ public class Workspace extends SmoothPagedView
         	
             
         	anim.playTogether(animWithInterpolator);
+        	trackStateAnimation(anim);
         	anim.start();
         	
         }
@@ -2628,6 +2591,7 @@ public class Workspace extends SmoothPagedView
 	 */
 	public void transitionEffectDemonstration() {
 		final int currentPage = mCurrentPage;
+		mDemonstrationStep = 1;
 		int nextCurrentPage = 0;
 		if (mCurrentPage == getChildCount() - 1) {
 			nextCurrentPage = mCurrentPage - 1;
@@ -2637,6 +2601,7 @@ public class Workspace extends SmoothPagedView
 		snapToPage(nextCurrentPage);
 		postDelayed(new Runnable() {
 			public void run() {
+				mDemonstrationStep = 2;
 				snapToPage(currentPage);
 			}
 		}, 800);
@@ -2661,6 +2626,7 @@ public class Workspace extends SmoothPagedView
     @Override
     public void onLauncherTransitionEnd(Launcher l, boolean animated, boolean toWorkspace) {
         mIsSwitchingState = false;
+        invalidatePageTransforms();
         mWallpaperOffset.setOverrideHorizontalCatchupConstant(false);
         updateChildrenLayersEnabled();
         // The code in getChangeStateAnimation to determine initialAlpha and finalAlpha will ensure
@@ -2731,25 +2697,32 @@ public class Workspace extends SmoothPagedView
     }
 
     /**
-     * Returns a new bitmap to show when the given View is being dragged around.
-     * Responsibility for the bitmap is transferred to the caller.
+     * Returns a buffer of the drag bitmap pool showing the given View as it is dragged around.
+     * The drawing covers {@code outRegion} of the buffer, which is usually larger. Hand the
+     * buffer to the drag, or back to the pool, once done with it.
      */
-    public Bitmap createDragBitmap(View v, Canvas canvas, int padding) {
+    public Bitmap createDragBitmap(View v, Canvas canvas, int padding, Rect outRegion) {
         final int outlineColor = getResources().getColor(android.R.color.holo_blue_light);//add 
-        Bitmap b;
+        final int width;
+        final int height;
 
         if (v instanceof TextView) {
             Drawable d = ((TextView) v).getCompoundDrawables()[1];
-            b = Bitmap.createBitmap(d.getIntrinsicWidth() + padding,
-                    d.getIntrinsicHeight() + padding, Bitmap.Config.ARGB_8888);
+            width = d.getIntrinsicWidth() + padding;
+            height = d.getIntrinsicHeight() + padding;
         } else {
-            b = Bitmap.createBitmap(
-                    v.getWidth() + padding, v.getHeight() + padding, Bitmap.Config.ARGB_8888);
+            width = v.getWidth() + padding;
+            height = v.getHeight() + padding;
         }
+        final Bitmap b = mDragController.getBitmapPool().obtain(width, height);
+        outRegion.set(0, 0, width, height);
 
         canvas.setBitmap(b);
         drawDragView(v, canvas, padding, true);
-        mOutlineHelper.applyOuterBlur(b, canvas, outlineColor);//add by hhl,for click/longclick item outer effect 
+        final HolographicOutlineHelper.OutlineKey glowKey = HolographicOutlineHelper.getOutlineKey(
+                v, width, height, padding, outlineColor, outlineColor,
+                HolographicOutlineHelper.OUTER_GLOW);
+        mOutlineHelper.applyOuterBlur(b, canvas, outlineColor, glowKey);//add by hhl,for click/longclick item outer effect 
         //canvas.drawColor(mDragViewMultiplyColor, PorterDuff.Mode.MULTIPLY);//add
         canvas.setBitmap(null);
 
@@ -2757,21 +2730,91 @@ public class Workspace extends SmoothPagedView
     }
 
     /**
-     * Returns a new bitmap to be used as the object outline, e.g. to visualize the drop location.
-     * Responsibility for the bitmap is transferred to the caller.
+     * Returns the bitmap to be used as the object outline, e.g. to visualize the drop location.
+     * Shortcut outlines are shared through the outline cache, so the bitmap must not be
+     * recycled.
      */
     private Bitmap createDragOutline(View v, Canvas canvas, int padding) {
         final int outlineColor = getResources().getColor(android.R.color.holo_blue_light);
-        final Bitmap b = Bitmap.createBitmap(
-                v.getWidth() + padding, v.getHeight() + padding, Bitmap.Config.ARGB_8888);
+        final int width = v.getWidth() + padding;
+        final int height = v.getHeight() + padding;
+        final HolographicOutlineHelper.OutlineKey key = HolographicOutlineHelper.getOutlineKey(
+                v, width, height, padding, outlineColor, outlineColor,
+                HolographicOutlineHelper.MEDIUM);
+        Bitmap b = HolographicOutlineHelper.getCachedOutline(key);
+        if (b != null) {
+            return b;
+        }
+        b = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
 
         canvas.setBitmap(b);
         drawDragView(v, canvas, padding, true);
         mOutlineHelper.applyMediumExpensiveOutlineWithBlur(b, canvas, outlineColor, outlineColor);
         canvas.setBitmap(null);
+        HolographicOutlineHelper.cacheOutline(key, b);
         return b;
     }
 
+    /**
+     * Computes the outlines and glows of the shortcuts on the current page one shortcut per
+     * idle pass of the UI thread, so that pressing or picking one up does no blur work.
+     */
+    void precomputeCurrentPageOutlines() {
+        View page = getChildAt(mCurrentPage);
+        if (!(page instanceof CellLayout) || isSmall()) {
+            return;
+        }
+        mOutlinePrecomputer.schedule((CellLayout) page);
+    }
+
+    private final class OutlinePrecomputer implements MessageQueue.IdleHandler {
+        private final ArrayList<View> mPending = new ArrayList<View>();
+        private final Canvas mCanvas = new Canvas();
+        private final Rect mRegion = new Rect();
+        private boolean mScheduled;
+
+        void schedule(CellLayout page) {
+            mPending.clear();
+            ShortcutAndWidgetContainer container = page.getShortcutsAndWidgets();
+            for (int i = container.getChildCount() - 1; i >= 0; i--) {
+                View child = container.getChildAt(i);
+                if (child instanceof BubbleLinearLayout || child instanceof BubbleTextView) {
+                    mPending.add(child);
+                }
+            }
+            if (!mScheduled && !mPending.isEmpty()) {
+                Looper.myQueue().addIdleHandler(this);
+                mScheduled = true;
+            }
+        }
+
+        void cancel() {
+            mPending.clear();
+        }
+
+        public boolean queueIdle() {
+            if (!mPending.isEmpty() && !mDragController.isDragging() && !isPageMoving()) {
+                View child = mPending.remove(mPending.size() - 1);
+                if (child.getParent() != null && child.getWidth() > 0
+                        && child.getVisibility() == VISIBLE) {
+                    // Same order as startDrag(), which leaves the glow's paint state behind
+                    createDragOutline(child, mCanvas, DRAG_BITMAP_PADDING);
+                    mDragController.getBitmapPool().release(
+                            createDragBitmap(child, mCanvas, DRAG_BITMAP_PADDING, mRegion));
+                    if (child instanceof BubbleLinearLayout) {
+                        ((BubbleLinearLayout) child).preparePressedOutline();
+                    } else {
+                        ((BubbleTextView) child).preparePressedOutline();
+                    }
+                }
+            } else {
+                mPending.clear();
+            }
+            mScheduled = !mPending.isEmpty();
+            return mScheduled;
+        }
+    }
+
     /**
      * Returns a new bitmap to be used as the object outline, e.g. to visualize the drop location.
      * Responsibility for the bitmap is transferred to the caller.
@@ -2836,10 +2879,12 @@ public class Workspace extends SmoothPagedView
 		if(isAddHeaderAndFooter){
 			CellLayout  cellLayout=null;
 			int [] lastOccupiedCell=null;
+			boolean removedStoredScreen = false;
 			int count =getChildCount()-1;
 			cellLayout =(CellLayout) getChildAt(count);
 			lastOccupiedCell=  cellLayout.existsLastOccupiedCell();
 			if(lastOccupiedCell[0]==-1){
+				removedStoredScreen |= cellLayout.getScreenId() >= 0;
 				removeView(cellLayout); 
 				if(mCurrentPage==count){
 					mCurrentPage = mCurrentPage-1;
@@ -2848,12 +2893,17 @@ public class Workspace extends SmoothPagedView
 			cellLayout =(CellLayout) getChildAt(0);
 			lastOccupiedCell=  cellLayout.existsLastOccupiedCell();
 			if(lastOccupiedCell[0]==-1){
+				removedStoredScreen |= cellLayout.getScreenId() >= 0;
 				removeView(cellLayout); 
 				if(mCurrentPage>0){
 					mCurrentPage =mCurrentPage-1>0?mCurrentPage-1:0;
 				}
 				//setCurrentPage(mCurrentPage-1>0?mCurrentPage-1:0);
 			}
+			if (removedStoredScreen) {
+				// An item was dropped on the header or footer and dragged off it again
+				saveScreenOrder();
+			}
 			startMovedPage=-1;
 			isAddHeaderAndFooter=false;
 		}
@@ -2861,6 +2911,7 @@ public class Workspace extends SmoothPagedView
 	}
 
     void startDrag(CellLayout.CellInfo cellInfo,boolean isFromHotseat) {//from workspace,include hotseat
+        final long startTime = SystemClock.uptimeMillis();
         View child = cellInfo.cell;      
   
         startMovedPage =mCurrentPage;
@@ -2892,21 +2943,28 @@ public class Workspace extends SmoothPagedView
         child.clearFocus();
         child.setPressed(false);
 
-        final Canvas canvas = new Canvas();
-
         // The outline is used to visualize where the item will land if dropped
-        mDragOutline = createDragOutline(child, canvas, DRAG_BITMAP_PADDING);
-        beginDragShared(child, this);
+        mDragOutline = createDragOutline(child, mDragCanvas, DRAG_BITMAP_PADDING);
+        beginDragShared(child, this, startTime);
     }
 
     public void beginDragShared(View child, DragSource source) {
+        beginDragShared(child, source, SystemClock.uptimeMillis());
+    }
+
+    /**
+     * @param startTime the uptime at which picking up the item started, to measure how long
+     *          starting the drag took
+     */
+    private void beginDragShared(View child, DragSource source, long startTime) {
         Resources r = getResources();
 
         // The drag bitmap follows the touch point around on the screen
-        final Bitmap b = createDragBitmap(child, new Canvas(), DRAG_BITMAP_PADDING);
+        final Rect region = mDragBitmapRegion;
+        final Bitmap b = createDragBitmap(child, mDragCanvas, DRAG_BITMAP_PADDING, region);
 
-        final int bmpWidth = b.getWidth();
-        final int bmpHeight = b.getHeight();
+        final int bmpWidth = region.width();
+        final int bmpHeight = region.height();
 
         mLauncher.getDragLayer().getLocationInDragLayer(child, mTempXY);
         int dragLayerX =
@@ -2944,9 +3002,17 @@ public class Workspace extends SmoothPagedView
             icon.clearPressedOrFocusedBackground();
         }
         //child.getWidth()+"*"+child.getHeight());
-        mDragController.startDrag(b, dragLayerX, dragLayerY, source, child.getTag(),
+        // The drag takes the buffer over
+        mDragController.startDrag(b, region, dragLayerX, dragLayerY, source, child.getTag(),
                 DragController.DRAG_ACTION_MOVE, dragVisualizeOffset, dragRect, child.getScaleX());
-        b.recycle();
+
+        final long elapsed = SystemClock.uptimeMillis() - startTime;
+        mDragStarts++;
+        mTotalDragStartMillis += elapsed;
+        mMaxDragStartMillis = Math.max(mMaxDragStartMillis, elapsed);
+        if (DEBUG_DRAG_START) {
+            Log.d(TAG, "drag start took " + elapsed + "ms");
+        }
 
         // Show the scrolling indicator when you pick up an item
         //showScrollingIndicator(false);
@@ -3453,6 +3519,7 @@ public class Workspace extends SmoothPagedView
             setScrollX(newX);
             cl.setTranslationX(0f);
             cl.setRotationY(0f);
+            invalidatePageTransforms();
         }
     }
 
@@ -3462,6 +3529,7 @@ public class Workspace extends SmoothPagedView
             setScrollX(mSavedScrollX);
             cl.setTranslationX(mSavedTranslationX);
             cl.setRotationY(mSavedRotationY);
+            invalidatePageTransforms();
         }
     }
 
@@ -3591,6 +3659,16 @@ public class Workspace extends SmoothPagedView
         if (x != mDragOverX || y != mDragOverY) {
             mDragOverX = x;
             mDragOverY = y;
+            if (mReorderAlarmListener.solving) {
+                // The finger left the cell that reorder was solved for; drop the result and
+                // allow a new reorder should it come back to that cell.
+                mReorderAlarmListener.solving = false;
+                if (mDragTargetLayout != null) {
+                    mDragTargetLayout.cancelPendingReorder();
+                }
+                mLastReorderX = -1;
+                mLastReorderY = -1;
+            }
             setDragMode(DRAG_MODE_NONE);
         }
     }
@@ -3852,7 +3930,7 @@ public class Workspace extends SmoothPagedView
         //if (mInScrollArea || mIsSwitchingState || mState == State.SMALL) return; //for update state
         if (mInScrollArea || mIsSwitchingState) return; //for update state
 
-        Rect r = new Rect();
+        Rect r = mDragOverHitRect;
         CellLayout layout = null;
         ItemInfo item = (ItemInfo) d.dragInfo;
 
@@ -3964,8 +4042,9 @@ public class Workspace extends SmoothPagedView
 
                 // Otherwise, if we aren't adding to or creating a folder and there's no pending
                 // reorder, then we schedule a reorder
-                ReorderAlarmListener listener = new ReorderAlarmListener(mDragViewVisualCenter,
-                        minSpanX, minSpanY, item.spanX, item.spanY, d.dragView, child);
+                ReorderAlarmListener listener = mReorderAlarmListener;
+                listener.set(mDragViewVisualCenter, minSpanX, minSpanY, item.spanX, item.spanY,
+                        d.dragView, child);
                 mReorderAlarm.setOnAlarmListener(listener);
                 mReorderAlarm.setAlarm(REORDER_TIMEOUT);
             }
@@ -3986,8 +4065,8 @@ public class Workspace extends SmoothPagedView
 
         if (mDragMode == DRAG_MODE_NONE && userFolderPending &&
                 !mFolderCreationAlarm.alarmPending()) {
-            mFolderCreationAlarm.setOnAlarmListener(new
-                    FolderCreationAlarmListener(targetLayout, targetCell[0], targetCell[1]));
+            mFolderCreationAlarmListener.set(targetLayout, targetCell[0], targetCell[1]);
+            mFolderCreationAlarm.setOnAlarmListener(mFolderCreationAlarmListener);
             mFolderCreationAlarm.setAlarm(FOLDER_CREATION_TIMEOUT);
             return;
         }
@@ -4020,7 +4099,7 @@ public class Workspace extends SmoothPagedView
         int cellX;
         int cellY;
 
-        public FolderCreationAlarmListener(CellLayout layout, int cellX, int cellY) {
+        void set(CellLayout layout, int cellX, int cellY) {
             this.layout = layout;
             this.cellX = cellX;
             this.cellY = cellY;
@@ -4039,13 +4118,15 @@ public class Workspace extends SmoothPagedView
         }
     }
 
-    class ReorderAlarmListener implements OnAlarmListener {
+    class ReorderAlarmListener implements OnAlarmListener, CellLayout.OnReorderSolvedListener {
         float[] dragViewCenter;
         int minSpanX, minSpanY, spanX, spanY;
         DragView dragView;
         View child;
+        // True while the reorder worker is solving for mLastReorderX/Y
+        boolean solving;
 
-        public ReorderAlarmListener(float[] dragViewCenter, int minSpanX, int minSpanY, int spanX,
+        void set(float[] dragViewCenter, int minSpanX, int minSpanY, int spanX,
                 int spanY, DragView dragView, View child) {
             this.dragViewCenter = dragViewCenter;
             this.minSpanX = minSpanX;
@@ -4057,15 +4138,33 @@ public class Workspace extends SmoothPagedView
         }
 
         public void onAlarm(Alarm alarm) {
-            int[] resultSpan = new int[2];
             mTargetCell = findNearestArea((int) mDragViewVisualCenter[0],
                     (int) mDragViewVisualCenter[1], spanX, spanY, mDragTargetLayout, mTargetCell);
+
+            // The search itself runs on the reorder worker; onReorderSolved() picks it up.
+            // Posting it cancels any older request first, so only mark ourselves afterwards.
+            mDragTargetLayout.createAreaAsync((int) mDragViewVisualCenter[0],
+                (int) mDragViewVisualCenter[1], minSpanX, minSpanY, spanX, spanY,
+                child, this);
             mLastReorderX = mTargetCell[0];
             mLastReorderY = mTargetCell[1];
+            solving = true;
+        }
 
-            mTargetCell = mDragTargetLayout.createArea((int) mDragViewVisualCenter[0],
-                (int) mDragViewVisualCenter[1], minSpanX, minSpanY, spanX, spanY,
-                child, mTargetCell, resultSpan, CellLayout.MODE_DRAG_OVER);
+        public void onReorderCancelled(CellLayout layout) {
+            solving = false;
+            // Nothing was shown for this cell, so allow it to be reordered again
+            mLastReorderX = -1;
+            mLastReorderY = -1;
+        }
+
+        public void onReorderSolved(CellLayout layout, int[] result, int[] resultSpan) {
+            solving = false;
+            if (layout != mDragTargetLayout) {
+                return;
+            }
+            mTargetCell[0] = result[0];
+            mTargetCell[1] = result[1];
 
             if (mTargetCell[0] < 0 || mTargetCell[1] < 0) {
                 mDragTargetLayout.revertTempState();
@@ -4967,22 +5066,113 @@ public class Workspace extends SmoothPagedView
     		((CellLayout) getChildAt(i)).changedCellInfoStatus();
     		int itemNum =	shortcutAndWidgetContainer.getChildCount();	 
     		ItemInfo item =null;
-    		CellLayout.CellInfo cellInfo = null;
     		for(int j = 0 ; j < itemNum ; j++){
     			item= (ItemInfo) shortcutAndWidgetContainer.getChildAt(j).getTag();
     			item.screen =i;
-    			LauncherModel.addOrMoveItemInDatabase(mLauncher, item, item.container, item.screen, item.cellX, item.cellY);
     		}
     	}
-    	shortcutAndWidgetContainer =((CellLayout)mLauncher.getHotseat().getLayout()).getShortcutsAndWidgets();
-    	int countHotseat =	shortcutAndWidgetContainer.getChildCount();	 
-    	ItemInfo item =null;
-    	for(int i = 0 ; i < countHotseat ; i++){
-    		item= (ItemInfo) shortcutAndWidgetContainer.getChildAt(i).getTag();
-    		LauncherModel.addOrMoveItemInDatabase(mLauncher, item, item.container, item.cellX, item.cellX, item.cellY);
+    	// Items refer to their page by screen id, so only the page order needs storing.
+    	// Empty pages get a row too, so they keep their place.
+    	for (int i = 0; i < screenNum; i++) {
+    		assignScreenId((CellLayout) getChildAt(i));
     	}
+    	saveScreenOrder();
 	}
 
+    /**
+     * Returns the id of the workspaceScreens row for a page, assigning a new id to pages that
+     * have none yet, or -1 if there is no such page.
+     */
+    long getScreenIdForPage(int page) {
+        CellLayout layout = (CellLayout) getChildAt(page);
+        if (layout == null) {
+            return -1;
+        }
+        if (assignScreenId(layout)) {
+            // Write the new row with its rank before any item can refer to it; otherwise a
+            // restart would move the page and its items to the end
+            saveScreenOrder();
+        }
+        return layout.getScreenId();
+    }
+
+    /**
+     * Gives a page without a screen id a new one.
+     *
+     * @return true if an id was assigned
+     */
+    private boolean assignScreenId(CellLayout layout) {
+        if (layout.getScreenId() >= 0) {
+            return false;
+        }
+        LauncherApplication app = (LauncherApplication) getContext().getApplicationContext();
+        layout.setScreenId(app.getLauncherProvider().generateNewScreenId());
+        return true;
+    }
+
+    /**
+     * Stores the order of the pages that have a screen id. Pages without one hold no items
+     * yet and are left out.
+     */
+    void saveScreenOrder() {
+        final int count = getChildCount();
+        ArrayList<Long> screenIds = new ArrayList<Long>(count);
+        for (int i = 0; i < count; i++) {
+            final long screenId = ((CellLayout) getChildAt(i)).getScreenId();
+            if (screenId >= 0) {
+                screenIds.add(screenId);
+            }
+        }
+        LauncherModel.updateWorkspaceScreenOrder(mLauncher, screenIds);
+    }
+
+    /**
+     * Gives the pages the screen ids the model loaded, adding pages if there are more screens
+     * than pages.
+     */
+    void bindScreenIds(ArrayList<Long> screenIds) {
+        final int count = screenIds.size();
+        if (getChildCount() < count) {
+            while (getChildCount() < count) {
+                addScreen(false);
+            }
+            savedThePageCount();
+        }
+        for (int i = 0; i < count; i++) {
+            ((CellLayout) getChildAt(i)).setScreenId(screenIds.get(i));
+        }
+    }
+
+    /**
+     * Refreshes the unread marks of every shortcut, including those inside folders, whose
+     * component appears in {@code counts}.
+     */
+    void updateUnreadCounts(HashMap<ComponentName, Integer> counts) {
+        ArrayList<ShortcutAndWidgetContainer> childrenLayouts = getAllShortcutAndWidgetContainers();
+        for (ShortcutAndWidgetContainer layout: childrenLayouts) {
+            updateUnreadCounts(layout, counts);
+        }
+    }
+
+    private void updateUnreadCounts(ShortcutAndWidgetContainer layout,
+            HashMap<ComponentName, Integer> counts) {
+        int childCount = layout.getChildCount();
+        for (int j = 0; j < childCount; j++) {
+            final View view = layout.getChildAt(j);
+            Object tag = view.getTag();
+            if (tag instanceof ShortcutInfo) {
+                final ComponentName name = ((ShortcutInfo) tag).intent.getComponent();
+                final Integer count = name != null ? counts.get(name) : null;
+                if (count != null) {
+                    BadgeManager.applyUnreadCount(view, count);
+                }
+            } else if (view instanceof FolderIcon) {
+                updateUnreadCounts(((FolderIcon) view).mFolder.mContent.getShortcutsAndWidgets(),
+                        counts);
+            }
+        }
+    }
+
     void updateShortcuts(ArrayList<ShortcutInfo> apps) { //used to update shortcut info when install a exit app
         ArrayList<ShortcutAndWidgetContainer> childrenLayouts = getAllShortcutAndWidgetContainers();
         for (ShortcutAndWidgetContainer layout: childrenLayouts) {
@@ -4991,36 +5181,55 @@ public class Workspace extends SmoothPagedView
                 final View view = layout.getChildAt(j);
                 Object tag = view.getTag();
                 if (tag instanceof ShortcutInfo) {
-                    ShortcutInfo info = (ShortcutInfo) tag;
-                    // We need to check for ACTION_MAIN otherwise getComponent() might
-                    // return null for some shortcuts (for instance, for shortcuts to
-                    // web pages.)
-                    final Intent intent = info.intent;
-                    final ComponentName name = intent.getComponent();
-                    if (info.itemType == LauncherSettings.Favorites.ITEM_TYPE_SHORTCUT &&
-                            Intent.ACTION_MAIN.equals(intent.getAction()) && name != null) {
-                        final int appCount = apps.size();
-                        for (int k = 0; k < appCount; k++) {
-                        	ShortcutInfo app = apps.get(k);
-                            if (app.componentName.equals(name)) {
-                                info.updateIcon(mIconCache);
-                                info.title = app.title.toString();
-                                ((TextView)view.findViewById(R.id.app_shortcutinfo_icon_id))
-                                  .setBackgroundDrawable(new FastBitmapDrawable(info.getIcon(mIconCache)));
-                                ((TextView)view.findViewById(R.id.app_shortcutinfo_name_id))
-                                  .setText(info.title);
-                                /*BubbleTextView shortcut = (BubbleTextView) view;
-                                info.updateIcon(mIconCache);
-                                info.title = app.title.toString();
-                                shortcut.applyFromShortcutInfo(info, mIconCache);*/
-                            }
-                        }
+                    updateShortcut(view, (ShortcutInfo) tag, apps);
+                } else if (view instanceof FolderIcon) {
+                    // Folder items carry their own icons, and the folder thumbnail is built
+                    // from them, so it has to be told when any of them changes
+                    FolderIcon folderIcon = (FolderIcon) view;
+                    ArrayList<View> items = folderIcon.mFolder.getItemsInReadingOrder();
+                    boolean changed = false;
+                    for (int k = 0; k < items.size(); k++) {
+                        View item = items.get(k);
+                        changed |= updateShortcut(item, (ShortcutInfo) item.getTag(), apps);
+                    }
+                    if (changed) {
+                        folderIcon.mInfo.iconsChanged();
                     }
                 }
             }
         }
     }
 
+    private boolean updateShortcut(View view, ShortcutInfo info, ArrayList<ShortcutInfo> apps) {
+        // We need to check for ACTION_MAIN otherwise getComponent() might
+        // return null for some shortcuts (for instance, for shortcuts to
+        // web pages.)
+        final Intent intent = info.intent;
+        final ComponentName name = intent.getComponent();
+        boolean updated = false;
+        if (info.itemType == LauncherSettings.Favorites.ITEM_TYPE_SHORTCUT &&
+                Intent.ACTION_MAIN.equals(intent.getAction()) && name != null) {
+            final int appCount = apps.size();
+            for (int k = 0; k < appCount; k++) {
+            	ShortcutInfo app = apps.get(k);
+                if (app.componentName.equals(name)) {
+                    info.updateIcon(mIconCache);
+                    info.title = app.title.toString();
+                    ((TextView)view.findViewById(R.id.app_shortcutinfo_icon_id))
+                      .setBackgroundDrawable(new FastBitmapDrawable(info.getIcon(mIconCache)));
+                    ((TextView)view.findViewById(R.id.app_shortcutinfo_name_id))
+                      .setText(info.title);
+                    /*BubbleTextView shortcut = (BubbleTextView) view;
+                    info.updateIcon(mIconCache);
+                    info.title = app.title.toString();
+                    shortcut.applyFromShortcutInfo(info, mIconCache);*/
+                    updated = true;
+                }
+            }
+        }
+        return updated;
+    }
+
     void moveToDefaultScreen(boolean animate) {
         if (!isSmall()) {
             if (animate) {
@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.shendu.launcher;
+
+import android.content.ComponentName;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Free 1x1 cells of every desktop screen, for placing a whole batch of items in one pass.
+ *
+ * The index is filled from the model once, then {@link #reserve} hands out cells for all
+ * items of the batch, appending screens when the existing ones run out. Full screens are
+ * skipped in constant time and the first-fit cursor only moves forward, so a batch costs
+ * O(cells + items) rather than a grid search per item.
+ */
+public class WorkspaceSlotIndex {
+    /** Next free cell in reading order, starting at the first-fit start. */
+    static final int POLICY_FIRST_FIT = 0;
+    /** Nearest free cell on a screen holding an item with the same key, else first fit. */
+    static final int POLICY_NEAR_SIMILAR = 1;
+
+    private final int mCountX;
+    private final int mCountY;
+    private final int mCellsPerScreen;
+    // One row-major occupancy array per screen, and how many of its cells are taken
+    private final ArrayList<boolean[]> mScreens = new ArrayList<boolean[]>();
+    private int[] mOccupiedCounts = new int[8];
+    // Similarity key -> packed cells of the items carrying it
+    private final HashMap<String, ArrayList<Integer>> mAnchors =
+            new HashMap<String, ArrayList<Integer>>();
+    // Packed cell from which first fit searches; it never hands out cells before it
+    private int mCursor;
+
+    WorkspaceSlotIndex(int countX, int countY) {
+        mCountX = countX;
+        mCountY = countY;
+        mCellsPerScreen = countX * countY;
+    }
+
+    int getScreenCount() {
+        return mScreens.size();
+    }
+
+    /**
+     * Appends an empty screen and returns its index.
+     */
+    int addScreen() {
+        final int screen = mScreens.size();
+        mScreens.add(new boolean[mCellsPerScreen]);
+        if (screen == mOccupiedCounts.length) {
+            int[] counts = new int[screen * 2];
+            System.arraycopy(mOccupiedCounts, 0, counts, 0, screen);
+            mOccupiedCounts = counts;
+        }
+        mOccupiedCounts[screen] = 0;
+        return screen;
+    }
+
+    /**
+     * Marks the cells of an existing item as taken. Parts outside the grid are ignored.
+     */
+    void markOccupied(int screen, int cellX, int cellY, int spanX, int spanY) {
+        final boolean[] cells = mScreens.get(screen);
+        final int endX = Math.min(cellX + spanX, mCountX);
+        final int endY = Math.min(cellY + spanY, mCountY);
+        for (int y = Math.max(cellY, 0); y < endY; y++) {
+            for (int x = Math.max(cellX, 0); x < endX; x++) {
+                final int cell = y * mCountX + x;
+                if (!cells[cell]) {
+                    cells[cell] = true;
+                    mOccupiedCounts[screen]++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Records that an item with the given similarity key sits at the given cell.
+     */
+    void addAnchor(String key, int screen, int cellX, int cellY) {
+        if (key == null || cellX < 0 || cellX >= mCountX || cellY < 0 || cellY >= mCountY) {
+            return;
+        }
+        ArrayList<Integer> anchors = mAnchors.get(key);
+        if (anchors == null) {
+            anchors = new ArrayList<Integer>();
+            mAnchors.put(key, anchors);
+        }
+        anchors.add(pack(screen, cellY * mCountX + cellX));
+    }
+
+    /**
+     * Builds the index for the desktop items among the given ones. Screens are added for items
+     * on pages past screenCount. First fit starts after the last occupied cell of the last
+     * screen, which is where new apps have always been appended.
+     *
+     * @param screenCount the number of desktop pages
+     * @param items model items of any container; only desktop ones take cells
+     */
+    static WorkspaceSlotIndex fromItems(int countX, int countY, int screenCount,
+            List<? extends ItemInfo> items) {
+        final WorkspaceSlotIndex index = new WorkspaceSlotIndex(countX, countY);
+        for (int i = 0; i < screenCount; i++) {
+            index.addScreen();
+        }
+        final int count = items.size();
+        for (int i = 0; i < count; i++) {
+            final ItemInfo item = items.get(i);
+            if (item.container != LauncherSettings.Favorites.CONTAINER_DESKTOP || item.screen < 0) {
+                continue;
+            }
+            while (item.screen >= index.getScreenCount()) {
+                index.addScreen();
+            }
+            index.markOccupied(item.screen, item.cellX, item.cellY, item.spanX, item.spanY);
+            if (item instanceof ShortcutInfo) {
+                index.addAnchor(getSimilarityKey((ShortcutInfo) item), item.screen, item.cellX,
+                        item.cellY);
+            }
+        }
+        index.startFirstFitAfterLastOccupied();
+        return index;
+    }
+
+    /**
+     * Makes first fit start after the last occupied cell of the last screen.
+     */
+    void startFirstFitAfterLastOccupied() {
+        final int screen = mScreens.size() - 1;
+        if (screen < 0) {
+            mCursor = 0;
+            return;
+        }
+        final boolean[] cells = mScreens.get(screen);
+        int cell = mCellsPerScreen - 1;
+        while (cell >= 0 && !cells[cell]) {
+            cell--;
+        }
+        mCursor = pack(screen, cell + 1);
+    }
+
+    /**
+     * Reserves one cell per item and marks it taken.
+     *
+     * @param count the number of items to place
+     * @param keys the similarity key of each item, or null; only used by POLICY_NEAR_SIMILAR
+     * @param policy POLICY_FIRST_FIT or POLICY_NEAR_SIMILAR
+     * @return the packed slot of each item; see {@link #getScreen}, {@link #getCellX} and
+     *         {@link #getCellY}. Screens are appended to the index as needed.
+     */
+    int[] reserve(int count, String[] keys, int policy) {
+        final int[] slots = new int[count];
+        for (int i = 0; i < count; i++) {
+            int slot = -1;
+            final String key = keys != null ? keys[i] : null;
+            if (policy == POLICY_NEAR_SIMILAR && key != null) {
+                slot = findNearSimilar(key);
+            }
+            if (slot < 0) {
+                slot = findFirstFit();
+            }
+            take(slot);
+            if (key != null) {
+                // Later items of the same kind cluster around this one too
+                addAnchor(key, getScreen(slot), getCellX(slot), getCellY(slot));
+            }
+            slots[i] = slot;
+        }
+        return slots;
+    }
+
+    int getScreen(int slot) {
+        return slot / mCellsPerScreen;
+    }
+
+    int getCellX(int slot) {
+        return (slot % mCellsPerScreen) % mCountX;
+    }
+
+    int getCellY(int slot) {
+        return (slot % mCellsPerScreen) / mCountX;
+    }
+
+    private int pack(int screen, int cell) {
+        return screen * mCellsPerScreen + cell;
+    }
+
+    private void take(int slot) {
+        final int screen = getScreen(slot);
+        mScreens.get(screen)[slot % mCellsPerScreen] = true;
+        mOccupiedCounts[screen]++;
+    }
+
+    private int findFirstFit() {
+        while (true) {
+            final int screen = getScreen(mCursor);
+            while (screen >= mScreens.size()) {
+                addScreen();
+            }
+            if (mOccupiedCounts[screen] == mCellsPerScreen) {
+                mCursor = pack(screen + 1, 0);
+                continue;
+            }
+            final boolean[] cells = mScreens.get(screen);
+            for (int cell = mCursor % mCellsPerScreen; cell < mCellsPerScreen; cell++) {
+                if (!cells[cell]) {
+                    mCursor = pack(screen, cell) + 1;
+                    return pack(screen, cell);
+                }
+            }
+            mCursor = pack(screen + 1, 0);
+        }
+    }
+
+    private int findNearSimilar(String key) {
+        final ArrayList<Integer> anchors = mAnchors.get(key);
+        if (anchors == null) {
+            return -1;
+        }
+        int best = -1;
+        int bestDistance = Integer.MAX_VALUE;
+        for (int i = 0; i < anchors.size(); i++) {
+            final int anchor = anchors.get(i);
+            final int screen = getScreen(anchor);
+            if (mOccupiedCounts[screen] == mCellsPerScreen) {
+                continue;
+            }
+            final int anchorX = getCellX(anchor);
+            final int anchorY = getCellY(anchor);
+            final boolean[] cells = mScreens.get(screen);
+            for (int cell = 0; cell < mCellsPerScreen; cell++) {
+                if (cells[cell]) {
+                    continue;
+                }
+                final int dx = cell % mCountX - anchorX;
+                final int dy = cell / mCountX - anchorY;
+                final int distance = dx * dx + dy * dy;
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    best = pack(screen, cell);
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the key POLICY_NEAR_SIMILAR groups shortcuts by: the package they launch.
+     */
+    static String getSimilarityKey(ShortcutInfo info) {
+        ComponentName component = info.componentName;
+        if (component == null && info.intent != null) {
+            component = info.intent.getComponent();
+        }
+        return component != null ? component.getPackageName() : null;
+    }
+}
@@ -0,0 +1,37 @@
+# Copyright (C) 2013 The Android Open Source Project
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#      http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+LOCAL_PATH := $(call my-dir)
+include $(CLEAR_VARS)
+
+# Benchmarks of the launcher code that has no Android dependencies, run on the host JVM:
+#   java -cp $ANDROID_HOST_OUT/framework/ShenduLauncherBenchmarks.jar \
+#       com.shendu.launcher.ReorderSolverBenchmark
+# AppSearchIndexBenchmark reads res/raw/pinyin_table; run it from the launcher directory or
+# pass the table's path.
+LOCAL_MODULE_TAGS := tests
+
+LOCAL_SRC_FILES := $(call all-java-files-under, src) \
+    ../../src/com/shendu/launcher/AppSearchIndex.java \
+    ../../src/com/shendu/launcher/OccupancyIndex.java \
+    ../../src/com/shendu/launcher/PageTransform.java \
+    ../../src/com/shendu/launcher/PinyinConverter.java \
+    ../../src/com/shendu/launcher/ReorderSolver.java \
+    ../../src/com/shendu/launcher/TransitionTransforms.java \
+    ../unit/src/com/shendu/launcher/LegacyTransitionMath.java \
+    ../unit/src/com/shendu/launcher/RandomCellGrid.java
+
+LOCAL_MODULE := ShenduLauncherBenchmarks
+
+include $(BUILD_HOST_JAVA_LIBRARY)
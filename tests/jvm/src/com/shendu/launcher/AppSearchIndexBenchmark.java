@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.shendu.launcher;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Times {@link AppSearchIndex} over 1,000 generated app labels, Han, Latin and mixed: building
+ * the index, per-query latency for the prefixes people type, and re-indexing single apps as
+ * package updates do. Mean and worst-case times are printed.
+ *
+ * The pinyin table is read from res/raw/pinyin_table, or from the path given as the argument.
+ */
+public class AppSearchIndexBenchmark {
+    private static final String DEFAULT_TABLE = "res/raw/pinyin_table";
+
+    private static final int APP_COUNT = 1000;
+    private static final int QUERY_COUNT = 5000;
+    private static final int UPDATE_COUNT = 200;
+    private static final int RESULT_LIMIT = 12;
+
+    private static final String[] LATIN_WORDS = new String[] {
+        "Mail", "Maps", "Music", "Photo", "Camera", "Clock", "Chat", "Note", "Weather", "News",
+        "Video", "Player", "Browser", "Calendar", "Games", "Reader", "Market", "Pay", "Cloud",
+        "Books", "Radio", "Fit", "Scan", "Translate", "Keep", "Drive", "Sync", "Go", "Pro", "HD"
+    };
+
+    public static void main(String[] args) throws IOException {
+        final PinyinConverter converter =
+                loadConverter(args.length > 0 ? args[0] : DEFAULT_TABLE);
+        final Random random = new Random(48);
+
+        final ArrayList<String> labels = new ArrayList<String>(APP_COUNT);
+        for (int i = 0; i < APP_COUNT; i++) {
+            labels.add(randomLabel(random, i));
+        }
+        // Random launch counts break ties between equal matches
+        final HashMap<String, Integer> launches = new HashMap<String, Integer>();
+        for (String label : labels) {
+            launches.put(label, random.nextInt(50));
+        }
+        final Comparator<String> usage = new Comparator<String>() {
+            public int compare(String a, String b) {
+                return launches.get(b) - launches.get(a);
+            }
+        };
+        // Queries are generated before timing so only the index is measured
+        final String[] queries = new String[QUERY_COUNT];
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            queries[i] = randomQuery(random, converter, labels);
+        }
+
+        // Warm up, then build the index again for the timed run
+        AppSearchIndex<String> index = build(converter, labels);
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            index.query(queries[i], RESULT_LIMIT, usage);
+        }
+        final long buildStart = System.nanoTime();
+        index = build(converter, labels);
+        final long buildNanos = System.nanoTime() - buildStart;
+
+        long total = 0;
+        long worst = 0;
+        long results = 0;
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            final long start = System.nanoTime();
+            results += index.query(queries[i], RESULT_LIMIT, usage).size();
+            final long elapsed = System.nanoTime() - start;
+            total += elapsed;
+            worst = Math.max(worst, elapsed);
+        }
+
+        long updateTotal = 0;
+        for (int i = 0; i < UPDATE_COUNT; i++) {
+            final String label = labels.get(random.nextInt(APP_COUNT));
+            final long start = System.nanoTime();
+            index.add(label, label);
+            updateTotal += System.nanoTime() - start;
+        }
+
+        System.out.println(APP_COUNT + " apps, " + index.size() + " indexed in "
+                + (buildNanos / 1000000) + "ms");
+        System.out.println(QUERY_COUNT + " queries, mean " + (total / QUERY_COUNT / 1000)
+                + "us, worst " + (worst / 1000) + "us, " + (results / QUERY_COUNT)
+                + " results on average");
+        System.out.println("re-indexing one app takes " + (updateTotal / UPDATE_COUNT / 1000)
+                + "us");
+    }
+
+    private static PinyinConverter loadConverter(String path) throws IOException {
+        final InputStream in = new BufferedInputStream(new FileInputStream(path));
+        try {
+            return new PinyinConverter(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static AppSearchIndex<String> build(PinyinConverter converter,
+            ArrayList<String> labels) {
+        final AppSearchIndex<String> index = new AppSearchIndex<String>(converter);
+        for (String label : labels) {
+            index.add(label, label);
+        }
+        return index;
+    }
+
+    /**
+     * Half the labels are two to five Han characters, a quarter are one to three Latin words
+     * and the rest mix both. The serial keeps labels distinct.
+     */
+    private static String randomLabel(Random random, int serial) {
+        final StringBuilder label = new StringBuilder();
+        final int kind = random.nextInt(4);
+        if (kind != 2) {
+            appendLatin(random, label, kind == 3 ? 1 : 1 + random.nextInt(3));
+        }
+        if (kind != 1) {
+            final int count = 2 + random.nextInt(4);
+            for (int i = 0; i < count; i++) {
+                label.append((char) ('\u4e00' + random.nextInt('\u9fa5' - '\u4e00' + 1)));
+            }
+        }
+        return label.append(' ').append(serial).toString();
+    }
+
+    private static void appendLatin(Random random, StringBuilder label, int words) {
+        for (int i = 0; i < words; i++) {
+            if (label.length() > 0) {
+                label.append(' ');
+            }
+            label.append(LATIN_WORDS[random.nextInt(LATIN_WORDS.length)]);
+        }
+    }
+
+    /**
+     * One to four leading characters of a random label, typed as Han characters, pinyin,
+     * pinyin initials or Latin letters.
+     */
+    private static String randomQuery(Random random, PinyinConverter converter,
+            ArrayList<String> labels) {
+        final String label = labels.get(random.nextInt(labels.size()));
+        final int length = 1 + random.nextInt(4);
+        final int style = random.nextInt(3);
+        final StringBuilder query = new StringBuilder();
+        for (int i = 0; i < label.length() && query.length() < length; i++) {
+            final char c = label.charAt(i);
+            final String pinyin = converter.getPinyin(c);
+            if (pinyin == null || style == 0) {
+                if (c != ' ') {
+                    query.append(c);
+                }
+            } else if (style == 1) {
+                query.append(pinyin);
+            } else {
+                query.append(pinyin.charAt(0));
+            }
+        }
+        return query.toString();
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shendu.launcher;
+
+import java.util.Random;
+
+/**
+ * Times drag-over reorder solves on random 4x4 to 8x8 pages of icons and widgets. Every move
+ * copies the page into the solver, as the reorder worker does, and then times the direction and
+ * solve steps of CellLayout.createArea. Mean and worst-case per-move latency are printed for
+ * each grid size.
+ */
+public class ReorderSolverBenchmark {
+    private static final int CELL_SIZE = 100;
+    private static final int LAYOUT_COUNT = 200;
+    private static final int MOVES_PER_DRAG = 30;
+    private static final int WARM_UP_LAYOUT_COUNT = 50;
+
+    public static void main(String[] args) {
+        final ReorderSolver solver = new ReorderSolver();
+        solver.setCellMetrics(0, 0, CELL_SIZE, CELL_SIZE, 0, 0);
+
+        run(solver, new Random(0), 6, WARM_UP_LAYOUT_COUNT, null);
+        for (int size = 4; size <= 8; size++) {
+            final long[] stats = new long[3];
+            run(solver, new Random(size), size, LAYOUT_COUNT, stats);
+            System.out.println(size + "x" + size + ": " + stats[0] + " moves, mean "
+                    + (stats[1] / stats[0] / 1000) + "us, worst " + (stats[2] / 1000) + "us");
+        }
+    }
+
+    /**
+     * Drags a random item across each of {@code layouts} random pages.
+     *
+     * @param stats if not null, receives the move count, total and worst nanoseconds per move
+     */
+    private static void run(ReorderSolver solver, Random random, int size, int layouts,
+            long[] stats) {
+        final int[] direction = new int[2];
+        for (int n = 0; n < layouts; n++) {
+            RandomCellGrid grid = new RandomCellGrid(random, size, size,
+                    0.6f + random.nextFloat() * 0.35f, 0.3f);
+            if (grid.count == 0) continue;
+            final int dragItem = random.nextInt(grid.count);
+            final int spanX = grid.spanX[dragItem];
+            final int spanY = grid.spanY[dragItem];
+            int pixelX = grid.x[dragItem] * CELL_SIZE + spanX * CELL_SIZE / 2;
+            int pixelY = grid.y[dragItem] * CELL_SIZE + spanY * CELL_SIZE / 2;
+
+            for (int m = 0; m < MOVES_PER_DRAG; m++) {
+                pixelX = clamp(pixelX + random.nextInt(CELL_SIZE) - CELL_SIZE / 2, size);
+                pixelY = clamp(pixelY + random.nextInt(CELL_SIZE) - CELL_SIZE / 2, size);
+
+                grid.load(solver, dragItem);
+                final long start = System.nanoTime();
+                solver.getDirectionVectorForDrop(pixelX, pixelY, spanX, spanY, dragItem,
+                        direction);
+                solver.solve(pixelX, pixelY, 1, 1, spanX, spanY, direction, dragItem);
+                final long elapsed = System.nanoTime() - start;
+
+                if (stats != null) {
+                    stats[0]++;
+                    stats[1] += elapsed;
+                    stats[2] = Math.max(stats[2], elapsed);
+                }
+            }
+        }
+    }
+
+    private static int clamp(int pixel, int size) {
+        return Math.max(0, Math.min(size * CELL_SIZE - 1, pixel));
+    }
+}
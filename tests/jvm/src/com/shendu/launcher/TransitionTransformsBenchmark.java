@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.shendu.launcher;
+
+/**
+ * Times one page transform per effect, as Workspace.screenScrolled computes it for every
+ * visible page on every scroll frame, against the old per-page math in
+ * {@link LegacyTransitionMath}. Prints nanoseconds per call for both and their ratio. The
+ * tablet effect is left out: its old math needs the platform Camera.
+ */
+public class TransitionTransformsBenchmark {
+    private static final int WIDTH = 720;
+    private static final int HEIGHT = 1134;
+    private static final float CAMERA_DISTANCE = 6500 * 1.5f;
+    private static final int STEPS = 1000;
+    private static final int ROUNDS = 2000;
+    private static final int WARM_UP_ROUNDS = 500;
+
+    private static final String[] EFFECTS = new String[] {
+        "standard", "zoom", "rotate", "cube", "stack"
+    };
+
+    // Keeps the results live so the calls are not optimized away
+    private static float sSink;
+
+    public static void main(String[] args) {
+        final float[] progress = new float[STEPS];
+        for (int i = 0; i < STEPS; i++) {
+            progress[i] = (2f * i / (STEPS - 1)) - 1;
+        }
+        final PageTransform out = new PageTransform();
+        for (int effect = 0; effect < EFFECTS.length; effect++) {
+            time(effect, false, progress, out, WARM_UP_ROUNDS);
+            time(effect, true, progress, out, WARM_UP_ROUNDS);
+            final double legacy = time(effect, false, progress, out, ROUNDS);
+            final double current = time(effect, true, progress, out, ROUNDS);
+            System.out.println(EFFECTS[effect] + ": " + format(current) + "ns per page, was "
+                    + format(legacy) + "ns (" + format(legacy / current) + "x)");
+        }
+        System.out.println("sink " + sSink);
+    }
+
+    /**
+     * @return mean nanoseconds per transform
+     */
+    private static double time(int effect, boolean current, float[] progress, PageTransform out,
+            int rounds) {
+        final long start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            for (int i = 0; i < STEPS; i++) {
+                final float p = progress[i];
+                switch (effect) {
+                    case 0:
+                        if (current) TransitionTransforms.standard(p, true, out);
+                        else LegacyTransitionMath.standard(p, true, out);
+                        break;
+                    case 1:
+                        if (current) TransitionTransforms.zoom(p, true, false, false, WIDTH, out);
+                        else LegacyTransitionMath.zoom(p, true, false, false, WIDTH, out);
+                        break;
+                    case 2:
+                        if (current) {
+                            TransitionTransforms.rotate(p, true, false, false, WIDTH, HEIGHT,
+                                    0, out);
+                        } else {
+                            LegacyTransitionMath.rotate(p, true, false, false, WIDTH, HEIGHT,
+                                    0, out);
+                        }
+                        break;
+                    case 3:
+                        if (current) {
+                            TransitionTransforms.cube(p, false, false, WIDTH, HEIGHT,
+                                    CAMERA_DISTANCE, out);
+                        } else {
+                            LegacyTransitionMath.cube(p, false, false, WIDTH, HEIGHT,
+                                    CAMERA_DISTANCE, out);
+                        }
+                        break;
+                    case 4:
+                        if (current) TransitionTransforms.stack(p, false, false, WIDTH, out);
+                        else LegacyTransitionMath.stack(p, false, false, WIDTH, out);
+                        break;
+                }
+                sSink += out.translationX + out.alpha;
+            }
+        }
+        return (double) (System.nanoTime() - start) / rounds / STEPS;
+    }
+
+    private static String format(double value) {
+        return String.valueOf(Math.round(value * 10) / 10.0);
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shendu.launcher;
+
+import android.test.InstrumentationTestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Prefix matching and ranking of {@link AppSearchIndex} over Latin, Han and mixed labels,
+ * using the shipped pinyin table. Items are the labels themselves.
+ */
+public class AppSearchIndexTest extends InstrumentationTestCase {
+    // wei xin
+    private static final String WECHAT = "\u5fae\u4fe1";
+    // zhong/chong qing
+    private static final String CHONGQING = "\u91cd\u5e86";
+    // de/di tu
+    private static final String MAP = "\u5730\u56fe";
+    // QQ yin le/yue
+    private static final String QQ_MUSIC = "QQ\u97f3\u4e50";
+    // zhi fu bao
+    private static final String ALIPAY = "\u652f\u4ed8\u5b9d";
+
+    private AppSearchIndex<String> mIndex;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mIndex = new AppSearchIndex<String>(
+                PinyinConverterTest.loadConverter(getInstrumentation()));
+    }
+
+    private void addAll(String... labels) {
+        for (String label : labels) {
+            mIndex.add(label, label);
+        }
+    }
+
+    private void assertResults(String query, String... expected) {
+        assertEquals("query \"" + query + "\"", Arrays.asList(expected),
+                mIndex.query(query, 20));
+    }
+
+    public void testLabelPrefix() {
+        addAll("Camera", "Calendar", "Calculator", "Chrome", "Clock");
+        assertResults("c", "Clock", "Camera", "Chrome", "Calendar", "Calculator");
+        assertResults("cal", "Calendar", "Calculator");
+        assertResults("calc", "Calculator");
+        assertResults("calculators");
+    }
+
+    public void testExactLabelComesFirst() {
+        addAll("Mapper", "Maps", "Map");
+        assertResults("map", "Map", "Maps", "Mapper");
+        assertResults("maps", "Maps");
+    }
+
+    public void testWordStarts() {
+        addAll("Google Maps", "Maps Lite", "WeChat", "Music2Go");
+        // A label prefix beats a later word
+        assertResults("maps", "Maps Lite", "Google Maps");
+        // Words also break at case and digit changes
+        assertResults("chat", "WeChat");
+        assertResults("2go", "Music2Go");
+        assertResults("go", "Google Maps", "Music2Go");
+        // Multi-word Latin labels are found by their initials
+        assertResults("gm", "Google Maps");
+        // But not from the middle of a word
+        assertResults("aps");
+    }
+
+    public void testQueryIgnoresCaseSpacesAndPunctuation() {
+        addAll("Google Maps", WECHAT);
+        assertResults("GOOGLE MAPS", "Google Maps");
+        assertResults("google-maps", "Google Maps");
+        assertResults("Wei Xin", WECHAT);
+        assertResults("   ");
+        assertResults("");
+        assertEquals(0, mIndex.query(null, 20).size());
+    }
+
+    public void testHanLabels() {
+        addAll(WECHAT, ALIPAY);
+        // The characters themselves, from any character
+        assertResults("\u5fae", WECHAT);
+        assertResults("\u4fe1", WECHAT);
+        // Pinyin and initials, from the first syllable and from later ones
+        assertResults("weixin", WECHAT);
+        assertResults("wei", WECHAT);
+        assertResults("wx", WECHAT);
+        assertResults("xin", WECHAT);
+        assertResults("zhifubao", ALIPAY);
+        assertResults("zfb", ALIPAY);
+        assertResults("fb", ALIPAY);
+        assertResults("bao", ALIPAY);
+        // Spellings run across syllables, not from inside one
+        assertResults("eixin");
+    }
+
+    public void testPolyphonesMatchEitherReading() {
+        addAll(CHONGQING, MAP);
+        assertResults("zhongqing", CHONGQING);
+        assertResults("chongqing", CHONGQING);
+        assertResults("cq", CHONGQING);
+        assertResults("zq", CHONGQING);
+        assertResults("ditu", MAP);
+        assertResults("detu", MAP);
+        assertResults("dt", MAP);
+    }
+
+    public void testMixedLabels() {
+        addAll(QQ_MUSIC, "QQ");
+        assertResults("qq", "QQ", QQ_MUSIC);
+        assertResults("qqyinyue", QQ_MUSIC);
+        assertResults("qqyinle", QQ_MUSIC);
+        assertResults("yinyue", QQ_MUSIC);
+        assertResults("qyy", QQ_MUSIC);
+    }
+
+    public void testMatchKindsRank() {
+        // Exact, then label prefix, then pinyin, then initials, then later words
+        addAll("Wx", "Wxyz", WECHAT, "Hello Wx");
+        assertResults("wx", "Wx", "Wxyz", WECHAT, "Hello Wx");
+    }
+
+    public void testRemoveAndReindex() {
+        addAll("Camera", "Calendar");
+        assertEquals(2, mIndex.size());
+
+        mIndex.remove("Camera");
+        assertResults("ca", "Calendar");
+        assertEquals(1, mIndex.size());
+
+        // A modified item is added again under its new label
+        mIndex.add("Calendar", "Agenda");
+        assertResults("ca");
+        assertResults("ag", "Calendar");
+        assertEquals(1, mIndex.size());
+
+        mIndex.remove("Missing");
+        mIndex.add("Calendar", null);
+        assertEquals(0, mIndex.size());
+
+        addAll("Camera");
+        mIndex.clear();
+        assertEquals(0, mIndex.size());
+        assertResults("c");
+    }
+
+    public void testLimitAndTieBreaker() {
+        addAll("Mail C", "Mail A", "Mail B");
+        final List<String> all = mIndex.query("mail", 20);
+        assertEquals(Arrays.asList("Mail A", "Mail B", "Mail C"), all);
+        assertEquals(Arrays.asList("Mail A", "Mail B"), mIndex.query("mail", 2));
+        assertEquals(0, mIndex.query("mail", 0).size());
+
+        // Equal matches follow the tie breaker, e.g. launch counts
+        final List<String> preferred = Arrays.asList("Mail C", "Mail A");
+        final Comparator<String> usage = new Comparator<String>() {
+            public int compare(String a, String b) {
+                return rank(a) - rank(b);
+            }
+
+            private int rank(String label) {
+                final int index = preferred.indexOf(label);
+                return index < 0 ? preferred.size() : index;
+            }
+        };
+        final ArrayList<String> ranked = mIndex.query("mail", 20, usage);
+        assertEquals(Arrays.asList("Mail C", "Mail A", "Mail B"), ranked);
+        // The tie breaker never beats a better match
+        addAll("Mail");
+        assertEquals("Mail", mIndex.query("mail", 20, usage).get(0));
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shendu.launcher;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.SystemClock;
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Floods {@link BadgeManager} with refresh requests from {@link FloodBadgeProvider}s and checks
+ * that queries are held to each provider's minimum interval, that the UI sees at most one
+ * update pass per frame, and that the last count of every provider still arrives.
+ */
+public class BadgeManagerTest extends InstrumentationTestCase {
+    private static final String TAG = "BadgeManagerTest";
+
+    private static final int PROVIDER_COUNT = 8;
+    private static final long MIN_REFRESH_INTERVAL = 100;
+    private static final long FLOOD_TIME = 2000;
+
+    private static class RecordingCallbacks implements BadgeManager.Callbacks {
+        final ArrayList<Long> mFrameTimes = new ArrayList<Long>();
+
+        @Override
+        public void bindUnreadCountsChanged(HashMap<ComponentName, Integer> changed) {
+            mFrameTimes.add(Choreographer.getInstance().getFrameTimeNanos());
+        }
+    }
+
+    private BadgeManager mManager;
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (mManager != null) {
+            getInstrumentation().runOnMainSync(new Runnable() {
+                public void run() {
+                    mManager.unregisterAll();
+                }
+            });
+        }
+        super.tearDown();
+    }
+
+    public void testFloodIsCoalesced() throws Exception {
+        final Context context = getInstrumentation().getTargetContext();
+        final RecordingCallbacks callbacks = new RecordingCallbacks();
+        final FloodBadgeProvider[] providers = new FloodBadgeProvider[PROVIDER_COUNT];
+        for (int i = 0; i < PROVIDER_COUNT; i++) {
+            providers[i] = new FloodBadgeProvider(
+                    new ComponentName("com.shendu.launcher.tests", "Flood" + i),
+                    MIN_REFRESH_INTERVAL);
+        }
+        getInstrumentation().runOnMainSync(new Runnable() {
+            public void run() {
+                mManager = new BadgeManager(context);
+                mManager.setCallbacks(callbacks);
+                for (FloodBadgeProvider provider : providers) {
+                    mManager.registerProvider(provider);
+                }
+            }
+        });
+
+        final long start = SystemClock.uptimeMillis();
+        for (FloodBadgeProvider provider : providers) {
+            provider.startFlood();
+        }
+        SystemClock.sleep(FLOOD_TIME);
+        for (FloodBadgeProvider provider : providers) {
+            provider.stopFlood();
+        }
+        final long elapsed = SystemClock.uptimeMillis() - start;
+        // Let the trailing refresh of every provider run and reach the UI
+        SystemClock.sleep(MIN_REFRESH_INTERVAL * 3);
+        getInstrumentation().waitForIdleSync();
+
+        long sent = 0;
+        int queries = 0;
+        for (FloodBadgeProvider provider : providers) {
+            sent += provider.getNotificationsSent();
+            queries += provider.getQueryCount();
+            // One query per interval over the flood and the wait after it, plus the first one
+            final long allowed = (elapsed + MIN_REFRESH_INTERVAL * 3) / MIN_REFRESH_INTERVAL + 1;
+            assertTrue(provider.getComponent() + " queried " + provider.getQueryCount()
+                    + " times in " + elapsed + "ms", provider.getQueryCount() <= allowed);
+        }
+        Log.d(TAG, sent + " notifications, " + queries + " queries, "
+                + callbacks.mFrameTimes.size() + " update passes in " + elapsed + "ms");
+        assertTrue("flood only sent " + sent + " notifications",
+                sent * 1000 / elapsed >= 1000 * PROVIDER_COUNT);
+
+        final int[] counts = new int[PROVIDER_COUNT];
+        final ArrayList<Long> frameTimes = new ArrayList<Long>();
+        getInstrumentation().runOnMainSync(new Runnable() {
+            public void run() {
+                for (int i = 0; i < PROVIDER_COUNT; i++) {
+                    counts[i] = mManager.getCount(providers[i].getComponent());
+                }
+                frameTimes.addAll(callbacks.mFrameTimes);
+            }
+        });
+        for (int i = 0; i < PROVIDER_COUNT; i++) {
+            assertEquals("last count of " + providers[i].getComponent(),
+                    providers[i].getLastReturnedCount(), counts[i]);
+        }
+        for (int i = 1; i < frameTimes.size(); i++) {
+            assertTrue("two update passes in one frame", frameTimes.get(i) > frameTimes.get(i - 1));
+        }
+    }
+}
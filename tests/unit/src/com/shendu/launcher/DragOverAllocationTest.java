@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shendu.launcher;
+
+import android.graphics.Bitmap;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.test.ActivityInstrumentationTestCase2;
+import android.util.Log;
+import android.view.MotionEvent;
+import android.view.View;
+import android.widget.TextView;
+
+/**
+ * Drags an item over the current workspace page through {@link DragController}, so every move
+ * event runs {@link Workspace#onDragOver} and the {@link CellLayout} searches behind it, and
+ * checks that once the drag has crossed the page a few times the move events allocate nothing.
+ */
+public class DragOverAllocationTest extends ActivityInstrumentationTestCase2<Launcher> {
+    private static final String TAG = "DragOverAllocationTest";
+
+    // Move events per sweep; a sweep goes across the middle of the page and back
+    private static final int EVENT_COUNT = 400;
+    private static final int WARM_UP_SWEEPS = 2;
+
+    /** A drag source that only needs to be told the drag ended. */
+    private static class TestDragSource implements DragSource {
+        public boolean supportsFlingToDelete() {
+            return false;
+        }
+
+        public void onFlingToDeleteCompleted() {
+        }
+
+        public void onDropCompleted(View target, DropTarget.DragObject d,
+                boolean isFlingToDelete, boolean success) {
+        }
+    }
+
+    /** Delivers one pre-built move event; counts allocations while {@link #mCount} is set. */
+    private class MoveDispatcher implements Runnable {
+        MotionEvent mEvent;
+        boolean mCount;
+
+        public void run() {
+            if (mCount) {
+                Debug.startAllocCounting();
+            }
+            mDragController.onTouchEvent(mEvent);
+            if (mCount) {
+                Debug.stopAllocCounting();
+            }
+        }
+    }
+
+    private Launcher mLauncher;
+    private DragController mDragController;
+    private Bitmap mDragBitmap;
+    private MotionEvent mDown;
+    private final MotionEvent[] mMoves = new MotionEvent[EVENT_COUNT];
+    private final MoveDispatcher mDispatcher = new MoveDispatcher();
+
+    public DragOverAllocationTest() {
+        super(Launcher.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mLauncher = getActivity();
+        getInstrumentation().waitForIdleSync();
+        getInstrumentation().runOnMainSync(new Runnable() {
+            public void run() {
+                final Workspace workspace = mLauncher.getWorkspace();
+                final CellLayout layout =
+                        (CellLayout) workspace.getChildAt(workspace.getCurrentPage());
+                mDragController = mLauncher.getDragController();
+
+                // Stay in the middle half of the page, clear of the page scroll zones
+                final int[] origin = new int[2];
+                mLauncher.getDragLayer().getLocationInDragLayer(layout, origin);
+                final int left = origin[0] + layout.getWidth() / 4;
+                final int top = origin[1] + layout.getHeight() / 4;
+                final int width = layout.getWidth() / 2;
+                final int height = layout.getHeight() / 2;
+                final long downTime = SystemClock.uptimeMillis();
+                mDown = MotionEvent.obtain(downTime, downTime, MotionEvent.ACTION_DOWN,
+                        left, top, 0);
+                final int half = EVENT_COUNT / 2;
+                for (int i = 0; i < EVENT_COUNT; i++) {
+                    final int step = i < half ? i : EVENT_COUNT - i;
+                    mMoves[i] = MotionEvent.obtain(downTime, downTime + i,
+                            MotionEvent.ACTION_MOVE, left + width * step / half,
+                            top + height * step / half, 0);
+                }
+
+                final int cellWidth = layout.getCellWidth();
+                final int cellHeight = layout.getCellHeight();
+                mDragBitmap = Bitmap.createBitmap(cellWidth, cellHeight,
+                        Bitmap.Config.ARGB_8888);
+            }
+        });
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        getInstrumentation().runOnMainSync(new Runnable() {
+            public void run() {
+                mDragController.cancelDrag();
+            }
+        });
+        getInstrumentation().waitForIdleSync();
+        if (mDown != null) {
+            mDown.recycle();
+        }
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            if (mMoves[i] != null) {
+                mMoves[i].recycle();
+            }
+        }
+        if (mDragBitmap != null) {
+            mDragBitmap.recycle();
+        }
+        super.tearDown();
+    }
+
+    public void testDragOverDoesNotAllocate() throws Exception {
+        getInstrumentation().runOnMainSync(new Runnable() {
+            public void run() {
+                startDrag();
+            }
+        });
+        assertTrue(mDragController.isDragging());
+        for (int i = 0; i < WARM_UP_SWEEPS; i++) {
+            sweep(false);
+        }
+
+        getInstrumentation().runOnMainSync(new Runnable() {
+            public void run() {
+                Debug.resetThreadAllocCount();
+            }
+        });
+        sweep(true);
+        final int[] allocations = new int[1];
+        getInstrumentation().runOnMainSync(new Runnable() {
+            public void run() {
+                allocations[0] = Debug.getThreadAllocCount();
+            }
+        });
+        Log.i(TAG, allocations[0] + " allocations over " + EVENT_COUNT + " drag-over events");
+        assertEquals("objects allocated while dragging over the page", 0, allocations[0]);
+    }
+
+    /**
+     * Starts dragging a 1x1 shortcut the way an item from all apps is dragged in, with an
+     * outline so the drop location is drawn.
+     */
+    private void startDrag() {
+        final Workspace workspace = mLauncher.getWorkspace();
+        final TextView outlineView = new TextView(mLauncher);
+        outlineView.setText("Drag");
+        outlineView.measure(
+                View.MeasureSpec.makeMeasureSpec(mDragBitmap.getWidth(), View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(mDragBitmap.getHeight(),
+                        View.MeasureSpec.EXACTLY));
+        outlineView.layout(0, 0, mDragBitmap.getWidth(), mDragBitmap.getHeight());
+        workspace.onDragStartedWithItem(outlineView);
+
+        final ShortcutInfo info = new ShortcutInfo();
+        info.title = "Drag";
+        info.itemType = LauncherSettings.Favorites.ITEM_TYPE_APPLICATION;
+
+        mDragController.onInterceptTouchEvent(mDown);
+        mDragController.startDrag(mDragBitmap, (int) mDown.getX() - mDragBitmap.getWidth() / 2,
+                (int) mDown.getY() - mDragBitmap.getHeight() / 2, new TestDragSource(), info,
+                DragController.DRAG_ACTION_MOVE, null, null, 1f);
+    }
+
+    /**
+     * Delivers the move events one message at a time, so the frames and alarms a real drag
+     * sees between events run in between, outside the counted region.
+     */
+    private void sweep(boolean count) {
+        mDispatcher.mCount = count;
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            mDispatcher.mEvent = mMoves[i];
+            getInstrumentation().runOnMainSync(mDispatcher);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shendu.launcher;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.SystemClock;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stand-in badge provider for tests.
+ *
+ * Every query returns one more than the last, so each refresh is a change the manager has to
+ * deliver. {@link #startFlood()} starts a thread that asks for refreshes a few thousand times a
+ * second, far faster than any real provider would.
+ */
+public class FloodBadgeProvider extends BadgeProvider {
+    // Notifications sent between two 1ms pauses of the flood thread
+    private static final int NOTIFICATIONS_PER_MS = 5;
+
+    private final AtomicInteger mQueries = new AtomicInteger();
+    private volatile int mLastReturned;
+    private volatile boolean mFlooding;
+    private volatile long mNotificationsSent;
+    private Thread mFloodThread;
+
+    public FloodBadgeProvider(ComponentName component, long minRefreshInterval) {
+        super(component, minRefreshInterval);
+    }
+
+    @Override
+    public int queryCount(Context context) {
+        final int count = mQueries.incrementAndGet();
+        mLastReturned = count;
+        return count;
+    }
+
+    int getQueryCount() {
+        return mQueries.get();
+    }
+
+    int getLastReturnedCount() {
+        return mLastReturned;
+    }
+
+    long getNotificationsSent() {
+        return mNotificationsSent;
+    }
+
+    void startFlood() {
+        mFlooding = true;
+        mFloodThread = new Thread("badge-flood-" + getComponent().getShortClassName()) {
+            @Override
+            public void run() {
+                long sent = 0;
+                while (mFlooding) {
+                    for (int i = 0; i < NOTIFICATIONS_PER_MS; i++) {
+                        notifyChanged();
+                    }
+                    sent += NOTIFICATIONS_PER_MS;
+                    mNotificationsSent = sent;
+                    SystemClock.sleep(1);
+                }
+            }
+        };
+        mFloodThread.start();
+    }
+
+    void stopFlood() throws InterruptedException {
+        mFlooding = false;
+        mFloodThread.join();
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shendu.launcher;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.test.InstrumentationTestCase;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Runs {@link LaunchStats} against files in a scratch directory: recording and replaying the
+ * log, folding it into a snapshot, decay, and recovery from a log whose last record was cut
+ * short. Each stats object is a fresh process start as far as the files are concerned.
+ */
+public class LaunchStatsTest extends InstrumentationTestCase {
+    private static final String LOG_FILE = "launch_stats.log";
+    private static final String SNAPSHOT_FILE = "launch_stats.snapshot";
+    private static final long HALF_LIFE = 14 * 24 * 60 * 60 * 1000L;
+    // More records than the log holds before it is compacted
+    private static final int LOTS_OF_LAUNCHES = 300;
+    private static final long TIMEOUT = 5000;
+
+    private static final ComponentName MAIL = new ComponentName("com.example.mail",
+            "com.example.mail.Inbox");
+    private static final ComponentName MAPS = new ComponentName("com.example.maps",
+            "com.example.maps.Map");
+    private static final ComponentName NOTES = new ComponentName("com.example.notes",
+            "com.example.notes.List");
+
+    private interface Condition {
+        boolean holds();
+    }
+
+    /**
+     * Keeps the stats files in the scratch directory.
+     */
+    private static class ScratchContext extends ContextWrapper {
+        private final File mDir;
+
+        ScratchContext(Context base, File dir) {
+            super(base);
+            mDir = dir;
+        }
+
+        @Override
+        public File getFileStreamPath(String name) {
+            return new File(mDir, name);
+        }
+    }
+
+    private File mDir;
+    private Context mContext;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        final Context target = getInstrumentation().getTargetContext();
+        mDir = new File(target.getCacheDir(), "launch_stats_test");
+        deleteScratchFiles();
+        assertTrue(mDir.isDirectory() || mDir.mkdirs());
+        mContext = new ScratchContext(target, mDir);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteScratchFiles();
+        mDir.delete();
+        super.tearDown();
+    }
+
+    private void deleteScratchFiles() {
+        final File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    private File logFile() {
+        return new File(mDir, LOG_FILE);
+    }
+
+    private File snapshotFile() {
+        return new File(mDir, SNAPSHOT_FILE);
+    }
+
+    private static void waitFor(String what, Condition condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!condition.holds()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Timed out waiting for " + what);
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Records the launches, writes them out and waits until the component's score shows them.
+     */
+    private static void recordAndFlush(final LaunchStats stats, final ComponentName component,
+            int launches) throws InterruptedException {
+        final float before = stats.getScore(component);
+        for (int i = 0; i < launches; i++) {
+            stats.recordLaunch(component);
+        }
+        stats.flush();
+        final float expected = before + launches;
+        waitFor("launches of " + component, new Condition() {
+            public boolean holds() {
+                return stats.getScore(component) >= expected - 0.01f;
+            }
+        });
+    }
+
+    /**
+     * Starts a stats object over the scratch files and waits until it has read the component.
+     */
+    private LaunchStats reopen(final ComponentName loaded) throws InterruptedException {
+        final LaunchStats stats = new LaunchStats(mContext);
+        waitFor("loading " + loaded, new Condition() {
+            public boolean holds() {
+                return stats.getScore(loaded) > 0;
+            }
+        });
+        return stats;
+    }
+
+    private static void writeRecord(DataOutputStream out, long time, ComponentName component)
+            throws IOException {
+        out.writeLong(time);
+        out.writeUTF(component.flattenToShortString());
+    }
+
+    public void testRecordsAndReplaysLog() throws Exception {
+        final LaunchStats stats = new LaunchStats(mContext);
+        recordAndFlush(stats, MAIL, 3);
+        recordAndFlush(stats, MAPS, 1);
+        assertEquals(3f, stats.getScore(MAIL), 0.01f);
+        assertEquals(1f, stats.getScore(MAPS), 0.01f);
+        assertEquals(0f, stats.getScore(NOTES), 0);
+        assertEquals(0, stats.getLastLaunchTime(NOTES));
+        assertTrue(stats.getLastLaunchTime(MAIL) > 0);
+
+        // Four records in the log and nothing compacted yet
+        assertTrue(logFile().length() > 0);
+        assertFalse(snapshotFile().exists());
+
+        final LaunchStats replayed = reopen(MAIL);
+        assertEquals(3f, replayed.getScore(MAIL), 0.01f);
+        assertEquals(1f, replayed.getScore(MAPS), 0.01f);
+        assertEquals(stats.getLastLaunchTime(MAIL), replayed.getLastLaunchTime(MAIL));
+        assertEquals(Arrays.asList(MAIL, MAPS), replayed.getMostUsed(10));
+        assertEquals(Arrays.asList(MAIL), replayed.getMostUsed(1));
+    }
+
+    public void testUsageComparator() throws Exception {
+        final LaunchStats stats = new LaunchStats(mContext);
+        recordAndFlush(stats, MAPS, 2);
+        recordAndFlush(stats, MAIL, 5);
+
+        final ArrayList<ShortcutInfo> apps = new ArrayList<ShortcutInfo>();
+        for (ComponentName component : new ComponentName[] { NOTES, MAPS, MAIL }) {
+            final ShortcutInfo info = new ShortcutInfo();
+            info.componentName = component;
+            apps.add(info);
+        }
+        Collections.sort(apps, stats.getUsageComparator());
+        assertEquals(MAIL, apps.get(0).componentName);
+        assertEquals(MAPS, apps.get(1).componentName);
+        // Never launched sorts last
+        assertEquals(NOTES, apps.get(2).componentName);
+    }
+
+    public void testCompactsLogIntoSnapshot() throws Exception {
+        final LaunchStats stats = new LaunchStats(mContext);
+        recordAndFlush(stats, MAIL, LOTS_OF_LAUNCHES);
+        recordAndFlush(stats, MAPS, 1);
+        waitFor("compaction", new Condition() {
+            public boolean holds() {
+                return snapshotFile().exists();
+            }
+        });
+        // Only what came after the compaction is left in the log
+        assertTrue(!logFile().exists() || logFile().length() < 1024);
+        assertFalse(new File(mDir, SNAPSHOT_FILE + ".tmp").exists());
+
+        final LaunchStats reloaded = reopen(MAIL);
+        assertEquals(LOTS_OF_LAUNCHES, reloaded.getScore(MAIL), 0.5f);
+        assertEquals(1f, reloaded.getScore(MAPS), 0.01f);
+
+        // New launches go on top of the snapshot
+        recordAndFlush(reloaded, NOTES, 2);
+        final LaunchStats again = reopen(NOTES);
+        assertEquals(LOTS_OF_LAUNCHES, again.getScore(MAIL), 0.5f);
+        assertEquals(2f, again.getScore(NOTES), 0.01f);
+    }
+
+    public void testScoresHalveEveryTwoWeeks() throws Exception {
+        final long now = System.currentTimeMillis();
+        final DataOutputStream out = new DataOutputStream(new FileOutputStream(logFile()));
+        writeRecord(out, now - HALF_LIFE, MAIL);
+        writeRecord(out, now - 2 * HALF_LIFE, MAPS);
+        writeRecord(out, now - 2 * HALF_LIFE, MAPS);
+        out.close();
+
+        final LaunchStats stats = reopen(MAIL);
+        assertEquals(0.5f, stats.getScore(MAIL), 0.01f);
+        // Two launches a month ago count as one launch two weeks ago
+        assertEquals(0.5f, stats.getScore(MAPS), 0.01f);
+        assertEquals(now - HALF_LIFE, stats.getLastLaunchTime(MAIL));
+    }
+
+    public void testRecoversFromTornRecord() throws Exception {
+        final long now = System.currentTimeMillis();
+        // A counter that has decayed to nothing, to be dropped by the recovery compaction
+        final DataOutputStream snapshot =
+                new DataOutputStream(new FileOutputStream(snapshotFile()));
+        snapshot.writeInt(1);
+        snapshot.writeInt(1);
+        snapshot.writeUTF(NOTES.flattenToShortString());
+        snapshot.writeFloat(1);
+        snapshot.writeLong(now - 52 * 7 * 24 * 60 * 60 * 1000L);
+        snapshot.close();
+
+        // Two whole records, then a process death halfway through the third
+        final DataOutputStream log = new DataOutputStream(new FileOutputStream(logFile()));
+        writeRecord(log, now, MAIL);
+        writeRecord(log, now, MAPS);
+        log.writeLong(now);
+        log.writeShort(MAIL.flattenToShortString().length());
+        log.writeBytes("com.exa");
+        log.close();
+
+        final LaunchStats stats = reopen(MAIL);
+        assertEquals(1f, stats.getScore(MAIL), 0.01f);
+        assertEquals(1f, stats.getScore(MAPS), 0.01f);
+
+        // The torn log was folded away, without the decayed counter
+        waitFor("recovery compaction", new Condition() {
+            public boolean holds() {
+                return !logFile().exists();
+            }
+        });
+        final ArrayList<ComponentName> used = stats.getMostUsed(10);
+        assertEquals(2, used.size());
+        assertFalse(used.contains(NOTES));
+
+        // Appends after the recovery read back cleanly
+        recordAndFlush(stats, MAIL, 1);
+        final LaunchStats reopened = reopen(MAIL);
+        assertEquals(2f, reopened.getScore(MAIL), 0.01f);
+        assertEquals(1f, reopened.getScore(MAPS), 0.01f);
+    }
+}
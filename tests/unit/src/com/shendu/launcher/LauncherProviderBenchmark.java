@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shendu.launcher;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+
+import java.util.Random;
+
+/**
+ * Measures mixed read/write throughput of {@link LauncherProvider} on a scratch database. A
+ * reader thread runs the workspace loader query in a loop while the test thread moves single
+ * items through {@link LauncherProvider#update}, the way {@link LauncherModel} does while the
+ * user drags. The same run is made with the rollback journal and with write-ahead logging.
+ */
+public class LauncherProviderBenchmark extends InstrumentationTestCase {
+    private static final String TAG = "LauncherProviderBenchmark";
+
+    private static final String DATABASE_NAME = "launcher_benchmark.db";
+    private static final int ROW_COUNT = 300;
+    private static final long RUN_TIME = 3000;
+
+    private static final String[] LOADER_COLUMNS = new String[] {
+        LauncherSettings.Favorites._ID,
+        LauncherSettings.Favorites.INTENT,
+        LauncherSettings.Favorites.TITLE,
+        LauncherSettings.Favorites.ITEM_TYPE,
+        LauncherSettings.Favorites.CONTAINER,
+        LauncherSettings.Favorites.SCREEN,
+        LauncherSettings.Favorites.CELLX,
+        LauncherSettings.Favorites.CELLY,
+        LauncherSettings.Favorites.SPANX,
+        LauncherSettings.Favorites.SPANY,
+        LauncherSettings.Favorites.APPWIDGET_ID,
+        LauncherSettings.Favorites.ICON_TYPE,
+        LauncherSettings.Favorites.ICON_PACKAGE,
+        LauncherSettings.Favorites.ICON_RESOURCE,
+    };
+
+    private static class Result {
+        int reads;
+        int writes;
+        long maxWriteNanos;
+    }
+
+    private ScratchLauncherContext mContext;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext = new ScratchLauncherContext(getInstrumentation().getTargetContext());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.deleteDatabase(DATABASE_NAME);
+        super.tearDown();
+    }
+
+    public void testMixedReadWrite() throws Exception {
+        final Result journal = run(false);
+        final Result wal = run(true);
+        log("journal", journal);
+        log("wal", wal);
+        Log.i(TAG, "wal/journal: " + ratio(wal.reads, journal.reads) + "x loader reads, "
+                + ratio(wal.writes, journal.writes) + "x moves");
+        assertTrue(journal.reads > 0 && journal.writes > 0);
+        assertTrue(wal.reads > 0 && wal.writes > 0);
+    }
+
+    private static String ratio(int a, int b) {
+        return String.format("%.2f", (float) a / b);
+    }
+
+    private static void log(String name, Result r) {
+        Log.i(TAG, name + ": " + (r.reads * 1000 / RUN_TIME) + " loader reads/s, "
+                + (r.writes * 1000 / RUN_TIME) + " moves/s, worst move "
+                + (r.maxWriteNanos / 1000) + "us");
+    }
+
+    private Result run(boolean wal) throws Exception {
+        final LauncherProvider provider = mContext.openProvider(DATABASE_NAME, wal);
+        try {
+            populate(provider);
+            return measure(provider);
+        } finally {
+            provider.shutdown();
+        }
+    }
+
+    private static void populate(LauncherProvider provider) {
+        final byte[] icon = new byte[4096];
+        final ContentValues[] rows = new ContentValues[ROW_COUNT];
+        for (int i = 0; i < ROW_COUNT; i++) {
+            final ContentValues values = new ContentValues();
+            values.put(LauncherSettings.Favorites._ID, i + 1);
+            values.put(LauncherSettings.Favorites.TITLE, "App " + i);
+            values.put(LauncherSettings.Favorites.INTENT,
+                    "#Intent;component=com.example/.App" + i + ";end");
+            values.put(LauncherSettings.Favorites.CONTAINER,
+                    LauncherSettings.Favorites.CONTAINER_DESKTOP);
+            values.put(LauncherSettings.Favorites.SCREEN, i / 16);
+            values.put(LauncherSettings.Favorites.CELLX, i % 4);
+            values.put(LauncherSettings.Favorites.CELLY, (i / 4) % 4);
+            values.put(LauncherSettings.Favorites.SPANX, 1);
+            values.put(LauncherSettings.Favorites.SPANY, 1);
+            values.put(LauncherSettings.Favorites.ITEM_TYPE,
+                    LauncherSettings.Favorites.ITEM_TYPE_APPLICATION);
+            values.put(LauncherSettings.Favorites.ICON, icon);
+            rows[i] = values;
+        }
+        provider.bulkInsert(LauncherSettings.Favorites.CONTENT_URI_NO_NOTIFICATION, rows);
+    }
+
+    private static Result measure(final LauncherProvider provider)
+            throws InterruptedException {
+        final Result result = new Result();
+        final long end = SystemClock.uptimeMillis() + RUN_TIME;
+
+        Thread reader = new Thread("BenchmarkLoader") {
+            @Override
+            public void run() {
+                int reads = 0;
+                while (SystemClock.uptimeMillis() < end) {
+                    Cursor c = provider.query(
+                            LauncherSettings.Favorites.CONTENT_URI_NO_NOTIFICATION,
+                            LOADER_COLUMNS, null, null, null);
+                    try {
+                        while (c.moveToNext()) {
+                            c.getLong(0);
+                            c.getString(1);
+                        }
+                    } finally {
+                        c.close();
+                    }
+                    reads++;
+                }
+                synchronized (result) {
+                    result.reads = reads;
+                }
+            }
+        };
+        reader.start();
+
+        final Random random = new Random(29);
+        final ContentValues values = new ContentValues();
+        int writes = 0;
+        long maxWrite = 0;
+        while (SystemClock.uptimeMillis() < end) {
+            final Uri uri = LauncherSettings.Favorites.getContentUri(
+                    random.nextInt(ROW_COUNT) + 1, false);
+            // The columns of LauncherModel.moveItemInDatabase, so the update takes the
+            // provider's cached statement
+            values.clear();
+            values.put(LauncherSettings.Favorites.CONTAINER,
+                    LauncherSettings.Favorites.CONTAINER_DESKTOP);
+            values.put(LauncherSettings.Favorites.CELLX, random.nextInt(4));
+            values.put(LauncherSettings.Favorites.CELLY, random.nextInt(4));
+            values.put(LauncherSettings.Favorites.SCREEN, random.nextInt(20));
+            final long start = System.nanoTime();
+            provider.update(uri, values, null, null);
+            maxWrite = Math.max(maxWrite, System.nanoTime() - start);
+            writes++;
+        }
+        reader.join();
+
+        synchronized (result) {
+            result.writes = writes;
+            result.maxWriteNanos = maxWrite;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.shendu.launcher;
+
+import android.graphics.Camera;
+import android.graphics.Matrix;
+
+/**
+ * The tablet transition as Workspace computed it before {@link TransitionTransforms}: the page
+ * offset for each rotation came from projecting its corner through a {@link Camera}.
+ */
+class LegacyTabletTransition {
+    private static final float WORKSPACE_ROTATION = 12.5f;
+
+    private final Camera mCamera = new Camera();
+    private final Matrix mMatrix = new Matrix();
+    private final float[] mTempFloat2 = new float[2];
+
+    float getOffsetXForRotation(float degrees, int width, int height) {
+        mMatrix.reset();
+        mCamera.save();
+        mCamera.rotateY(Math.abs(degrees));
+        mCamera.getMatrix(mMatrix);
+        mCamera.restore();
+
+        mMatrix.preTranslate(-width * 0.5f, -height * 0.5f);
+        mMatrix.postTranslate(width * 0.5f, height * 0.5f);
+        mTempFloat2[0] = width;
+        mTempFloat2[1] = height;
+        mMatrix.mapPoints(mTempFloat2);
+        return (width - mTempFloat2[0]) * (degrees > 0.0f ? 1.0f : -1.0f);
+    }
+
+    void tablet(float scrollProgress, boolean fade, int width, int height, PageTransform out) {
+        out.reset();
+        float rotation = WORKSPACE_ROTATION * scrollProgress;
+        float translationX = getOffsetXForRotation(rotation, width, height);
+        if (LegacyTransitionMath.isBack(scrollProgress)) {
+            rotation = 0;
+            translationX = 0;
+        }
+        out.mask = PageTransform.TRANSLATION_X | PageTransform.ROTATION_Y;
+        out.translationX = translationX;
+        out.rotationY = rotation;
+        if (fade) {
+            out.mask |= PageTransform.CONTENT_ALPHA;
+            out.contentAlpha = 1 - Math.abs(scrollProgress);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shendu.launcher;
+
+/**
+ * The per-page math of the workspace transition effects as Workspace computed it before
+ * {@link TransitionTransforms}, written out as the reference for golden values and benchmarks.
+ * Each method records what the old screenScrolled* branch set on one page. The tablet effect,
+ * which needs the platform Camera, is in {@link LegacyTabletTransition}; everything here is
+ * plain Java so the host benchmarks can use it.
+ */
+class LegacyTransitionMath {
+    private static final float WORKSPACE_ROTATION_ANGLE = 12.5f;
+
+    static boolean isBack(float scrollProgress) {
+        return scrollProgress == 1 || scrollProgress == -1;
+    }
+
+    // Workspace.ZInterpolator(0.5f)
+    static float zInterpolation(float input) {
+        final float focalLength = 0.5f;
+        return (1.0f - focalLength / (focalLength + input)) /
+                (1.0f - focalLength / (focalLength + 1.0f));
+    }
+
+    // AccelerateInterpolator(0.9f)
+    static float accelerateInterpolation(float input) {
+        return (float) Math.pow(input, 2 * 0.9f);
+    }
+
+    // DecelerateInterpolator(4)
+    static float decelerateInterpolation(float input) {
+        return (float) (1.0f - Math.pow((1.0f - input), 2 * 4));
+    }
+
+    static void standard(float scrollProgress, boolean fade, PageTransform out) {
+        out.reset();
+        if (fade) {
+            out.mask |= PageTransform.CONTENT_ALPHA;
+            out.contentAlpha = 1 - Math.abs(scrollProgress);
+        }
+    }
+
+    static void zoom(float scrollProgress, boolean in, boolean small, boolean fade, int width,
+            PageTransform out) {
+        out.reset();
+        float scale = 1.0f + (in ? -0.2f : 0.1f) * Math.abs(scrollProgress);
+        if (!in) {
+            float translationX = width * 0.1f * -scrollProgress;
+            if (isBack(scrollProgress)) {
+                translationX = 0;
+            }
+            out.mask |= PageTransform.TRANSLATION_X;
+            out.translationX = translationX;
+        }
+        if (isBack(scrollProgress)) {
+            scale = 1.0f;
+        }
+        out.mask |= PageTransform.SCALE;
+        out.scale = small ? scale * 0.75f : scale;
+        if (fade) {
+            out.mask |= PageTransform.ALPHA;
+            out.alpha = 1 - Math.abs(scrollProgress);
+        }
+    }
+
+    static void rotate(float scrollProgress, boolean up, boolean small, boolean fade, int width,
+            int height, float smallTranslationY, PageTransform out) {
+        out.reset();
+        float rotation = (up ? WORKSPACE_ROTATION_ANGLE : -WORKSPACE_ROTATION_ANGLE)
+                * scrollProgress;
+        float translationX = width * scrollProgress;
+        float rotatePoint = (width * 0.5f) /
+                (float) Math.tan(Math.toRadians((double) (WORKSPACE_ROTATION_ANGLE * 0.5f)));
+        out.mask = PageTransform.PIVOT_X | PageTransform.PIVOT_Y | PageTransform.TRANSLATION_Y
+                | PageTransform.ROTATION;
+        out.pivotX = width * 0.5f;
+        if (small) {
+            out.pivotY = width * 0.5f;
+            out.translationY = smallTranslationY;
+            if (scrollProgress == 0 || isBack(scrollProgress)) {
+                out.rotation = 0;
+            } else {
+                out.rotation = up ? rotation : rotation * 2;
+            }
+        } else {
+            out.pivotY = up ? -rotatePoint : height + rotatePoint;
+            out.translationY = 0;
+            out.rotation = rotation;
+            out.mask |= PageTransform.TRANSLATION_X;
+            out.translationX = translationX;
+            if (fade) {
+                out.mask |= PageTransform.CONTENT_ALPHA;
+                out.contentAlpha = 1 - Math.abs(scrollProgress);
+            }
+        }
+    }
+
+    static void cube(float scrollProgress, boolean in, boolean small, int width, int height,
+            float cameraDistance, PageTransform out) {
+        out.reset();
+        float rotation = (in ? 90.0f : -90.0f) * scrollProgress;
+        out.mask = PageTransform.PIVOT_X | PageTransform.PIVOT_Y | PageTransform.ROTATION_Y;
+        if (in) {
+            out.mask |= PageTransform.CAMERA_DISTANCE;
+            out.cameraDistance = cameraDistance;
+        }
+        if (isBack(scrollProgress)) {
+            rotation = 0;
+        }
+        out.rotationY = rotation;
+        out.pivotY = height * 0.5f;
+        if (small) {
+            out.pivotX = 240;
+            out.mask |= PageTransform.ALPHA;
+            out.alpha = 1;
+        } else {
+            out.pivotX = scrollProgress < 0 ? 0 : width;
+            out.mask |= PageTransform.CONTENT_ALPHA;
+            out.contentAlpha = 1f;
+        }
+    }
+
+    static void stack(float scrollProgress, boolean small, boolean largeScreen, int width,
+            PageTransform out) {
+        out.reset();
+        float interpolatedProgress = zInterpolation(Math.abs(Math.min(scrollProgress, 0)));
+        float scale = (1 - interpolatedProgress) + interpolatedProgress * 0.76f;
+        float translationX = Math.min(0, scrollProgress) * width * (small ? 0.75f : 1.0f);
+        float alpha;
+        if (!largeScreen || scrollProgress < 0) {
+            alpha = scrollProgress < 0
+                    ? accelerateInterpolation(1 - Math.abs(scrollProgress)) : 1.0f;
+        } else {
+            alpha = decelerateInterpolation(1 - scrollProgress);
+        }
+        if (small && Math.abs(scrollProgress) == 1.0) {
+            alpha = 0.0f;
+        }
+        if (isBack(scrollProgress)) {
+            translationX = 0;
+            scale = 1;
+            alpha = 1;
+        }
+        out.mask = PageTransform.TRANSLATION_X | PageTransform.SCALE
+                | PageTransform.CONTENT_ALPHA | PageTransform.VISIBILITY;
+        out.translationX = translationX;
+        out.scale = small ? scale * 0.75f : scale;
+        out.contentAlpha = alpha;
+        out.visible = alpha > 0;
+        if (small) {
+            out.mask |= PageTransform.BACKGROUND_ALPHA;
+            out.backgroundAlpha = alpha;
+        }
+    }
+}
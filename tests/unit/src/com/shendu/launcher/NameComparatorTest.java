@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shendu.launcher;
+
+import android.appwidget.AppWidgetProviderInfo;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ActivityInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.test.InstrumentationTestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Ordering of {@link LauncherModel.ShortcutNameComparator},
+ * {@link LauncherModel.WidgetAndShortcutNameComparator} and
+ * {@link LauncherModel.AppNameComparator} as used by the loader and the widget picker, and the
+ * icon cache's reuse of sort keys for renamed components.
+ */
+public class NameComparatorTest extends InstrumentationTestCase {
+    private static final String FAKE_PACKAGE = "com.shendu.launcher.tests.fake";
+
+    // Browser, de tu, Eclair, wei xin, xi an, Xian, xian, Zoom, then Cyrillic Yandex
+    private static final String[] SORTED_LABELS = new String[] {
+        "Browser",
+        "\u5730\u56fe",
+        "\u00c9clair",
+        "\u5fae\u4fe1",
+        "\u897f\u5b89",
+        "Xian",
+        "\u5148",
+        "Zoom",
+        "\u042f\u043d\u0434\u0435\u043a\u0441",
+    };
+
+    private PackageManager mPackageManager;
+    private IconCache mIconCache;
+    private SortKeyGenerator mGenerator;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        final Context context = getInstrumentation().getTargetContext();
+        final LauncherApplication app = (LauncherApplication) context.getApplicationContext();
+        mPackageManager = context.getPackageManager();
+        mIconCache = app.getIconCache();
+        mGenerator = app.getSortKeyGenerator();
+    }
+
+    private static ResolveInfo fakeActivity(String name, String label) {
+        final ResolveInfo info = new ResolveInfo();
+        info.activityInfo = new ActivityInfo();
+        info.activityInfo.packageName = FAKE_PACKAGE;
+        info.activityInfo.name = name;
+        info.nonLocalizedLabel = label;
+        return info;
+    }
+
+    private static AppWidgetProviderInfo fakeWidget(String name, String label) {
+        final AppWidgetProviderInfo info = new AppWidgetProviderInfo();
+        info.provider = new ComponentName(FAKE_PACKAGE, name);
+        info.label = label;
+        return info;
+    }
+
+    private static String labelOf(Object info) {
+        if (info instanceof AppWidgetProviderInfo) {
+            return ((AppWidgetProviderInfo) info).label;
+        }
+        return ((ResolveInfo) info).nonLocalizedLabel.toString();
+    }
+
+    public void testShortcutNameComparatorOrder() {
+        final ArrayList<ResolveInfo> infos = new ArrayList<ResolveInfo>();
+        for (int i = SORTED_LABELS.length - 1; i >= 0; i--) {
+            infos.add(fakeActivity("Activity" + i, SORTED_LABELS[i]));
+        }
+        Collections.sort(infos,
+                new LauncherModel.ShortcutNameComparator(mPackageManager, mIconCache));
+
+        final List<String> labels = new ArrayList<String>();
+        for (ResolveInfo info : infos) {
+            labels.add(labelOf(info));
+        }
+        assertEquals(Arrays.asList(SORTED_LABELS), labels);
+    }
+
+    public void testWidgetAndShortcutNameComparatorOrder() {
+        // Widgets and shortcuts interleave by label
+        final ArrayList<Object> infos = new ArrayList<Object>();
+        for (int i = SORTED_LABELS.length - 1; i >= 0; i--) {
+            if (i % 2 == 0) {
+                infos.add(fakeWidget("Widget" + i, SORTED_LABELS[i]));
+            } else {
+                infos.add(fakeActivity("Shortcut" + i, SORTED_LABELS[i]));
+            }
+        }
+        Collections.sort(infos,
+                new LauncherModel.WidgetAndShortcutNameComparator(mPackageManager, mGenerator));
+
+        final List<String> labels = new ArrayList<String>();
+        for (Object info : infos) {
+            labels.add(labelOf(info));
+        }
+        assertEquals(Arrays.asList(SORTED_LABELS), labels);
+    }
+
+    public void testAppNameComparatorMixesStoredAndGeneratedKeys() {
+        // Every other app has no stored key, as for items not titled by the icon cache
+        final ArrayList<ShortcutInfo> apps = new ArrayList<ShortcutInfo>();
+        for (int i = SORTED_LABELS.length - 1; i >= 0; i--) {
+            final ShortcutInfo app = new ShortcutInfo();
+            app.title = SORTED_LABELS[i];
+            app.componentName = new ComponentName(FAKE_PACKAGE, "Activity" + i);
+            if (i % 2 == 0) {
+                app.sortKey = mGenerator.getSortKey(SORTED_LABELS[i]);
+            }
+            apps.add(app);
+        }
+        Collections.sort(apps, new LauncherModel.AppNameComparator(mGenerator));
+
+        final List<String> labels = new ArrayList<String>();
+        for (ShortcutInfo app : apps) {
+            labels.add(app.title.toString());
+        }
+        assertEquals(Arrays.asList(SORTED_LABELS), labels);
+    }
+
+    public void testCachedKeyOnlyServesItsOwnLabel() {
+        final Context context = getInstrumentation().getTargetContext();
+        final ResolveInfo launcher = mPackageManager.resolveActivity(
+                new Intent(Intent.ACTION_MAIN).setClassName(context.getPackageName(),
+                        Launcher.class.getName()), 0);
+        assertNotNull(launcher);
+        final ComponentName component =
+                LauncherModel.getComponentNameFromResolveInfo(launcher);
+
+        // Puts the launcher in the icon cache under its real title
+        final ShortcutInfo cached = new ShortcutInfo();
+        cached.componentName = component;
+        mIconCache.getTitleAndIcon(cached, launcher, null);
+        final String title = cached.title.toString();
+        assertEquals(mGenerator.getSortKey(title), cached.sortKey);
+        assertEquals(cached.sortKey, mIconCache.getSortKey(component, title));
+
+        // The same component under another label gets that label's key
+        final String renamed = "Zzzz " + title;
+        assertEquals(mGenerator.getSortKey(renamed), mIconCache.getSortKey(component, renamed));
+
+        // And sorts by it
+        final ResolveInfo renamedInfo = new ResolveInfo();
+        renamedInfo.activityInfo = launcher.activityInfo;
+        renamedInfo.nonLocalizedLabel = renamed;
+        final ResolveInfo before = fakeActivity("Before", "Zzz");
+        final ArrayList<ResolveInfo> infos = new ArrayList<ResolveInfo>();
+        infos.add(renamedInfo);
+        infos.add(before);
+        Collections.sort(infos,
+                new LauncherModel.ShortcutNameComparator(mPackageManager, mIconCache));
+        assertSame(before, infos.get(0));
+        assertSame(renamedInfo, infos.get(1));
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shendu.launcher;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+/**
+ * Checks {@link OccupancyIndex} counts against the grid after rectangles are filled in place,
+ * after direct writes and a rebuild, and with an ignored rectangle.
+ */
+public class OccupancyIndexTest extends TestCase {
+    private static final int FILL_COUNT = 2000;
+
+    private static int bruteCount(boolean[][] grid, int cellX, int cellY, int spanX, int spanY,
+            int ignoreX, int ignoreY, int ignoreSpanX, int ignoreSpanY) {
+        int count = 0;
+        for (int x = cellX; x < cellX + spanX; x++) {
+            for (int y = cellY; y < cellY + spanY; y++) {
+                final boolean ignored = x >= ignoreX && x < ignoreX + ignoreSpanX
+                        && y >= ignoreY && y < ignoreY + ignoreSpanY;
+                if (grid[x][y] && !ignored) count++;
+            }
+        }
+        return count;
+    }
+
+    private static void assertCounts(OccupancyIndex index, boolean[][] grid, int countX,
+            int countY, int ignoreX, int ignoreY, int ignoreSpanX, int ignoreSpanY) {
+        for (int x = 0; x < countX; x++) {
+            for (int y = 0; y < countY; y++) {
+                for (int spanX = 1; x + spanX <= countX; spanX++) {
+                    for (int spanY = 1; y + spanY <= countY; spanY++) {
+                        assertEquals(x + "," + y + " " + spanX + "x" + spanY,
+                                bruteCount(grid, x, y, spanX, spanY, ignoreX, ignoreY,
+                                        ignoreSpanX, ignoreSpanY),
+                                index.countOccupied(x, y, spanX, spanY));
+                    }
+                }
+            }
+        }
+    }
+
+    public void testFillUpdatesInPlace() {
+        final Random random = new Random(32);
+        final int countX = 5;
+        final int countY = 6;
+        final boolean[][] grid = new boolean[countX][countY];
+        final OccupancyIndex index = new OccupancyIndex();
+        index.setGrid(grid, countX, countY);
+        assertEquals(0, index.getOccupiedCount());
+
+        for (int i = 0; i < FILL_COUNT; i++) {
+            // Rectangles may run off the right and bottom edges, as they do for the hotseat
+            final int cellX = random.nextInt(countX);
+            final int cellY = random.nextInt(countY);
+            index.fill(cellX, cellY, 1 + random.nextInt(3), 1 + random.nextInt(3),
+                    random.nextBoolean());
+            if (i % 50 == 0) {
+                assertCounts(index, grid, countX, countY, 0, 0, 0, 0);
+            } else {
+                assertEquals(bruteCount(grid, 0, 0, countX, countY, 0, 0, 0, 0),
+                        index.getOccupiedCount());
+            }
+        }
+        assertCounts(index, grid, countX, countY, 0, 0, 0, 0);
+    }
+
+    public void testDirectWritesNeedInvalidate() {
+        final boolean[][] grid = new boolean[4][4];
+        final OccupancyIndex index = new OccupancyIndex();
+        index.setGrid(grid, 4, 4);
+        index.fill(0, 0, 2, 2, true);
+        assertEquals(4, index.getOccupiedCount());
+
+        grid[3][3] = true;
+        index.invalidate();
+        assertCounts(index, grid, 4, 4, 0, 0, 0, 0);
+        index.fill(1, 1, 3, 3, false);
+        assertCounts(index, grid, 4, 4, 0, 0, 0, 0);
+    }
+
+    public void testIgnoredRectIsVacant() {
+        final Random random = new Random(320);
+        final boolean[][] grid = new boolean[6][6];
+        final OccupancyIndex index = new OccupancyIndex();
+        index.setGrid(grid, 6, 6);
+        for (int i = 0; i < 20; i++) {
+            index.fill(random.nextInt(6), random.nextInt(6), 1 + random.nextInt(2),
+                    1 + random.nextInt(2), true);
+        }
+
+        index.setIgnoredRect(2, 1, 2, 3);
+        assertCounts(index, grid, 6, 6, 2, 1, 2, 3);
+        index.fill(2, 1, 2, 3, true);
+        assertTrue(index.isVacant(2, 1, 2, 3));
+
+        index.clearIgnoredRect();
+        assertCounts(index, grid, 6, 6, 0, 0, 0, 0);
+        assertTrue(index.isFull(2, 1, 2, 3));
+    }
+}
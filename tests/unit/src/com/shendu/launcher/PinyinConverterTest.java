@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shendu.launcher;
+
+import android.app.Instrumentation;
+import android.test.InstrumentationTestCase;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Checks the shipped pinyin table through {@link PinyinConverter}: its range, plain and
+ * polyphone readings, and that a damaged table is refused.
+ */
+public class PinyinConverterTest extends InstrumentationTestCase {
+    private PinyinConverter mConverter;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mConverter = loadConverter(getInstrumentation());
+    }
+
+    /**
+     * Reads res/raw/pinyin_table from the launcher under test.
+     */
+    static PinyinConverter loadConverter(Instrumentation instrumentation) throws IOException {
+        InputStream in = new BufferedInputStream(instrumentation.getTargetContext()
+                .getResources().openRawResource(R.raw.pinyin_table));
+        try {
+            return new PinyinConverter(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    public void testCoversUnifiedIdeographs() {
+        // The first and last characters of U+4E00..U+9FA5
+        assertEquals("yi", mConverter.getPinyin('\u4e00'));
+        assertEquals("yu", mConverter.getPinyin('\u9fa5'));
+        assertTrue(mConverter.hasPinyin('\u4e00'));
+        assertTrue(mConverter.hasPinyin('\u9fa5'));
+
+        // Just outside the range, ideographic zero, Latin and digits
+        assertFalse(mConverter.hasPinyin('\u4dff'));
+        assertFalse(mConverter.hasPinyin('\u9fa6'));
+        assertFalse(mConverter.hasPinyin('\u3007'));
+        assertFalse(mConverter.hasPinyin('a'));
+        assertFalse(mConverter.hasPinyin('1'));
+        assertNull(mConverter.getPinyin('a'));
+        assertNull(mConverter.getAlternatePinyin('a'));
+    }
+
+    public void testSingleReadings() {
+        // wei xin
+        assertEquals("wei", mConverter.getPinyin('\u5fae'));
+        assertEquals("xin", mConverter.getPinyin('\u4fe1'));
+        assertNull(mConverter.getAlternatePinyin('\u5fae'));
+        assertNull(mConverter.getAlternatePinyin('\u4fe1'));
+        // zhi fu bao
+        assertEquals("zhi", mConverter.getPinyin('\u652f'));
+        assertEquals("fu", mConverter.getPinyin('\u4ed8'));
+        assertEquals("bao", mConverter.getPinyin('\u5b9d'));
+    }
+
+    public void testPolyphones() {
+        // zhong / chong
+        assertEquals("zhong", mConverter.getPinyin('\u91cd'));
+        assertEquals("chong", mConverter.getAlternatePinyin('\u91cd'));
+        // zhang / chang
+        assertEquals("zhang", mConverter.getPinyin('\u957f'));
+        assertEquals("chang", mConverter.getAlternatePinyin('\u957f'));
+        // xing / hang
+        assertEquals("xing", mConverter.getPinyin('\u884c'));
+        assertEquals("hang", mConverter.getAlternatePinyin('\u884c'));
+        // le / yue
+        assertEquals("le", mConverter.getPinyin('\u4e50'));
+        assertEquals("yue", mConverter.getAlternatePinyin('\u4e50'));
+    }
+
+    public void testUmlautIsWrittenAsV() {
+        // nv
+        assertEquals("nv", mConverter.getPinyin('\u5973'));
+        // lv / lu
+        assertEquals("lv", mConverter.getPinyin('\u7eff'));
+        assertEquals("lu", mConverter.getAlternatePinyin('\u7eff'));
+    }
+
+    public void testEmptyConverterKnowsNothing() {
+        final PinyinConverter empty = new PinyinConverter();
+        assertFalse(empty.hasPinyin('\u4e00'));
+        assertNull(empty.getPinyin('\u4e00'));
+        assertNull(empty.getAlternatePinyin('\u91cd'));
+    }
+
+    public void testRefusesBadSyllableIndex() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeShort(1);
+        out.writeShort(2);
+        out.writeBytes("yi");
+        out.writeChar('\u4e00');
+        out.writeShort(1);
+        // Only syllable 0 exists
+        out.writeShort(1);
+        out.writeShort(0);
+        out.close();
+        try {
+            new PinyinConverter(new ByteArrayInputStream(bytes.toByteArray()));
+            fail("Accepted a reading past the syllable list");
+        } catch (IOException expected) {
+        }
+    }
+
+    public void testRefusesTruncatedTable() {
+        final byte[] truncated = new byte[] { 0, 1, 0, 2, 'y' };
+        try {
+            new PinyinConverter(new ByteArrayInputStream(truncated));
+            fail("Accepted a truncated table");
+        } catch (IOException expected) {
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.shendu.launcher;
+
+import android.content.ContentValues;
+import android.test.InstrumentationTestCase;
+
+import java.util.ArrayList;
+
+/**
+ * Checks how {@link LauncherModel#putScreenId} maps page indexes to screen ids without a
+ * launcher, including a page the model has no screen for.
+ */
+public class PutScreenIdTest extends InstrumentationTestCase {
+    private final ArrayList<Long> mSavedScreens = new ArrayList<Long>();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        synchronized (LauncherModel.sWorkspaceScreens) {
+            mSavedScreens.addAll(LauncherModel.sWorkspaceScreens);
+            LauncherModel.sWorkspaceScreens.clear();
+            LauncherModel.sWorkspaceScreens.add(10L);
+            LauncherModel.sWorkspaceScreens.add(20L);
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        synchronized (LauncherModel.sWorkspaceScreens) {
+            LauncherModel.sWorkspaceScreens.clear();
+            LauncherModel.sWorkspaceScreens.addAll(mSavedScreens);
+        }
+        super.tearDown();
+    }
+
+    private static ContentValues valuesForPage(int page) {
+        ContentValues values = new ContentValues();
+        values.put(LauncherSettings.Favorites.SCREEN, page);
+        return values;
+    }
+
+    public void testKnownPageGetsScreenId() {
+        ContentValues values = valuesForPage(1);
+        assertTrue(LauncherModel.putScreenId(getInstrumentation().getTargetContext(), values,
+                LauncherSettings.Favorites.CONTAINER_DESKTOP));
+        assertEquals(20L, (long) values.getAsLong(LauncherSettings.Favorites.SCREEN));
+    }
+
+    public void testMissingPageIsNotStored() {
+        ContentValues values = valuesForPage(2);
+        assertFalse(LauncherModel.putScreenId(getInstrumentation().getTargetContext(), values,
+                LauncherSettings.Favorites.CONTAINER_DESKTOP));
+        assertEquals(2, (int) values.getAsInteger(LauncherSettings.Favorites.SCREEN));
+    }
+
+    public void testOtherContainersKeepTheirScreen() {
+        ContentValues values = valuesForPage(3);
+        assertTrue(LauncherModel.putScreenId(getInstrumentation().getTargetContext(), values,
+                LauncherSettings.Favorites.CONTAINER_HOTSEAT));
+        assertEquals(3, (int) values.getAsInteger(LauncherSettings.Favorites.SCREEN));
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shendu.launcher;
+
+import java.util.Random;
+
+/**
+ * A random page of icons and widgets for exercising {@link ReorderSolver} without views.
+ * Items are packed at random free cells until the page is about as full as the requested fill.
+ */
+class RandomCellGrid {
+    final int countX;
+    final int countY;
+    int count;
+    final int[] x;
+    final int[] y;
+    final int[] spanX;
+    final int[] spanY;
+    final boolean[] canReorder;
+
+    private final boolean[][] mOccupied;
+
+    RandomCellGrid(Random random, int countX, int countY, float fill, float widgetRatio) {
+        this.countX = countX;
+        this.countY = countY;
+        final int capacity = countX * countY;
+        x = new int[capacity];
+        y = new int[capacity];
+        spanX = new int[capacity];
+        spanY = new int[capacity];
+        canReorder = new boolean[capacity];
+        mOccupied = new boolean[countX][countY];
+
+        final int target = (int) (capacity * fill);
+        int filled = 0;
+        for (int attempt = 0; attempt < capacity * 8 && filled < target; attempt++) {
+            int sx = 1;
+            int sy = 1;
+            if (random.nextFloat() < widgetRatio) {
+                sx = 1 + random.nextInt(Math.min(4, countX));
+                sy = 1 + random.nextInt(Math.min(3, countY));
+            }
+            final int cx = random.nextInt(countX - sx + 1);
+            final int cy = random.nextInt(countY - sy + 1);
+            if (!isVacant(cx, cy, sx, sy)) {
+                continue;
+            }
+            x[count] = cx;
+            y[count] = cy;
+            spanX[count] = sx;
+            spanY[count] = sy;
+            canReorder[count] = true;
+            mark(mOccupied, cx, cy, sx, sy);
+            count++;
+            filled += sx * sy;
+        }
+    }
+
+    private boolean isVacant(int cx, int cy, int sx, int sy) {
+        for (int i = cx; i < cx + sx; i++) {
+            for (int j = cy; j < cy + sy; j++) {
+                if (mOccupied[i][j]) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copies the page into the solver the way CellLayout does while dragging: the dragged item,
+     * if any, keeps its index but no longer occupies its cells.
+     */
+    void load(ReorderSolver solver, int dragItem) {
+        final boolean[][] occupied = new boolean[countX][countY];
+        for (int i = 0; i < count; i++) {
+            if (i != dragItem) {
+                mark(occupied, x[i], y[i], spanX[i], spanY[i]);
+            }
+        }
+        solver.setGrid(countX, countY, occupied, count);
+        for (int i = 0; i < count; i++) {
+            solver.setItem(i, x[i], y[i], spanX[i], spanY[i], canReorder[i]);
+        }
+    }
+
+    static void mark(boolean[][] occupied, int cx, int cy, int sx, int sy) {
+        for (int i = cx; i < cx + sx; i++) {
+            for (int j = cy; j < cy + sy; j++) {
+                occupied[i][j] = true;
+            }
+        }
+    }
+}
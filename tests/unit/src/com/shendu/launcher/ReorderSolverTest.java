@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shendu.launcher;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+/**
+ * Checks that every configuration {@link ReorderSolver} reports as a solution is a valid page:
+ * inside the grid, free of overlaps, with spans and pinned items left alone.
+ */
+public class ReorderSolverTest extends TestCase {
+    private static final int CELL_SIZE = 100;
+    private static final int LAYOUT_COUNT = 300;
+    private static final int DROPS_PER_LAYOUT = 20;
+
+    private ReorderSolver mSolver;
+    private final int[] mDirection = new int[2];
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mSolver = new ReorderSolver();
+        mSolver.setCellMetrics(0, 0, CELL_SIZE, CELL_SIZE, 0, 0);
+    }
+
+    public void testDropOnIconPushesIt() {
+        final boolean[][] occupied = new boolean[4][4];
+        occupied[1][1] = true;
+        mSolver.setGrid(4, 4, occupied, 1);
+        mSolver.setItem(0, 1, 1, 1, 1, true);
+
+        ReorderSolver.ItemConfiguration solution = drop(1, 1, 1, 1, 1, 1, -1);
+        assertNotNull(solution);
+        assertTrue(solution.isSolution);
+        assertEquals(1, solution.dragViewX);
+        assertEquals(1, solution.dragViewY);
+        assertFalse(solution.x[0] == 1 && solution.y[0] == 1);
+        assertValid(4, 4, solution, -1, 1, 1, 1, 1, new boolean[] { true },
+                new int[] { 1 }, new int[] { 1 }, new int[] { 1 }, new int[] { 1 });
+    }
+
+    public void testPinnedItemIsNotMoved() {
+        final boolean[][] occupied = new boolean[4][4];
+        occupied[1][1] = true;
+        mSolver.setGrid(4, 4, occupied, 1);
+        mSolver.setItem(0, 1, 1, 1, 1, false);
+
+        ReorderSolver.ItemConfiguration solution = drop(1, 1, 1, 1, 1, 1, -1);
+        assertNotNull(solution);
+        assertEquals(1, solution.x[0]);
+        assertEquals(1, solution.y[0]);
+        assertFalse(solution.dragViewX == 1 && solution.dragViewY == 1);
+    }
+
+    public void testFullPageHasNoSolution() {
+        final boolean[][] occupied = new boolean[4][4];
+        for (int i = 0; i < 16; i++) {
+            occupied[i % 4][i / 4] = true;
+        }
+        mSolver.setGrid(4, 4, occupied, 16);
+        for (int i = 0; i < 16; i++) {
+            mSolver.setItem(i, i % 4, i / 4, 1, 1, true);
+        }
+        assertNull(drop(2, 2, 1, 1, 1, 1, -1));
+    }
+
+    public void testWidgetShrinksToMinimumSpan() {
+        // Only a 2x2 hole is left on a page of pinned icons, so a 3x3 widget that may shrink
+        // to 2x2 has to
+        final boolean[][] occupied = new boolean[4][4];
+        int count = 0;
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 4; j++) {
+                if (i < 2 && j < 2) continue;
+                occupied[i][j] = true;
+                count++;
+            }
+        }
+        mSolver.setGrid(4, 4, occupied, count);
+        int item = 0;
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 4; j++) {
+                if (i < 2 && j < 2) continue;
+                mSolver.setItem(item++, i, j, 1, 1, false);
+            }
+        }
+
+        ReorderSolver.ItemConfiguration solution = drop(0, 0, 2, 2, 3, 3, -1);
+        assertNotNull(solution);
+        assertEquals(0, solution.dragViewX);
+        assertEquals(0, solution.dragViewY);
+        assertEquals(2, solution.dragViewSpanX);
+        assertEquals(2, solution.dragViewSpanY);
+    }
+
+    public void testSolutionsOnRandomLayoutsAreValid() {
+        final Random random = new Random(31);
+        int solved = 0;
+        for (int n = 0; n < LAYOUT_COUNT; n++) {
+            final int countX = 4 + random.nextInt(5);
+            final int countY = 4 + random.nextInt(5);
+            RandomCellGrid grid = new RandomCellGrid(random, countX, countY,
+                    0.4f + random.nextFloat() * 0.5f, 0.3f);
+            for (int i = 0; i < grid.count; i++) {
+                grid.canReorder[i] = random.nextInt(10) != 0;
+            }
+
+            for (int d = 0; d < DROPS_PER_LAYOUT; d++) {
+                // Either pick up an item on the page or bring one in from elsewhere
+                final int dragItem = grid.count > 0 && random.nextBoolean()
+                        ? random.nextInt(grid.count) : -1;
+                final int spanX = dragItem >= 0 ? grid.spanX[dragItem] : 1 + random.nextInt(2);
+                final int spanY = dragItem >= 0 ? grid.spanY[dragItem] : 1 + random.nextInt(2);
+                final int minSpanX = 1 + random.nextInt(spanX);
+                final int minSpanY = 1 + random.nextInt(spanY);
+                final int cellX = random.nextInt(countX - spanX + 1);
+                final int cellY = random.nextInt(countY - spanY + 1);
+
+                grid.load(mSolver, dragItem);
+                ReorderSolver.ItemConfiguration solution = drop(cellX, cellY, minSpanX,
+                        minSpanY, spanX, spanY, dragItem);
+                if (solution == null) continue;
+                solved++;
+                assertValid(countX, countY, solution, dragItem, minSpanX, minSpanY, spanX, spanY,
+                        grid.canReorder, grid.x, grid.y, grid.spanX, grid.spanY);
+            }
+        }
+        assertTrue("no drop was solvable", solved > 0);
+    }
+
+    public void testSolveIsRepeatable() {
+        final Random random = new Random(33);
+        for (int n = 0; n < 50; n++) {
+            RandomCellGrid grid = new RandomCellGrid(random, 6, 6, 0.8f, 0.3f);
+            final int cellX = random.nextInt(6);
+            final int cellY = random.nextInt(6);
+
+            grid.load(mSolver, -1);
+            ReorderSolver.ItemConfiguration first = drop(cellX, cellY, 1, 1, 1, 1, -1);
+            final String expected = describe(first);
+            grid.load(mSolver, -1);
+            assertEquals(expected, describe(drop(cellX, cellY, 1, 1, 1, 1, -1)));
+        }
+    }
+
+    public void testFailedSearchDoesNotKeepEarlierArea() {
+        // An empty page: the no-shuffle search places a 3x3 widget at full size
+        mSolver.setGrid(4, 4, new boolean[4][4], 0);
+        ReorderSolver.ItemConfiguration first = drop(0, 0, 2, 2, 3, 3, -1);
+        assertNotNull(first);
+        assertEquals(9, first.area());
+
+        // A checkerboard of icons has no 2x2 hole, so the no-shuffle search fails and only a
+        // swap can make room; the 3x3 area of the last solve must not beat it
+        final boolean[][] occupied = new boolean[4][4];
+        int count = 0;
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 4; j++) {
+                occupied[i][j] = (i + j) % 2 == 0;
+                if (occupied[i][j]) count++;
+            }
+        }
+        final ReorderSolver fresh = new ReorderSolver();
+        fresh.setCellMetrics(0, 0, CELL_SIZE, CELL_SIZE, 0, 0);
+        for (ReorderSolver solver : new ReorderSolver[] { mSolver, fresh }) {
+            solver.setGrid(4, 4, occupied, count);
+            int item = 0;
+            for (int i = 0; i < 4; i++) {
+                for (int j = 0; j < 4; j++) {
+                    if (occupied[i][j]) solver.setItem(item++, i, j, 1, 1, true);
+                }
+            }
+        }
+        ReorderSolver.ItemConfiguration second = drop(0, 0, 2, 2, 3, 3, -1);
+        assertNotNull(second);
+        assertTrue(second.area() < 9);
+
+        final ReorderSolver reused = mSolver;
+        mSolver = fresh;
+        assertEquals(describe(drop(0, 0, 2, 2, 3, 3, -1)), describe(second));
+        mSolver = reused;
+    }
+
+    /**
+     * Runs a drop the way CellLayout.createArea does: direction first, then both searches.
+     */
+    private ReorderSolver.ItemConfiguration drop(int cellX, int cellY, int minSpanX,
+            int minSpanY, int spanX, int spanY, int dragItem) {
+        final int pixelX = cellX * CELL_SIZE + spanX * CELL_SIZE / 2;
+        final int pixelY = cellY * CELL_SIZE + spanY * CELL_SIZE / 2;
+        mSolver.getDirectionVectorForDrop(pixelX, pixelY, spanX, spanY, dragItem, mDirection);
+        return mSolver.solve(pixelX, pixelY, minSpanX, minSpanY, spanX, spanY, mDirection,
+                dragItem);
+    }
+
+    private static void assertValid(int countX, int countY,
+            ReorderSolver.ItemConfiguration solution, int dragItem, int minSpanX, int minSpanY,
+            int spanX, int spanY, boolean[] canReorder, int[] x, int[] y, int[] sx, int[] sy) {
+        assertTrue(solution.isSolution);
+        assertTrue(solution.dragViewSpanX >= minSpanX && solution.dragViewSpanX <= spanX);
+        assertTrue(solution.dragViewSpanY >= minSpanY && solution.dragViewSpanY <= spanY);
+
+        final int[][] owner = new int[countX][countY];
+        claim(owner, countX, countY, solution.dragViewX, solution.dragViewY,
+                solution.dragViewSpanX, solution.dragViewSpanY, Integer.MAX_VALUE);
+        for (int i = 0; i < solution.count; i++) {
+            if (i == dragItem) continue;
+            assertEquals("span of item " + i, sx[i], solution.spanX[i]);
+            assertEquals("span of item " + i, sy[i], solution.spanY[i]);
+            if (!canReorder[i]) {
+                assertEquals("pinned item " + i + " moved", x[i], solution.x[i]);
+                assertEquals("pinned item " + i + " moved", y[i], solution.y[i]);
+            }
+            claim(owner, countX, countY, solution.x[i], solution.y[i], solution.spanX[i],
+                    solution.spanY[i], i + 1);
+        }
+    }
+
+    private static void claim(int[][] owner, int countX, int countY, int cellX, int cellY,
+            int spanX, int spanY, int id) {
+        assertTrue("item " + id + " outside the grid", cellX >= 0 && cellY >= 0
+                && cellX + spanX <= countX && cellY + spanY <= countY);
+        for (int i = cellX; i < cellX + spanX; i++) {
+            for (int j = cellY; j < cellY + spanY; j++) {
+                assertEquals("items " + owner[i][j] + " and " + id + " overlap at " + i + ","
+                        + j, 0, owner[i][j]);
+                owner[i][j] = id;
+            }
+        }
+    }
+
+    private static String describe(ReorderSolver.ItemConfiguration solution) {
+        if (solution == null) return "null";
+        StringBuilder sb = new StringBuilder();
+        sb.append(solution.dragViewX).append(',').append(solution.dragViewY).append(' ')
+                .append(solution.dragViewSpanX).append('x').append(solution.dragViewSpanY);
+        for (int i = 0; i < solution.count; i++) {
+            sb.append(' ').append(solution.x[i]).append(',').append(solution.y[i]);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shendu.launcher;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.test.RenamingDelegatingContext;
+import android.test.mock.MockContentResolver;
+
+/**
+ * A context for tests that run a {@link LauncherProvider} of their own: databases and
+ * preferences are renamed so the launcher's own are never opened, and the content resolver
+ * only knows the providers the test adds with {@link #addProvider}.
+ */
+class ScratchLauncherContext extends RenamingDelegatingContext {
+    private static final String PREFIX = "test.";
+
+    private final MockContentResolver mResolver = new MockContentResolver();
+
+    ScratchLauncherContext(Context target) {
+        super(target, PREFIX);
+    }
+
+    /**
+     * Opens a provider on the named scratch database and serves it under the launcher's
+     * settings authority. Any earlier copy of the database is deleted first.
+     */
+    LauncherProvider openProvider(String databaseName, boolean writeAheadLogging) {
+        deleteDatabase(databaseName);
+        final LauncherProvider provider =
+                new LauncherProvider(this, databaseName, writeAheadLogging);
+        addProvider(provider);
+        return provider;
+    }
+
+    void addProvider(LauncherProvider provider) {
+        mResolver.addProvider(LauncherProvider.AUTHORITY, provider);
+    }
+
+    @Override
+    public ContentResolver getContentResolver() {
+        return mResolver;
+    }
+
+    @Override
+    public SharedPreferences getSharedPreferences(String name, int mode) {
+        return super.getSharedPreferences(PREFIX + name, mode);
+    }
+}
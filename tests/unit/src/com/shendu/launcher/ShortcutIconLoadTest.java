@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shendu.launcher;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.net.Uri;
+import android.test.InstrumentationTestCase;
+import android.test.mock.MockContentProvider;
+import android.test.mock.MockContentResolver;
+
+/**
+ * Icons of app shortcuts loaded by {@link LauncherModel}: a custom icon stored in the
+ * favorites row must come back on reload instead of the package icon.
+ */
+public class ShortcutIconLoadTest extends InstrumentationTestCase {
+    private static final int CUSTOM_COLOR = Color.MAGENTA;
+
+    /** Serves the icon blob of the one favorites row and counts the by-id reads. */
+    private static class BlobProvider extends MockContentProvider {
+        final byte[] mBlob;
+        int mQueries;
+
+        BlobProvider(byte[] blob) {
+            mBlob = blob;
+        }
+
+        @Override
+        public Cursor query(Uri uri, String[] projection, String selection,
+                String[] selectionArgs, String sortOrder) {
+            mQueries++;
+            final MatrixCursor c = new MatrixCursor(projection);
+            c.addRow(new Object[] { mBlob });
+            return c;
+        }
+    }
+
+    private Context mContext;
+    private LauncherModel mModel;
+    private Intent mIntent;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext = getInstrumentation().getTargetContext();
+        mModel = ((LauncherApplication) mContext.getApplicationContext()).getModel();
+        mIntent = new Intent(Intent.ACTION_MAIN);
+        mIntent.addCategory(Intent.CATEGORY_LAUNCHER);
+        mIntent.setComponent(new ComponentName(mContext, Launcher.class));
+    }
+
+    private ShortcutInfo load(BlobProvider provider, boolean hasIcon) {
+        final MockContentResolver resolver = new MockContentResolver();
+        resolver.addProvider(LauncherProvider.AUTHORITY, provider);
+        final MatrixCursor c = new MatrixCursor(new String[] {
+            LauncherSettings.Favorites._ID,
+            LauncherSettings.Favorites.TITLE,
+            LauncherModel.HAS_ICON,
+        });
+        c.addRow(new Object[] { 1L, "Launcher", hasIcon ? 1 : 0 });
+        c.moveToFirst();
+        try {
+            return mModel.getShortcutInfo(mContext.getPackageManager(), mIntent, mContext, c,
+                    new LauncherModel.IconBlobLoader(resolver, c),
+                    c.getColumnIndexOrThrow(LauncherSettings.Favorites.TITLE), null);
+        } finally {
+            c.close();
+        }
+    }
+
+    private static int centerPixel(Bitmap b) {
+        return b.getPixel(b.getWidth() / 2, b.getHeight() / 2);
+    }
+
+    public void testCustomIconSurvivesReload() {
+        final Bitmap custom = Bitmap.createBitmap(8, 8, Bitmap.Config.ARGB_8888);
+        custom.eraseColor(CUSTOM_COLOR);
+        final BlobProvider provider = new BlobProvider(ItemInfo.flattenBitmap(custom));
+
+        final ShortcutInfo info = load(provider, true);
+        assertNotNull(info);
+        assertEquals(1, provider.mQueries);
+        assertFalse(info.usingFallbackIcon);
+        assertEquals(CUSTOM_COLOR, centerPixel(info.mIcon));
+        // The stored icon is already there; don't overwrite it with the package icon
+        assertFalse(info.reSaveIcon);
+    }
+
+    public void testRowWithoutIconUsesPackageIcon() {
+        final BlobProvider provider = new BlobProvider(null);
+
+        final ShortcutInfo info = load(provider, false);
+        assertNotNull(info);
+        assertEquals(0, provider.mQueries);
+        assertFalse(info.usingFallbackIcon);
+        assertTrue(centerPixel(info.mIcon) != CUSTOM_COLOR);
+        assertTrue(info.reSaveIcon);
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shendu.launcher;
+
+import android.test.InstrumentationTestCase;
+
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Ordering of {@link SortKeyGenerator} keys over Latin, Han, mixed and other-script labels,
+ * using the shipped pinyin table and a fixed collator.
+ */
+public class SortKeyGeneratorTest extends InstrumentationTestCase {
+    private SortKeyGenerator mGenerator;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mGenerator = new SortKeyGenerator(
+                PinyinConverterTest.loadConverter(getInstrumentation()),
+                Collator.getInstance(Locale.US));
+    }
+
+    /**
+     * Sorts the labels by key and checks they come out in the listed order, whatever order
+     * they go in.
+     */
+    private void assertSortOrder(String... expected) {
+        final List<String> labels = new ArrayList<String>(Arrays.asList(expected));
+        Collections.reverse(labels);
+        Collections.sort(labels, new Comparator<String>() {
+            public int compare(String a, String b) {
+                return mGenerator.getSortKey(a).compareTo(mGenerator.getSortKey(b));
+            }
+        });
+        assertEquals(Arrays.asList(expected), labels);
+    }
+
+    private void assertSameKey(String a, String b) {
+        assertEquals(a + " and " + b, mGenerator.getSortKey(a), mGenerator.getSortKey(b));
+    }
+
+    public void testLatinIgnoresCaseSpacesAndPunctuation() {
+        assertSameKey("Google Maps", "googlemaps");
+        assertSameKey("Mail!", "mail");
+        assertSameKey("K-9 Mail", "k9mail");
+        assertSortOrder("Browser", "calculator", "Camera", "Maps", "Music", "zoom");
+        assertEquals("", mGenerator.getSortKey(null));
+        assertEquals("", mGenerator.getSortKey("  -  "));
+    }
+
+    public void testAccentsAreStripped() {
+        assertSameKey("\u00c9clair", "eclair");
+        assertSameKey("\u00c5ngstr\u00f6m", "angstrom");
+        assertSameKey("Se\u00f1or", "senor");
+        // U-umlaut files under U, not after Z
+        assertSortOrder("Tango", "\u00dcber", "Vivid", "Zoom");
+    }
+
+    public void testDigits() {
+        // Full-width digits are plain digits
+        assertSameKey("\uff14 Pics", "4 Pics");
+        // Digits sort before letters
+        assertSortOrder("2048", "4 Pics", "Angry Birds");
+    }
+
+    public void testHanSortsByPinyinAmongLatin() {
+        assertEquals("wei xin ", mGenerator.getSortKey("\u5fae\u4fe1"));
+        // Browser, de tu, Weather, wei xin, zhi fu bao, Zoom
+        assertSortOrder("Browser", "\u5730\u56fe", "Weather", "\u5fae\u4fe1",
+                "\u652f\u4ed8\u5b9d", "Zoom");
+    }
+
+    public void testMixedHanAndLatin() {
+        // QQ, QQ Mail, QQ yin le
+        assertSortOrder("QQ", "QQ Mail", "QQ\u97f3\u4e50");
+        // Bai du de tu ends each syllable, so it sorts before the Latin "baidumaps"
+        assertSortOrder("\u767e\u5ea6\u5730\u56fe", "Baidu Maps");
+        assertEquals("qqyin le ", mGenerator.getSortKey("QQ \u97f3\u4e50"));
+    }
+
+    public void testSyllableBoundary() {
+        // Two syllables "xi an" sort before the single syllable "xian", which sorts after
+        // the plain Latin word
+        assertEquals("xi an ", mGenerator.getSortKey("\u897f\u5b89"));
+        assertEquals("xian ", mGenerator.getSortKey("\u5148"));
+        assertSortOrder("\u897f\u5b89", "Xian", "\u5148", "Xiang");
+        // A longer run of syllables still follows the boundary
+        assertSortOrder("\u897f\u5b89\u5e02", "\u5148\u950b");
+    }
+
+    public void testOtherScriptsFollowLatinAndPinyin() {
+        // zuo sorts last of the pinyin, then Greek, Cyrillic, Hebrew, kana and Hangul in
+        // collation order
+        assertSortOrder("Zoom", "\u505a",
+                "\u0395\u03bb\u03bb\u03ac\u03b4\u03b1", "\u03a9\u03bc\u03ad\u03b3\u03b1",
+                "\u0410\u043b\u044c\u0444\u0430", "\u0411\u0435\u0442\u0430",
+                "\u042f\u043d\u0434\u0435\u043a\u0441",
+                "\u05e2\u05d1\u05e8\u05d9\u05ea",
+                "\u3042\u308a\u304c\u3068\u3046",
+                "\uce74\uce74\uc624");
+    }
+
+    public void testOtherScriptRunsInsideLatinLabels() {
+        // The Latin prefix decides first, then the collated run
+        assertSortOrder("Mail", "Mail \u0410\u043b\u044c\u0444\u0430",
+                "Mail \u0411\u0435\u0442\u0430", "Maps");
+    }
+}
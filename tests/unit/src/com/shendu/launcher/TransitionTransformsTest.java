@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shendu.launcher;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+/**
+ * Golden values for {@link TransitionTransforms}: every effect, in the normal and small states,
+ * has to set the same properties to the same values as the old per-page math in
+ * {@link LegacyTransitionMath} and {@link LegacyTabletTransition}, across a sweep of scroll
+ * progress values and page sizes.
+ */
+public class TransitionTransformsTest extends TestCase {
+    private static final int[][] PAGE_SIZES = new int[][] { { 480, 762 }, { 720, 1134 } };
+    private static final float CAMERA_DISTANCE = 6500 * 1.5f;
+    private static final float SMALL_TRANSLATION_Y = -185;
+
+    // Exact math only differs by float rounding
+    private static final float EXACT = 1e-4f;
+    // The stack curves are read from tables
+    private static final float CURVE = 1e-3f;
+    // Pixels; the tablet offsets are read from a table
+    private static final float TABLET_OFFSET = 0.05f;
+
+    private float[] mProgress;
+    private final PageTransform mExpected = new PageTransform();
+    private final PageTransform mActual = new PageTransform();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // Even steps, which include 0 and both rest positions, plus random points between them
+        final int steps = 256;
+        final Random random = new Random(38);
+        mProgress = new float[2 * steps + 1 + 500];
+        for (int i = -steps; i <= steps; i++) {
+            mProgress[i + steps] = (float) i / steps;
+        }
+        for (int i = 2 * steps + 1; i < mProgress.length; i++) {
+            mProgress[i] = random.nextFloat() * 2 - 1;
+        }
+    }
+
+    public void testStandard() {
+        for (boolean fade : new boolean[] { false, true }) {
+            for (float p : mProgress) {
+                LegacyTransitionMath.standard(p, fade, mExpected);
+                TransitionTransforms.standard(p, fade, mActual);
+                assertTransform("standard fade=" + fade + " p=" + p, EXACT);
+            }
+        }
+    }
+
+    public void testTablet() {
+        final LegacyTabletTransition legacy = new LegacyTabletTransition();
+        for (int[] size : PAGE_SIZES) {
+            final float[] offsets = tabletOffsets(legacy, size[0], size[1]);
+            for (boolean fade : new boolean[] { false, true }) {
+                for (float p : mProgress) {
+                    legacy.tablet(p, fade, size[0], size[1], mExpected);
+                    TransitionTransforms.tablet(p, fade, offsets, mActual);
+                    assertTransform("tablet " + size[0] + " fade=" + fade + " p=" + p,
+                            TABLET_OFFSET);
+                }
+            }
+        }
+    }
+
+    public void testZoom() {
+        for (int[] size : PAGE_SIZES) {
+            for (boolean in : new boolean[] { false, true }) {
+                for (int state = 0; state < 3; state++) {
+                    final boolean small = state == 2;
+                    final boolean fade = state == 1;
+                    for (float p : mProgress) {
+                        LegacyTransitionMath.zoom(p, in, small, fade, size[0], mExpected);
+                        TransitionTransforms.zoom(p, in, small, fade, size[0], mActual);
+                        assertTransform("zoom in=" + in + " small=" + small + " fade=" + fade
+                                + " p=" + p, EXACT);
+                    }
+                }
+            }
+        }
+    }
+
+    public void testRotate() {
+        for (int[] size : PAGE_SIZES) {
+            for (boolean up : new boolean[] { false, true }) {
+                for (int state = 0; state < 3; state++) {
+                    final boolean small = state == 2;
+                    final boolean fade = state == 1;
+                    final float translationY = small ? SMALL_TRANSLATION_Y : 0;
+                    for (float p : mProgress) {
+                        LegacyTransitionMath.rotate(p, up, small, fade, size[0], size[1],
+                                translationY, mExpected);
+                        TransitionTransforms.rotate(p, up, small, fade, size[0], size[1],
+                                translationY, mActual);
+                        assertTransform("rotate up=" + up + " small=" + small + " fade=" + fade
+                                + " p=" + p, EXACT);
+                    }
+                }
+            }
+        }
+    }
+
+    public void testCube() {
+        for (int[] size : PAGE_SIZES) {
+            for (boolean in : new boolean[] { false, true }) {
+                for (boolean small : new boolean[] { false, true }) {
+                    for (float p : mProgress) {
+                        LegacyTransitionMath.cube(p, in, small, size[0], size[1],
+                                CAMERA_DISTANCE, mExpected);
+                        TransitionTransforms.cube(p, in, small, size[0], size[1],
+                                CAMERA_DISTANCE, mActual);
+                        assertTransform("cube in=" + in + " small=" + small + " p=" + p, EXACT);
+                    }
+                }
+            }
+        }
+    }
+
+    public void testStack() {
+        for (int[] size : PAGE_SIZES) {
+            for (boolean small : new boolean[] { false, true }) {
+                for (boolean largeScreen : new boolean[] { false, true }) {
+                    for (float p : mProgress) {
+                        LegacyTransitionMath.stack(p, small, largeScreen, size[0], mExpected);
+                        TransitionTransforms.stack(p, small, largeScreen, size[0], mActual);
+                        assertTransform("stack small=" + small + " large=" + largeScreen
+                                + " p=" + p, CURVE);
+                    }
+                }
+            }
+        }
+    }
+
+    public void testLookupHitsSamplesExactly() {
+        final float[] curve = new float[TransitionTransforms.CURVE_SEGMENTS + 1];
+        for (int i = 0; i < curve.length; i++) {
+            curve[i] = i * i;
+        }
+        for (int i = 0; i < curve.length; i++) {
+            assertEquals(curve[i], TransitionTransforms.lookup(curve,
+                    (float) i / TransitionTransforms.CURVE_SEGMENTS), 0);
+        }
+        assertEquals(curve[0], TransitionTransforms.lookup(curve, -0.5f), 0);
+        assertEquals(curve[curve.length - 1], TransitionTransforms.lookup(curve, 1.5f), 0);
+        // Halfway between two samples is their mean
+        assertEquals((curve[3] + curve[4]) / 2, TransitionTransforms.lookup(curve,
+                3.5f / TransitionTransforms.CURVE_SEGMENTS), 1e-3f);
+    }
+
+    /**
+     * Samples the tablet offsets the way Workspace does.
+     */
+    static float[] tabletOffsets(LegacyTabletTransition legacy, int width, int height) {
+        final int segments = TransitionTransforms.CURVE_SEGMENTS;
+        final float[] offsets = new float[segments + 1];
+        for (int i = 0; i <= segments; i++) {
+            offsets[i] = legacy.getOffsetXForRotation(
+                    TransitionTransforms.TABLET_ANGLE * i / segments, width, height);
+        }
+        return offsets;
+    }
+
+    private void assertTransform(String label, float tolerance) {
+        final PageTransform e = mExpected;
+        final PageTransform a = mActual;
+        assertEquals(label + " mask", e.mask, a.mask);
+        final int m = e.mask;
+        if ((m & PageTransform.TRANSLATION_X) != 0) {
+            assertClose(label + " translationX", e.translationX, a.translationX, tolerance);
+        }
+        if ((m & PageTransform.TRANSLATION_Y) != 0) {
+            assertClose(label + " translationY", e.translationY, a.translationY, tolerance);
+        }
+        if ((m & PageTransform.SCALE) != 0) {
+            assertClose(label + " scale", e.scale, a.scale, tolerance);
+        }
+        if ((m & PageTransform.ROTATION) != 0) {
+            assertClose(label + " rotation", e.rotation, a.rotation, tolerance);
+        }
+        if ((m & PageTransform.ROTATION_Y) != 0) {
+            assertClose(label + " rotationY", e.rotationY, a.rotationY, tolerance);
+        }
+        if ((m & PageTransform.PIVOT_X) != 0) {
+            assertClose(label + " pivotX", e.pivotX, a.pivotX, tolerance);
+        }
+        if ((m & PageTransform.PIVOT_Y) != 0) {
+            assertClose(label + " pivotY", e.pivotY, a.pivotY, tolerance);
+        }
+        if ((m & PageTransform.CAMERA_DISTANCE) != 0) {
+            assertClose(label + " cameraDistance", e.cameraDistance, a.cameraDistance, tolerance);
+        }
+        if ((m & PageTransform.ALPHA) != 0) {
+            assertClose(label + " alpha", e.alpha, a.alpha, tolerance);
+        }
+        if ((m & PageTransform.CONTENT_ALPHA) != 0) {
+            assertClose(label + " contentAlpha", e.contentAlpha, a.contentAlpha, tolerance);
+        }
+        if ((m & PageTransform.BACKGROUND_ALPHA) != 0) {
+            assertClose(label + " backgroundAlpha", e.backgroundAlpha, a.backgroundAlpha,
+                    tolerance);
+        }
+        if ((m & PageTransform.VISIBILITY) != 0) {
+            assertEquals(label + " visible", e.visible, a.visible);
+        }
+    }
+
+    private static void assertClose(String label, float expected, float actual,
+            float tolerance) {
+        // Large pixel values carry proportionally more float rounding
+        assertEquals(label, expected, actual, tolerance + Math.abs(expected) * 1e-6f);
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shendu.launcher;
+
+import android.content.ComponentName;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.os.SystemClock;
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads a workspace of more than fifty screens through {@link LauncherModel} and checks that
+ * the screens are bound in rank order, that every item lands on the page of its screen, that
+ * the current page is bound first, and how long the bind takes.
+ *
+ * The workspace is read from a scratch database through a model of its own; the launcher's
+ * database is never opened. The shared model lists are overwritten, so the launcher's model is
+ * told to load its workspace again afterwards.
+ */
+public class WorkspaceBindTest extends InstrumentationTestCase {
+    private static final String TAG = "WorkspaceBindTest";
+
+    private static final String DATABASE_NAME = "workspace_bind.db";
+
+    private static final int SCREEN_COUNT = 60;
+    private static final int ITEMS_PER_SCREEN = 4;
+    private static final int CURRENT_SCREEN = 27;
+    private static final long FIRST_SCREEN_ID = 1000;
+    private static final long FIRST_ITEM_ID = 100000;
+    private static final long BIND_TIMEOUT = 30000;
+    private static final long MAX_BIND_TIME = 10000;
+
+    private static class RecordingCallbacks implements LauncherModel.Callbacks {
+        final CountDownLatch mFinished = new CountDownLatch(1);
+        final ArrayList<String> mEvents = new ArrayList<String>();
+        final ArrayList<ItemInfo> mItems = new ArrayList<ItemInfo>();
+        ArrayList<Long> mScreenIds;
+        long mScreensBoundAt;
+        long mFirstItemsBoundAt;
+        long mFinishedAt;
+
+        public boolean setLoadOnResume() { return false; }
+        public int getCurrentWorkspaceScreen() { return CURRENT_SCREEN; }
+
+        public void bindScreens(ArrayList<Long> screenIds) {
+            mEvents.add("bindScreens");
+            mScreenIds = new ArrayList<Long>(screenIds);
+            mScreensBoundAt = SystemClock.uptimeMillis();
+        }
+
+        public void startBinding() {
+            mEvents.add("startBinding");
+        }
+
+        public void bindItems(ArrayList<ItemInfo> shortcuts, int start, int end) {
+            mEvents.add("bindItems");
+            if (mItems.isEmpty()) {
+                mFirstItemsBoundAt = SystemClock.uptimeMillis();
+            }
+            for (int i = start; i < end; i++) {
+                mItems.add(shortcuts.get(i));
+            }
+        }
+
+        public void bindFolders(HashMap<Long, FolderInfo> folders) {
+            mEvents.add("bindFolders");
+        }
+
+        public void finishBindingItems() {
+            mEvents.add("finishBindingItems");
+            mFinishedAt = SystemClock.uptimeMillis();
+            mFinished.countDown();
+        }
+
+        public void bindAppWidget(LauncherAppWidgetInfo info) {}
+        public void bindAllApplications(ArrayList<ShortcutInfo> apps) {}
+        public void bindAppsAdded(ArrayList<ShortcutInfo> apps) {}
+        public void bindShortcutsInstalled(ArrayList<ShortcutInfo> shortcuts) {}
+        public void bindAppsUpdated(ArrayList<ShortcutInfo> apps) {}
+        public void bindAppsRemoved(ArrayList<ShortcutInfo> apps, boolean permanent) {}
+        public void bindPackagesUpdated() {}
+        public boolean isAllAppsVisible() { return false; }
+        public void bindSearchablesChanged() {}
+        public void bindWallpaperChanged() {}
+        public void bindUnreadCountsChanged(HashMap<ComponentName, Integer> changed) {}
+        public void shenduChangeTheme() {}
+    }
+
+    private ScratchLauncherContext mContext;
+    private LauncherProvider mProvider;
+    private LauncherModel mLauncherModel;
+    private LauncherModel mModel;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        final LauncherApplication app = (LauncherApplication)
+                getInstrumentation().getTargetContext().getApplicationContext();
+        mLauncherModel = app.getModel();
+        mLauncherModel.stopLoader();
+        mContext = new ScratchLauncherContext(app);
+        mProvider = mContext.openProvider(DATABASE_NAME, false);
+        mModel = new LauncherModel(app, app.getIconCache(), mContext);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mModel.stopLoader();
+        mProvider.shutdown();
+        mContext.deleteDatabase(DATABASE_NAME);
+        // Make the launcher load its own workspace again when it next resumes
+        mLauncherModel.resetLoadedState(false, true);
+        super.tearDown();
+    }
+
+    public void testBindManyScreens() throws Exception {
+        final int countX = LauncherModel.getCellCountX();
+        final int countY = LauncherModel.getCellCountY();
+        assertTrue(countY >= ITEMS_PER_SCREEN);
+
+        // Screen ids are a permutation of their ranks, so binding by id order would show
+        final ContentValues[] screens = new ContentValues[SCREEN_COUNT];
+        final ContentValues[] favorites = new ContentValues[SCREEN_COUNT * ITEMS_PER_SCREEN];
+        for (int rank = 0; rank < SCREEN_COUNT; rank++) {
+            final long screenId = screenIdForRank(rank);
+            screens[rank] = new ContentValues();
+            screens[rank].put(LauncherSettings.WorkspaceScreens._ID, screenId);
+            screens[rank].put(LauncherSettings.WorkspaceScreens.SCREEN_RANK, rank);
+            for (int k = 0; k < ITEMS_PER_SCREEN; k++) {
+                ContentValues values = new ContentValues();
+                values.put(LauncherSettings.Favorites._ID,
+                        FIRST_ITEM_ID + rank * ITEMS_PER_SCREEN + k);
+                values.put(LauncherSettings.Favorites.TITLE, rank + "/" + k);
+                values.put(LauncherSettings.Favorites.INTENT,
+                        "#Intent;action=android.intent.action.VIEW;i.rank=" + rank + ";end");
+                values.put(LauncherSettings.Favorites.ITEM_TYPE,
+                        LauncherSettings.Favorites.ITEM_TYPE_SHORTCUT);
+                values.put(LauncherSettings.Favorites.ICON_TYPE,
+                        LauncherSettings.Favorites.ICON_TYPE_BITMAP);
+                values.put(LauncherSettings.Favorites.CONTAINER,
+                        LauncherSettings.Favorites.CONTAINER_DESKTOP);
+                values.put(LauncherSettings.Favorites.SCREEN, screenId);
+                values.put(LauncherSettings.Favorites.CELLX, (rank + k) % countX);
+                values.put(LauncherSettings.Favorites.CELLY, k);
+                values.put(LauncherSettings.Favorites.SPANX, 1);
+                values.put(LauncherSettings.Favorites.SPANY, 1);
+                favorites[rank * ITEMS_PER_SCREEN + k] = values;
+            }
+        }
+        final ContentResolver resolver = mContext.getContentResolver();
+        resolver.bulkInsert(LauncherSettings.Favorites.CONTENT_URI_NO_NOTIFICATION, favorites);
+        resolver.bulkInsert(LauncherSettings.WorkspaceScreens.CONTENT_URI, screens);
+
+        final RecordingCallbacks callbacks = new RecordingCallbacks();
+        mModel.initialize(callbacks);
+        final long start = SystemClock.uptimeMillis();
+        mModel.startLoader(true);
+        assertTrue("bind did not finish",
+                callbacks.mFinished.await(BIND_TIMEOUT, TimeUnit.MILLISECONDS));
+        getInstrumentation().waitForIdleSync();
+
+        Log.i(TAG, SCREEN_COUNT + " screens, " + favorites.length + " items: screens bound after "
+                + (callbacks.mScreensBoundAt - start) + "ms, first items after "
+                + (callbacks.mFirstItemsBoundAt - start) + "ms, finished after "
+                + (callbacks.mFinishedAt - start) + "ms");
+
+        // The screens come first, then items, then the end of the bind
+        assertEquals("bindScreens", callbacks.mEvents.get(0));
+        assertEquals("startBinding", callbacks.mEvents.get(1));
+        assertEquals("finishBindingItems",
+                callbacks.mEvents.get(callbacks.mEvents.size() - 1));
+
+        // Pages follow the ranks, not the ids
+        assertEquals(SCREEN_COUNT, callbacks.mScreenIds.size());
+        for (int rank = 0; rank < SCREEN_COUNT; rank++) {
+            assertEquals(screenIdForRank(rank), (long) callbacks.mScreenIds.get(rank));
+        }
+
+        // Every item is bound once, on the page of its screen
+        final ArrayList<ItemInfo> items = callbacks.mItems;
+        assertEquals(favorites.length, items.size());
+        final boolean[] seen = new boolean[favorites.length];
+        for (ItemInfo item : items) {
+            final int index = (int) (item.id - FIRST_ITEM_ID);
+            assertFalse("item " + item.id + " bound twice", seen[index]);
+            seen[index] = true;
+            final int rank = index / ITEMS_PER_SCREEN;
+            final int k = index % ITEMS_PER_SCREEN;
+            assertEquals(LauncherSettings.Favorites.CONTAINER_DESKTOP, item.container);
+            assertEquals("page of item " + item.id, rank, item.screen);
+            assertEquals((rank + k) % countX, item.cellX);
+            assertEquals(k, item.cellY);
+        }
+
+        // The current page is bound before anything else, the rest in page and cell order
+        for (int i = 0; i < ITEMS_PER_SCREEN; i++) {
+            assertEquals(CURRENT_SCREEN, items.get(i).screen);
+        }
+        for (int i = ITEMS_PER_SCREEN; i < items.size(); i++) {
+            ItemInfo b = items.get(i);
+            assertFalse(b.screen == CURRENT_SCREEN);
+            if (i == ITEMS_PER_SCREEN) continue;
+            ItemInfo a = items.get(i - 1);
+            assertTrue("item " + b.id + " bound out of order", a.screen < b.screen
+                    || (a.screen == b.screen && (a.cellY < b.cellY
+                            || (a.cellY == b.cellY && a.cellX < b.cellX))));
+        }
+
+        assertTrue("bind took " + (callbacks.mFinishedAt - start) + "ms",
+                callbacks.mFinishedAt - start < MAX_BIND_TIME);
+    }
+
+    private static long screenIdForRank(int rank) {
+        // 37 is coprime to SCREEN_COUNT, so this visits every id once
+        return FIRST_SCREEN_ID + (rank * 37) % SCREEN_COUNT;
+    }
+}
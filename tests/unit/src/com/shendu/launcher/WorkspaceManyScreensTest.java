@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.shendu.launcher;
+
+import android.os.SystemClock;
+import android.test.ActivityInstrumentationTestCase2;
+import android.util.Log;
+import android.view.KeyEvent;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * Grows the workspace to more than fifty pages and checks that snapping through every page and
+ * back lands on each one, and that the screen manager takes a snapshot of every page. Logs the
+ * frame timings of the scroll and the time and heap the snapshots take.
+ *
+ * The pages are only added to the view; nothing is stored, and they are removed afterwards.
+ */
+public class WorkspaceManyScreensTest extends ActivityInstrumentationTestCase2<Launcher> {
+    private static final String TAG = "WorkspaceManyScreensTest";
+
+    private static final int SCREEN_COUNT = 60;
+    private static final long SNAP_TIMEOUT = 3000;
+    private static final long MAX_SNAPSHOT_TIME = 10000;
+
+    private Launcher mLauncher;
+    private Workspace mWorkspace;
+    private int mSavedPageCount;
+    private int mSavedPage;
+
+    // Written on the UI thread by the query runnables, read once runOnMainSync returns
+    private int mPage;
+    private boolean mMoving;
+    private int mScrollError;
+
+    public WorkspaceManyScreensTest() {
+        super(Launcher.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mLauncher = getActivity();
+        getInstrumentation().waitForIdleSync();
+        getInstrumentation().runOnMainSync(new Runnable() {
+            public void run() {
+                mWorkspace = mLauncher.getWorkspace();
+                mSavedPageCount = mWorkspace.getChildCount();
+                mSavedPage = mWorkspace.getCurrentPage();
+                while (mWorkspace.getChildCount() < SCREEN_COUNT) {
+                    mWorkspace.addScreen(false);
+                }
+                mWorkspace.setCurrentPage(0);
+            }
+        });
+        getInstrumentation().waitForIdleSync();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        getInstrumentation().runOnMainSync(new Runnable() {
+            public void run() {
+                final int added = mWorkspace.getChildCount() - mSavedPageCount;
+                if (added > 0) {
+                    mWorkspace.removeViews(mSavedPageCount, added);
+                }
+                mWorkspace.setCurrentPage(mSavedPage);
+            }
+        });
+        getInstrumentation().waitForIdleSync();
+        super.tearDown();
+    }
+
+    public void testSnapThroughManyScreens() {
+        assertEquals(SCREEN_COUNT, mWorkspace.getChildCount());
+        final long start = SystemClock.uptimeMillis();
+        for (int page = 1; page < SCREEN_COUNT; page++) {
+            snapAndWait(page);
+        }
+        // One long snap from the last page back to the first
+        snapAndWait(0);
+        final long elapsed = SystemClock.uptimeMillis() - start;
+
+        final StringWriter stats = new StringWriter();
+        getInstrumentation().runOnMainSync(new Runnable() {
+            public void run() {
+                final PrintWriter writer = new PrintWriter(stats);
+                mWorkspace.dumpFrameStats("", writer);
+                mWorkspace.dumpLayerStats("", writer);
+                writer.flush();
+                mScrollError = mWorkspace.getScrollX()
+                        - (mWorkspace.getChildOffset(0) - mWorkspace.getRelativeChildOffset(0));
+            }
+        });
+        assertEquals("scroll offset on the first page", 0, mScrollError);
+        Log.i(TAG, SCREEN_COUNT + " screens snapped through in " + elapsed + "ms\n" + stats);
+    }
+
+    public void testSnapshotsOfManyScreens() {
+        final Runtime runtime = Runtime.getRuntime();
+        runtime.gc();
+        final long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+        final long start = SystemClock.uptimeMillis();
+        getInstrumentation().runOnMainSync(new Runnable() {
+            public void run() {
+                mWorkspace.showPreviews();
+            }
+        });
+        final long elapsed = SystemClock.uptimeMillis() - start;
+        final long heapAfter = runtime.totalMemory() - runtime.freeMemory();
+        getInstrumentation().waitForIdleSync();
+        assertTrue("screen manager not shown", mWorkspace.isShowPreviews);
+
+        getInstrumentation().sendKeyDownUpSync(KeyEvent.KEYCODE_BACK);
+        getInstrumentation().waitForIdleSync();
+        assertFalse("screen manager not dismissed", mWorkspace.isShowPreviews);
+
+        Log.i(TAG, SCREEN_COUNT + " snapshots taken in " + elapsed + "ms, heap grew by "
+                + (heapAfter - heapBefore) / 1024 + "KB");
+        assertTrue("snapshots took " + elapsed + "ms", elapsed < MAX_SNAPSHOT_TIME);
+    }
+
+    private void snapAndWait(final int page) {
+        getInstrumentation().runOnMainSync(new Runnable() {
+            public void run() {
+                mWorkspace.snapToPage(page);
+            }
+        });
+        final Runnable query = new Runnable() {
+            public void run() {
+                mPage = mWorkspace.getCurrentPage();
+                mMoving = mWorkspace.isPageMoving();
+            }
+        };
+        final long deadline = SystemClock.uptimeMillis() + SNAP_TIMEOUT;
+        do {
+            SystemClock.sleep(16);
+            getInstrumentation().runOnMainSync(query);
+        } while ((mPage != page || mMoving) && SystemClock.uptimeMillis() < deadline);
+        assertEquals("current page after snapping", page, mPage);
+        assertFalse("page " + page + " still moving", mMoving);
+    }
+}
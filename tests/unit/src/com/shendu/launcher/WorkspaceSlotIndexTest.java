@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.shendu.launcher;
+
+import android.content.ComponentName;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+/**
+ * Places batches with a {@link WorkspaceSlotIndex} built from model items and checks that no
+ * cell is handed out twice or on top of an existing item.
+ */
+public class WorkspaceSlotIndexTest extends TestCase {
+    private static final int COUNT_X = 4;
+    private static final int COUNT_Y = 4;
+    private static final int CELLS = COUNT_X * COUNT_Y;
+    private static final int APP_COUNT = 300;
+
+    private final ArrayList<ItemInfo> mItems = new ArrayList<ItemInfo>();
+
+    private static ShortcutInfo shortcut(String packageName, long container, int screen,
+            int cellX, int cellY) {
+        ShortcutInfo info = new ShortcutInfo();
+        info.componentName = new ComponentName(packageName, packageName + ".Main");
+        info.container = container;
+        info.screen = screen;
+        info.cellX = cellX;
+        info.cellY = cellY;
+        return info;
+    }
+
+    private static ItemInfo desktopShortcut(String packageName, int screen, int cellX,
+            int cellY) {
+        return shortcut(packageName, LauncherSettings.Favorites.CONTAINER_DESKTOP, screen,
+                cellX, cellY);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // Page 0: a 2x2 widget and two shortcuts; the hotseat item must not take a cell
+        LauncherAppWidgetInfo widget = new LauncherAppWidgetInfo(1,
+                new ComponentName("com.example.clock", "com.example.clock.Widget"));
+        widget.container = LauncherSettings.Favorites.CONTAINER_DESKTOP;
+        widget.screen = 0;
+        widget.cellX = 0;
+        widget.cellY = 0;
+        widget.spanX = 2;
+        widget.spanY = 2;
+        mItems.add(widget);
+        mItems.add(desktopShortcut("com.example.mail", 0, 2, 0));
+        mItems.add(desktopShortcut("com.example.maps", 0, 3, 0));
+        mItems.add(shortcut("com.example.phone", LauncherSettings.Favorites.CONTAINER_HOTSEAT,
+                0, 0, 3));
+        // Page 1: a folder, and a shortcut inside it that has no desktop cell
+        FolderInfo folder = new FolderInfo();
+        folder.id = 7;
+        folder.container = LauncherSettings.Favorites.CONTAINER_DESKTOP;
+        folder.screen = 1;
+        folder.cellX = 1;
+        folder.cellY = 1;
+        mItems.add(folder);
+        mItems.add(shortcut("com.example.notes", folder.id, 1, 3, 3));
+        // Page 2, the last one: new apps go after the shortcut at (2, 1)
+        mItems.add(desktopShortcut("com.example.camera", 2, 0, 0));
+        mItems.add(desktopShortcut("com.example.music", 2, 2, 1));
+    }
+
+    private HashSet<Integer> occupiedCells() {
+        HashSet<Integer> cells = new HashSet<Integer>();
+        for (ItemInfo item : mItems) {
+            if (item.container != LauncherSettings.Favorites.CONTAINER_DESKTOP) continue;
+            for (int x = item.cellX; x < item.cellX + item.spanX; x++) {
+                for (int y = item.cellY; y < item.cellY + item.spanY; y++) {
+                    cells.add(item.screen * CELLS + y * COUNT_X + x);
+                }
+            }
+        }
+        return cells;
+    }
+
+    public void testBulkPlacementFillsForwardWithoutOverlap() {
+        WorkspaceSlotIndex index = WorkspaceSlotIndex.fromItems(COUNT_X, COUNT_Y, 3, mItems);
+        final int[] slots = index.reserve(APP_COUNT, null, WorkspaceSlotIndex.POLICY_FIRST_FIT);
+
+        assertEquals(APP_COUNT, slots.length);
+        assertEquals(2, index.getScreen(slots[0]));
+        assertEquals(3, index.getCellX(slots[0]));
+        assertEquals(1, index.getCellY(slots[0]));
+
+        HashSet<Integer> taken = occupiedCells();
+        int previous = -1;
+        for (int i = 0; i < APP_COUNT; i++) {
+            final int cell = index.getScreen(slots[i]) * CELLS
+                    + index.getCellY(slots[i]) * COUNT_X + index.getCellX(slots[i]);
+            assertTrue("slot " + i + " handed out twice or over an item", taken.add(cell));
+            assertTrue("slot " + i + " out of reading order", cell > previous);
+            previous = cell;
+        }
+        // Nine cells are left on page 2, the other 291 apps fill 19 new pages
+        assertEquals(22, index.getScreenCount());
+        assertEquals(21, index.getScreen(slots[APP_COUNT - 1]));
+    }
+
+    public void testNearSimilarPlacesNextToSamePackage() {
+        WorkspaceSlotIndex index = WorkspaceSlotIndex.fromItems(COUNT_X, COUNT_Y, 3, mItems);
+        final String[] keys = new String[APP_COUNT];
+        keys[0] = "com.example.mail";
+        keys[1] = "com.example.mail";
+        keys[2] = "com.example.phone";
+        final int[] slots = index.reserve(APP_COUNT, keys,
+                WorkspaceSlotIndex.POLICY_NEAR_SIMILAR);
+
+        // Mail sits at (2, 0) of page 0, whose nearest free cells are (2, 1) and (3, 1)
+        assertEquals(0, index.getScreen(slots[0]));
+        assertEquals(1, index.getCellY(slots[0]));
+        assertEquals(0, index.getScreen(slots[1]));
+        assertEquals(1, index.getCellY(slots[1]));
+        // The phone shortcut is in the hotseat, so its twin goes to first fit
+        assertEquals(2, index.getScreen(slots[2]));
+        assertEquals(3, index.getCellX(slots[2]));
+
+        HashSet<Integer> taken = occupiedCells();
+        for (int i = 0; i < APP_COUNT; i++) {
+            final int cell = index.getScreen(slots[i]) * CELLS
+                    + index.getCellY(slots[i]) * COUNT_X + index.getCellX(slots[i]);
+            assertTrue("slot " + i + " handed out twice or over an item", taken.add(cell));
+        }
+    }
+
+    public void testItemsPastScreenCountAddPages() {
+        mItems.add(desktopShortcut("com.example.late", 4, 0, 0));
+        WorkspaceSlotIndex index = WorkspaceSlotIndex.fromItems(COUNT_X, COUNT_Y, 3, mItems);
+        assertEquals(5, index.getScreenCount());
+
+        final int[] slots = index.reserve(1, null, WorkspaceSlotIndex.POLICY_FIRST_FIT);
+        assertEquals(4, index.getScreen(slots[0]));
+        assertEquals(1, index.getCellX(slots[0]));
+        assertEquals(0, index.getCellY(slots[0]));
+    }
+
+    public void testEmptyModelStartsAtFirstCell() {
+        WorkspaceSlotIndex index = WorkspaceSlotIndex.fromItems(COUNT_X, COUNT_Y, 0,
+                new ArrayList<ItemInfo>());
+        final int[] slots = index.reserve(CELLS, null, WorkspaceSlotIndex.POLICY_FIRST_FIT);
+        assertEquals(0, slots[0]);
+        assertEquals(CELLS - 1, slots[CELLS - 1]);
+        assertEquals(1, index.getScreenCount());
+    }
+}